@@ -0,0 +1,447 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.performance.BenchmarkResults.Metric;
+
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Regression gate comparing benchmark results against a stored baseline
+ *
+ * Every metric present in both files is compared by its mean. A change counts as a
+ * regression only when it is worse than the threshold for that metric (in percent, 5 by
+ * default) and statistically significant: a two-sided Welch t-test must reject equal
+ * means at the configured level (0.05 by default). Metrics with a single sample on both
+ * sides, such as output sizes, are taken as exact and compared against the threshold
+ * alone. Throughput is better when higher, time, latency, size and allocation when lower.
+ *
+ * The t-test assumes independent samples and needs several of them to detect a change of
+ * a few percent. Iterations within one JMH fork are not independent, so JMH results hold
+ * one sample per fork, and every measured metric needs at least {@link #MIN_SAMPLES}
+ * samples on each side; with fewer it is reported as "too few samples" and fails the
+ * gate instead of passing as unchanged. The minimum run configuration is therefore:
+ * - JMH: 5 forks ({@code -f 5}, the default of {@code -save} in benchmarks.jar)
+ * - {@code jni}: {@code -forks 5}, the default with {@code -save}
+ * - JUnit timings: {@code -Dfastimage.benchmark.runs=5} or more (the default)
+ *
+ * Benchmarks missing from either side are listed but never fail the gate. Differences in
+ * CPU, core count, OS or JVM between the two runs are printed as warnings, since they
+ * make the comparison meaningless.
+ *
+ * Usage:
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar compare baseline.json current.json
+ * java -jar benchmarks/target/benchmarks.jar compare baseline.json current.json -threshold 10 -threshold size=1 -alpha 0.05
+ * </pre>
+ */
+public final class BenchmarkComparison {
+
+    public static final double DEFAULT_THRESHOLD = 5.0;
+    public static final double DEFAULT_ALPHA = 0.05;
+    /** Samples each side needs for the t-test, one per fork for JMH results */
+    public static final int MIN_SAMPLES = 5;
+
+    private static final List<String> COMPARABLE_ENVIRONMENT = Arrays.asList("cpu", "cores", "os", "jvm");
+
+    private final double threshold;
+    private final Map<String, Double> metricThresholds;
+    private final double alpha;
+
+    public BenchmarkComparison() {
+        this(DEFAULT_THRESHOLD, Collections.emptyMap(), DEFAULT_ALPHA);
+    }
+
+    private BenchmarkComparison(double threshold, Map<String, Double> metricThresholds, double alpha) {
+        this.threshold = threshold;
+        this.metricThresholds = metricThresholds;
+        this.alpha = alpha;
+    }
+
+    /**
+     * @param percent Allowed slowdown or growth for metrics without their own threshold
+     */
+    public BenchmarkComparison withThreshold(double percent) {
+        checkThreshold(percent);
+        return new BenchmarkComparison(percent, metricThresholds, alpha);
+    }
+
+    /**
+     * @param metric  Metric name, such as "time", "size", "score", "p99" or "alloc"
+     * @param percent Allowed change for that metric
+     */
+    public BenchmarkComparison withThreshold(String metric, double percent) {
+        checkThreshold(percent);
+        Map<String, Double> thresholds = new LinkedHashMap<>(metricThresholds);
+        thresholds.put(metric, percent);
+        return new BenchmarkComparison(threshold, Collections.unmodifiableMap(thresholds), alpha);
+    }
+
+    /**
+     * @param alpha Significance level of the t-test, between 0 and 1
+     */
+    public BenchmarkComparison withAlpha(double alpha) {
+        if (!(alpha > 0 && alpha < 1)) {
+            throw new IllegalArgumentException("Significance level must be between 0 and 1, got " + alpha);
+        }
+        return new BenchmarkComparison(threshold, metricThresholds, alpha);
+    }
+
+    private static void checkThreshold(double percent) {
+        if (!(percent >= 0)) {
+            throw new IllegalArgumentException("Threshold must be a non-negative percentage, got " + percent);
+        }
+    }
+
+    public double getThreshold(String metric) {
+        return metricThresholds.getOrDefault(metric, threshold);
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    /**
+     * @return One delta per metric recorded in both results, in the order of the current run
+     */
+    public List<Delta> compare(BenchmarkResults baseline, BenchmarkResults current) {
+        List<Delta> deltas = new ArrayList<>();
+        for (String benchmark : current.getBenchmarks()) {
+            for (Metric metric : current.getMetrics(benchmark)) {
+                Metric base = baseline.getMetric(benchmark, metric.getName());
+                if (base != null) {
+                    deltas.add(compare(benchmark, base, metric));
+                }
+            }
+        }
+        return deltas;
+    }
+
+    private Delta compare(String benchmark, Metric base, Metric current) {
+        double baseMean = base.mean();
+        double currentMean = current.mean();
+        double change = baseMean == 0 ? (currentMean == 0 ? 0 : Double.POSITIVE_INFINITY)
+                : (currentMean - baseMean) / Math.abs(baseMean);
+        // Positive when the current run is worse
+        double worse = current.isHigherIsBetter() ? -change : change;
+
+        double pValue = Double.NaN;
+        boolean significant;
+        if (base.count() == 1 && current.count() == 1) {
+            significant = true;
+        } else if (base.count() < MIN_SAMPLES || current.count() < MIN_SAMPLES) {
+            return new Delta(benchmark, current.getName(), current.getUnit(), baseMean, currentMean, change, pValue,
+                    Verdict.INSUFFICIENT);
+        } else {
+            pValue = welchPValue(base, current);
+            significant = pValue < alpha;
+        }
+        double limit = getThreshold(current.getName()) / 100;
+        Verdict verdict;
+        if (significant && worse > limit) {
+            verdict = Verdict.REGRESSION;
+        } else if (significant && -worse > limit) {
+            verdict = Verdict.IMPROVEMENT;
+        } else if (!significant && Math.abs(worse) > limit) {
+            verdict = Verdict.NOISE;
+        } else {
+            verdict = Verdict.UNCHANGED;
+        }
+        return new Delta(benchmark, current.getName(), current.getUnit(), baseMean, currentMean, change, pValue, verdict);
+    }
+
+    /**
+     * Two-sided p-value of Welch's t-test for equal means
+     */
+    static double welchPValue(Metric a, Metric b) {
+        double va = a.variance() / a.count();
+        double vb = b.variance() / b.count();
+        double diff = b.mean() - a.mean();
+        if (va + vb == 0) {
+            // Both sides are constant: any difference is certain
+            return diff == 0 ? 1 : 0;
+        }
+        double t = diff / Math.sqrt(va + vb);
+        double df = (va + vb) * (va + vb)
+                / (va * va / (a.count() - 1) + vb * vb / (b.count() - 1));
+        return regularizedBeta(df / (df + t * t), df / 2, 0.5);
+    }
+
+    /**
+     * Regularized incomplete beta function I_x(a, b), by continued fraction
+     */
+    static double regularizedBeta(double x, double a, double b) {
+        if (x <= 0) {
+            return 0;
+        }
+        if (x >= 1) {
+            return 1;
+        }
+        double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b)
+                + a * Math.log(x) + b * Math.log(1 - x));
+        // The continued fraction converges quickly only below (a + 1) / (a + b + 2)
+        if (x < (a + 1) / (a + b + 2)) {
+            return front * betaFraction(x, a, b) / a;
+        }
+        return 1 - front * betaFraction(1 - x, b, a) / b;
+    }
+
+    private static double betaFraction(double x, double a, double b) {
+        final double tiny = 1e-300;
+        double c = 1;
+        double d = 1 - (a + b) * x / (a + 1);
+        d = 1 / (Math.abs(d) < tiny ? tiny : d);
+        double h = d;
+        for (int m = 1; m <= 300; m++) {
+            int m2 = 2 * m;
+            double aa = m * (b - m) * x / ((a + m2 - 1) * (a + m2));
+            d = 1 + aa * d;
+            d = 1 / (Math.abs(d) < tiny ? tiny : d);
+            c = 1 + aa / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            h *= d * c;
+            aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1));
+            d = 1 + aa * d;
+            d = 1 / (Math.abs(d) < tiny ? tiny : d);
+            c = 1 + aa / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            double step = d * c;
+            h *= step;
+            if (Math.abs(step - 1) < 1e-12) {
+                break;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Lanczos approximation of ln(Gamma(x)) for x > 0
+     */
+    private static double logGamma(double x) {
+        double[] coefficients = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+                -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+        double y = x;
+        double tmp = x + 5.5;
+        tmp -= (x + 0.5) * Math.log(tmp);
+        double series = 1.000000000190015;
+        for (double coefficient : coefficients) {
+            series += coefficient / ++y;
+        }
+        return -tmp + Math.log(2.5066282746310005 * series / x);
+    }
+
+    /**
+     * @return Text report of the deltas, one line per metric, followed by a summary
+     */
+    public String report(BenchmarkResults baseline, BenchmarkResults current, List<Delta> deltas) {
+        StringBuilder out = new StringBuilder();
+        Map<String, String> base = baseline.getEnvironment();
+        Map<String, String> cur = current.getEnvironment();
+        out.append(String.format("Baseline: %s %s%n", base.getOrDefault("libraryVersion", "?"), base.getOrDefault("timestamp", "")));
+        out.append(String.format("Current:  %s %s%n", cur.getOrDefault("libraryVersion", "?"), cur.getOrDefault("timestamp", "")));
+        for (String key : COMPARABLE_ENVIRONMENT) {
+            String a = base.get(key);
+            String b = cur.get(key);
+            if (a != null && b != null && !a.equals(b)) {
+                out.append(String.format("WARNING: %s differs: %s -> %s%n", key, a, b));
+            }
+        }
+        out.append('\n');
+
+        int width = "Benchmark".length();
+        for (Delta delta : deltas) {
+            width = Math.max(width, delta.getBenchmark().length());
+        }
+        String row = "%-" + width + "s  %-6s %14s %14s %9s %8s  %s%n";
+        out.append(String.format(row, "Benchmark", "Metric", "Baseline", "Current", "Change", "p", "Verdict"));
+        int regressions = 0;
+        int improvements = 0;
+        int insufficient = 0;
+        for (Delta delta : deltas) {
+            out.append(String.format(Locale.ROOT, row, delta.getBenchmark(), delta.getMetric(),
+                    formatValue(delta.getBaseline(), delta.getUnit()), formatValue(delta.getCurrent(), delta.getUnit()),
+                    String.format(Locale.ROOT, "%+.1f%%", delta.getChange() * 100),
+                    Double.isNaN(delta.getPValue()) ? "-" : String.format(Locale.ROOT, "%.3f", delta.getPValue()),
+                    delta.getVerdict().label));
+            if (delta.getVerdict() == Verdict.REGRESSION) {
+                regressions++;
+            } else if (delta.getVerdict() == Verdict.IMPROVEMENT) {
+                improvements++;
+            } else if (delta.getVerdict() == Verdict.INSUFFICIENT) {
+                insufficient++;
+            }
+        }
+
+        List<String> missing = new ArrayList<>(baseline.getBenchmarks());
+        missing.removeAll(current.getBenchmarks());
+        List<String> added = new ArrayList<>(current.getBenchmarks());
+        added.removeAll(baseline.getBenchmarks());
+        out.append('\n');
+        if (!missing.isEmpty()) {
+            out.append("Only in baseline: ").append(String.join(", ", missing)).append('\n');
+        }
+        if (!added.isEmpty()) {
+            out.append("Only in current: ").append(String.join(", ", added)).append('\n');
+        }
+        out.append(String.format("%d metrics compared, %d regressions, %d improvements%n",
+                deltas.size(), regressions, improvements));
+        if (insufficient > 0) {
+            out.append(String.format("%d metrics have fewer than %d samples on a side: rerun with at least %d forks%n",
+                    insufficient, MIN_SAMPLES, MIN_SAMPLES));
+        }
+        return out.toString();
+    }
+
+    private static String formatValue(double value, String unit) {
+        return String.format(Locale.ROOT, Math.abs(value) >= 100 ? "%.0f %s" : "%.3f %s", value, unit);
+    }
+
+    public static boolean hasRegression(List<Delta> deltas) {
+        return deltas.stream().anyMatch(delta -> delta.getVerdict() == Verdict.REGRESSION);
+    }
+
+    /**
+     * @return Whether every metric had enough samples to be judged
+     */
+    public static boolean isConclusive(List<Delta> deltas) {
+        return deltas.stream().noneMatch(delta -> delta.getVerdict() == Verdict.INSUFFICIENT);
+    }
+
+    /**
+     * Command line entry point, exits with status 1 on a regression or too few samples and 2 on bad usage
+     */
+    public static void main(String[] args) throws Exception {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * @param args {@code baseline.json current.json [-threshold [metric=]percent]... [-alpha level]}
+     * @return 0 when no metric regressed, 1 on a regression or a metric with too few samples, 2 on bad usage
+     */
+    public static int run(String[] args, PrintStream out) throws Exception {
+        BenchmarkComparison comparison = new BenchmarkComparison();
+        List<String> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-threshold") && i + 1 < args.length) {
+                    String value = args[++i];
+                    int eq = value.indexOf('=');
+                    comparison = eq < 0 ? comparison.withThreshold(Double.parseDouble(value))
+                            : comparison.withThreshold(value.substring(0, eq), Double.parseDouble(value.substring(eq + 1)));
+                } else if (args[i].equals("-alpha") && i + 1 < args.length) {
+                    comparison = comparison.withAlpha(Double.parseDouble(args[++i]));
+                } else if (args[i].startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                } else {
+                    files.add(args[i]);
+                }
+            }
+            if (files.size() != 2) {
+                throw new IllegalArgumentException("Expected a baseline and a current result file");
+            }
+        } catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+            out.println("Usage: compare baseline.json current.json [-threshold [metric=]percent]... [-alpha level]");
+            return 2;
+        }
+
+        BenchmarkResults baseline = BenchmarkResults.read(Paths.get(files.get(0)));
+        BenchmarkResults current = BenchmarkResults.read(Paths.get(files.get(1)));
+        List<Delta> deltas = comparison.compare(baseline, current);
+        out.print(comparison.report(baseline, current, deltas));
+        return hasRegression(deltas) || !isConclusive(deltas) ? 1 : 0;
+    }
+
+    public enum Verdict {
+        REGRESSION("REGRESSION"),
+        IMPROVEMENT("improved"),
+        /** Beyond the threshold but not statistically significant */
+        NOISE("noise"),
+        /** Measured with fewer than {@link #MIN_SAMPLES} samples on a side */
+        INSUFFICIENT("too few samples"),
+        UNCHANGED("ok");
+
+        private final String label;
+
+        Verdict(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Comparison of one metric between baseline and current run
+     */
+    public static final class Delta {
+
+        private final String benchmark;
+        private final String metric;
+        private final String unit;
+        private final double baseline;
+        private final double current;
+        private final double change;
+        private final double pValue;
+        private final Verdict verdict;
+
+        private Delta(String benchmark, String metric, String unit, double baseline, double current,
+                      double change, double pValue, Verdict verdict) {
+            this.benchmark = benchmark;
+            this.metric = metric;
+            this.unit = unit;
+            this.baseline = baseline;
+            this.current = current;
+            this.change = change;
+            this.pValue = pValue;
+            this.verdict = verdict;
+        }
+
+        public String getBenchmark() {
+            return benchmark;
+        }
+
+        public String getMetric() {
+            return metric;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public double getBaseline() {
+            return baseline;
+        }
+
+        public double getCurrent() {
+            return current;
+        }
+
+        /**
+         * @return Relative change of the mean, (current - baseline) / baseline
+         */
+        public double getChange() {
+            return change;
+        }
+
+        /**
+         * @return Welch t-test p-value, NaN for exact metrics and too few samples
+         */
+        public double getPValue() {
+            return pValue;
+        }
+
+        public Verdict getVerdict() {
+            return verdict;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s %s: %.3f -> %.3f %s (%+.1f%%, %s)",
+                    benchmark, metric, baseline, current, unit, change * 100, verdict.label);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package cn.lihongjie.image.performance;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Images the benchmarks run on, generated by {@link ImageCorpus} and read from its cache
+ *
+ * Each constant is a corpus spec (see {@link ImageCorpus.Spec#parse}) standing in for one
+ * of the photos bundled with the unit tests, at the same dimensions, format and JPEG
+ * mode. benchmarks.jar therefore carries no test resources, and every machine measures
+ * the same bytes. The specs are compile-time constants, so benchmarks can list them as
+ * JMH parameter values.
+ *
+ * Usage:
+ * <pre>
+ * byte[] jpeg = BenchmarkImages.load(BenchmarkImages.SMALL_JPEG);
+ * </pre>
+ */
+public final class BenchmarkImages {
+
+    /** Progressive JPEG photo, 3400x2265 (stands in for 700K.jpg) */
+    public static final String SMALL_JPEG = "photo:3400x2265:progressive";
+
+    /** Progressive JPEG photo, 3024x4032 (stands in for 1.5M.jpg) */
+    public static final String MEDIUM_JPEG = "photo:3024x4032:progressive";
+
+    /** Baseline JPEG photo at quality 90, 6000x4000 (stands in for 7.8M.jpg, which is not bundled) */
+    public static final String LARGE_JPEG = "photo:6000x4000:q90";
+
+    /** Screenshot-like PNG with large flat areas, 4000x6000 (stands in for 500K.png) */
+    public static final String SMALL_PNG = "screenshot:4000x6000:png";
+
+    /** Photo PNG, 1800x1200 (stands in for 2M.png) */
+    public static final String MEDIUM_PNG = "photo:1800x1200:png";
+
+    /** Photo PNG, 3000x2000 (stands in for 5M.png, which is not bundled) */
+    public static final String LARGE_PNG = "photo:3000x2000:png";
+
+    private static final Map<String, String> STAND_INS = new HashMap<>();
+
+    static {
+        STAND_INS.put("700K.jpg", SMALL_JPEG);
+        STAND_INS.put("1.5M.jpg", MEDIUM_JPEG);
+        STAND_INS.put("7.8M.jpg", LARGE_JPEG);
+        STAND_INS.put("500K.png", SMALL_PNG);
+        STAND_INS.put("2M.png", MEDIUM_PNG);
+        STAND_INS.put("5M.png", LARGE_PNG);
+    }
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * Get the encoded image for a spec, generating and caching it on first use
+     *
+     * @param spec Corpus spec text, usually one of the constants of this class
+     * @return Encoded image data
+     * @throws IllegalArgumentException if the spec is malformed
+     */
+    public static byte[] load(String spec) {
+        return ImageCorpus.load(ImageCorpus.Spec.parse(spec));
+    }
+
+    /**
+     * Get the encoded stand-in for a test image file name, for the older performance
+     * tests that name their images like the bundled files
+     *
+     * @param fileName 700K.jpg, 1.5M.jpg, 7.8M.jpg, 500K.png, 2M.png or 5M.png
+     * @return Encoded image data of the matching corpus spec
+     * @throws IllegalArgumentException if the name has no stand-in
+     */
+    public static byte[] loadStandIn(String fileName) {
+        String spec = STAND_INS.get(fileName);
+        if (spec == null) {
+            throw new IllegalArgumentException("No corpus stand-in for " + fileName);
+        }
+        return load(spec);
+    }
+}
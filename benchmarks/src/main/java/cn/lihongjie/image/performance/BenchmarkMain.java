@@ -0,0 +1,128 @@
+package cn.lihongjie.image.performance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar
+ *
+ * Accepts the regular JMH command line and adds the GC profiler ({@code -prof gc}), so
+ * allocation rate and bytes per operation are reported next to every score. Passing any
+ * {@code -prof} option replaces the default; the options that only print information
+ * ({@code -l}, {@code -lp}, {@code -lprof}, {@code -h}) are passed through unchanged.
+ *
+ * {@code -save file.json} stores the results together with the environment of the run
+ * in the {@link BenchmarkResults} format, and {@code compare} checks two stored results
+ * with {@link BenchmarkComparison}, exiting with status 1 on a regression. Stored results
+ * keep one sample per fork, so {@code -save} runs {@link BenchmarkComparison#MIN_SAMPLES}
+ * forks unless {@code -f} is given. {@code load}
+ * runs the open-loop capacity test {@link LoadTest} instead of JMH, {@code replay}
+ * re-drives a recorded traffic trace with {@link TrafficReplay}, {@code rate-distortion}
+ * writes the quality sweep report of {@link RateDistortionReport}, and {@code jni} splits
+ * native calls into boundary cost and compute with {@link JniOverheadReport}.
+ *
+ * Usage:
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar ImageProcessingBenchmark -p engine=java
+ * java -jar benchmarks/target/benchmarks.jar ImageContentionBenchmark -prof stack
+ * java -jar benchmarks/target/benchmarks.jar CorpusBenchmark -save results/current.json
+ * java -jar benchmarks/target/benchmarks.jar compare results/baseline.json results/current.json -threshold 5
+ * java -jar benchmarks/target/benchmarks.jar load -engine native -threads 1,4 -rates 20,40,80
+ * java -jar benchmarks/target/benchmarks.jar replay trace.tsv -inputs inputs -engine java -speed 2
+ * java -jar benchmarks/target/benchmarks.jar rate-distortion -images photo:2mp -out target/rd
+ * java -jar benchmarks/target/benchmarks.jar jni -save results/jni.json
+ * </pre>
+ */
+public final class BenchmarkMain {
+
+    private static final List<String> INFO_OPTIONS = Arrays.asList("-l", "-lp", "-lprof", "-lrf", "-h");
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("compare")) {
+            System.exit(BenchmarkComparison.run(Arrays.copyOfRange(args, 1, args.length), System.out));
+        }
+        if (args.length > 0 && args[0].equals("load")) {
+            LoadTest.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("replay")) {
+            TrafficReplay.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("rate-distortion")) {
+            RateDistortionReport.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("jni")) {
+            JniOverheadReport.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        int save = Arrays.asList(args).indexOf("-save");
+        if (save < 0) {
+            org.openjdk.jmh.Main.main(withDefaultProfiler(args));
+            return;
+        }
+        if (save + 1 >= args.length) {
+            throw new IllegalArgumentException("-save needs a file name");
+        }
+        Path target = Paths.get(args[save + 1]);
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        jmhArgs.subList(save, save + 2).clear();
+        if (jmhArgs.contains("-rf") || jmhArgs.contains("-rff")) {
+            throw new IllegalArgumentException("-save writes its own JSON result file and cannot be combined with -rf or -rff");
+        }
+        int forks = jmhArgs.indexOf("-f");
+        if (forks < 0) {
+            jmhArgs.addAll(Arrays.asList("-f", String.valueOf(BenchmarkComparison.MIN_SAMPLES)));
+        } else if (forks + 1 < jmhArgs.size() && Integer.parseInt(jmhArgs.get(forks + 1)) < BenchmarkComparison.MIN_SAMPLES) {
+            System.err.printf("Warning: fewer than %d forks, compare will report too few samples%n",
+                    BenchmarkComparison.MIN_SAMPLES);
+        }
+        Path raw = Files.createTempFile("jmh-", ".json");
+        try {
+            jmhArgs.addAll(Arrays.asList("-rf", "json", "-rff", raw.toString()));
+            org.openjdk.jmh.Main.main(withDefaultProfiler(jmhArgs.toArray(new String[0])));
+            save(BenchmarkResults.read(raw), target);
+        } finally {
+            Files.deleteIfExists(raw);
+        }
+    }
+
+    /**
+     * Stores JMH results with the environment of this JVM
+     */
+    static void save(BenchmarkResults jmh, Path target) throws IOException {
+        BenchmarkResults results = new BenchmarkResults();
+        for (String benchmark : jmh.getBenchmarks()) {
+            for (BenchmarkResults.Metric metric : jmh.getMetrics(benchmark)) {
+                results.add(benchmark, metric);
+            }
+        }
+        results.write(target);
+        System.out.println("Results saved to " + target.toAbsolutePath());
+    }
+
+    /**
+     * @param args JMH command line
+     * @return Command line with {@code -prof gc} added unless a profiler is already selected
+     */
+    static String[] withDefaultProfiler(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("-prof") || INFO_OPTIONS.contains(arg)) {
+                return args;
+            }
+        }
+        List<String> result = new ArrayList<>(Arrays.asList(args));
+        result.add("-prof");
+        result.add("gc");
+        return result.toArray(new String[0]);
+    }
+}
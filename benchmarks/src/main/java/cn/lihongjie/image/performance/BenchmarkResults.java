@@ -0,0 +1,475 @@
+package cn.lihongjie.image.performance;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Machine-readable store of benchmark results
+ *
+ * A result file records the environment of the run (CPU, cores, OS, JVM, library
+ * version, time) and a list of benchmarks, each with one or more metrics. Metrics keep
+ * their raw samples rather than a single average, so {@link BenchmarkComparison} can
+ * tell a real regression from run-to-run noise. JMH result files ({@code -rf json}) can
+ * be read as well; their primary score, p99 latency for sample mode and normalized
+ * allocation rate become metrics, with an empty environment. Iterations of one fork share
+ * a JVM, JIT decisions and heap layout and are not independent, so each JMH metric keeps
+ * one sample per fork, the mean of its iterations (sample mode: the mean and p99 of the
+ * fork's merged histogram).
+ *
+ * The library version is taken from the {@code fastimage.version} system property, or
+ * from the jar manifest when the classes run from a packaged jar.
+ *
+ * Usage:
+ * <pre>
+ * BenchmarkResults results = new BenchmarkResults();
+ * BenchmarkResults.Timing timing = BenchmarkResults.time(1, 5, () -> FastImageUtils.compress(data, 75));
+ * results.addTime("compress/700K.jpg/native", timing.getSamples());
+ * results.addSize("compress/700K.jpg/native", timing.getOutput().length);
+ * results.write(Paths.get("target", "benchmark-results", "compress.json"));
+ * </pre>
+ */
+public final class BenchmarkResults {
+
+    private static final String JMH_PACKAGE = "cn.lihongjie.image.performance.";
+
+    private final Map<String, String> environment;
+    private final Map<String, List<Metric>> benchmarks = new LinkedHashMap<>();
+
+    /**
+     * Creates an empty store describing the current JVM and machine
+     */
+    public BenchmarkResults() {
+        this(captureEnvironment());
+    }
+
+    public BenchmarkResults(Map<String, String> environment) {
+        this.environment = new LinkedHashMap<>(environment);
+    }
+
+    /**
+     * Adds a metric to a benchmark, replacing an earlier metric of the same name
+     */
+    public void add(String benchmark, Metric metric) {
+        List<Metric> metrics = benchmarks.computeIfAbsent(benchmark, name -> new ArrayList<>());
+        metrics.removeIf(existing -> existing.getName().equals(metric.getName()));
+        metrics.add(metric);
+    }
+
+    /**
+     * Adds wall-clock samples in milliseconds as the "time" metric
+     */
+    public void addTime(String benchmark, double[] millis) {
+        add(benchmark, new Metric("time", "ms", false, millis));
+    }
+
+    /**
+     * Adds an output size in bytes as the "size" metric
+     */
+    public void addSize(String benchmark, long bytes) {
+        add(benchmark, new Metric("size", "B", false, new double[]{bytes}));
+    }
+
+    public Map<String, String> getEnvironment() {
+        return Collections.unmodifiableMap(environment);
+    }
+
+    public List<String> getBenchmarks() {
+        return new ArrayList<>(benchmarks.keySet());
+    }
+
+    public List<Metric> getMetrics(String benchmark) {
+        List<Metric> metrics = benchmarks.get(benchmark);
+        return metrics == null ? Collections.emptyList() : Collections.unmodifiableList(metrics);
+    }
+
+    /**
+     * @return Metric of a benchmark, or null if it was not recorded
+     */
+    public Metric getMetric(String benchmark, String metric) {
+        for (Metric m : getMetrics(benchmark)) {
+            if (m.getName().equals(metric)) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    public String toJson() {
+        List<Object> results = new ArrayList<>();
+        for (Map.Entry<String, List<Metric>> entry : benchmarks.entrySet()) {
+            List<Object> metrics = new ArrayList<>();
+            for (Metric metric : entry.getValue()) {
+                Map<String, Object> m = new LinkedHashMap<>();
+                m.put("name", metric.getName());
+                m.put("unit", metric.getUnit());
+                m.put("higherIsBetter", metric.isHigherIsBetter());
+                List<Double> samples = new ArrayList<>();
+                for (double sample : metric.samples) {
+                    samples.add(sample);
+                }
+                m.put("samples", samples);
+                metrics.add(m);
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("benchmark", entry.getKey());
+            result.put("metrics", metrics);
+            results.add(result);
+        }
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("environment", environment);
+        root.put("results", results);
+        return Json.write(root);
+    }
+
+    /**
+     * Writes the results as JSON, creating parent directories as needed
+     */
+    public void write(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(file, toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a file written by {@link #write} or a JMH JSON result file
+     */
+    public static BenchmarkResults read(Path file) throws IOException {
+        return parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    public static BenchmarkResults parse(String json) {
+        Object root = Json.parse(json);
+        if (root instanceof List) {
+            return fromJmh((List<?>) root);
+        }
+        if (!(root instanceof Map)) {
+            throw new IllegalArgumentException("Not a benchmark result file");
+        }
+        Map<?, ?> object = (Map<?, ?>) root;
+        Map<String, String> environment = new LinkedHashMap<>();
+        Object env = object.get("environment");
+        if (env instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) env).entrySet()) {
+                environment.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+            }
+        }
+        BenchmarkResults results = new BenchmarkResults(environment);
+        for (Object item : list(object.get("results"))) {
+            Map<?, ?> result = (Map<?, ?>) item;
+            String benchmark = (String) result.get("benchmark");
+            for (Object m : list(result.get("metrics"))) {
+                Map<?, ?> metric = (Map<?, ?>) m;
+                results.add(benchmark, new Metric((String) metric.get("name"), (String) metric.get("unit"),
+                        Boolean.TRUE.equals(metric.get("higherIsBetter")), doubles(list(metric.get("samples")))));
+            }
+        }
+        return results;
+    }
+
+    private static BenchmarkResults fromJmh(List<?> runs) {
+        BenchmarkResults results = new BenchmarkResults(Collections.emptyMap());
+        for (Object item : runs) {
+            Map<?, ?> run = (Map<?, ?>) item;
+            String mode = String.valueOf(run.get("mode"));
+            String name = String.valueOf(run.get("benchmark"));
+            if (name.startsWith(JMH_PACKAGE)) {
+                name = name.substring(JMH_PACKAGE.length());
+            }
+            StringBuilder benchmark = new StringBuilder(name).append(':').append(mode);
+            Object params = run.get("params");
+            if (params instanceof Map && !((Map<?, ?>) params).isEmpty()) {
+                benchmark.append(((Map<?, ?>) params).toString().replace(", ", ","));
+            }
+
+            Map<?, ?> primary = (Map<?, ?>) run.get("primaryMetric");
+            String unit = String.valueOf(primary.get("scoreUnit"));
+            boolean higherIsBetter = mode.equals("thrpt");
+            Object histogram = primary.get("rawDataHistogram");
+            if (primary.get("rawData") != null) {
+                results.add(benchmark.toString(),
+                        new Metric("score", unit, higherIsBetter, forkMeans(primary.get("rawData"))));
+            } else if (histogram != null) {
+                // Sample mode keeps one histogram of [value, count] pairs per iteration
+                List<Double> means = new ArrayList<>();
+                List<Double> p99 = new ArrayList<>();
+                for (Object fork : list(histogram)) {
+                    List<Object> merged = new ArrayList<>();
+                    for (Object iteration : list(fork)) {
+                        merged.addAll(list(iteration));
+                    }
+                    means.add(histogramMean(merged));
+                    p99.add(histogramPercentile(merged, 0.99));
+                }
+                results.add(benchmark.toString(), new Metric("score", unit, higherIsBetter, doubles(means)));
+                results.add(benchmark.toString(), new Metric("p99", unit, false, doubles(p99)));
+            } else {
+                results.add(benchmark.toString(), new Metric("score", unit, higherIsBetter,
+                        new double[]{Json.toDouble(primary.get("score"))}));
+            }
+
+            Object secondary = run.get("secondaryMetrics");
+            if (secondary instanceof Map) {
+                // Older JMH versions prefix profiler metrics with a middle dot
+                Object alloc = ((Map<?, ?>) secondary).get("gc.alloc.rate.norm");
+                if (alloc == null) {
+                    alloc = ((Map<?, ?>) secondary).get("\u00b7gc.alloc.rate.norm");
+                }
+                if (alloc instanceof Map && ((Map<?, ?>) alloc).get("rawData") != null) {
+                    results.add(benchmark.toString(), new Metric("alloc", String.valueOf(((Map<?, ?>) alloc).get("scoreUnit")),
+                            false, forkMeans(((Map<?, ?>) alloc).get("rawData"))));
+                }
+            }
+        }
+        return results;
+    }
+
+    private static double histogramMean(List<?> pairs) {
+        double sum = 0;
+        double count = 0;
+        for (Object p : pairs) {
+            List<?> pair = list(p);
+            double n = Json.toDouble(pair.get(1));
+            sum += Json.toDouble(pair.get(0)) * n;
+            count += n;
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    private static double histogramPercentile(List<?> pairs, double fraction) {
+        List<double[]> sorted = new ArrayList<>();
+        double total = 0;
+        for (Object p : pairs) {
+            List<?> pair = list(p);
+            double[] entry = {Json.toDouble(pair.get(0)), Json.toDouble(pair.get(1))};
+            sorted.add(entry);
+            total += entry[1];
+        }
+        sorted.sort((a, b) -> Double.compare(a[0], b[0]));
+        double seen = 0;
+        for (double[] entry : sorted) {
+            seen += entry[1];
+            if (seen >= fraction * total) {
+                return entry[0];
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static List<?> list(Object value) {
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("Expected a JSON array but got " + value);
+        }
+        return (List<?>) value;
+    }
+
+    /**
+     * @param rawData JMH raw data, one array of iteration scores per fork
+     * @return Mean score of each fork
+     */
+    private static double[] forkMeans(Object rawData) {
+        List<?> forks = list(rawData);
+        double[] means = new double[forks.size()];
+        for (int i = 0; i < means.length; i++) {
+            double[] iterations = doubles(list(forks.get(i)));
+            double sum = 0;
+            for (double iteration : iterations) {
+                sum += iteration;
+            }
+            means[i] = sum / iterations.length;
+        }
+        return means;
+    }
+
+    private static double[] doubles(List<?> values) {
+        double[] result = new double[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Json.toDouble(values.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * @return Description of this machine, JVM and library version
+     */
+    public static Map<String, String> captureEnvironment() {
+        Runtime runtime = Runtime.getRuntime();
+        Map<String, String> environment = new LinkedHashMap<>();
+        environment.put("timestamp", Instant.now().toString());
+        environment.put("libraryVersion", libraryVersion());
+        environment.put("cpu", cpuModel());
+        environment.put("cores", String.valueOf(runtime.availableProcessors()));
+        environment.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version")
+                + " (" + System.getProperty("os.arch") + ")");
+        environment.put("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"));
+        environment.put("javaVersion", System.getProperty("java.version"));
+        environment.put("maxHeap", runtime.maxMemory() / (1024 * 1024) + " MB");
+        String commit = System.getenv("GITHUB_SHA");
+        if (commit != null) {
+            environment.put("commit", commit);
+        }
+        return environment;
+    }
+
+    private static String libraryVersion() {
+        String version = System.getProperty("fastimage.version");
+        if (version == null) {
+            version = BenchmarkResults.class.getPackage().getImplementationVersion();
+        }
+        return version == null ? "unknown" : version;
+    }
+
+    private static String cpuModel() {
+        Path cpuInfo = Paths.get("/proc/cpuinfo");
+        if (Files.isReadable(cpuInfo)) {
+            try {
+                for (String line : Files.readAllLines(cpuInfo, StandardCharsets.UTF_8)) {
+                    if (line.startsWith("model name")) {
+                        return line.substring(line.indexOf(':') + 1).trim();
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                // Fall through to the generic description
+            }
+        }
+        String identifier = System.getenv("PROCESSOR_IDENTIFIER");
+        return identifier != null ? identifier : System.getProperty("os.arch");
+    }
+
+    /**
+     * Measures a task with wall-clock time
+     *
+     * @param warmups Untimed runs before measuring
+     * @param runs    Timed runs, at least one
+     * @return Samples in milliseconds and the output of the last run
+     */
+    public static Timing time(int warmups, int runs, Task task) throws Exception {
+        if (warmups < 0 || runs < 1) {
+            throw new IllegalArgumentException("Need warmups >= 0 and runs >= 1, got " + warmups + " and " + runs);
+        }
+        byte[] output = null;
+        for (int i = 0; i < warmups; i++) {
+            output = task.run();
+        }
+        double[] samples = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            output = task.run();
+            samples[i] = (System.nanoTime() - start) / 1_000_000.0;
+        }
+        return new Timing(samples, output);
+    }
+
+    @FunctionalInterface
+    public interface Task {
+        byte[] run() throws Exception;
+    }
+
+    /**
+     * Samples and output of {@link #time}
+     */
+    public static final class Timing {
+
+        private final double[] samples;
+        private final byte[] output;
+
+        private Timing(double[] samples, byte[] output) {
+            this.samples = samples;
+            this.output = output;
+        }
+
+        public double[] getSamples() {
+            return samples.clone();
+        }
+
+        public byte[] getOutput() {
+            return output;
+        }
+
+        public double median() {
+            double[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            int mid = sorted.length / 2;
+            return sorted.length % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+        }
+    }
+
+    /**
+     * One measured quantity of a benchmark with its raw samples
+     */
+    public static final class Metric {
+
+        private final String name;
+        private final String unit;
+        private final boolean higherIsBetter;
+        private final double[] samples;
+
+        public Metric(String name, String unit, boolean higherIsBetter, double[] samples) {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("Metric name is required");
+            }
+            if (samples == null || samples.length == 0) {
+                throw new IllegalArgumentException("Metric " + name + " needs at least one sample");
+            }
+            this.name = name;
+            this.unit = unit == null ? "" : unit;
+            this.higherIsBetter = higherIsBetter;
+            this.samples = samples.clone();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public boolean isHigherIsBetter() {
+            return higherIsBetter;
+        }
+
+        public double[] getSamples() {
+            return samples.clone();
+        }
+
+        public int count() {
+            return samples.length;
+        }
+
+        public double mean() {
+            double sum = 0;
+            for (double sample : samples) {
+                sum += sample;
+            }
+            return sum / samples.length;
+        }
+
+        /**
+         * @return Unbiased sample variance, 0 for a single sample
+         */
+        public double variance() {
+            if (samples.length < 2) {
+                return 0;
+            }
+            double mean = mean();
+            double sum = 0;
+            for (double sample : samples) {
+                sum += (sample - mean) * (sample - mean);
+            }
+            return sum / (samples.length - 1);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.CompressOptions;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for {@code compress(byte[], CompressOptions)} across its settings
+ *
+ * Covers the JPEG knobs (quality, chroma subsampling, progressive, Huffman optimization)
+ * on the small and medium JPEG photos, and the PNG effort levels on the medium PNG photo
+ * of {@link BenchmarkImages},
+ * each including decoding of the input. Output sizes are printed once per trial so
+ * that time and size can be read side by side when choosing settings per traffic class.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar CompressOptionsBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+public class CompressOptionsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class JpegState {
+
+        @Param({BenchmarkImages.SMALL_JPEG, BenchmarkImages.MEDIUM_JPEG})
+        public String image;
+
+        @Param({"60", "85"})
+        public int quality;
+
+        @Param({"YUV420", "YUV444"})
+        public ChromaSubsampling subsampling;
+
+        @Param({"false", "true"})
+        public boolean progressive;
+
+        @Param({"false", "true"})
+        public boolean optimizeHuffman;
+
+        byte[] input;
+        CompressOptions options;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            input = BenchmarkImages.load(image);
+            options = new CompressOptions().withQuality(quality).withSubsampling(subsampling)
+                    .withProgressive(progressive).withOptimizeHuffman(optimizeHuffman);
+            System.out.println(image + " " + options + ": " + JavaImageEngine.compress(input, options).length + " bytes");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PngState {
+
+        @Param({"0", "3", "6", "8"})
+        public int effort;
+
+        @Param({"100", "75"})
+        public int quality;
+
+        byte[] input;
+        CompressOptions options;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            input = BenchmarkImages.load(BenchmarkImages.MEDIUM_PNG);
+            options = new CompressOptions().withQuality(quality).withEffort(effort);
+            System.out.println(BenchmarkImages.MEDIUM_PNG + " " + options + ": " + JavaImageEngine.compress(input, options).length + " bytes");
+        }
+    }
+
+    @Benchmark
+    public byte[] jpeg(JpegState state) {
+        return JavaImageEngine.compress(state.input, state.options);
+    }
+
+    @Benchmark
+    public byte[] png(PngState state) {
+        return JavaImageEngine.compress(state.input, state.options);
+    }
+}
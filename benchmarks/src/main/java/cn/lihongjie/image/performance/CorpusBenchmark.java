@@ -0,0 +1,51 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the pure-Java engine on synthetic corpus images
+ *
+ * Each {@code spec} is an {@link ImageCorpus.Spec} in text form, so any content kind,
+ * resolution, format, quality, restart interval or progressive setting can be measured
+ * without test files, for example {@code -p spec=photo:100mp:q90,noise:24mp:png}. Images
+ * are generated on first use and cached (see {@link ImageCorpus#cacheDirectory()}), so
+ * only the first trial of a new spec pays for generation. The forked JVM gets a 4 GB heap
+ * for 100 MP inputs.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar CorpusBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+public class CorpusBenchmark {
+
+    @Param({"photo:6mp", "photo:24mp", "photo:24mp:rst4", "photo:24mp:progressive", "grayscale:24mp",
+            "gradient:24mp:q95", "noise:6mp", "screenshot:2560x1440:png", "photo:6mp:png", "gradient:6mp:png"})
+    public String spec;
+
+    private byte[] image;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ImageCorpus.Spec parsed = ImageCorpus.Spec.parse(spec);
+        image = ImageCorpus.load(parsed);
+        System.out.println(parsed + ": " + image.length + " bytes");
+    }
+
+    @Benchmark
+    public PixelImage decode() {
+        return JavaImageEngine.decode(image);
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return JavaImageEngine.compress(image, 75);
+    }
+}
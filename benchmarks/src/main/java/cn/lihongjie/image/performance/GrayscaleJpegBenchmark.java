@@ -0,0 +1,64 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.GrayscaleDetector;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the grayscale JPEG fast path
+ *
+ * Encodes the {@link BenchmarkImages#MEDIUM_JPEG} photo as given ("color", where
+ * detection is the only cost) and with its luma copied into all three RGB channels
+ * ("gray-rgb", a stand-in for a scanned document), with and without a
+ * {@link GrayscaleDetector}. Encoded sizes are printed once per trial.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar GrayscaleJpegBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+public class GrayscaleJpegBenchmark {
+
+    @Param({"color", "gray-rgb"})
+    public String image;
+
+    @Param({"true", "false"})
+    public boolean detect;
+
+    private PixelImage pixels;
+    private JpegEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        PixelImage photo = JavaImageEngine.decode(BenchmarkImages.load(BenchmarkImages.MEDIUM_JPEG));
+        pixels = "gray-rgb".equals(image) ? grayRgb(photo) : photo;
+        encoder = new JpegEncoder(75).withGrayscaleDetector(detect ? new GrayscaleDetector() : null);
+        System.out.println(image + " detect " + detect + ": " + encoder.encode(pixels).length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encoder.encode(pixels);
+    }
+
+    private static PixelImage grayRgb(PixelImage photo) {
+        PixelImage gray = PixelImage.allocate(photo.getWidth(), photo.getHeight(), 3);
+        byte[] in = photo.getPixels();
+        byte[] out = gray.getPixels();
+        for (int p = 0; p < out.length; p += 3) {
+            int y = ((in[p] & 0xFF) * 77 + (in[p + 1] & 0xFF) * 150 + (in[p + 2] & 0xFF) * 29) >> 8;
+            out[p] = (byte) y;
+            out[p + 1] = (byte) y;
+            out[p + 2] = (byte) y;
+        }
+        return gray;
+    }
+}
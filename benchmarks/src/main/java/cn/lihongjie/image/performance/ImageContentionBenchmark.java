@@ -0,0 +1,74 @@
+package cn.lihongjie.image.performance;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for thread scaling and contention of the image engines
+ *
+ * {@code compress} runs on one thread and {@code compressAllThreads} on one thread per
+ * available processor. A time per operation that grows with the thread count, instead of
+ * staying flat, points to a global lock or a shared bottleneck in the engine. The
+ * {@code mixed} group runs compress and rotate at the same time on separate threads, to
+ * catch locks shared between different entry points. Results are reported as sampled
+ * latency, so percentiles show waiting threads as well as the mean.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar ImageContentionBenchmark
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+public class ImageContentionBenchmark {
+
+    @Param({"native", "java", "imageio"})
+    public String engine;
+
+    @Param({"JPEG", "PNG"})
+    public String format;
+
+    @Param({"small"})
+    public String size;
+
+    private byte[] input;
+    private ImageTask compress;
+    private ImageTask rotate;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        input = ImageProcessingBenchmark.load(format, size);
+        compress = ImageTask.of(engine, "compress", 75);
+        rotate = ImageTask.of(engine, "rotate", 75);
+        compress.apply(input);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] compress() throws IOException {
+        return compress.apply(input);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] compressAllThreads() throws IOException {
+        return compress.apply(input);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public byte[] mixedCompress() throws IOException {
+        return compress.apply(input);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public byte[] mixedRotate() throws IOException {
+        return rotate.apply(input);
+    }
+}
@@ -0,0 +1,531 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.ImageFormat;
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import cn.lihongjie.image.png.PngEncoder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic test images for benchmarks and load tests
+ *
+ * An image is fully described by a {@link Spec}: content kind, resolution, output
+ * format, quality, restart interval, progressive mode and seed. The same spec always
+ * produces the same bytes, so results stay comparable across machines without
+ * shipping large files. Encoded images are generated on first use and cached as files
+ * in the directory given by the {@code fastimage.corpus.dir} system property (default
+ * {@code fast-image-corpus} under {@code java.io.tmpdir}); cache file names encode the
+ * spec and a generator version.
+ *
+ * Content kinds:
+ * - PHOTO: multi-octave value noise with a 1/f spectrum, soft color regions, hard-edged
+ *   shapes and grain of varying strength
+ * - SCREENSHOT: flat backgrounds, window frames and rows of text-like glyphs
+ * - GRADIENT: smooth linear and radial gradients, prone to banding
+ * - NOISE: uniform random pixels, the incompressible worst case
+ * - GRAYSCALE: PHOTO luma stored as RGB with equal channels
+ *
+ * Usage:
+ * <pre>
+ * byte[] jpeg = ImageCorpus.load(new ImageCorpus.Spec(ImageCorpus.Content.PHOTO, 6000, 4000));
+ * byte[] png = ImageCorpus.load(new ImageCorpus.Spec(ImageCorpus.Content.SCREENSHOT, 2560, 1440)
+ *         .withFormat(ImageFormat.PNG));
+ * </pre>
+ */
+public final class ImageCorpus {
+
+    /** Bump when generated pixels or encoder settings change, so stale cache files are not reused */
+    private static final int VERSION = 1;
+
+    public enum Content {
+        PHOTO,
+        SCREENSHOT,
+        GRADIENT,
+        NOISE,
+        GRAYSCALE
+    }
+
+    private ImageCorpus() {
+    }
+
+    /**
+     * Immutable description of one corpus image
+     */
+    public static final class Spec {
+        private final Content content;
+        private final int width;
+        private final int height;
+        private final ImageFormat format;
+        private final int quality;
+        private final int restartRows;
+        private final boolean progressive;
+        private final long seed;
+
+        /**
+         * Create a spec for a baseline JPEG at quality 85 with seed 1
+         *
+         * @throws IllegalArgumentException if the content is null or a dimension is not positive
+         */
+        public Spec(Content content, int width, int height) {
+            this(content, width, height, ImageFormat.JPEG, 85, 0, false, 1);
+        }
+
+        private Spec(Content content, int width, int height, ImageFormat format, int quality, int restartRows,
+                     boolean progressive, long seed) {
+            if (content == null) {
+                throw new IllegalArgumentException("Content must not be null");
+            }
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("Dimensions must be positive, got: " + width + "x" + height);
+            }
+            if (format != ImageFormat.JPEG && format != ImageFormat.PNG) {
+                throw new IllegalArgumentException("Format must be JPEG or PNG, got: " + format);
+            }
+            if (quality < 0 || quality > 100) {
+                throw new IllegalArgumentException("Quality must be between 0 and 100, got: " + quality);
+            }
+            if (restartRows < 0) {
+                throw new IllegalArgumentException("Restart interval must not be negative, got: " + restartRows);
+            }
+            this.content = content;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.quality = quality;
+            this.restartRows = restartRows;
+            this.progressive = progressive;
+            this.seed = seed;
+        }
+
+        /**
+         * Parse a spec from its compact text form
+         *
+         * The form is {@code content:size[:option...]}, where size is {@code WIDTHxHEIGHT}
+         * or {@code Nmp} (N megapixels at 3:2), and options are {@code jpeg}, {@code png},
+         * {@code qN}, {@code rstN}, {@code progressive} and {@code sN} (seed), for example
+         * {@code photo:24mp:q90:rst4} or {@code screenshot:2560x1440:png}.
+         *
+         * @param text Spec text
+         * @return Parsed spec
+         * @throws IllegalArgumentException if the text is malformed
+         */
+        public static Spec parse(String text) {
+            String[] parts = text.trim().toLowerCase(Locale.ROOT).split(":");
+            if (parts.length < 2) {
+                throw new IllegalArgumentException("Expected content:size[:options], got: " + text);
+            }
+            Content content;
+            try {
+                content = Content.valueOf(parts[0].toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown content kind: " + parts[0]);
+            }
+            int width;
+            int height;
+            try {
+                if (parts[1].endsWith("mp")) {
+                    double pixels = Double.parseDouble(parts[1].substring(0, parts[1].length() - 2)) * 1_000_000;
+                    width = (int) Math.round(Math.sqrt(pixels * 1.5) / 16) * 16;
+                    height = width * 2 / 3;
+                } else {
+                    int x = parts[1].indexOf('x');
+                    width = Integer.parseInt(parts[1].substring(0, x));
+                    height = Integer.parseInt(parts[1].substring(x + 1));
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Malformed size: " + parts[1]);
+            }
+            Spec spec = new Spec(content, width, height);
+            for (int i = 2; i < parts.length; i++) {
+                String option = parts[i];
+                try {
+                    if (option.equals("jpeg") || option.equals("jpg")) {
+                        spec = spec.withFormat(ImageFormat.JPEG);
+                    } else if (option.equals("png")) {
+                        spec = spec.withFormat(ImageFormat.PNG);
+                    } else if (option.equals("progressive")) {
+                        spec = spec.withProgressive(true);
+                    } else if (option.startsWith("rst")) {
+                        spec = spec.withRestartInterval(Integer.parseInt(option.substring(3)));
+                    } else if (option.startsWith("q")) {
+                        spec = spec.withQuality(Integer.parseInt(option.substring(1)));
+                    } else if (option.startsWith("s")) {
+                        spec = spec.withSeed(Long.parseLong(option.substring(1)));
+                    } else {
+                        throw new IllegalArgumentException("Unknown option: " + option);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Malformed option: " + option);
+                }
+            }
+            return spec;
+        }
+
+        public Spec withFormat(ImageFormat format) {
+            return new Spec(content, width, height, format, quality, restartRows, progressive, seed);
+        }
+
+        /**
+         * @param quality JPEG quality (0-100); ignored for PNG
+         */
+        public Spec withQuality(int quality) {
+            return new Spec(content, width, height, format, quality, restartRows, progressive, seed);
+        }
+
+        /**
+         * @param restartRows MCU rows per JPEG restart interval, 0 for none; ignored for PNG and progressive
+         */
+        public Spec withRestartInterval(int restartRows) {
+            return new Spec(content, width, height, format, quality, restartRows, progressive, seed);
+        }
+
+        /**
+         * @param progressive true for progressive JPEG; ignored for PNG
+         */
+        public Spec withProgressive(boolean progressive) {
+            return new Spec(content, width, height, format, quality, restartRows, progressive, seed);
+        }
+
+        public Spec withSeed(long seed) {
+            return new Spec(content, width, height, format, quality, restartRows, progressive, seed);
+        }
+
+        public Content getContent() {
+            return content;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public ImageFormat getFormat() {
+            return format;
+        }
+
+        public int getQuality() {
+            return quality;
+        }
+
+        public int getRestartInterval() {
+            return restartRows;
+        }
+
+        public boolean isProgressive() {
+            return progressive;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * File name identifying this spec, for example {@code photo-6000x4000-q85-rst4-s1.jpg}
+         */
+        public String fileName() {
+            StringBuilder name = new StringBuilder(content.name().toLowerCase(Locale.ROOT))
+                    .append('-').append(width).append('x').append(height);
+            if (format == ImageFormat.JPEG) {
+                name.append("-q").append(quality);
+                if (progressive) {
+                    name.append("-prog");
+                } else if (restartRows > 0) {
+                    name.append("-rst").append(restartRows);
+                }
+            }
+            return name.append("-s").append(seed).append(format == ImageFormat.JPEG ? ".jpg" : ".png").toString();
+        }
+
+        @Override
+        public String toString() {
+            return fileName();
+        }
+    }
+
+    /**
+     * A small spread of content kinds and formats at 6, 24 and 100 megapixels
+     *
+     * @return Specs covering every content kind, both formats, restart markers and progressive JPEG
+     */
+    public static List<Spec> standard() {
+        return Arrays.asList(
+                new Spec(Content.PHOTO, 3000, 2000),
+                new Spec(Content.PHOTO, 6000, 4000).withQuality(90),
+                new Spec(Content.PHOTO, 6000, 4000).withRestartInterval(4),
+                new Spec(Content.PHOTO, 6000, 4000).withProgressive(true),
+                new Spec(Content.PHOTO, 12000, 8400),
+                new Spec(Content.GRAYSCALE, 6000, 4000),
+                new Spec(Content.GRADIENT, 6000, 4000).withQuality(95),
+                new Spec(Content.NOISE, 3000, 2000),
+                new Spec(Content.SCREENSHOT, 2560, 1440).withFormat(ImageFormat.PNG),
+                new Spec(Content.SCREENSHOT, 7680, 4320).withFormat(ImageFormat.PNG),
+                new Spec(Content.PHOTO, 3000, 2000).withFormat(ImageFormat.PNG),
+                new Spec(Content.GRADIENT, 3000, 2000).withFormat(ImageFormat.PNG));
+    }
+
+    /**
+     * Get the encoded image for a spec, generating and caching it on first use
+     *
+     * Safe to call concurrently, also from several JVMs: the cache file is written under a
+     * temporary name and moved into place.
+     *
+     * @param spec Image to load
+     * @return Encoded image data
+     * @throws UncheckedIOException if the cache directory cannot be written
+     */
+    public static byte[] load(Spec spec) {
+        Path file = cacheDirectory().resolve("v" + VERSION + "-" + spec.fileName());
+        try {
+            if (Files.isRegularFile(file)) {
+                return Files.readAllBytes(file);
+            }
+            byte[] encoded = encode(spec, generate(spec.content, spec.width, spec.height, spec.seed));
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(temp, encoded);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return encoded;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot cache corpus image " + file, e);
+        }
+    }
+
+    /**
+     * Directory holding cached corpus files
+     */
+    public static Path cacheDirectory() {
+        String dir = System.getProperty("fastimage.corpus.dir");
+        return dir != null ? Paths.get(dir) : Paths.get(System.getProperty("java.io.tmpdir"), "fast-image-corpus");
+    }
+
+    /**
+     * Encode generated pixels as described by a spec
+     */
+    public static byte[] encode(Spec spec, PixelImage image) {
+        if (spec.format == ImageFormat.PNG) {
+            return new PngEncoder().encode(image);
+        }
+        JpegEncoder encoder = new JpegEncoder(spec.quality, ChromaSubsampling.YUV420, true);
+        if (spec.progressive) {
+            encoder = encoder.withProgressive(true);
+        } else if (spec.restartRows > 0) {
+            encoder = encoder.withRestartInterval(spec.restartRows);
+        }
+        return encoder.encode(image);
+    }
+
+    /**
+     * Generate the RGB pixels of a content kind
+     *
+     * @param content Content kind
+     * @param width   Width in pixels
+     * @param height  Height in pixels
+     * @param seed    Random seed; equal arguments always give equal pixels
+     * @return Three-channel image
+     */
+    public static PixelImage generate(Content content, int width, int height, long seed) {
+        PixelImage image = PixelImage.allocate(width, height, 3);
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + content.ordinal());
+        switch (content) {
+            case PHOTO:
+                photo(image, random, false);
+                break;
+            case GRAYSCALE:
+                photo(image, random, true);
+                break;
+            case SCREENSHOT:
+                screenshot(image, random);
+                break;
+            case GRADIENT:
+                gradient(image, random);
+                break;
+            default:
+                noise(image, random);
+                break;
+        }
+        return image;
+    }
+
+    private static void photo(PixelImage image, SplittableRandom random, boolean gray) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] pixels = image.getPixels();
+        int base = Math.max(width, height);
+        // Octaves from about 1/3 of the image down to 4 pixels, amplitude proportional to scale (1/f)
+        int octaves = Math.max(1, 31 - Integer.numberOfLeadingZeros(base / 12));
+        ValueNoise[] luma = new ValueNoise[octaves];
+        ValueNoise[] chroma = new ValueNoise[2];
+        for (int o = 0; o < octaves; o++) {
+            luma[o] = new ValueNoise(width, height, Math.max(4, base / 3 >> o), random);
+        }
+        chroma[0] = new ValueNoise(width, height, Math.max(4, base / 4), random);
+        chroma[1] = new ValueNoise(width, height, Math.max(4, base / 5), random);
+        // Thresholded mid-frequency noise gives object-like shapes with hard contours
+        ValueNoise shapes = new ValueNoise(width, height, Math.max(4, base / 12), random);
+        // Grain strength varies by region, from smooth sky-like areas to busy foliage-like ones
+        ValueNoise texture = new ValueNoise(width, height, Math.max(4, base / 8), random);
+
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float l = 0;
+                float amplitude = 90;
+                for (ValueNoise octave : luma) {
+                    l += octave.sample(x, y) * amplitude;
+                    amplitude *= 0.55f;
+                }
+                float shape = shapes.sample(x, y);
+                int grain = 1 + (int) (12 * Math.max(0, texture.sample(x, y)));
+                l += 128 + (shape > 0.25f ? 40 : shape < -0.45f ? -30 : 0)
+                        + random.nextInt(2 * grain + 1) - grain;
+                if (gray) {
+                    byte v = clamp(l);
+                    pixels[i++] = v;
+                    pixels[i++] = v;
+                    pixels[i++] = v;
+                } else {
+                    float cb = chroma[0].sample(x, y) * 70;
+                    float cr = chroma[1].sample(x, y) * 70;
+                    pixels[i++] = clamp(l + 1.402f * cr);
+                    pixels[i++] = clamp(l - 0.344f * cb - 0.714f * cr);
+                    pixels[i++] = clamp(l + 1.772f * cb);
+                }
+            }
+        }
+    }
+
+    private static void screenshot(PixelImage image, SplittableRandom random) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        fillRect(image, 0, 0, width, height, 0xF3F3F3);
+        int[] palette = {0xFFFFFF, 0x1E1E1E, 0x2D7DD2, 0xE8E8E8, 0x3C3C3C, 0xF7F7F7};
+        int windows = Math.max(1, width * height / 400_000);
+        for (int w = 0; w < windows; w++) {
+            int ww = 200 + random.nextInt(Math.max(1, width / 2));
+            int wh = 150 + random.nextInt(Math.max(1, height / 2));
+            int wx = random.nextInt(Math.max(1, width - ww / 2));
+            int wy = random.nextInt(Math.max(1, height - wh / 2));
+            int background = palette[random.nextInt(palette.length)];
+            boolean dark = background == 0x1E1E1E || background == 0x3C3C3C;
+            fillRect(image, wx - 1, wy - 1, ww + 2, wh + 2, 0xA0A0A0);
+            fillRect(image, wx, wy, ww, wh, background);
+            fillRect(image, wx, wy, ww, 28, 0x2D7DD2);
+            // Text lines: runs of glyph-sized dark blocks separated by word gaps
+            int ink = dark ? 0xD4D4D4 : 0x202020;
+            for (int ty = wy + 40; ty + 12 < wy + wh; ty += 18) {
+                int tx = wx + 10;
+                int lineEnd = wx + 10 + random.nextInt(Math.max(1, ww - 20));
+                while (tx + 7 < lineEnd) {
+                    int glyphs = 2 + random.nextInt(8);
+                    for (int g = 0; g < glyphs && tx + 7 < lineEnd; g++) {
+                        int glyphHeight = 8 + random.nextInt(4);
+                        fillRect(image, tx, ty + 12 - glyphHeight, 1 + random.nextInt(6), glyphHeight, ink);
+                        tx += 8;
+                    }
+                    tx += 6;
+                }
+            }
+        }
+    }
+
+    private static void gradient(PixelImage image, SplittableRandom random) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] pixels = image.getPixels();
+        float[] start = {random.nextInt(256), random.nextInt(256), random.nextInt(256)};
+        float[] end = {random.nextInt(256), random.nextInt(256), random.nextInt(256)};
+        double angle = random.nextDouble() * Math.PI;
+        float dx = (float) Math.cos(angle) / width;
+        float dy = (float) Math.sin(angle) / height;
+        float cx = width * (0.25f + 0.5f * (float) random.nextDouble());
+        float cy = height * (0.25f + 0.5f * (float) random.nextDouble());
+        float radius = Math.max(width, height) * 0.6f;
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float t = Math.abs(x * dx + y * dy);
+                float r = (float) Math.min(1, Math.hypot(x - cx, y - cy) / radius);
+                for (int c = 0; c < 3; c++) {
+                    pixels[i++] = clamp((start[c] + (end[c] - start[c]) * t) * (1 - 0.35f * r));
+                }
+            }
+        }
+    }
+
+    private static void noise(PixelImage image, SplittableRandom random) {
+        byte[] pixels = image.getPixels();
+        for (int i = 0; i < pixels.length; i += 4) {
+            int bits = random.nextInt();
+            for (int b = 0; b < 4 && i + b < pixels.length; b++) {
+                pixels[i + b] = (byte) (bits >>> (b * 8));
+            }
+        }
+    }
+
+    private static void fillRect(PixelImage image, int x0, int y0, int w, int h, int rgb) {
+        int width = image.getWidth();
+        int x1 = Math.min(width, x0 + w);
+        int y1 = Math.min(image.getHeight(), y0 + h);
+        byte[] pixels = image.getPixels();
+        for (int y = Math.max(0, y0); y < y1; y++) {
+            for (int x = Math.max(0, x0); x < x1; x++) {
+                int i = (y * width + x) * 3;
+                pixels[i] = (byte) (rgb >> 16);
+                pixels[i + 1] = (byte) (rgb >> 8);
+                pixels[i + 2] = (byte) rgb;
+            }
+        }
+    }
+
+    private static byte clamp(float value) {
+        return (byte) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    /**
+     * Random values in [-1, 1] on a coarse lattice, interpolated with smoothstep
+     */
+    private static final class ValueNoise {
+        private final int cell;
+        private final int columns;
+        private final float[] lattice;
+
+        ValueNoise(int width, int height, int cell, SplittableRandom random) {
+            this.cell = cell;
+            this.columns = width / cell + 2;
+            int rows = height / cell + 2;
+            lattice = new float[columns * rows];
+            for (int i = 0; i < lattice.length; i++) {
+                lattice[i] = (float) (random.nextDouble() * 2 - 1);
+            }
+        }
+
+        float sample(int x, int y) {
+            int gx = x / cell;
+            int gy = y / cell;
+            float fx = smooth((x - gx * cell) / (float) cell);
+            float fy = smooth((y - gy * cell) / (float) cell);
+            int i = gy * columns + gx;
+            float top = lattice[i] + (lattice[i + 1] - lattice[i]) * fx;
+            float bottom = lattice[i + columns] + (lattice[i + columns + 1] - lattice[i + columns]) * fx;
+            return top + (bottom - top) * fy;
+        }
+
+        private static float smooth(float t) {
+            return t * t * (3 - 2 * t);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package cn.lihongjie.image.performance;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark matrix comparing the native FastImage library, the pure-Java engine and
+ * JDK ImageIO
+ *
+ * Every combination of operation, engine, input format, input size and quality is one
+ * parameter set of a single benchmark method, measured both as throughput and as sampled
+ * latency (with percentiles). See {@link ImageTask} for the engines and operations;
+ * inputs are the {@link BenchmarkImages} of each size (the large ones are a 24 MP JPEG
+ * and a 6 MP PNG), generated by {@link ImageCorpus} and cached on first use. Quality
+ * does not affect rotate, and ImageIO writes PNG without a quality setting.
+ *
+ * The full matrix is large; narrow it on the command line, for example
+ * {@code -p engine=java,imageio -p operation=compress -p quality=75}. Native engines
+ * fail in setup when the native library is not available. Thread scaling and
+ * contention are measured separately by {@link ImageContentionBenchmark}.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar ImageProcessingBenchmark
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+public class ImageProcessingBenchmark {
+
+    @Param({"compress", "rotate", "rotate-compress"})
+    public String operation;
+
+    @Param({"native", "native-fast", "java", "imageio"})
+    public String engine;
+
+    @Param({"JPEG", "PNG"})
+    public String format;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"50", "75", "90"})
+    public int quality;
+
+    private byte[] input;
+    private ImageTask task;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        input = load(format, size);
+        task = ImageTask.of(engine, operation, quality);
+        System.out.println(format + " " + size + " " + operation + " " + engine + " q" + quality + ": "
+                + input.length + " -> " + task.apply(input).length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] run() throws IOException {
+        return task.apply(input);
+    }
+
+    /**
+     * @param format JPEG or PNG
+     * @param size   small, medium or large
+     * @return Encoded test image
+     */
+    static byte[] load(String format, String size) {
+        boolean jpeg = "JPEG".equals(format);
+        if (!jpeg && !"PNG".equals(format)) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        switch (size) {
+            case "small":
+                return BenchmarkImages.load(jpeg ? BenchmarkImages.SMALL_JPEG : BenchmarkImages.SMALL_PNG);
+            case "medium":
+                return BenchmarkImages.load(jpeg ? BenchmarkImages.MEDIUM_JPEG : BenchmarkImages.MEDIUM_PNG);
+            case "large":
+                return BenchmarkImages.load(jpeg ? BenchmarkImages.LARGE_JPEG : BenchmarkImages.LARGE_PNG);
+            default:
+                throw new IllegalArgumentException("Unknown size: " + size);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.FastImageUtils;
+import cn.lihongjie.image.ImageFormat;
+import cn.lihongjie.image.engine.JavaImageEngine;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * One image operation of one engine, as measured by the benchmark suite
+ *
+ * Engines:
+ * - native: FastImageUtils.compress / rotate (mozjpeg, imagequant)
+ * - native-fast: FastImageUtils.compressJpegFast / rotate (always writes JPEG)
+ * - java: the pure-Java JavaImageEngine
+ * - imageio: JDK ImageIO and Graphics2D, as the reference
+ *
+ * Operations: compress, rotate (90 degrees clockwise) and rotate-compress.
+ */
+@FunctionalInterface
+interface ImageTask {
+
+    byte[] apply(byte[] image) throws IOException;
+
+    /**
+     * @param engine    One of native, native-fast, java, imageio
+     * @param operation One of compress, rotate, rotate-compress
+     * @param quality   Compression quality (0-100)
+     * @return Task running the operation on the engine
+     * @throws IllegalArgumentException if the engine or operation is unknown
+     */
+    static ImageTask of(String engine, String operation, int quality) {
+        ImageTask compress;
+        ImageTask rotate;
+        switch (engine) {
+            case "native":
+                compress = image -> FastImageUtils.compress(image, quality);
+                rotate = FastImageUtils::rotate90;
+                break;
+            case "native-fast":
+                compress = image -> FastImageUtils.compressJpegFast(image, quality);
+                rotate = FastImageUtils::rotate90;
+                break;
+            case "java":
+                compress = image -> JavaImageEngine.compress(image, quality);
+                rotate = image -> JavaImageEngine.rotate(image, 90);
+                break;
+            case "imageio":
+                compress = image -> imageIoCompress(image, quality);
+                rotate = ImageTask::imageIoRotate;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+        switch (operation) {
+            case "compress":
+                return compress;
+            case "rotate":
+                return rotate;
+            case "rotate-compress":
+                return image -> compress.apply(rotate.apply(image));
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+
+    /**
+     * JPEG is written at the given quality; PNG has no quality setting in ImageIO and is written as is
+     */
+    static byte[] imageIoCompress(byte[] imageBytes, int quality) throws IOException {
+        BufferedImage image = read(imageBytes);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (ImageFormat.detect(imageBytes) != ImageFormat.JPEG) {
+            ImageIO.write(image, "PNG", out);
+            return out.toByteArray();
+        }
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("JPEG");
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality / 100f);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] imageIoRotate(byte[] imageBytes) throws IOException {
+        BufferedImage original = read(imageBytes);
+        int width = original.getWidth();
+        int height = original.getHeight();
+
+        BufferedImage rotated = new BufferedImage(height, width, original.getType());
+        Graphics2D g2d = rotated.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            AffineTransform transform = new AffineTransform();
+            transform.translate(height / 2.0, width / 2.0);
+            transform.rotate(Math.PI / 2);
+            transform.translate(-width / 2.0, -height / 2.0);
+            g2d.setTransform(transform);
+            g2d.drawImage(original, 0, 0, null);
+        } finally {
+            g2d.dispose();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(rotated, ImageFormat.detect(imageBytes) == ImageFormat.JPEG ? "JPEG" : "PNG", out);
+        return out.toByteArray();
+    }
+
+    static BufferedImage read(byte[] imageBytes) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+        if (image == null) {
+            throw new IOException("Failed to read image data");
+        }
+        return image;
+    }
+}
@@ -0,0 +1,61 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.JpegDecoder;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the pure-Java JPEG decoder
+ *
+ * Compares ImageIO with {@link JpegDecoder} at several parallelism levels. The progressive
+ * photos have no restart markers, so only pixel reconstruction runs in parallel for them;
+ * the restart variant is a baseline photo of the medium size with DRI/RSTn markers every
+ * 4 MCU rows, where entropy decoding is parallel as well. The rotate benchmarks cover the full Java engine
+ * path (decode, rotate, encode).
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar JavaJpegDecoderBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class JavaJpegDecoderBenchmark {
+
+    @Param({BenchmarkImages.SMALL_JPEG, BenchmarkImages.MEDIUM_JPEG, "photo:3024x4032:q90:rst4"})
+    public String image;
+
+    @Param({"1", "4", "16"})
+    public int parallelism;
+
+    private byte[] jpegData;
+    private JpegDecoder decoder;
+
+    @Setup
+    public void setup() throws IOException {
+        jpegData = BenchmarkImages.load(image);
+        decoder = new JpegDecoder().withParallelism(parallelism);
+    }
+
+    @Benchmark
+    public BufferedImage imageIoDecode() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpegData));
+    }
+
+    @Benchmark
+    public Object javaDecoder() {
+        return decoder.decode(jpegData);
+    }
+
+    @Benchmark
+    public byte[] javaEngineRotate90() {
+        return JavaImageEngine.rotate(jpegData, 90);
+    }
+}
@@ -0,0 +1,100 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.FastImageUtils;
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the pure-Java JPEG encoder
+ *
+ * Compares, on the {@link BenchmarkImages} JPEGs:
+ * 1. Native fast JPEG compression (compressJpegFast)
+ * 2. Pure-Java engine, full decode + encode
+ * 3. Pure-Java encoder only (pixels already decoded)
+ * 4. ImageIO writer only, reusing one writer instance
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar JavaJpegEncoderBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class JavaJpegEncoderBenchmark {
+
+    @Param({BenchmarkImages.SMALL_JPEG, BenchmarkImages.MEDIUM_JPEG})
+    public String image;
+
+    @Param({"70"})
+    public int quality;
+
+    private byte[] jpegData;
+    private PixelImage pixels;
+    private BufferedImage bufferedImage;
+    private JpegEncoder encoder;
+    private JpegEncoder optimizedEncoder;
+    private ImageWriter imageIoWriter;
+    private ImageWriteParam imageIoParam;
+
+    @Setup
+    public void setup() throws IOException {
+        jpegData = BenchmarkImages.load(image);
+        pixels = JavaImageEngine.decode(jpegData);
+        bufferedImage = pixels.toBufferedImage();
+        encoder = new JpegEncoder(quality);
+        optimizedEncoder = new JpegEncoder(quality, ChromaSubsampling.YUV420, true);
+        imageIoWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
+        imageIoParam = imageIoWriter.getDefaultWriteParam();
+        imageIoParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        imageIoParam.setCompressionQuality(quality / 100f);
+    }
+
+    @TearDown
+    public void tearDown() {
+        imageIoWriter.dispose();
+    }
+
+    @Benchmark
+    public byte[] nativeFastJpegCompression() {
+        return FastImageUtils.compressJpegFast(jpegData, quality);
+    }
+
+    @Benchmark
+    public byte[] javaEngineJpegCompression() {
+        return JavaImageEngine.compressJpeg(jpegData, quality);
+    }
+
+    @Benchmark
+    public byte[] javaEncoderOnly() {
+        return encoder.encode(pixels);
+    }
+
+    @Benchmark
+    public byte[] javaEncoderOnlyOptimizedHuffman() {
+        return optimizedEncoder.encode(pixels);
+    }
+
+    @Benchmark
+    public byte[] imageIoEncoderOnly() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            imageIoWriter.setOutput(ios);
+            imageIoWriter.write(null, new IIOImage(bufferedImage, null, null), imageIoParam);
+        }
+        return out.toByteArray();
+    }
+}
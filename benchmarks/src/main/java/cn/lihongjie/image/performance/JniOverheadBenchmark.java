@@ -0,0 +1,128 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.FastImageUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * JMH benchmarks isolating the cost of crossing the JNI boundary
+ *
+ * The native library has no no-op entry point, so the boundary is measured with
+ * payloads it rejects: zero-filled arrays carry no PNG or JPEG signature, so each native
+ * method copies the array in, fails format detection and throws. Over increasing sizes
+ * the intercept of these calls is the fixed per-call cost (transition, argument
+ * handling and the thrown exception) and the slope is the per-byte cost of passing a
+ * {@code byte[]}. {@link #exception()} measures constructing the exception alone and
+ * {@link #javaCopy} a plain Java array copy of the same size, as references. The codec
+ * benchmarks run each native method on real images; {@link JniOverheadReport} combines
+ * both into a per-call breakdown.
+ *
+ * Fails in setup when the native library is not available.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar JniOverheadBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JniOverheadBenchmark {
+
+    /**
+     * Non-image data of a given size
+     */
+    @State(Scope.Benchmark)
+    public static class Payload {
+
+        @Param({"0", "1024", "16384", "262144", "4194304"})
+        public int bytes;
+
+        byte[] data;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            requireNativeLibrary();
+            data = new byte[bytes];
+        }
+    }
+
+    /**
+     * Test image as format:size of {@link ImageProcessingBenchmark#load}
+     */
+    @State(Scope.Benchmark)
+    public static class Image {
+
+        @Param({"JPEG:small", "JPEG:medium", "PNG:small", "PNG:medium"})
+        public String image;
+
+        byte[] data;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            requireNativeLibrary();
+            String[] parts = image.split(":");
+            data = ImageProcessingBenchmark.load(parts[0], parts[1]);
+        }
+    }
+
+    @Benchmark
+    public Object compressRejected(Payload payload) {
+        return rejected(() -> FastImageUtils.compress(payload.data, 75));
+    }
+
+    @Benchmark
+    public Object compressJpegFastRejected(Payload payload) {
+        return rejected(() -> FastImageUtils.compressJpegFast(payload.data, 75));
+    }
+
+    @Benchmark
+    public Object rotateRejected(Payload payload) {
+        return rejected(() -> FastImageUtils.rotate(payload.data, 90));
+    }
+
+    @Benchmark
+    public byte[] javaCopy(Payload payload) {
+        return Arrays.copyOf(payload.data, payload.bytes);
+    }
+
+    @Benchmark
+    public Object exception() {
+        return new RuntimeException("Image compression failed");
+    }
+
+    @Benchmark
+    public byte[] compress(Image image) {
+        return FastImageUtils.compress(image.data, 75);
+    }
+
+    @Benchmark
+    public byte[] compressJpegFast(Image image) {
+        return FastImageUtils.compressJpegFast(image.data, 75);
+    }
+
+    @Benchmark
+    public byte[] rotate(Image image) {
+        return FastImageUtils.rotate(image.data, 90);
+    }
+
+    private static Object rejected(Supplier<byte[]> call) {
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    static void requireNativeLibrary() {
+        try {
+            FastImageUtils.compress(new byte[]{0, 0, 0, 0}, 75);
+        } catch (RuntimeException e) {
+            if (e.getMessage() != null && e.getMessage().startsWith("Fast Image native library")) {
+                throw new IllegalStateException("The JNI benchmarks need the native library", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.FastImageUtils;
+import cn.lihongjie.image.performance.BenchmarkResults.Metric;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Breakdown of native calls into JNI boundary cost and codec compute
+ *
+ * Runs {@link JniOverheadBenchmark} and fits time = fixed + perByte × bytes to the
+ * rejected calls of each native method by least squares. The fixed cost, less the cost
+ * of constructing the exception the rejection throws, is the per-call cost of the
+ * boundary; the slope is the cost of passing one byte of {@code byte[]}, compared with a
+ * plain Java array copy. Each codec call on a real image is then split into call,
+ * input transfer (slope × input size), output transfer and compute (the remainder).
+ * Returning the result costs a new array and a copy like passing the input does, so the
+ * output transfer is estimated with the same slope; compute absorbs the error of that
+ * estimate and of the noise in the fit, and can come out slightly negative for calls
+ * dominated by the boundary.
+ *
+ * The benchmarks run with the GC profiler, and the bytes allocated per call are reported
+ * with the breakdown. With {@code -save}, the scores, allocations, fitted boundary costs
+ * and compute estimates are stored as {@link BenchmarkResults}, so a change to the binding
+ * (such as moving to direct buffers) is checked with {@code compare} against a run of the
+ * previous binding. Scores are stored with one sample per fork, so {@code -save} runs
+ * {@link BenchmarkComparison#MIN_SAMPLES} forks unless {@code -forks} is given.
+ *
+ * Options (defaults in brackets):
+ * - -forks n [1, or 5 with -save]
+ * - -iterations n measurement iterations per benchmark [5]
+ * - -save file.json: results as {@link BenchmarkResults}
+ *
+ * Usage:
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar jni -save results/jni-array.json
+ * java -jar benchmarks/target/benchmarks.jar compare results/jni-array.json results/jni-buffer.json
+ * </pre>
+ */
+public final class JniOverheadReport {
+
+    private static final String[] METHODS = {"compress", "compressJpegFast", "rotate"};
+    private static final double MIB = 1024 * 1024;
+
+    private JniOverheadReport() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("iterations", "5");
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i].startsWith("-") ? args[i].substring(1) : "";
+            if (i + 1 >= args.length || !(options.containsKey(name) || name.equals("forks") || name.equals("save"))) {
+                throw new IllegalArgumentException("Unknown or incomplete option: " + args[i]);
+            }
+            options.put(name, args[++i]);
+        }
+        options.putIfAbsent("forks", options.containsKey("save") ? String.valueOf(BenchmarkComparison.MIN_SAMPLES) : "1");
+        JniOverheadBenchmark.requireNativeLibrary();
+
+        Options jmh = new OptionsBuilder()
+                .include(JniOverheadBenchmark.class.getName() + "\\.")
+                .addProfiler(GCProfiler.class)
+                .forks(Integer.parseInt(options.get("forks")))
+                .measurementIterations(Integer.parseInt(options.get("iterations")))
+                .build();
+        Map<String, List<RunResult>> runs = new LinkedHashMap<>();
+        for (RunResult run : new Runner(jmh).run()) {
+            runs.computeIfAbsent(method(run), name -> new ArrayList<>()).add(run);
+        }
+
+        PrintStream out = System.out;
+        BenchmarkResults store = new BenchmarkResults(BenchmarkResults.captureEnvironment());
+        double exception = runs.get("exception").get(0).getPrimaryResult().getScore();
+        Fit copy = fit(runs.get("javaCopy"));
+        out.printf(Locale.ROOT, "%nException construction %.3f us, Java array copy %.1f us/MiB%n",
+                exception, copy.getSlope() * MIB);
+        out.printf("%n%-18s %12s %12s %8s%n", "boundary", "call us", "us/MiB", "R2");
+        Map<String, Fit> boundary = new LinkedHashMap<>();
+        for (String method : METHODS) {
+            Fit fit = fit(runs.get(method + "Rejected"));
+            boundary.put(method, fit);
+            double call = Math.max(0, fit.getIntercept() - exception);
+            out.printf(Locale.ROOT, "%-18s %12.3f %12.1f %8.4f%n", method, call, fit.getSlope() * MIB,
+                    fit.getRSquared());
+            store.add("jni/" + method + "/boundary", new Metric("call", "us/op", false, new double[]{call}));
+            store.add("jni/" + method + "/boundary",
+                    new Metric("transfer", "us/MiB", false, new double[]{fit.getSlope() * MIB}));
+        }
+        for (List<RunResult> group : runs.values()) {
+            for (RunResult run : group) {
+                store.add(name(run), new Metric("score", "us/op", false, samples(run)));
+                if (!Double.isNaN(allocation(run))) {
+                    store.add(name(run), new Metric("alloc", "B/op", false, new double[]{allocation(run)}));
+                }
+            }
+        }
+
+        out.printf("%n%-18s %-12s %10s %10s %10s %10s %10s %10s %8s %10s%n", "method", "image", "in B", "out B",
+                "total us", "call us", "in us", "out us", "compute", "alloc B");
+        for (String method : METHODS) {
+            for (RunResult run : runs.get(method)) {
+                String image = run.getParams().getParam("image");
+                String[] parts = image.split(":");
+                byte[] input = ImageProcessingBenchmark.load(parts[0], parts[1]);
+                byte[] output = call(method, input);
+                Breakdown breakdown = boundary.get(method).breakdown(run.getPrimaryResult().getScore(),
+                        input.length, output.length, exception);
+                out.printf(Locale.ROOT, "%-18s %-12s %10d %10d %10.1f %10.1f %10.1f %10.1f %7.1f%% %10.0f%n", method,
+                        image, input.length, output.length, breakdown.getTotal(), breakdown.getCall(),
+                        breakdown.getInput(), breakdown.getOutput(), 100 * breakdown.getCompute() / breakdown.getTotal(),
+                        allocation(run));
+                store.add(name(run), new Metric("compute", "us/op", false, new double[]{breakdown.getCompute()}));
+            }
+        }
+
+        if (options.containsKey("save")) {
+            Path file = Paths.get(options.get("save"));
+            store.write(file);
+            out.println("Results saved to " + file.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Least-squares line through (bytes, micros)
+     *
+     * @throws IllegalArgumentException if the arrays differ in length or hold fewer than two distinct sizes
+     */
+    public static Fit fit(double[] bytes, double[] micros) {
+        if (bytes.length != micros.length) {
+            throw new IllegalArgumentException("Got " + bytes.length + " sizes and " + micros.length + " times");
+        }
+        int n = bytes.length;
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < n; i++) {
+            meanX += bytes[i] / n;
+            meanY += micros[i] / n;
+        }
+        double sxx = 0;
+        double sxy = 0;
+        double syy = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = bytes[i] - meanX;
+            double dy = micros[i] - meanY;
+            sxx += dx * dx;
+            sxy += dx * dy;
+            syy += dy * dy;
+        }
+        if (sxx == 0) {
+            throw new IllegalArgumentException("Need at least two distinct sizes");
+        }
+        double slope = sxy / sxx;
+        double rSquared = syy == 0 ? 1 : sxy * sxy / (sxx * syy);
+        return new Fit(meanY - slope * meanX, slope, rSquared);
+    }
+
+    private static Fit fit(List<RunResult> runs) {
+        double[] bytes = new double[runs.size()];
+        double[] micros = new double[runs.size()];
+        for (int i = 0; i < runs.size(); i++) {
+            bytes[i] = Double.parseDouble(runs.get(i).getParams().getParam("bytes"));
+            micros[i] = runs.get(i).getPrimaryResult().getScore();
+        }
+        return fit(bytes, micros);
+    }
+
+    private static byte[] call(String method, byte[] input) {
+        switch (method) {
+            case "compress":
+                return FastImageUtils.compress(input, 75);
+            case "compressJpegFast":
+                return FastImageUtils.compressJpegFast(input, 75);
+            default:
+                return FastImageUtils.rotate(input, 90);
+        }
+    }
+
+    private static String method(RunResult run) {
+        String benchmark = run.getParams().getBenchmark();
+        return benchmark.substring(benchmark.lastIndexOf('.') + 1);
+    }
+
+    private static String name(RunResult run) {
+        StringBuilder name = new StringBuilder("jni/").append(method(run));
+        for (String key : run.getParams().getParamsKeys()) {
+            name.append('/').append(key).append('=').append(run.getParams().getParam(key));
+        }
+        return name.toString();
+    }
+
+    private static double allocation(RunResult run) {
+        Result<?> alloc = run.getSecondaryResults().get("gc.alloc.rate.norm");
+        return alloc == null ? Double.NaN : alloc.getScore();
+    }
+
+    /**
+     * @return Mean score of each fork, as {@link BenchmarkResults} stores JMH results
+     */
+    private static double[] samples(RunResult run) {
+        return run.getBenchmarkResults().stream()
+                .mapToDouble(result -> result.getPrimaryResult().getScore())
+                .toArray();
+    }
+
+    /**
+     * Fitted time of a call in microseconds as intercept + slope × bytes
+     */
+    public static final class Fit {
+
+        private final double intercept;
+        private final double slope;
+        private final double rSquared;
+
+        public Fit(double intercept, double slope, double rSquared) {
+            this.intercept = intercept;
+            this.slope = slope;
+            this.rSquared = rSquared;
+        }
+
+        /**
+         * Splits the time of a call on real input using this fit of its rejected calls
+         *
+         * @param totalMicros     Measured time of the call
+         * @param exceptionMicros Cost of constructing the exception included in the intercept
+         */
+        public Breakdown breakdown(double totalMicros, long inputBytes, long outputBytes, double exceptionMicros) {
+            double call = Math.max(0, intercept - exceptionMicros);
+            double input = slope * inputBytes;
+            double output = slope * outputBytes;
+            return new Breakdown(totalMicros, call, input, output, totalMicros - call - input - output);
+        }
+
+        public double getIntercept() {
+            return intercept;
+        }
+
+        public double getSlope() {
+            return slope;
+        }
+
+        public double getRSquared() {
+            return rSquared;
+        }
+    }
+
+    /**
+     * Time of one native call in microseconds, split by where it is spent
+     */
+    public static final class Breakdown {
+
+        private final double total;
+        private final double call;
+        private final double input;
+        private final double output;
+        private final double compute;
+
+        private Breakdown(double total, double call, double input, double output, double compute) {
+            this.total = total;
+            this.call = call;
+            this.input = input;
+            this.output = output;
+            this.compute = compute;
+        }
+
+        public double getTotal() {
+            return total;
+        }
+
+        public double getCall() {
+            return call;
+        }
+
+        public double getInput() {
+            return input;
+        }
+
+        public double getOutput() {
+            return output;
+        }
+
+        public double getCompute() {
+            return compute;
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package cn.lihongjie.image.performance;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Open-loop load generator with coordinated-omission-free latency
+ *
+ * Requests are issued at a fixed arrival rate, independent of how fast earlier requests
+ * complete: a dispatcher thread computes the intended start time of every request up
+ * front (evenly spaced, or exponentially distributed for Poisson arrivals) and hands it
+ * to a fixed pool of worker threads. Latency is measured from the intended start time,
+ * so time spent queueing behind a slow request is counted instead of silently omitted,
+ * as a closed loop that waits for each response would do. Service time (from the moment
+ * a worker picks the request up) is recorded separately; the gap between the two shows
+ * queueing. Both go into HDR histograms with microsecond resolution.
+ *
+ * Requests issued during the warmup are executed but not recorded. After the measured
+ * window no new requests are issued and outstanding ones are drained. Every request
+ * still queued or running when the drain timeout expires is recorded with its latency
+ * up to that moment and counted as unfinished; a result it produces later is ignored.
+ * Running requests are then interrupted and given a few more seconds to stop, so they
+ * do not overlap the next run.
+ *
+ * {@link #replay(List)} drives a recorded schedule instead of the generated one: each
+ * request is issued at its own offset from the start, with the same measurement.
+ *
+ * Usage:
+ * <pre>
+ * LoadGenerator.Result result = new LoadGenerator(requests)
+ *         .withThreads(4)
+ *         .withRate(40)
+ *         .withDuration(Duration.ofSeconds(30))
+ *         .run();
+ * long p99 = result.getLatency().getValueAtPercentile(99);
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private final List<Request> requests;
+    private final int threads;
+    private final double rate;
+    private final Duration warmup;
+    private final Duration duration;
+    private final Duration drainTimeout;
+    private final boolean poisson;
+    private final long seed;
+
+    /**
+     * @param requests Request kinds, chosen at random in proportion to their weights
+     */
+    public LoadGenerator(List<Request> requests) {
+        this(checkRequests(requests), 1, 10, Duration.ofSeconds(5), Duration.ofSeconds(30),
+                Duration.ofSeconds(60), false, 1);
+    }
+
+    private LoadGenerator(List<Request> requests, int threads, double rate, Duration warmup, Duration duration,
+                          Duration drainTimeout, boolean poisson, long seed) {
+        this.requests = requests;
+        this.threads = threads;
+        this.rate = rate;
+        this.warmup = warmup;
+        this.duration = duration;
+        this.drainTimeout = drainTimeout;
+        this.poisson = poisson;
+        this.seed = seed;
+    }
+
+    private static List<Request> checkRequests(List<Request> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("At least one request kind is required");
+        }
+        return Collections.unmodifiableList(new ArrayList<>(requests));
+    }
+
+    /**
+     * @param threads Worker threads executing requests
+     */
+    public LoadGenerator withThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be at least 1, got " + threads);
+        }
+        return new LoadGenerator(requests, threads, rate, warmup, duration, drainTimeout, poisson, seed);
+    }
+
+    /**
+     * @param rate Requests issued per second
+     */
+    public LoadGenerator withRate(double rate) {
+        if (!(rate > 0) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("Rate must be positive, got " + rate);
+        }
+        return new LoadGenerator(requests, threads, rate, warmup, duration, drainTimeout, poisson, seed);
+    }
+
+    public LoadGenerator withWarmup(Duration warmup) {
+        if (warmup.isNegative()) {
+            throw new IllegalArgumentException("Warmup must not be negative, got " + warmup);
+        }
+        return new LoadGenerator(requests, threads, rate, warmup, duration, drainTimeout, poisson, seed);
+    }
+
+    /**
+     * @param duration Measured window, after the warmup
+     */
+    public LoadGenerator withDuration(Duration duration) {
+        if (duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("Duration must be positive, got " + duration);
+        }
+        return new LoadGenerator(requests, threads, rate, warmup, duration, drainTimeout, poisson, seed);
+    }
+
+    /**
+     * @param drainTimeout How long to wait for outstanding requests after the last one was issued
+     */
+    public LoadGenerator withDrainTimeout(Duration drainTimeout) {
+        if (drainTimeout.isNegative()) {
+            throw new IllegalArgumentException("Drain timeout must not be negative, got " + drainTimeout);
+        }
+        return new LoadGenerator(requests, threads, rate, warmup, duration, drainTimeout, poisson, seed);
+    }
+
+    /**
+     * @param poisson Exponentially distributed gaps between requests instead of even spacing
+     */
+    public LoadGenerator withPoissonArrivals(boolean poisson) {
+        return new LoadGenerator(requests, threads, rate, warmup, duration, drainTimeout, poisson, seed);
+    }
+
+    /**
+     * @param seed Seed of the request mix and the Poisson arrivals
+     */
+    public LoadGenerator withSeed(long seed) {
+        return new LoadGenerator(requests, threads, rate, warmup, duration, drainTimeout, poisson, seed);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Runs the load and blocks until the measured window has been issued and drained
+     */
+    public Result run() throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(seed);
+        double totalWeight = requests.stream().mapToDouble(Request::getWeight).sum();
+        double interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long end = warmup.toNanos() + duration.toNanos();
+        Iterator<Arrival> arrivals = new Iterator<Arrival>() {
+            // Offset from the start kept as a double, so fractional intervals do not drift
+            private double offset;
+
+            @Override
+            public boolean hasNext() {
+                return (long) offset < end;
+            }
+
+            @Override
+            public Arrival next() {
+                Arrival arrival = new Arrival((long) offset, pick(random, totalWeight));
+                offset += poisson ? -Math.log(1 - random.nextDouble()) * interval : interval;
+                return arrival;
+            }
+        };
+        return dispatch(requests, arrivals, end, rate);
+    }
+
+    /**
+     * Issues a recorded schedule instead of the generated arrivals
+     *
+     * Only the thread count, warmup and drain timeout of this generator apply; requests
+     * before the warmup offset are executed but not recorded. The target rate of the
+     * result is the average rate of the measured part of the schedule.
+     *
+     * @param arrivals Requests with their offsets from the start, in any order
+     * @return Outcome of the measured part of the schedule
+     */
+    public Result replay(List<Arrival> arrivals) throws InterruptedException {
+        if (arrivals == null || arrivals.isEmpty()) {
+            throw new IllegalArgumentException("At least one arrival is required");
+        }
+        List<Arrival> sorted = new ArrayList<>(arrivals);
+        sorted.sort(Comparator.comparingLong(Arrival::getOffsetNanos));
+        Map<String, Request> kinds = new LinkedHashMap<>();
+        for (Arrival arrival : sorted) {
+            kinds.putIfAbsent(arrival.getRequest().getName(), arrival.getRequest());
+        }
+        long last = sorted.get(sorted.size() - 1).getOffsetNanos();
+        long measured = sorted.stream().filter(arrival -> arrival.getOffsetNanos() >= warmup.toNanos()).count();
+        double span = (last - warmup.toNanos()) / 1e9;
+        return dispatch(new ArrayList<>(kinds.values()), sorted.iterator(), last + 1,
+                span > 0 ? measured / span : Double.NaN);
+    }
+
+    private Result dispatch(List<Request> kinds, Iterator<Arrival> arrivals, long endOffset, double targetRate)
+            throws InterruptedException {
+        Histogram latency = new ConcurrentHistogram(3);
+        Histogram serviceTime = new ConcurrentHistogram(3);
+        Map<String, LongAdder> counts = new LinkedHashMap<>();
+        Map<String, Histogram> latencyByName = new LinkedHashMap<>();
+        Map<String, Histogram> serviceTimeByName = new LinkedHashMap<>();
+        for (Request request : kinds) {
+            counts.put(request.getName(), new LongAdder());
+            latencyByName.put(request.getName(), new ConcurrentHistogram(3));
+            serviceTimeByName.put(request.getName(), new ConcurrentHistogram(3));
+        }
+        LongAdder errors = new LongAdder();
+        AtomicLong lastCompletion = new AtomicLong();
+        AtomicInteger outstanding = new AtomicInteger();
+        // Measured jobs not yet settled, queued or running
+        Set<Job> pending = ConcurrentHashMap.newKeySet();
+        AtomicInteger threadIds = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "load-worker-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = start + endOffset;
+        long issued = 0;
+        int maxBacklog = 0;
+        while (arrivals.hasNext()) {
+            Arrival arrival = arrivals.next();
+            long intended = start + arrival.getOffsetNanos();
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            Request request = arrival.getRequest();
+            boolean measured = intended >= measureFrom;
+            Job job = new Job(request.getName(), intended, self -> {
+                long begin = System.nanoTime();
+                boolean failed = false;
+                try {
+                    request.getOperation().run();
+                } catch (Exception | Error e) {
+                    failed = true;
+                }
+                long done = System.nanoTime();
+                outstanding.decrementAndGet();
+                // Loses to the drain timeout when that already recorded the job as unfinished
+                if (measured && self.settle()) {
+                    pending.remove(self);
+                    if (failed) {
+                        errors.increment();
+                    } else {
+                        latency.recordValue(micros(done - intended));
+                        serviceTime.recordValue(micros(done - begin));
+                        latencyByName.get(request.getName()).recordValue(micros(done - intended));
+                        serviceTimeByName.get(request.getName()).recordValue(micros(done - begin));
+                        counts.get(request.getName()).increment();
+                    }
+                    lastCompletion.accumulateAndGet(done, Math::max);
+                }
+            });
+            if (measured) {
+                issued++;
+                pending.add(job);
+            }
+            maxBacklog = Math.max(maxBacklog, outstanding.incrementAndGet());
+            pool.execute(job);
+        }
+
+        pool.shutdown();
+        long unfinished = 0;
+        if (!pool.awaitTermination(drainTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+            long deadline = System.nanoTime();
+            for (Job job : pending) {
+                if (job.settle()) {
+                    // Queued or still running: its latency is at least the time elapsed so far
+                    latency.recordValue(micros(deadline - job.intended));
+                    latencyByName.get(job.name).recordValue(micros(deadline - job.intended));
+                    unfinished++;
+                }
+            }
+            pool.shutdownNow();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        long windowEnd = Math.max(end, lastCompletion.get());
+        Map<String, Long> completedByName = new LinkedHashMap<>();
+        counts.forEach((name, count) -> completedByName.put(name, count.sum()));
+        return new Result(threads, targetRate, issued, completedByName, errors.sum(), unfinished, maxBacklog,
+                (windowEnd - measureFrom) / 1e9, latency.copy(), serviceTime.copy(), copies(latencyByName),
+                copies(serviceTimeByName));
+    }
+
+    private Request pick(SplittableRandom random, double totalWeight) {
+        double r = random.nextDouble() * totalWeight;
+        for (Request request : requests) {
+            r -= request.getWeight();
+            if (r < 0) {
+                return request;
+            }
+        }
+        return requests.get(requests.size() - 1);
+    }
+
+    private static Map<String, Histogram> copies(Map<String, Histogram> histograms) {
+        Map<String, Histogram> copies = new LinkedHashMap<>();
+        histograms.forEach((name, histogram) -> copies.put(name, histogram.copy()));
+        return Collections.unmodifiableMap(copies);
+    }
+
+    private static long micros(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    private static final class Job implements Runnable {
+
+        private final String name;
+        private final long intended;
+        private final Consumer<Job> body;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Job(String name, long intended, Consumer<Job> body) {
+            this.name = name;
+            this.intended = intended;
+            this.body = body;
+        }
+
+        /**
+         * @return Whether the caller is the first to record the outcome of this job
+         */
+        boolean settle() {
+            return settled.compareAndSet(false, true);
+        }
+
+        @Override
+        public void run() {
+            body.accept(this);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * One kind of request in the mix
+     */
+    public static final class Request {
+
+        private final String name;
+        private final double weight;
+        private final Operation operation;
+
+        public Request(String name, double weight, Operation operation) {
+            if (!(weight > 0)) {
+                throw new IllegalArgumentException("Weight of " + name + " must be positive, got " + weight);
+            }
+            this.name = name;
+            this.weight = weight;
+            this.operation = operation;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+    }
+
+    /**
+     * One request of a recorded schedule
+     */
+    public static final class Arrival {
+
+        private final long offsetNanos;
+        private final Request request;
+
+        /**
+         * @param offsetNanos When to issue the request, relative to the start of the run
+         * @param request     What to issue
+         */
+        public Arrival(long offsetNanos, Request request) {
+            if (offsetNanos < 0) {
+                throw new IllegalArgumentException("Offset must not be negative, got " + offsetNanos);
+            }
+            this.offsetNanos = offsetNanos;
+            this.request = request;
+        }
+
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        public Request getRequest() {
+            return request;
+        }
+    }
+
+    /**
+     * Outcome of one run; histogram values are in microseconds
+     */
+    public static final class Result {
+
+        private final int threads;
+        private final double targetRate;
+        private final long issued;
+        private final Map<String, Long> completed;
+        private final long errors;
+        private final long unfinished;
+        private final int maxBacklog;
+        private final double seconds;
+        private final Histogram latency;
+        private final Histogram serviceTime;
+        private final Map<String, Histogram> latencyByName;
+        private final Map<String, Histogram> serviceTimeByName;
+
+        private Result(int threads, double targetRate, long issued, Map<String, Long> completed, long errors,
+                       long unfinished, int maxBacklog, double seconds, Histogram latency, Histogram serviceTime,
+                       Map<String, Histogram> latencyByName, Map<String, Histogram> serviceTimeByName) {
+            this.threads = threads;
+            this.targetRate = targetRate;
+            this.issued = issued;
+            this.completed = Collections.unmodifiableMap(completed);
+            this.errors = errors;
+            this.unfinished = unfinished;
+            this.maxBacklog = maxBacklog;
+            this.seconds = seconds;
+            this.latency = latency;
+            this.serviceTime = serviceTime;
+            this.latencyByName = latencyByName;
+            this.serviceTimeByName = serviceTimeByName;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public double getTargetRate() {
+            return targetRate;
+        }
+
+        /**
+         * @return Requests issued in the measured window
+         */
+        public long getIssued() {
+            return issued;
+        }
+
+        /**
+         * @return Successful requests of the measured window by request name
+         */
+        public Map<String, Long> getCompletedByName() {
+            return completed;
+        }
+
+        public long getCompleted() {
+            return completed.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return Requests of the measured window still queued or running when the drain timeout expired
+         */
+        public long getUnfinished() {
+            return unfinished;
+        }
+
+        /**
+         * @return Largest number of issued but not yet completed requests
+         */
+        public int getMaxBacklog() {
+            return maxBacklog;
+        }
+
+        /**
+         * @return Completed requests per second, over the measured window plus the time to drain it
+         */
+        public double getAchievedRate() {
+            return getCompleted() / seconds;
+        }
+
+        /**
+         * @return Latency from intended start to completion, in microseconds
+         */
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return Latency from the start of execution to completion, in microseconds
+         */
+        public Histogram getServiceTime() {
+            return serviceTime;
+        }
+
+        /**
+         * @return {@link #getLatency()} split by request name
+         */
+        public Map<String, Histogram> getLatencyByName() {
+            return latencyByName;
+        }
+
+        /**
+         * @return {@link #getServiceTime()} split by request name
+         */
+        public Map<String, Histogram> getServiceTimeByName() {
+            return serviceTimeByName;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.performance.BenchmarkResults.Metric;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Capacity test of the image engines under open-loop load
+ *
+ * Runs {@link LoadGenerator} for every combination of worker thread count and arrival
+ * rate, and prints one saturation curve per thread count: achieved throughput and
+ * latency percentiles (measured from the intended start time) against the offered rate.
+ * A rate counts as saturated when the p99 latency exceeds the SLO, throughput falls
+ * more than 10% below the offered rate, or requests fail or remain unfinished; the
+ * highest rate below the first saturated one is reported as the capacity for that
+ * thread count. The p99 service time is printed next to the latency, so queueing is
+ * visible separately from slower execution.
+ *
+ * The request mix is a comma-separated list of {@code operation:format:size:quality},
+ * each optionally followed by {@code *weight}; operations, formats and sizes are those
+ * of {@link ImageProcessingBenchmark}.
+ *
+ * Options (defaults in brackets):
+ * - -engine native|native-fast|java|imageio [java]
+ * - -mix list [compress:JPEG:small:75*4,compress:JPEG:medium:85*2,compress:PNG:small:90*2,rotate:JPEG:small:75]
+ * - -threads list [1,2,4]
+ * - -rates list of requests per second [2,4,8,16]
+ * - -warmup seconds [10], -duration seconds [30], -drain seconds [60]
+ * - -arrival poisson|constant [poisson]
+ * - -slo p99 latency in milliseconds [1000]
+ * - -seed n [1]
+ * - -save file.json: percentiles and throughput as {@link BenchmarkResults}
+ * - -hgrm directory: full HDR percentile distribution of every run, in milliseconds
+ *
+ * Usage:
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar load -engine native -threads 1,4,8 -rates 20,40,80,160
+ * java -jar benchmarks/target/benchmarks.jar load -mix compress:JPEG:large:85 -rates 0.5,1,2 -slo 5000
+ * </pre>
+ */
+public final class LoadTest {
+
+    private static final String DEFAULT_MIX =
+            "compress:JPEG:small:75*4,compress:JPEG:medium:85*2,compress:PNG:small:90*2,rotate:JPEG:small:75";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("engine", "java");
+        options.put("mix", DEFAULT_MIX);
+        options.put("threads", "1,2,4");
+        options.put("rates", "2,4,8,16");
+        options.put("warmup", "10");
+        options.put("duration", "30");
+        options.put("drain", "60");
+        options.put("arrival", "poisson");
+        options.put("slo", "1000");
+        options.put("seed", "1");
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i].startsWith("-") ? args[i].substring(1) : "";
+            if (i + 1 >= args.length || !(options.containsKey(name) || name.equals("save") || name.equals("hgrm"))) {
+                throw new IllegalArgumentException("Unknown or incomplete option: " + args[i]);
+            }
+            options.put(name, args[++i]);
+        }
+        String arrival = options.get("arrival");
+        if (!arrival.equals("poisson") && !arrival.equals("constant")) {
+            throw new IllegalArgumentException("Unknown arrival process: " + arrival);
+        }
+
+        List<LoadGenerator.Request> requests = parseMix(options.get("engine"), options.get("mix"));
+        LoadGenerator generator = new LoadGenerator(requests)
+                .withWarmup(Duration.ofMillis((long) (Double.parseDouble(options.get("warmup")) * 1000)))
+                .withDuration(Duration.ofMillis((long) (Double.parseDouble(options.get("duration")) * 1000)))
+                .withDrainTimeout(Duration.ofMillis((long) (Double.parseDouble(options.get("drain")) * 1000)))
+                .withPoissonArrivals(arrival.equals("poisson"))
+                .withSeed(Long.parseLong(options.get("seed")));
+        double sloMillis = Double.parseDouble(options.get("slo"));
+        Path hgrm = options.containsKey("hgrm") ? Paths.get(options.get("hgrm")) : null;
+        if (hgrm != null) {
+            Files.createDirectories(hgrm);
+        }
+
+        PrintStream out = System.out;
+        out.printf("Engine %s, %s arrivals, mix %s%n", options.get("engine"), arrival, options.get("mix"));
+        BenchmarkResults store = new BenchmarkResults();
+        for (String threadCount : options.get("threads").split(",")) {
+            int threads = Integer.parseInt(threadCount.trim());
+            out.printf("%n%d thread(s)%n", threads);
+            out.printf("%9s %10s %9s %9s %9s %9s %9s %9s %7s %10s %8s  %s%n", "offered/s", "achieved/s",
+                    "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99", "errors", "unfinished", "backlog",
+                    "status");
+            double capacity = 0;
+            boolean saturated = false;
+            for (String rateValue : options.get("rates").split(",")) {
+                double rate = Double.parseDouble(rateValue.trim());
+                LoadGenerator.Result result = generator.withThreads(threads).withRate(rate).run();
+                Histogram latency = result.getLatency();
+                boolean overloaded = millis(latency, 99) > sloMillis
+                        || result.getAchievedRate() < 0.9 * rate
+                        || result.getErrors() > 0 || result.getUnfinished() > 0;
+                if (!overloaded && !saturated) {
+                    capacity = rate;
+                }
+                saturated |= overloaded;
+                out.printf(Locale.ROOT, "%9.1f %10.1f %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f %7d %10d %8d  %s%n",
+                        rate, result.getAchievedRate(), millis(latency, 50), millis(latency, 90),
+                        millis(latency, 99), millis(latency, 99.9), latency.getMaxValue() / 1000.0,
+                        millis(result.getServiceTime(), 99), result.getErrors(), result.getUnfinished(),
+                        result.getMaxBacklog(), overloaded ? "SATURATED" : "ok");
+
+                String name = String.format(Locale.ROOT, "load/%s/threads=%d/rate=%s", options.get("engine"), threads,
+                        rateValue.trim());
+                record(store, name, result);
+                if (hgrm != null) {
+                    Path file = hgrm.resolve(String.format("threads-%d-rate-%s.hgrm", threads, rateValue.trim()));
+                    try (PrintStream hgrmOut = new PrintStream(Files.newOutputStream(file), true, "UTF-8")) {
+                        latency.outputPercentileDistribution(hgrmOut, 1000.0);
+                    }
+                }
+            }
+            out.printf(Locale.ROOT, "Capacity with %d thread(s) at p99 <= %.0f ms: %s%n", threads, sloMillis,
+                    capacity > 0 ? capacity + " requests/s" : "below the lowest offered rate");
+        }
+        if (options.containsKey("save")) {
+            Path file = Paths.get(options.get("save"));
+            store.write(file);
+            out.println("Results saved to " + file.toAbsolutePath());
+        }
+    }
+
+    private static void record(BenchmarkResults store, String name, LoadGenerator.Result result) {
+        Histogram latency = result.getLatency();
+        store.add(name, new Metric("throughput", "req/s", true, new double[]{result.getAchievedRate()}));
+        store.add(name, new Metric("p50", "ms", false, new double[]{millis(latency, 50)}));
+        store.add(name, new Metric("p99", "ms", false, new double[]{millis(latency, 99)}));
+        store.add(name, new Metric("p99.9", "ms", false, new double[]{millis(latency, 99.9)}));
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getTotalCount() == 0 ? Double.NaN : histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * @param engine Engine of {@link ImageTask}
+     * @param mix    Comma-separated {@code operation:format:size:quality[*weight]} entries
+     * @return One request kind per entry, each working on its own input image
+     */
+    static List<LoadGenerator.Request> parseMix(String engine, String mix) throws IOException {
+        Map<String, byte[]> inputs = new HashMap<>();
+        List<LoadGenerator.Request> requests = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String item = entry.trim();
+            double weight = 1;
+            int star = item.indexOf('*');
+            if (star >= 0) {
+                weight = Double.parseDouble(item.substring(star + 1));
+                item = item.substring(0, star);
+            }
+            String[] parts = item.split(":");
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Expected operation:format:size:quality but got " + entry);
+            }
+            ImageTask task = ImageTask.of(engine, parts[0], Integer.parseInt(parts[3]));
+            byte[] input = inputs.computeIfAbsent(parts[1] + ":" + parts[2],
+                    key -> ImageProcessingBenchmark.load(parts[1], parts[2]));
+            // Fail fast on an unusable engine, such as native without the library
+            task.apply(input);
+            requests.add(new LoadGenerator.Request(item, weight, () -> task.apply(input)));
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,65 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.png.ColorQuantizer;
+import cn.lihongjie.image.png.IndexedImage;
+import cn.lihongjie.image.png.PngEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the pure-Java lossy PNG path (palette quantization + PNG encoding)
+ *
+ * The encoded size is printed once per trial so it can be compared with the native
+ * imagequant results of {@link ComprehensiveCompressionBenchmark}.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar PaletteQuantizerBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+public class PaletteQuantizerBenchmark {
+
+    @Param({BenchmarkImages.SMALL_PNG, BenchmarkImages.MEDIUM_PNG})
+    public String image;
+
+    @Param({"30", "60", "90"})
+    public int quality;
+
+    @Param({"false", "true"})
+    public boolean dithering;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private PixelImage pixels;
+    private ColorQuantizer quantizer;
+    private PngEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        byte[] data = BenchmarkImages.load(image);
+        pixels = PixelImage.fromBufferedImage(ImageIO.read(new ByteArrayInputStream(data)));
+        quantizer = ColorQuantizer.forQuality(quality).withDithering(dithering).withParallelism(parallelism);
+        encoder = new PngEncoder().withParallelism(parallelism);
+        System.out.println(image + " quality " + quality + " dithering " + dithering + ": "
+                + encoder.encode(quantizer.quantize(pixels)).length + " bytes (input " + data.length + ")");
+    }
+
+    @Benchmark
+    public IndexedImage quantize() {
+        return quantizer.quantize(pixels);
+    }
+
+    @Benchmark
+    public byte[] quantizeAndEncode() {
+        return encoder.encode(quantizer.quantize(pixels));
+    }
+}
@@ -0,0 +1,60 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for single-image JPEG encoding latency versus parallelism
+ *
+ * Encodes one image with the pure-Java encoder split into 1..32 restart-delimited
+ * bands. The "24MP" image is the {@link BenchmarkImages#MEDIUM_JPEG} photo tiled twice horizontally
+ * (6048x4032), matching the size of a typical large upload.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar ParallelJpegEncoderBenchmark
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ParallelJpegEncoderBenchmark {
+
+    @Param({"12MP", "24MP"})
+    public String image;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int parallelism;
+
+    private PixelImage pixels;
+    private JpegEncoder encoder;
+
+    @Setup
+    public void setup() throws IOException {
+        PixelImage photo = JavaImageEngine.decode(BenchmarkImages.load(BenchmarkImages.MEDIUM_JPEG));
+        pixels = "24MP".equals(image) ? tileHorizontally(photo) : photo;
+        encoder = new JpegEncoder(75).withParallelism(parallelism);
+        System.out.printf("Encoding %dx%d with parallelism %d on %d processors%n",
+                pixels.getWidth(), pixels.getHeight(), parallelism, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    public byte[] encodeSingleImage() {
+        return encoder.encode(pixels);
+    }
+
+    private static PixelImage tileHorizontally(PixelImage photo) {
+        int rowBytes = photo.getWidth() * photo.getChannels();
+        PixelImage tiled = PixelImage.allocate(photo.getWidth() * 2, photo.getHeight(), photo.getChannels());
+        for (int y = 0; y < photo.getHeight(); y++) {
+            System.arraycopy(photo.getPixels(), y * rowBytes, tiled.getPixels(), y * rowBytes * 2, rowBytes);
+            System.arraycopy(photo.getPixels(), y * rowBytes, tiled.getPixels(), y * rowBytes * 2 + rowBytes, rowBytes);
+        }
+        return tiled;
+    }
+}
@@ -0,0 +1,58 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.png.PngEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH thread-scaling benchmark for the parallel PNG encoder
+ *
+ * Encodes the {@link BenchmarkImages} PNGs with 1 to 16 threads and compares against
+ * ImageIO's single-threaded PNG writer. Output size is printed once per trial so the
+ * cost of the independent deflate blocks can be read next to the speedup.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar ParallelPngEncoderBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+public class ParallelPngEncoderBenchmark {
+
+    @Param({BenchmarkImages.SMALL_PNG, BenchmarkImages.MEDIUM_PNG})
+    public String image;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int parallelism;
+
+    private PixelImage pixels;
+    private PngEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        byte[] data = BenchmarkImages.load(image);
+        pixels = PixelImage.fromBufferedImage(ImageIO.read(new ByteArrayInputStream(data)));
+        encoder = new PngEncoder().withParallelism(parallelism);
+        System.out.println(image + " parallelism " + parallelism + ": " + encoder.encode(pixels).length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] javaPngEncoder() {
+        return encoder.encode(pixels);
+    }
+
+    @Benchmark
+    public byte[] imageIoPngWriter() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(pixels.toBufferedImage(), "png", out);
+        return out.toByteArray();
+    }
+}
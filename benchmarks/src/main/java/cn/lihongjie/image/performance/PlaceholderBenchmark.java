@@ -0,0 +1,48 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.engine.Placeholder;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for placeholder generation (BlurHash, LQIP, average/dominant color)
+ *
+ * Compares the DC-only JPEG path of {@link JavaImageEngine#placeholder} with a full
+ * ImageIO decode followed by the same placeholder computation.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar PlaceholderBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class PlaceholderBenchmark {
+
+    @Param({BenchmarkImages.SMALL_JPEG, BenchmarkImages.MEDIUM_JPEG})
+    public String image;
+
+    private byte[] jpegData;
+
+    @Setup
+    public void setup() throws IOException {
+        jpegData = BenchmarkImages.load(image);
+    }
+
+    @Benchmark
+    public Placeholder dcOnlyPlaceholder() {
+        return JavaImageEngine.placeholder(jpegData);
+    }
+
+    @Benchmark
+    public Placeholder imageIoPlaceholder() throws IOException {
+        return Placeholder.of(PixelImage.fromBufferedImage(ImageIO.read(new ByteArrayInputStream(jpegData))));
+    }
+}
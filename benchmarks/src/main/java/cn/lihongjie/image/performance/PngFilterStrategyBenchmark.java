@@ -0,0 +1,54 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.png.PngEncoder;
+import cn.lihongjie.image.png.PngFilterStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for PNG scanline filter strategies
+ *
+ * Times a single-threaded encode of the {@link BenchmarkImages} PNGs with every {@link PngFilterStrategy}
+ * at a fast and the default deflate level. The encoded size is printed once per trial,
+ * so each result line gives one point of the bytes-vs-time frontier.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar PngFilterStrategyBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+public class PngFilterStrategyBenchmark {
+
+    @Param({BenchmarkImages.SMALL_PNG, BenchmarkImages.MEDIUM_PNG})
+    public String image;
+
+    @Param({"NONE", "SUB", "UP", "AVERAGE", "PAETH", "MIN_SUM", "ENTROPY"})
+    public PngFilterStrategy strategy;
+
+    @Param({"1", "6"})
+    public int level;
+
+    private PixelImage pixels;
+    private PngEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        byte[] data = BenchmarkImages.load(image);
+        pixels = PixelImage.fromBufferedImage(ImageIO.read(new ByteArrayInputStream(data)));
+        encoder = new PngEncoder(level).withFilterStrategy(strategy);
+        System.out.println(image + " " + strategy + " level " + level + ": " + encoder.encode(pixels).length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encoder.encode(pixels);
+    }
+}
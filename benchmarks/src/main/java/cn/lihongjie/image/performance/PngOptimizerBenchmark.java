@@ -0,0 +1,56 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.png.OptimizedPng;
+import cn.lihongjie.image.png.PngEncoder;
+import cn.lihongjie.image.png.PngOptimizer;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the exhaustive "max compression" PNG mode
+ *
+ * Times {@link PngOptimizer} on the {@link BenchmarkImages} PNGs under a few time budgets, using all
+ * available processors. The winning combination and its size, next to the default
+ * encoder's size, are printed once per trial.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar PngOptimizerBenchmark
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class PngOptimizerBenchmark {
+
+    @Param({BenchmarkImages.SMALL_PNG, BenchmarkImages.MEDIUM_PNG})
+    public String image;
+
+    @Param({"0", "2000", "10000"})
+    public long budgetMillis;
+
+    private PixelImage pixels;
+    private PngOptimizer optimizer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        byte[] data = BenchmarkImages.load(image);
+        pixels = PixelImage.fromBufferedImage(ImageIO.read(new ByteArrayInputStream(data)));
+        optimizer = new PngOptimizer()
+                .withParallelism(Runtime.getRuntime().availableProcessors())
+                .withTimeBudget(budgetMillis);
+        OptimizedPng best = optimizer.optimize(pixels);
+        System.out.println(image + " budget " + budgetMillis + " ms: " + best
+                + ", default encoder " + new PngEncoder().encode(pixels).length + " bytes");
+    }
+
+    @Benchmark
+    public OptimizedPng optimize() {
+        return optimizer.optimize(pixels);
+    }
+}
@@ -0,0 +1,85 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.png.PngEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the lossless PNG color reduction pass
+ *
+ * Encodes reducible variants of the {@link BenchmarkImages#MEDIUM_PNG} photo with the reduction on and off:
+ * the photo stored as opaque RGBA, its luma stored as RGB, and its luma posterized to
+ * 16 levels stored as RGBA. The plain RGB photo shows the cost of the analysis when
+ * nothing can be reduced. Encoded sizes are printed once per trial.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar PngReductionBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+public class PngReductionBenchmark {
+
+    @Param({"rgb", "opaque-rgba", "gray-as-rgb", "16-gray-as-rgba"})
+    public String variant;
+
+    @Param({"true", "false"})
+    public boolean reduction;
+
+    private PixelImage pixels;
+    private PngEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        PixelImage photo = PixelImage.fromBufferedImage(
+                ImageIO.read(new ByteArrayInputStream(BenchmarkImages.load(BenchmarkImages.MEDIUM_PNG))));
+        pixels = variant(photo, variant);
+        encoder = new PngEncoder().withColorReduction(reduction);
+        System.out.println(variant + " reduction " + reduction + ": " + encoder.encode(pixels).length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encoder.encode(pixels);
+    }
+
+    private static PixelImage variant(PixelImage photo, String variant) {
+        if ("rgb".equals(variant)) {
+            return photo;
+        }
+        int channels = variant.endsWith("rgba") ? 4 : 3;
+        int pixelCount = photo.getWidth() * photo.getHeight();
+        byte[] rgb = photo.getPixels();
+        PixelImage image = PixelImage.allocate(photo.getWidth(), photo.getHeight(), channels);
+        byte[] out = image.getPixels();
+        for (int i = 0; i < pixelCount; i++) {
+            int r = rgb[i * 3] & 0xFF;
+            int g = rgb[i * 3 + 1] & 0xFF;
+            int b = rgb[i * 3 + 2] & 0xFF;
+            if ("opaque-rgba".equals(variant)) {
+                out[i * 4] = (byte) r;
+                out[i * 4 + 1] = (byte) g;
+                out[i * 4 + 2] = (byte) b;
+            } else {
+                int y = (r * 77 + g * 150 + b * 29) >> 8;
+                if (variant.startsWith("16")) {
+                    y = y / 17 * 17;
+                }
+                out[i * channels] = (byte) y;
+                out[i * channels + 1] = (byte) y;
+                out[i * channels + 2] = (byte) y;
+            }
+            if (channels == 4) {
+                out[i * 4 + 3] = (byte) 0xFF;
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,75 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.ImageOps;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import cn.lihongjie.image.jpeg.ScanScript;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks comparing progressive and baseline JPEG encoding
+ *
+ * Encodes the small and medium {@link BenchmarkImages} JPEGs at quality 75, scaled to a longest side of
+ * 400 and 1200 pixels and at full size, as baseline with standard and optimized
+ * Huffman tables and as progressive with the {@link ScanScript#SIMPLE} and
+ * {@link ScanScript#SPECTRAL} scripts. Encoded sizes are printed once per trial.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar ProgressiveJpegBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+public class ProgressiveJpegBenchmark {
+
+    @Param({BenchmarkImages.SMALL_JPEG, BenchmarkImages.MEDIUM_JPEG})
+    public String image;
+
+    /** Longest side in pixels, 0 for the original size */
+    @Param({"400", "1200", "0"})
+    public int size;
+
+    @Param({"baseline", "baseline-optimized", "progressive-simple", "progressive-spectral"})
+    public String mode;
+
+    private PixelImage pixels;
+    private JpegEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        PixelImage photo = JavaImageEngine.decode(BenchmarkImages.load(image));
+        if (size > 0) {
+            double scale = (double) size / Math.max(photo.getWidth(), photo.getHeight());
+            photo = ImageOps.resize(photo, (int) Math.round(photo.getWidth() * scale),
+                    (int) Math.round(photo.getHeight() * scale));
+        }
+        pixels = photo;
+        encoder = encoder(mode);
+        System.out.println(image + " " + pixels.getWidth() + "x" + pixels.getHeight() + " " + mode + ": "
+                + encoder.encode(pixels).length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encoder.encode(pixels);
+    }
+
+    private static JpegEncoder encoder(String mode) {
+        switch (mode) {
+            case "baseline-optimized":
+                return new JpegEncoder(75, ChromaSubsampling.YUV420, true);
+            case "progressive-simple":
+                return new JpegEncoder(75).withScanScript(ScanScript.SIMPLE);
+            case "progressive-spectral":
+                return new JpegEncoder(75).withScanScript(ScanScript.SPECTRAL);
+            default:
+                return new JpegEncoder(75);
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package cn.lihongjie.image.performance;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Rate–distortion points of a quality sweep, with their Pareto frontiers
+ *
+ * Every point is one encoder at one quality on one image: output size, encode time
+ * and the PSNR and SSIM of the decoded output against the original. Per image, a point
+ * is on the size frontier of a metric when no other point of any encoder is at most as
+ * large and at least as good with one of the two strictly better; it is on the size–time
+ * frontier when no other point is at least as good on size, encode time and SSIM at once.
+ * Operating points worth considering are on a frontier; the others are beaten outright.
+ *
+ * Results are written as CSV (one row per point), JSON (points with the environment of
+ * {@link BenchmarkResults}) and a self-contained HTML page with one SVG chart of bits per
+ * pixel against SSIM and against PSNR per image.
+ *
+ * Usage:
+ * <pre>
+ * RateDistortion sweep = new RateDistortion();
+ * sweep.add(new RateDistortion.Point("photo", 6_000_000, "java", 75, 812_345, 41.2, 38.9, 0.962));
+ * sweep.writeCsv(Paths.get("target/rate-distortion.csv"));
+ * </pre>
+ */
+public final class RateDistortion {
+
+    /** Frontier of size against PSNR */
+    public static final ToDoubleFunction<Point> PSNR = Point::getPsnr;
+    /** Frontier of size against SSIM */
+    public static final ToDoubleFunction<Point> SSIM = Point::getSsim;
+
+    private static final String[] COLORS = {
+            "#1f77b4", "#ff7f0e", "#2ca02c", "#d62728", "#9467bd", "#8c564b", "#e377c2", "#7f7f7f"};
+
+    private final Map<String, String> environment;
+    private final List<Point> points = new ArrayList<>();
+
+    public RateDistortion() {
+        this(BenchmarkResults.captureEnvironment());
+    }
+
+    public RateDistortion(Map<String, String> environment) {
+        this.environment = Collections.unmodifiableMap(new LinkedHashMap<>(environment));
+    }
+
+    public void add(Point point) {
+        points.add(point);
+    }
+
+    public List<Point> getPoints() {
+        return Collections.unmodifiableList(points);
+    }
+
+    /**
+     * @return Image names in the order their first point was added
+     */
+    public List<String> getImages() {
+        Set<String> images = new LinkedHashSet<>();
+        points.forEach(point -> images.add(point.getImage()));
+        return new ArrayList<>(images);
+    }
+
+    /**
+     * @param image  Image name
+     * @param metric {@link #PSNR}, {@link #SSIM} or another higher-is-better quality measure
+     * @return Points of the image not dominated in size and the metric, by increasing size
+     */
+    public List<Point> frontier(String image, ToDoubleFunction<Point> metric) {
+        List<Point> sorted = pointsOf(image);
+        // By size, and the best quality first among equal sizes
+        sorted.sort(Comparator.comparingLong(Point::getBytes)
+                .thenComparing(Comparator.comparingDouble(metric).reversed()));
+        List<Point> frontier = new ArrayList<>();
+        double best = Double.NEGATIVE_INFINITY;
+        for (Point point : sorted) {
+            double quality = metric.applyAsDouble(point);
+            if (quality > best) {
+                frontier.add(point);
+                best = quality;
+            }
+        }
+        return frontier;
+    }
+
+    /**
+     * @param image Image name
+     * @return Points of the image not dominated in size, encode time and SSIM together, by increasing size
+     */
+    public List<Point> timeFrontier(String image) {
+        List<Point> candidates = pointsOf(image);
+        List<Point> frontier = new ArrayList<>();
+        for (Point point : candidates) {
+            boolean dominated = false;
+            for (Point other : candidates) {
+                if (other != point && other.getBytes() <= point.getBytes()
+                        && other.getEncodeMillis() <= point.getEncodeMillis() && other.getSsim() >= point.getSsim()
+                        && (other.getBytes() < point.getBytes() || other.getEncodeMillis() < point.getEncodeMillis()
+                        || other.getSsim() > point.getSsim())) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated) {
+                frontier.add(point);
+            }
+        }
+        frontier.sort(Comparator.comparingLong(Point::getBytes));
+        return frontier;
+    }
+
+    private List<Point> pointsOf(String image) {
+        return points.stream().filter(point -> point.getImage().equals(image)).collect(Collectors.toList());
+    }
+
+    /**
+     * Writes one row per point, with columns telling which frontiers it is on
+     */
+    public void writeCsv(Path file) throws IOException {
+        Map<String, Set<Point>> onPsnr = frontiers(PSNR);
+        Map<String, Set<Point>> onSsim = frontiers(SSIM);
+        Map<String, Set<Point>> onTime = new LinkedHashMap<>();
+        getImages().forEach(image -> onTime.put(image, new LinkedHashSet<>(timeFrontier(image))));
+        StringBuilder csv = new StringBuilder(
+                "image,engine,quality,bytes,bpp,encode_ms,psnr_db,ssim,frontier_psnr,frontier_ssim,frontier_ssim_time\n");
+        for (Point point : points) {
+            csv.append(csvField(point.getImage())).append(',').append(csvField(point.getEngine())).append(',')
+                    .append(point.getQuality()).append(',').append(point.getBytes()).append(',')
+                    .append(format(point.getBitsPerPixel(), 4)).append(',').append(format(point.getEncodeMillis(), 3))
+                    .append(',').append(format(point.getPsnr(), 3)).append(',').append(format(point.getSsim(), 5))
+                    .append(',').append(onPsnr.get(point.getImage()).contains(point))
+                    .append(',').append(onSsim.get(point.getImage()).contains(point))
+                    .append(',').append(onTime.get(point.getImage()).contains(point)).append('\n');
+        }
+        write(file, csv.toString());
+    }
+
+    /**
+     * Writes the environment, all points and the frontiers as indexes into the points
+     */
+    public void writeJson(Path file) throws IOException {
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("environment", new LinkedHashMap<>(environment));
+        List<Object> pointList = new ArrayList<>();
+        for (Point point : points) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("image", point.getImage());
+            entry.put("pixels", point.getPixels());
+            entry.put("engine", point.getEngine());
+            entry.put("quality", point.getQuality());
+            entry.put("bytes", point.getBytes());
+            entry.put("encodeMillis", point.getEncodeMillis());
+            entry.put("psnr", point.getPsnr());
+            entry.put("ssim", point.getSsim());
+            pointList.add(entry);
+        }
+        root.put("points", pointList);
+        Map<String, Object> frontiers = new LinkedHashMap<>();
+        for (String image : getImages()) {
+            Map<String, Object> ofImage = new LinkedHashMap<>();
+            ofImage.put("psnr", indexes(frontier(image, PSNR)));
+            ofImage.put("ssim", indexes(frontier(image, SSIM)));
+            ofImage.put("ssimTime", indexes(timeFrontier(image)));
+            frontiers.put(image, ofImage);
+        }
+        root.put("frontiers", frontiers);
+        write(file, Json.write(root));
+    }
+
+    /**
+     * Writes a page with an SSIM and a PSNR chart per image: one line per encoder through
+     * its qualities, the frontier as a dashed line, and the frontier points in a table
+     */
+    public void writeHtml(Path file) throws IOException {
+        List<String> engines = new ArrayList<>(new LinkedHashSet<>(
+                points.stream().map(Point::getEngine).collect(Collectors.toList())));
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>Rate-distortion report</title>\n")
+                .append("<style>body{font-family:sans-serif;margin:24px}table{border-collapse:collapse;margin-bottom:32px}")
+                .append("td,th{border:1px solid #ccc;padding:2px 8px;text-align:right}svg{margin-right:16px}</style>\n")
+                .append("</head>\n<body>\n<h1>Rate-distortion report</h1>\n<p>");
+        environment.forEach((key, value) -> html.append(escape(key)).append(": ").append(escape(value)).append("<br>"));
+        html.append("</p>\n<p>");
+        for (int i = 0; i < engines.size(); i++) {
+            html.append("<span style=\"color:").append(color(i)).append("\">&#9632; ").append(escape(engines.get(i)))
+                    .append("</span> ");
+        }
+        html.append("&#8211; &#8211; Pareto frontier</p>\n");
+        for (String image : getImages()) {
+            html.append("<h2>").append(escape(image)).append("</h2>\n");
+            html.append(chart(image, engines, SSIM, "SSIM"));
+            html.append(chart(image, engines, PSNR, "PSNR (dB)"));
+            html.append("\n<table>\n<tr><th>engine</th><th>quality</th><th>bytes</th><th>bpp</th><th>encode ms</th>")
+                    .append("<th>PSNR dB</th><th>SSIM</th></tr>\n");
+            for (Point point : frontier(image, SSIM)) {
+                html.append("<tr><td>").append(escape(point.getEngine())).append("</td><td>").append(point.getQuality())
+                        .append("</td><td>").append(point.getBytes()).append("</td><td>")
+                        .append(format(point.getBitsPerPixel(), 3)).append("</td><td>")
+                        .append(format(point.getEncodeMillis(), 1)).append("</td><td>")
+                        .append(format(point.getPsnr(), 2)).append("</td><td>").append(format(point.getSsim(), 4))
+                        .append("</td></tr>\n");
+            }
+            html.append("</table>\n");
+        }
+        html.append("</body>\n</html>\n");
+        write(file, html.toString());
+    }
+
+    private String chart(String image, List<String> engines, ToDoubleFunction<Point> metric, String label) {
+        int width = 560;
+        int height = 360;
+        int left = 60;
+        int right = 16;
+        int top = 16;
+        int bottom = 44;
+        List<Point> ofImage = pointsOf(image);
+        double maxX = ofImage.stream().mapToDouble(Point::getBitsPerPixel).max().orElse(1);
+        // Lossless points have infinite PSNR; they are drawn on the top edge
+        double minY = ofImage.stream().mapToDouble(metric).filter(Double::isFinite).min().orElse(0);
+        double maxY = ofImage.stream().mapToDouble(metric).filter(Double::isFinite).max().orElse(1);
+        if (maxY <= minY) {
+            maxY = minY + 1;
+        }
+        double spanY = maxY - minY;
+        double lowY = minY - spanY * 0.05;
+        double highY = maxY + spanY * 0.05;
+        double plotWidth = width - left - right;
+        double plotHeight = height - top - bottom;
+        ToDoubleFunction<Point> px = point -> left + point.getBitsPerPixel() / (maxX * 1.05) * plotWidth;
+        ToDoubleFunction<Point> py = point -> {
+            double value = Math.min(metric.applyAsDouble(point), highY);
+            return top + (highY - value) / (highY - lowY) * plotHeight;
+        };
+
+        StringBuilder svg = new StringBuilder();
+        svg.append(String.format(Locale.ROOT, "<svg width=\"%d\" height=\"%d\" viewBox=\"0 0 %d %d\">", width, height,
+                width, height));
+        svg.append(String.format(Locale.ROOT,
+                "<rect x=\"%d\" y=\"%d\" width=\"%.0f\" height=\"%.0f\" fill=\"none\" stroke=\"#888\"/>",
+                left, top, plotWidth, plotHeight));
+        for (int tick = 0; tick <= 4; tick++) {
+            double x = left + tick / 4.0 * plotWidth;
+            double y = top + tick / 4.0 * plotHeight;
+            svg.append(String.format(Locale.ROOT,
+                    "<text x=\"%.1f\" y=\"%d\" font-size=\"11\" text-anchor=\"middle\">%.2f</text>",
+                    x, top + (int) plotHeight + 14, maxX * 1.05 * tick / 4));
+            svg.append(String.format(Locale.ROOT,
+                    "<text x=\"%d\" y=\"%.1f\" font-size=\"11\" text-anchor=\"end\">%s</text>",
+                    left - 4, y + 4, format(highY - (highY - lowY) * tick / 4, spanY < 0.1 ? 4 : 2)));
+        }
+        svg.append(String.format(Locale.ROOT,
+                "<text x=\"%.1f\" y=\"%d\" font-size=\"12\" text-anchor=\"middle\">bits per pixel</text>",
+                left + plotWidth / 2, height - 8));
+        svg.append(String.format(Locale.ROOT,
+                "<text x=\"14\" y=\"%.1f\" font-size=\"12\" text-anchor=\"middle\" transform=\"rotate(-90 14 %.1f)\">%s</text>",
+                top + plotHeight / 2, top + plotHeight / 2, escape(label)));
+
+        for (int e = 0; e < engines.size(); e++) {
+            String engine = engines.get(e);
+            List<Point> curve = ofImage.stream().filter(point -> point.getEngine().equals(engine))
+                    .sorted(Comparator.comparingInt(Point::getQuality)).collect(Collectors.toList());
+            svg.append(polyline(curve, px, py, color(e), "1.5", null));
+            for (Point point : curve) {
+                svg.append(String.format(Locale.ROOT,
+                        "<circle cx=\"%.1f\" cy=\"%.1f\" r=\"3\" fill=\"%s\"><title>%s q%d: %d bytes, %.1f ms, "
+                                + "PSNR %s dB, SSIM %s</title></circle>",
+                        px.applyAsDouble(point), py.applyAsDouble(point), color(e), escape(engine), point.getQuality(),
+                        point.getBytes(), point.getEncodeMillis(), format(point.getPsnr(), 2),
+                        format(point.getSsim(), 4)));
+            }
+        }
+        svg.append(polyline(frontier(image, metric), px, py, "#000", "2", "6 4"));
+        return svg.append("</svg>").toString();
+    }
+
+    private static String polyline(List<Point> line, ToDoubleFunction<Point> px, ToDoubleFunction<Point> py,
+                                   String color, String strokeWidth, String dash) {
+        StringBuilder coordinates = new StringBuilder();
+        for (Point point : line) {
+            coordinates.append(String.format(Locale.ROOT, "%.1f,%.1f ", px.applyAsDouble(point), py.applyAsDouble(point)));
+        }
+        return "<polyline fill=\"none\" stroke=\"" + color + "\" stroke-width=\"" + strokeWidth + "\""
+                + (dash == null ? "" : " stroke-dasharray=\"" + dash + "\"") + " points=\""
+                + coordinates.toString().trim() + "\"/>";
+    }
+
+    private Map<String, Set<Point>> frontiers(ToDoubleFunction<Point> metric) {
+        Map<String, Set<Point>> frontiers = new LinkedHashMap<>();
+        getImages().forEach(image -> frontiers.put(image, new LinkedHashSet<>(frontier(image, metric))));
+        return frontiers;
+    }
+
+    private List<Object> indexes(List<Point> frontier) {
+        List<Object> indexes = new ArrayList<>();
+        for (Point point : frontier) {
+            indexes.add(points.indexOf(point));
+        }
+        return indexes;
+    }
+
+    private static String color(int index) {
+        return COLORS[index % COLORS.length];
+    }
+
+    private static String format(double value, int decimals) {
+        if (!Double.isFinite(value)) {
+            return value > 0 ? "inf" : String.valueOf(value);
+        }
+        return String.format(Locale.ROOT, "%." + decimals + "f", value);
+    }
+
+    private static String csvField(String value) {
+        if (value.contains(",") || value.contains("\"")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * One encoder at one quality on one image
+     */
+    public static final class Point {
+
+        private final String image;
+        private final long pixels;
+        private final String engine;
+        private final int quality;
+        private final long bytes;
+        private final double encodeMillis;
+        private final double psnr;
+        private final double ssim;
+
+        /**
+         * @param image        Image name
+         * @param pixels       Width times height of the image
+         * @param engine       Encoder name
+         * @param quality      Quality setting of the encoder
+         * @param bytes        Encoded size
+         * @param encodeMillis Encode time in milliseconds
+         * @param psnr         PSNR of the decoded output in dB
+         * @param ssim         SSIM of the decoded output
+         */
+        public Point(String image, long pixels, String engine, int quality, long bytes, double encodeMillis,
+                     double psnr, double ssim) {
+            if (pixels <= 0 || bytes <= 0) {
+                throw new IllegalArgumentException("Pixels and bytes must be positive, got " + pixels + " and " + bytes);
+            }
+            this.image = image;
+            this.pixels = pixels;
+            this.engine = engine;
+            this.quality = quality;
+            this.bytes = bytes;
+            this.encodeMillis = encodeMillis;
+            this.psnr = psnr;
+            this.ssim = ssim;
+        }
+
+        public double getBitsPerPixel() {
+            return bytes * 8.0 / pixels;
+        }
+
+        public String getImage() {
+            return image;
+        }
+
+        public long getPixels() {
+            return pixels;
+        }
+
+        public String getEngine() {
+            return engine;
+        }
+
+        public int getQuality() {
+            return quality;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getEncodeMillis() {
+            return encodeMillis;
+        }
+
+        public double getPsnr() {
+            return psnr;
+        }
+
+        public double getSsim() {
+            return ssim;
+        }
+
+        @Override
+        public String toString() {
+            return image + " " + engine + " q" + quality + ": " + bytes + " B, " + format(encodeMillis, 1) + " ms, PSNR "
+                    + format(psnr, 2) + " dB, SSIM " + format(ssim, 4);
+        }
+    }
+}
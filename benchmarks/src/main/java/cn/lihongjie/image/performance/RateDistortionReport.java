@@ -0,0 +1,168 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.CompressOptions;
+import cn.lihongjie.image.ImageFormat;
+import cn.lihongjie.image.ImageQuality;
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Rate–distortion sweep of every engine and mode over a set of images
+ *
+ * For each image, every engine compresses it at every quality; the compress call is
+ * timed (median of the runs after one warmup) and its output decoded and compared with
+ * the decoded original by PSNR and SSIM ({@link ImageQuality}, computed in parallel).
+ * The points and their Pareto frontiers are written by {@link RateDistortion} as
+ * {@code rate-distortion.csv}, {@code .json} and {@code .html}, and the size–SSIM
+ * frontier of every image is printed.
+ *
+ * Engines are those of {@link ImageTask} (native, native-fast, java, imageio) plus the
+ * pure-Java modes java-progressive and java-trellis (progressive scans, and trellis
+ * quantization with optimized Huffman tables), which only apply to JPEG input. An engine
+ * that fails on an image, such as native without the library, is skipped for it. Images
+ * are paths of JPEG or PNG files, or {@link ImageCorpus} specs such as {@code photo:2mp}.
+ *
+ * Options (defaults in brackets):
+ * - -images list [photo:3400x2265:progressive,photo:2mp,screenshot:1280x720:png]
+ * - -engines list [native,native-fast,java,java-progressive,java-trellis,imageio]
+ * - -qualities list [10,20,30,40,50,60,70,75,80,85,90,95]
+ * - -runs n timed compress calls per point [3]
+ * - -out directory [target/rate-distortion]
+ *
+ * Usage:
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar rate-distortion
+ * java -jar benchmarks/target/benchmarks.jar rate-distortion -images photo:6mp -engines native,java-trellis -runs 5
+ * java -jar benchmarks/target/benchmarks.jar rate-distortion -images photos/portrait.jpg,photos/logo.png
+ * </pre>
+ */
+public final class RateDistortionReport {
+
+    private static final List<String> JPEG_ONLY = Arrays.asList("java-progressive", "java-trellis");
+
+    private RateDistortionReport() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        options.put("images", BenchmarkImages.SMALL_JPEG + ",photo:2mp,screenshot:1280x720:png");
+        options.put("engines", "native,native-fast,java,java-progressive,java-trellis,imageio");
+        options.put("qualities", "10,20,30,40,50,60,70,75,80,85,90,95");
+        options.put("runs", "3");
+        options.put("out", "target/rate-distortion");
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i].startsWith("-") ? args[i].substring(1) : "";
+            if (i + 1 >= args.length || !options.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown or incomplete option: " + args[i]);
+            }
+            options.put(name, args[++i]);
+        }
+        int runs = Integer.parseInt(options.get("runs"));
+        List<Integer> qualities = new ArrayList<>();
+        for (String quality : options.get("qualities").split(",")) {
+            qualities.add(Integer.parseInt(quality.trim()));
+        }
+        String[] engines = options.get("engines").split(",");
+        for (String engine : engines) {
+            encoder(engine.trim(), 75);
+        }
+
+        PrintStream out = System.out;
+        RateDistortion sweep = new RateDistortion();
+        for (String imageName : options.get("images").split(",")) {
+            String name = imageName.trim();
+            byte[] input = load(name);
+            PixelImage original = decode(input);
+            long pixels = (long) original.getWidth() * original.getHeight();
+            boolean jpeg = ImageFormat.detect(input) == ImageFormat.JPEG;
+            out.printf("%s: %dx%d %s, %d bytes%n", name, original.getWidth(), original.getHeight(),
+                    ImageFormat.detect(input), input.length);
+            for (String engineName : engines) {
+                String engine = engineName.trim();
+                if (!jpeg && JPEG_ONLY.contains(engine)) {
+                    continue;
+                }
+                List<RateDistortion.Point> curve = new ArrayList<>();
+                try {
+                    for (int quality : qualities) {
+                        ImageTask task = encoder(engine, quality);
+                        BenchmarkResults.Timing timing = BenchmarkResults.time(1, runs, () -> task.apply(input));
+                        PixelImage decoded = decode(timing.getOutput());
+                        curve.add(new RateDistortion.Point(name, pixels, engine, quality, timing.getOutput().length,
+                                timing.median(), ImageQuality.psnr(original, decoded),
+                                ImageQuality.ssim(original, decoded)));
+                    }
+                    curve.forEach(sweep::add);
+                    out.printf("  %s: %d qualities%n", engine, qualities.size());
+                } catch (Exception | LinkageError e) {
+                    out.printf("  %s: skipped (%s)%n", engine, e.getMessage());
+                }
+            }
+        }
+
+        out.println();
+        for (String image : sweep.getImages()) {
+            out.printf("Size-SSIM frontier of %s:%n", image);
+            for (RateDistortion.Point point : sweep.frontier(image, RateDistortion.SSIM)) {
+                out.printf(Locale.ROOT, "  %-18s q%-3d %10d bytes %7.3f bpp %9.1f ms  PSNR %6.2f dB  SSIM %.4f%n",
+                        point.getEngine(), point.getQuality(), point.getBytes(), point.getBitsPerPixel(),
+                        point.getEncodeMillis(), point.getPsnr(), point.getSsim());
+            }
+        }
+        Path dir = Paths.get(options.get("out"));
+        sweep.writeCsv(dir.resolve("rate-distortion.csv"));
+        sweep.writeJson(dir.resolve("rate-distortion.json"));
+        sweep.writeHtml(dir.resolve("rate-distortion.html"));
+        out.println("Report written to " + dir.toAbsolutePath().resolve("rate-distortion.html"));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the engine is unknown
+     */
+    static ImageTask encoder(String engine, int quality) {
+        switch (engine) {
+            case "java-progressive": {
+                CompressOptions options = new CompressOptions().withQuality(quality).withProgressive(true);
+                return image -> JavaImageEngine.compress(image, options);
+            }
+            case "java-trellis": {
+                CompressOptions options = new CompressOptions().withQuality(quality).withOptimizeHuffman(true)
+                        .withTrellisQuantization(true);
+                return image -> JavaImageEngine.compress(image, options);
+            }
+            default:
+                return ImageTask.of(engine, "compress", quality);
+        }
+    }
+
+    private static byte[] load(String name) throws IOException {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".png")) {
+            return Files.readAllBytes(Paths.get(name));
+        }
+        return ImageCorpus.load(ImageCorpus.Spec.parse(name));
+    }
+
+    /**
+     * Decodes with the pure-Java decoder, falling back to ImageIO for what it does not support
+     */
+    private static PixelImage decode(byte[] image) throws IOException {
+        try {
+            return JavaImageEngine.decode(image);
+        } catch (IllegalArgumentException e) {
+            return PixelImage.fromBufferedImage(ImageTask.read(image));
+        }
+    }
+}
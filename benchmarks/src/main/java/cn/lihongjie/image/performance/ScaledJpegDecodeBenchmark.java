@@ -0,0 +1,69 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.ImageOps;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.JpegDecoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for reduced-size JPEG decoding
+ *
+ * Measures decoding the {@link BenchmarkImages} JPEGs at 1/1, 1/2, 1/4 and 1/8 scale, and the full
+ * thumbnail path (decode + resize to a 256px preview + JPEG encode) with and without
+ * the scaled decode. Run with "-prof gc" to see the allocation savings as well.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar ScaledJpegDecodeBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class ScaledJpegDecodeBenchmark {
+
+    private static final int PREVIEW_SIZE = 256;
+
+    @Param({BenchmarkImages.SMALL_JPEG, BenchmarkImages.MEDIUM_JPEG})
+    public String image;
+
+    @Param({"1", "2", "4", "8"})
+    public int scale;
+
+    private byte[] jpegData;
+    private JpegDecoder decoder;
+    private int previewWidth;
+    private int previewHeight;
+
+    @Setup
+    public void setup() throws IOException {
+        jpegData = BenchmarkImages.load(image);
+        decoder = new JpegDecoder().withScale(scale);
+        PixelImage full = new JpegDecoder().withScale(8).decode(jpegData);
+        // Fit the preview into PREVIEW_SIZE x PREVIEW_SIZE keeping the aspect ratio
+        double ratio = Math.min((double) PREVIEW_SIZE / full.getWidth(), (double) PREVIEW_SIZE / full.getHeight());
+        previewWidth = Math.max(1, (int) Math.round(full.getWidth() * ratio));
+        previewHeight = Math.max(1, (int) Math.round(full.getHeight() * ratio));
+    }
+
+    @Benchmark
+    public PixelImage decodeAtScale() {
+        return decoder.decode(jpegData);
+    }
+
+    @Benchmark
+    public byte[] previewFromFullDecode() {
+        PixelImage full = new JpegDecoder().decode(jpegData);
+        return JavaImageEngine.encodeJpeg(ImageOps.resize(full, previewWidth, previewHeight), 80);
+    }
+
+    @Benchmark
+    public byte[] previewFromScaledDecode() {
+        PixelImage reduced = new JpegDecoder().decodeAtLeast(jpegData, previewWidth, previewHeight);
+        return JavaImageEngine.encodeJpeg(ImageOps.resize(reduced, previewWidth, previewHeight), 80);
+    }
+}
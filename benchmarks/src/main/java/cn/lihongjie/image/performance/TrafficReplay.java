@@ -0,0 +1,324 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.CompressOptions;
+import cn.lihongjie.image.FastImageUtils;
+import cn.lihongjie.image.ImageFormat;
+import cn.lihongjie.image.LosslessPass;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.JpegLosslessOptimizer;
+import cn.lihongjie.image.performance.BenchmarkResults.Metric;
+import cn.lihongjie.image.trace.TraceParameters;
+import cn.lihongjie.image.trace.TraceRecord;
+import cn.lihongjie.image.trace.TrafficRecorder;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Replays a traffic trace recorded by {@link TrafficRecorder} against an engine
+ *
+ * Every successful call of the trace is issued again by {@link LoadGenerator#replay(List)}
+ * at its original offset divided by the speed factor, so the replay reproduces the
+ * arrival pattern, operation mix and image shapes of the recorded traffic. Inputs stored
+ * by the recorder are used as they are; for the others an image with the same format and
+ * dimensions is synthesized from the {@link ImageCorpus} photo generator, unless
+ * {@code -stored-only} is given. Recorded parameters can be overridden to try another
+ * configuration on the same traffic.
+ *
+ * Operations are mapped onto the engine: {@code compress}, {@code compress-jpeg-fast}
+ * and {@code compress-options} compress at the recorded quality ({@code compress-options}
+ * with all recorded options when the engine is java, {@code compress-jpeg-fast} with
+ * compressJpegFast when the engine is native), {@code rotate} rotates by the
+ * recorded angle, and {@code optimize-lossless} and the lossless passes always run the
+ * pure-Java optimizer with its default metadata policy.
+ *
+ * The report puts the recorded duration of each operation next to the replay latency
+ * (from the intended start, including queueing) and service time, and the recorded
+ * throughput next to the offered and achieved replay throughput.
+ *
+ * Options (defaults in brackets):
+ * - -inputs directory: inputs stored by the recorder
+ * - -engine native|native-fast|java|imageio [java]
+ * - -speed factor [1]: 2 replays the trace in half the time
+ * - -threads n [available processors]
+ * - -set key=value[;key=value...]: override recorded parameters, such as quality=70
+ * - -stored-only: skip calls whose input was not stored
+ * - -warmup seconds of replay time not measured [0], -drain seconds [60]
+ * - -save file.json: percentiles and throughput as {@link BenchmarkResults}
+ *
+ * Usage:
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar replay trace.tsv -inputs inputs -engine native
+ * java -jar benchmarks/target/benchmarks.jar replay trace.tsv -speed 4 -set quality=70 -save results/q70.json
+ * </pre>
+ */
+public final class TrafficReplay {
+
+    private TrafficReplay() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || args[0].startsWith("-")) {
+            throw new IllegalArgumentException("Usage: replay trace.tsv [options]");
+        }
+        Map<String, String> options = new HashMap<>();
+        options.put("engine", "java");
+        options.put("speed", "1");
+        options.put("threads", Integer.toString(Runtime.getRuntime().availableProcessors()));
+        options.put("set", "");
+        options.put("warmup", "0");
+        options.put("drain", "60");
+        boolean storedOnly = false;
+        for (int i = 1; i < args.length; i++) {
+            String name = args[i].startsWith("-") ? args[i].substring(1) : "";
+            if (name.equals("stored-only")) {
+                storedOnly = true;
+                continue;
+            }
+            if (i + 1 >= args.length || !(options.containsKey(name) || name.equals("inputs") || name.equals("save"))) {
+                throw new IllegalArgumentException("Unknown or incomplete option: " + args[i]);
+            }
+            options.put(name, args[++i]);
+        }
+        double speed = Double.parseDouble(options.get("speed"));
+        if (!(speed > 0) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("Speed must be positive, got " + speed);
+        }
+        String engine = options.get("engine");
+        Map<String, String> overrides = parseParameters(options.get("set"));
+        Path inputs = options.containsKey("inputs") ? Paths.get(options.get("inputs")) : null;
+
+        Path trace = Paths.get(args[0]);
+        List<TraceRecord> records = TraceRecord.read(trace);
+        if (records.isEmpty()) {
+            throw new IllegalArgumentException("Trace has no records: " + trace);
+        }
+        long first = records.stream().mapToLong(TraceRecord::getOffsetMicros).min().getAsLong();
+        long last = records.stream().mapToLong(TraceRecord::getOffsetMicros).max().getAsLong();
+
+        Map<String, byte[]> inputCache = new HashMap<>();
+        Map<String, Histogram> original = new LinkedHashMap<>();
+        List<LoadGenerator.Arrival> arrivals = new ArrayList<>();
+        int failed = 0;
+        int missing = 0;
+        int stored = 0;
+        long lastReplayed = first;
+        for (TraceRecord record : records) {
+            if (!record.isOk()) {
+                failed++;
+                continue;
+            }
+            byte[] input = storedInput(inputs, record);
+            if (input != null) {
+                stored++;
+            } else if (storedOnly || !canSynthesize(record)) {
+                missing++;
+                continue;
+            } else {
+                String key = record.getFormat() + ":" + record.getWidth() + "x" + record.getHeight();
+                input = inputCache.computeIfAbsent(key, k -> synthesize(record));
+            }
+            Map<String, String> parameters = new LinkedHashMap<>(record.getParameters());
+            parameters.putAll(overrides);
+            ImageTask task = task(engine, record.getOperation(), parameters);
+            byte[] image = input;
+            LoadGenerator.Request request = new LoadGenerator.Request(record.getOperation(), 1, () -> task.apply(image));
+            long offsetNanos = (long) ((record.getOffsetMicros() - first) * 1000 / speed);
+            arrivals.add(new LoadGenerator.Arrival(offsetNanos, request));
+            lastReplayed = Math.max(lastReplayed, record.getOffsetMicros());
+            original.computeIfAbsent(record.getOperation(), k -> new Histogram(3))
+                    .recordValue(Math.max(1, record.getDurationMicros()));
+        }
+        if (arrivals.isEmpty()) {
+            throw new IllegalArgumentException("No replayable records in " + trace);
+        }
+
+        PrintStream out = System.out;
+        double traceSeconds = (last - first) / 1e6;
+        out.printf(Locale.ROOT, "Trace %s: %d calls over %.1f s%n", trace, records.size(), traceSeconds);
+        out.printf(Locale.ROOT, "Replaying %d calls at %sx on engine %s with %s thread(s)%s%n", arrivals.size(),
+                options.get("speed"), engine, options.get("threads"),
+                overrides.isEmpty() ? "" : ", overriding " + options.get("set"));
+        out.printf("Inputs: %d stored, %d synthesized; skipped %d failed and %d without input%n",
+                stored, arrivals.size() - stored, failed, missing);
+
+        LoadGenerator.Result result = new LoadGenerator(Collections.singletonList(arrivals.get(0).getRequest()))
+                .withThreads(Integer.parseInt(options.get("threads")))
+                .withWarmup(Duration.ofMillis((long) (Double.parseDouble(options.get("warmup")) * 1000)))
+                .withDrainTimeout(Duration.ofMillis((long) (Double.parseDouble(options.get("drain")) * 1000)))
+                .replay(arrivals);
+
+        out.printf("%n%-20s %7s %9s %9s %10s %10s %9s %9s %7s%n", "operation", "calls", "orig p50", "orig p99",
+                "replay p50", "replay p99", "svc p50", "svc p99", "done");
+        BenchmarkResults store = new BenchmarkResults();
+        Histogram allOriginal = new Histogram(3);
+        for (Map.Entry<String, Histogram> entry : original.entrySet()) {
+            String operation = entry.getKey();
+            allOriginal.add(entry.getValue());
+            Histogram latency = result.getLatencyByName().get(operation);
+            Histogram service = result.getServiceTimeByName().get(operation);
+            out.printf(Locale.ROOT, "%-20s %7d %9.1f %9.1f %10.1f %10.1f %9.1f %9.1f %7d%n", operation,
+                    entry.getValue().getTotalCount(), millis(entry.getValue(), 50), millis(entry.getValue(), 99),
+                    millis(latency, 50), millis(latency, 99), millis(service, 50), millis(service, 99),
+                    result.getCompletedByName().get(operation));
+            record(store, "replay/" + engine + "/" + operation, latency, service);
+        }
+        out.printf(Locale.ROOT, "%-20s %7d %9.1f %9.1f %10.1f %10.1f %9.1f %9.1f %7d%n", "all",
+                allOriginal.getTotalCount(), millis(allOriginal, 50), millis(allOriginal, 99),
+                millis(result.getLatency(), 50), millis(result.getLatency(), 99),
+                millis(result.getServiceTime(), 50), millis(result.getServiceTime(), 99), result.getCompleted());
+        // Same basis as the offered rate of the replay: replayed calls over their time span
+        double replayedSeconds = (lastReplayed - first) / 1e6;
+        double originalRate = replayedSeconds > 0 ? arrivals.size() / replayedSeconds : Double.NaN;
+        out.printf(Locale.ROOT, "%nThroughput: recorded %.2f/s, offered %.2f/s, achieved %.2f/s (max backlog %d)%n",
+                originalRate, result.getTargetRate(), result.getAchievedRate(), result.getMaxBacklog());
+        if (result.getErrors() > 0 || result.getUnfinished() > 0) {
+            out.printf("%d call(s) failed and %d did not finish in the replay%n", result.getErrors(),
+                    result.getUnfinished());
+        }
+
+        String all = "replay/" + engine + "/all";
+        record(store, all, result.getLatency(), result.getServiceTime());
+        store.add(all, new Metric("throughput", "req/s", true, new double[]{result.getAchievedRate()}));
+        if (options.containsKey("save")) {
+            Path file = Paths.get(options.get("save"));
+            store.write(file);
+            out.println("Results saved to " + file.toAbsolutePath());
+        }
+    }
+
+    private static void record(BenchmarkResults store, String name, Histogram latency, Histogram service) {
+        store.add(name, new Metric("p50", "ms", false, new double[]{millis(latency, 50)}));
+        store.add(name, new Metric("p99", "ms", false, new double[]{millis(latency, 99)}));
+        store.add(name, new Metric("service p99", "ms", false, new double[]{millis(service, 99)}));
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getTotalCount() == 0 ? Double.NaN : histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static byte[] storedInput(Path inputs, TraceRecord record) throws IOException {
+        if (inputs == null) {
+            return null;
+        }
+        for (String extension : new String[]{".jpg", ".png", ".bin"}) {
+            Path file = inputs.resolve(record.getInputHash() + extension);
+            if (Files.isRegularFile(file)) {
+                return Files.readAllBytes(file);
+            }
+        }
+        return null;
+    }
+
+    private static boolean canSynthesize(TraceRecord record) {
+        return record.getWidth() > 0 && record.getHeight() > 0
+                && (record.getFormat().equals("JPEG") || record.getFormat().equals("PNG"));
+    }
+
+    private static byte[] synthesize(TraceRecord record) {
+        ImageCorpus.Spec spec = new ImageCorpus.Spec(ImageCorpus.Content.PHOTO, record.getWidth(), record.getHeight())
+                .withFormat(ImageFormat.valueOf(record.getFormat()));
+        return ImageCorpus.load(spec);
+    }
+
+    /**
+     * @param text {@code key=value} pairs separated by {@code ;}, or an empty string
+     */
+    static Map<String, String> parseParameters(String text) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (String pair : text.split(";")) {
+            if (pair.trim().isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got " + pair);
+            }
+            parameters.put(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+        }
+        return parameters;
+    }
+
+    /**
+     * @param engine     Engine of {@link ImageTask}
+     * @param operation  Operation recorded by {@link FastImageUtils}
+     * @param parameters Recorded parameters with overrides applied
+     * @return Task performing the operation on the engine
+     * @throws IllegalArgumentException if the operation is unknown
+     */
+    static ImageTask task(String engine, String operation, Map<String, String> parameters) {
+        int quality = Integer.parseInt(parameters.getOrDefault("quality", "75"));
+        switch (operation) {
+            case "compress":
+            case "compress-jpeg-fast": {
+                ImageTask compress = ImageTask.of(compressEngine(engine, operation), "compress", quality);
+                LosslessPass pass = LosslessPass.valueOf(parameters.getOrDefault("pass", "NONE"));
+                if (pass == LosslessPass.NONE) {
+                    return compress;
+                }
+                // As FastImageUtils does, the pass only applies to JPEG input
+                return image -> {
+                    if (ImageFormat.detect(image) != ImageFormat.JPEG) {
+                        return compress.apply(image);
+                    }
+                    byte[] optimized = JpegLosslessOptimizer.optimize(image);
+                    return pass == LosslessPass.INSTEAD_OF_COMPRESS ? optimized : compress.apply(optimized);
+                };
+            }
+            case "compress-options":
+                if (engine.equals("java")) {
+                    CompressOptions options = TraceParameters.compressOptions(parameters);
+                    return image -> JavaImageEngine.compress(image, options);
+                }
+                return ImageTask.of(engine, "compress", quality);
+            case "optimize-lossless":
+                return JpegLosslessOptimizer::optimize;
+            case "rotate": {
+                int angle = Integer.parseInt(parameters.getOrDefault("angle", "90"));
+                if (angle != 90 && angle != 180 && angle != 270) {
+                    throw new IllegalArgumentException("Angle must be 90, 180 or 270, got " + angle);
+                }
+                switch (engine) {
+                    case "java":
+                        return image -> JavaImageEngine.rotate(image, angle);
+                    case "native":
+                    case "native-fast":
+                        return image -> FastImageUtils.rotate(image, angle);
+                    default:
+                        ImageTask rotate = ImageTask.of(engine, "rotate", quality);
+                        return image -> {
+                            byte[] rotated = image;
+                            for (int turns = angle / 90; turns > 0; turns--) {
+                                rotated = rotate.apply(rotated);
+                            }
+                            return rotated;
+                        };
+                }
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation in trace: " + operation);
+        }
+    }
+
+    /**
+     * @param engine    Engine the trace is replayed on
+     * @param operation Recorded compress operation
+     * @return Engine of {@link ImageTask} that compresses like the recorded call:
+     *         native-fast for compress-jpeg-fast on the native engine, otherwise the engine itself
+     */
+    public static String compressEngine(String engine, String operation) {
+        return engine.equals("native") && operation.equals("compress-jpeg-fast") ? "native-fast" : engine;
+    }
+}
@@ -0,0 +1,72 @@
+package cn.lihongjie.image.performance;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for trellis quantization in the pure-Java JPEG encoder
+ *
+ * Encodes the small and medium {@link BenchmarkImages} JPEG photos with optimized Huffman
+ * tables at three qualities, with plain and trellis quantization, single-threaded and on all cores.
+ * Encoded size and PSNR against the source pixels are printed once per trial, so the
+ * size/quality/time trade can be read from one run.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar TrellisQuantizationBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+public class TrellisQuantizationBenchmark {
+
+    @Param({BenchmarkImages.SMALL_JPEG, BenchmarkImages.MEDIUM_JPEG})
+    public String image;
+
+    @Param({"50", "75", "90"})
+    public int quality;
+
+    @Param({"false", "true"})
+    public boolean trellis;
+
+    /** 0 means all available processors */
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private PixelImage pixels;
+    private JpegEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        pixels = JavaImageEngine.decode(BenchmarkImages.load(image));
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        encoder = new JpegEncoder(quality, ChromaSubsampling.YUV420, true)
+                .withTrellisQuantization(trellis)
+                .withParallelism(threads);
+        byte[] jpeg = encoder.encode(pixels);
+        System.out.printf("%s q%d trellis %b: %d bytes, PSNR %.2f dB%n", image, quality, trellis, jpeg.length,
+                psnr(pixels, JavaImageEngine.decode(jpeg)));
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encoder.encode(pixels);
+    }
+
+    private static double psnr(PixelImage expected, PixelImage actual) {
+        byte[] a = expected.getPixels();
+        byte[] b = actual.getPixels();
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            int d = (a[i] & 0xFF) - (b[i] & 0xFF);
+            sum += d * d;
+        }
+        return 10 * Math.log10(255.0 * 255.0 / (sum / a.length));
+    }
+}
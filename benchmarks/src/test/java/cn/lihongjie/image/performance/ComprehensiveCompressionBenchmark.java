@@ -10,7 +10,7 @@ import javax.imageio.stream.ImageOutputStream;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -32,6 +32,10 @@ import java.util.List;
  * - 压缩率 (%)
  * - 相对于JDK的时间比较
  * - 相对于JDK的压缩率比较
+ *
+ * 每个组合先预热1次，再计时 fastimage.benchmark.runs 次（默认5次），表格中为中位数；
+ * 全部样本与输出大小连同运行环境写入 target/benchmark-results/ 下的JSON文件，
+ * 可用 benchmarks.jar compare 与基线比较。
  */
 public class ComprehensiveCompressionBenchmark {
 
@@ -47,6 +51,9 @@ public class ComprehensiveCompressionBenchmark {
     
     // 压缩质量
     private static final int COMPRESSION_QUALITY = 70;
+
+    // 每个组合的计时次数
+    private static final int RUNS = Integer.getInteger("fastimage.benchmark.runs", 5);
     
     // 测试图片配置类
     private static class TestImageConfig {
@@ -69,6 +76,7 @@ public class ComprehensiveCompressionBenchmark {
         int originalSize;
         String compressionTool;
         long compressionTime;
+        double[] samples;
         int compressedSize;
         double compressionRatio;
         String timeVsJdk;
@@ -122,22 +130,35 @@ public class ComprehensiveCompressionBenchmark {
         
         // 输出markdown格式的结果
         printMarkdownResults(allResults);
+        saveResults(allResults, "ComprehensiveCompressionBenchmark.json");
     }
     
     /**
-     * 从 resources 文件夹加载测试图片
+     * 将计时样本与压缩大小保存为JSON，供回归比较使用
      */
-    private byte[] loadTestImage(String fileName) throws Exception {
-        // 尝试从 classpath 读取
-        try (InputStream is = getClass().getResourceAsStream("/" + fileName)) {
-            if (is != null) {
-                return is.readAllBytes();
+    private void saveResults(List<TestResult> results, String fileName) {
+        BenchmarkResults store = new BenchmarkResults();
+        for (TestResult result : results) {
+            if (result.supported) {
+                String name = "compress/" + result.originalFileName + "/" + result.compressionTool;
+                store.addTime(name, result.samples);
+                store.addSize(name, result.compressedSize);
             }
         }
-        
-        // 如果 classpath 读取失败，尝试从文件系统读取
-        String resourcePath = "src/test/resources/" + fileName;
-        return Files.readAllBytes(Paths.get(resourcePath));
+        try {
+            Path file = Paths.get("target", "benchmark-results", fileName);
+            store.write(file);
+            System.out.println("📁 JSON结果已保存: " + file);
+        } catch (IOException e) {
+            System.err.println("⚠️ 保存JSON结果失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 从 resources 文件夹加载测试图片
+     */
+    private byte[] loadTestImage(String fileName) {
+        return BenchmarkImages.loadStandIn(fileName);
     }
     
     /**
@@ -248,33 +269,12 @@ public class ComprehensiveCompressionBenchmark {
         }
         
         try {
-            long startTime = System.currentTimeMillis();
-            
-            // 读取图片
-            BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageData));
-            
-            // 使用 JDK 的 JPEG 压缩
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageOutputStream ios = ImageIO.createImageOutputStream(baos);
-            
-            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
-            ImageWriter writer = writers.next();
-            writer.setOutput(ios);
-            
-            ImageWriteParam param = writer.getDefaultWriteParam();
-            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-            param.setCompressionQuality(COMPRESSION_QUALITY / 100.0f);
-            
-            writer.write(null, new javax.imageio.IIOImage(image, null, null), param);
-            
-            writer.dispose();
-            ios.close();
-            
-            byte[] compressed = baos.toByteArray();
-            long endTime = System.currentTimeMillis();
+            BenchmarkResults.Timing timing = BenchmarkResults.time(1, RUNS, () -> jdkCompress(imageData));
+            byte[] compressed = timing.getOutput();
             
             result.supported = true;
-            result.compressionTime = endTime - startTime;
+            result.compressionTime = Math.round(timing.median());
+            result.samples = timing.getSamples();
             result.compressedSize = compressed.length;
             result.compressionRatio = ((double) (originalSize - compressed.length) / originalSize) * 100;
             result.timeVsJdk = "基准";
@@ -295,6 +295,33 @@ public class ComprehensiveCompressionBenchmark {
         return result;
     }
     
+    /**
+     * 使用 JDK ImageIO 读取并按 JPEG 重新编码
+     */
+    private byte[] jdkCompress(byte[] imageData) throws IOException {
+        // 读取图片
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageData));
+        
+        // 使用 JDK 的 JPEG 压缩
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageOutputStream ios = ImageIO.createImageOutputStream(baos);
+        
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        ImageWriter writer = writers.next();
+        writer.setOutput(ios);
+        
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(COMPRESSION_QUALITY / 100.0f);
+        
+        writer.write(null, new javax.imageio.IIOImage(image, null, null), param);
+        
+        writer.dispose();
+        ios.close();
+        
+        return baos.toByteArray();
+    }
+    
     /**
      * 测试 FastImage.compress
      */
@@ -307,12 +334,13 @@ public class ComprehensiveCompressionBenchmark {
         result.compressionTool = "FastImage.compress";
         
         try {
-            long startTime = System.currentTimeMillis();
-            byte[] compressed = FastImageUtils.compress(imageData, COMPRESSION_QUALITY);
-            long endTime = System.currentTimeMillis();
+            BenchmarkResults.Timing timing = BenchmarkResults.time(1, RUNS,
+                () -> FastImageUtils.compress(imageData, COMPRESSION_QUALITY));
+            byte[] compressed = timing.getOutput();
             
             result.supported = true;
-            result.compressionTime = endTime - startTime;
+            result.compressionTime = Math.round(timing.median());
+            result.samples = timing.getSamples();
             result.compressedSize = compressed.length;
             result.compressionRatio = ((double) (originalSize - compressed.length) / originalSize) * 100;
             
@@ -363,12 +391,13 @@ public class ComprehensiveCompressionBenchmark {
         }
         
         try {
-            long startTime = System.currentTimeMillis();
-            byte[] compressed = FastImageUtils.compressJpegFast(imageData, COMPRESSION_QUALITY);
-            long endTime = System.currentTimeMillis();
+            BenchmarkResults.Timing timing = BenchmarkResults.time(1, RUNS,
+                () -> FastImageUtils.compressJpegFast(imageData, COMPRESSION_QUALITY));
+            byte[] compressed = timing.getOutput();
             
             result.supported = true;
-            result.compressionTime = endTime - startTime;
+            result.compressionTime = Math.round(timing.median());
+            result.samples = timing.getSamples();
             result.compressedSize = compressed.length;
             result.compressionRatio = ((double) (originalSize - compressed.length) / originalSize) * 100;
             
@@ -554,5 +583,6 @@ public class ComprehensiveCompressionBenchmark {
                     result.imageFormat, result.originalSize / 1024.0, result.compressionTool);
             }
         }
+        saveResults(results, "ComprehensiveCompressionBenchmark-quick.json");
     }
 }
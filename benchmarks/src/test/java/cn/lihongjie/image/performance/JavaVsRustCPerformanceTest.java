@@ -10,7 +10,7 @@ import javax.imageio.stream.ImageOutputStream;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -31,11 +31,15 @@ import java.util.List;
  * 对比方案:
  * - 方案A (基线): 纯Java实现 (javax.imageio)
  * - 方案B (新方案): Java → Rust → C (FastImage)
+ *
+ * 每个方案先预热1次，再计时 fastimage.benchmark.runs 次（默认5次），报告中为中位数；
+ * 全部样本与输出大小连同运行环境写入 target/java-vs-rust-results/results.json。
  */
 public class JavaVsRustCPerformanceTest {
     
     private static final int HIGH_QUALITY = 85;  // 高质量压缩
     private static final String RESULTS_DIR = "target/java-vs-rust-results";
+    private static final int RUNS = Integer.getInteger("fastimage.benchmark.runs", 5);
     
     /**
      * 测试结果数据结构
@@ -48,6 +52,7 @@ public class JavaVsRustCPerformanceTest {
         
         // 方案A - 纯Java
         long javaTime = -1;
+        double[] javaSamples;
         int javaSize = -1;
         double javaCompressionRatio = -1;
         boolean javaSupported = false;
@@ -55,6 +60,7 @@ public class JavaVsRustCPerformanceTest {
         
         // 方案B - Rust+C  
         long rustTime = -1;
+        double[] rustSamples;
         int rustSize = -1;
         double rustCompressionRatio = -1;
         boolean rustSupported = false;
@@ -100,6 +106,31 @@ public class JavaVsRustCPerformanceTest {
         
         // 生成对比报告
         generateComparisonReport(results);
+        saveResults(results);
+    }
+    
+    /**
+     * 将计时样本与压缩大小保存为JSON，供回归比较使用
+     */
+    private void saveResults(List<ComparisonResult> results) {
+        BenchmarkResults store = new BenchmarkResults();
+        for (ComparisonResult result : results) {
+            if (result.javaSupported) {
+                store.addTime("compress/" + result.originalFile + "/java", result.javaSamples);
+                store.addSize("compress/" + result.originalFile + "/java", result.javaSize);
+            }
+            if (result.rustSupported) {
+                store.addTime("compress/" + result.originalFile + "/native", result.rustSamples);
+                store.addSize("compress/" + result.originalFile + "/native", result.rustSize);
+            }
+        }
+        try {
+            Path file = Paths.get(RESULTS_DIR, "results.json");
+            store.write(file);
+            System.out.println("📁 JSON结果已保存: " + file);
+        } catch (IOException e) {
+            System.err.println("⚠️ 保存JSON结果失败: " + e.getMessage());
+        }
     }
     
     /**
@@ -223,30 +254,12 @@ public class JavaVsRustCPerformanceTest {
         }
         
         try {
-            long startTime = System.currentTimeMillis();
-            
-            // 使用Java ImageIO进行JPEG压缩
-            BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageData));
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            
-            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
-            ImageWriter writer = writers.next();
-            ImageWriteParam param = writer.getDefaultWriteParam();
-            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-            param.setCompressionQuality(HIGH_QUALITY / 100.0f);
-            
-            ImageOutputStream ios = ImageIO.createImageOutputStream(baos);
-            writer.setOutput(ios);
-            writer.write(null, new javax.imageio.IIOImage(image, null, null), param);
-            
-            ios.close();
-            writer.dispose();
-            
-            long endTime = System.currentTimeMillis();
-            byte[] compressed = baos.toByteArray();
+            BenchmarkResults.Timing timing = BenchmarkResults.time(1, RUNS, () -> imageIoCompress(imageData));
+            byte[] compressed = timing.getOutput();
             
             result.javaSupported = true;
-            result.javaTime = endTime - startTime;
+            result.javaTime = Math.round(timing.median());
+            result.javaSamples = timing.getSamples();
             result.javaSize = compressed.length;
             result.javaCompressionRatio = ((double) (result.originalSize - compressed.length) / result.originalSize) * 100;
             
@@ -263,26 +276,42 @@ public class JavaVsRustCPerformanceTest {
         }
     }
     
+    /**
+     * 使用Java ImageIO进行JPEG压缩
+     */
+    private byte[] imageIoCompress(byte[] imageData) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageData));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(HIGH_QUALITY / 100.0f);
+        
+        ImageOutputStream ios = ImageIO.createImageOutputStream(baos);
+        writer.setOutput(ios);
+        writer.write(null, new javax.imageio.IIOImage(image, null, null), param);
+        
+        ios.close();
+        writer.dispose();
+        
+        return baos.toByteArray();
+    }
+    
     /**
      * 方案B: Rust+C压缩测试
      */
     private void testRustCompression(ComparisonResult result, byte[] imageData) {
         try {
-            long startTime = System.currentTimeMillis();
-            
-            // 使用FastImage (Rust+C) 进行压缩
-            byte[] compressed;
-            if (result.imageFormat.equals("JPEG")) {
-                compressed = FastImageUtils.compress(imageData, HIGH_QUALITY);
-            } else {
-                // PNG压缩
-                compressed = FastImageUtils.compress(imageData, HIGH_QUALITY);
-            }
-            
-            long endTime = System.currentTimeMillis();
+            // 使用FastImage (Rust+C) 进行压缩，JPEG与PNG走同一入口
+            BenchmarkResults.Timing timing = BenchmarkResults.time(1, RUNS,
+                () -> FastImageUtils.compress(imageData, HIGH_QUALITY));
+            byte[] compressed = timing.getOutput();
             
             result.rustSupported = true;
-            result.rustTime = endTime - startTime;
+            result.rustTime = Math.round(timing.median());
+            result.rustSamples = timing.getSamples();
             result.rustSize = compressed.length;
             result.rustCompressionRatio = ((double) (result.originalSize - compressed.length) / result.originalSize) * 100;
             
@@ -454,12 +483,7 @@ public class JavaVsRustCPerformanceTest {
     /**
      * 加载测试图片
      */
-    private byte[] loadTestImage(String fileName) throws Exception {
-        try (InputStream is = getClass().getClassLoader().getResourceAsStream(fileName)) {
-            if (is == null) {
-                throw new RuntimeException("找不到测试图片: " + fileName);
-            }
-            return is.readAllBytes();
-        }
+    private byte[] loadTestImage(String fileName) {
+        return BenchmarkImages.loadStandIn(fileName);
     }
 }
@@ -0,0 +1,179 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.performance.BenchmarkComparison;
+import cn.lihongjie.image.performance.BenchmarkComparison.Delta;
+import cn.lihongjie.image.performance.BenchmarkComparison.Verdict;
+import cn.lihongjie.image.performance.BenchmarkResults;
+import cn.lihongjie.image.performance.BenchmarkResults.Metric;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the benchmark result store and the regression gate
+ */
+public class BenchmarkResultsUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndReadBack() throws Exception {
+        BenchmarkResults results = new BenchmarkResults();
+        results.addTime("compress/700K.jpg/java", new double[]{12.5, 13.25, 12.75});
+        results.addSize("compress/700K.jpg/java", 123456);
+        results.add("decode/\"quoted\"", new Metric("score", "ops/ms", true, new double[]{Double.NaN, 4}));
+        Path file = folder.getRoot().toPath().resolve("nested/results.json");
+
+        results.write(file);
+        BenchmarkResults read = BenchmarkResults.read(file);
+
+        assertEquals(results.getEnvironment(), read.getEnvironment());
+        assertTrue(read.getEnvironment().containsKey("cpu"));
+        assertTrue(read.getEnvironment().containsKey("javaVersion"));
+        assertEquals(results.getBenchmarks(), read.getBenchmarks());
+        assertArrayEquals(new double[]{12.5, 13.25, 12.75}, read.getMetric("compress/700K.jpg/java", "time").getSamples(), 0);
+        assertEquals(123456, read.getMetric("compress/700K.jpg/java", "size").mean(), 0);
+        Metric score = read.getMetric("decode/\"quoted\"", "score");
+        assertTrue(score.isHigherIsBetter());
+        assertTrue(Double.isNaN(score.getSamples()[0]));
+    }
+
+    @Test
+    public void testReadsJmhResults() {
+        String json = "[{\"benchmark\": \"cn.lihongjie.image.performance.CorpusBenchmark.compress\", \"mode\": \"thrpt\","
+                + " \"params\": {\"spec\": \"photo:6mp\"},"
+                + " \"primaryMetric\": {\"score\": 2.0, \"scoreUnit\": \"ops/ms\", \"rawData\": [[1.0, 2.0], [3.0]]},"
+                + " \"secondaryMetrics\": {\"gc.alloc.rate.norm\": {\"score\": 10, \"scoreUnit\": \"B/op\", \"rawData\": [[10, 10]]}}},"
+                + " {\"benchmark\": \"cn.lihongjie.image.performance.CorpusBenchmark.decode\", \"mode\": \"sample\","
+                + " \"params\": {\"spec\": \"photo:6mp\"},"
+                + " \"primaryMetric\": {\"score\": 2.0, \"scoreUnit\": \"ms/op\", \"rawDataHistogram\":"
+                + " [[[[1.0, 98], [50.0, 2]]], [[[2.0, 100]], [[2.0, 100]]]]}}]";
+
+        BenchmarkResults results = BenchmarkResults.parse(json);
+
+        String compress = "CorpusBenchmark.compress:thrpt{spec=photo:6mp}";
+        String decode = "CorpusBenchmark.decode:sample{spec=photo:6mp}";
+        assertEquals(java.util.Arrays.asList(compress, decode), results.getBenchmarks());
+        assertArrayEquals("Mean of each fork", new double[]{1.5, 3}, results.getMetric(compress, "score").getSamples(), 0);
+        assertTrue(results.getMetric(compress, "score").isHigherIsBetter());
+        assertEquals(10, results.getMetric(compress, "alloc").mean(), 0);
+        assertArrayEquals(new double[]{1.98, 2}, results.getMetric(decode, "score").getSamples(), 1e-9);
+        assertArrayEquals("p99 of each fork", new double[]{50, 2}, results.getMetric(decode, "p99").getSamples(), 0);
+        assertFalse(results.getMetric(decode, "score").isHigherIsBetter());
+    }
+
+    @Test
+    public void testWelchPValue() {
+        // t = 2 with 8 degrees of freedom
+        BenchmarkResults baseline = results(new Metric("time", "ms", false, new double[]{1, 2, 3, 4, 5}));
+        BenchmarkResults current = results(new Metric("time", "ms", false, new double[]{3, 4, 5, 6, 7}));
+
+        Delta delta = new BenchmarkComparison().compare(baseline, current).get(0);
+
+        assertEquals(0.0805, delta.getPValue(), 0.0005);
+        assertEquals("Not significant at 0.05", Verdict.NOISE, delta.getVerdict());
+        assertEquals(Verdict.REGRESSION,
+                new BenchmarkComparison().withAlpha(0.1).compare(baseline, current).get(0).getVerdict());
+    }
+
+    @Test
+    public void testSignificantSlowdownIsRegression() {
+        BenchmarkResults baseline = results(new Metric("time", "ms", false, new double[]{100, 101, 99, 100, 100.5}));
+        BenchmarkResults current = results(new Metric("time", "ms", false, new double[]{110, 111, 109, 110.5, 110}));
+
+        List<Delta> deltas = new BenchmarkComparison().compare(baseline, current);
+
+        assertEquals(Verdict.REGRESSION, deltas.get(0).getVerdict());
+        assertEquals(0.099, deltas.get(0).getChange(), 0.005);
+        assertTrue(BenchmarkComparison.hasRegression(deltas));
+        assertEquals("A 10% threshold tolerates it", Verdict.UNCHANGED,
+                new BenchmarkComparison().withThreshold(10).compare(baseline, current).get(0).getVerdict());
+    }
+
+    @Test
+    public void testThroughputDropIsRegression() {
+        BenchmarkResults baseline = results(new Metric("score", "ops/ms", true, new double[]{50, 51, 49, 50, 50.5}));
+        BenchmarkResults faster = results(new Metric("score", "ops/ms", true, new double[]{60, 61, 59, 60, 60.5}));
+        BenchmarkResults slower = results(new Metric("score", "ops/ms", true, new double[]{40, 41, 39, 40, 40.5}));
+
+        BenchmarkComparison comparison = new BenchmarkComparison();
+
+        assertEquals(Verdict.IMPROVEMENT, comparison.compare(baseline, faster).get(0).getVerdict());
+        assertEquals(Verdict.REGRESSION, comparison.compare(baseline, slower).get(0).getVerdict());
+    }
+
+    @Test
+    public void testSingleSampleSizeUsesThresholdOnly() {
+        BenchmarkResults baseline = results(new Metric("size", "B", false, new double[]{1000}));
+        BenchmarkResults larger = results(new Metric("size", "B", false, new double[]{1030}));
+
+        assertEquals(Verdict.UNCHANGED, new BenchmarkComparison().compare(baseline, larger).get(0).getVerdict());
+        assertEquals(Verdict.REGRESSION,
+                new BenchmarkComparison().withThreshold("size", 1).compare(baseline, larger).get(0).getVerdict());
+        assertTrue(Double.isNaN(new BenchmarkComparison().compare(baseline, larger).get(0).getPValue()));
+    }
+
+    @Test
+    public void testTooFewSamplesFailTheGate() throws Exception {
+        // Three iterations of a single fork are not enough to judge any change
+        BenchmarkResults baseline = results(new Metric("time", "ms", false, new double[]{100, 101, 99}));
+        BenchmarkResults current = results(new Metric("time", "ms", false, new double[]{100.5, 101, 100}));
+        Path baseFile = folder.newFile("baseline.json").toPath();
+        Path currentFile = folder.newFile("current.json").toPath();
+        baseline.write(baseFile);
+        current.write(currentFile);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true, "UTF-8");
+
+        List<Delta> deltas = new BenchmarkComparison().compare(baseline, current);
+
+        assertEquals(Verdict.INSUFFICIENT, deltas.get(0).getVerdict());
+        assertFalse(BenchmarkComparison.isConclusive(deltas));
+        assertFalse(BenchmarkComparison.hasRegression(deltas));
+        assertEquals(1, BenchmarkComparison.run(new String[]{baseFile.toString(), currentFile.toString()}, out));
+        String report = buffer.toString("UTF-8");
+        assertTrue(report, report.contains("too few samples"));
+    }
+
+    @Test
+    public void testCommandLineExitStatus() throws Exception {
+        BenchmarkResults baseline = results(new Metric("size", "B", false, new double[]{1000}));
+        baseline.add("removed", new Metric("size", "B", false, new double[]{1}));
+        BenchmarkResults current = results(new Metric("size", "B", false, new double[]{1200}));
+        Path baseFile = folder.newFile("baseline.json").toPath();
+        Path currentFile = folder.newFile("current.json").toPath();
+        baseline.write(baseFile);
+        current.write(currentFile);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true, "UTF-8");
+
+        assertEquals(1, BenchmarkComparison.run(new String[]{baseFile.toString(), currentFile.toString()}, out));
+        assertEquals(0, BenchmarkComparison.run(
+                new String[]{baseFile.toString(), currentFile.toString(), "-threshold", "size=25"}, out));
+        assertEquals(2, BenchmarkComparison.run(new String[]{baseFile.toString()}, out));
+
+        String report = buffer.toString("UTF-8");
+        assertTrue(report, report.contains("REGRESSION"));
+        assertTrue(report, report.contains("Only in baseline: removed"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAlpha() {
+        new BenchmarkComparison().withAlpha(1.5);
+    }
+
+    private static BenchmarkResults results(Metric metric) {
+        BenchmarkResults results = new BenchmarkResults(Collections.singletonMap("cpu", "test"));
+        results.add("bench", metric);
+        return results;
+    }
+}
@@ -0,0 +1,127 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.ImageFormat;
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.performance.ImageCorpus;
+import cn.lihongjie.image.performance.ImageCorpus.Content;
+import cn.lihongjie.image.performance.ImageCorpus.Spec;
+import cn.lihongjie.image.util.JpegMarkers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the synthetic benchmark corpus
+ */
+public class ImageCorpusUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String previousDir;
+
+    @Before
+    public void useTemporaryCache() {
+        previousDir = System.getProperty("fastimage.corpus.dir");
+        System.setProperty("fastimage.corpus.dir", folder.getRoot().getAbsolutePath());
+    }
+
+    @After
+    public void restoreCache() {
+        if (previousDir == null) {
+            System.clearProperty("fastimage.corpus.dir");
+        } else {
+            System.setProperty("fastimage.corpus.dir", previousDir);
+        }
+    }
+
+    @Test
+    public void testGenerationIsDeterministic() {
+        for (Content content : Content.values()) {
+            PixelImage first = ImageCorpus.generate(content, 120, 80, 7);
+            PixelImage second = ImageCorpus.generate(content, 120, 80, 7);
+            PixelImage otherSeed = ImageCorpus.generate(content, 120, 80, 8);
+
+            assertArrayEquals(content + " should repeat for equal seeds", first.getPixels(), second.getPixels());
+            assertFalse(content + " should change with the seed",
+                    java.util.Arrays.equals(first.getPixels(), otherSeed.getPixels()));
+        }
+    }
+
+    @Test
+    public void testGrayscaleHasEqualChannels() {
+        byte[] pixels = ImageCorpus.generate(Content.GRAYSCALE, 64, 48, 1).getPixels();
+        for (int i = 0; i < pixels.length; i += 3) {
+            assertEquals(pixels[i], pixels[i + 1]);
+            assertEquals(pixels[i], pixels[i + 2]);
+        }
+    }
+
+    @Test
+    public void testEveryContentEncodesInBothFormats() {
+        for (Content content : Content.values()) {
+            for (ImageFormat format : new ImageFormat[]{ImageFormat.JPEG, ImageFormat.PNG}) {
+                byte[] encoded = ImageCorpus.load(new Spec(content, 160, 96).withFormat(format));
+
+                assertEquals(format, ImageFormat.detect(encoded));
+                PixelImage decoded = JavaImageEngine.decode(encoded);
+                assertEquals(160, decoded.getWidth());
+                assertEquals(96, decoded.getHeight());
+            }
+        }
+    }
+
+    @Test
+    public void testLoadCachesFiles() throws Exception {
+        Spec spec = new Spec(Content.PHOTO, 96, 64).withQuality(60);
+
+        byte[] first = ImageCorpus.load(spec);
+        Path cached;
+        try (java.util.stream.Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            cached = files.filter(f -> f.getFileName().toString().endsWith(spec.fileName())).findFirst().orElse(null);
+        }
+
+        assertNotNull("Encoded image should be cached", cached);
+        assertArrayEquals(first, Files.readAllBytes(cached));
+        assertArrayEquals(first, ImageCorpus.load(spec));
+    }
+
+    @Test
+    public void testRestartAndProgressiveSettings() {
+        byte[] restart = ImageCorpus.load(Spec.parse("photo:256x128:rst1"));
+        byte[] progressive = ImageCorpus.load(Spec.parse("photo:256x128:progressive"));
+
+        assertTrue("DRI segment expected", JpegMarkers.containsMarker(restart, 0xDD));
+        assertTrue("SOF2 expected", JpegMarkers.containsMarker(progressive, 0xC2));
+        assertArrayEquals(JavaImageEngine.decode(restart).getPixels(), JavaImageEngine.decode(progressive).getPixels());
+    }
+
+    @Test
+    public void testParse() {
+        Spec spec = Spec.parse("Screenshot:2560x1440:png:s3");
+        assertEquals(Content.SCREENSHOT, spec.getContent());
+        assertEquals(2560, spec.getWidth());
+        assertEquals(1440, spec.getHeight());
+        assertEquals(ImageFormat.PNG, spec.getFormat());
+        assertEquals(3, spec.getSeed());
+
+        Spec megapixels = Spec.parse("photo:24mp:q90:rst4");
+        assertEquals(24_000_000, megapixels.getWidth() * megapixels.getHeight(), 100_000);
+        assertEquals(90, megapixels.getQuality());
+        assertEquals(4, megapixels.getRestartInterval());
+        assertEquals("photo-6000x4000-q90-rst4-s1.jpg", megapixels.fileName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseRejectsUnknownOption() {
+        Spec.parse("photo:10x10:webp");
+    }
+}
@@ -0,0 +1,59 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.performance.JniOverheadReport;
+import cn.lihongjie.image.performance.JniOverheadReport.Breakdown;
+import cn.lihongjie.image.performance.JniOverheadReport.Fit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the JNI boundary cost model
+ */
+public class JniOverheadReportUnitTest {
+
+    private static final double[] SIZES = {0, 1024, 16384, 262144, 4194304};
+
+    @Test
+    public void testExactLine() {
+        double[] micros = new double[SIZES.length];
+        for (int i = 0; i < SIZES.length; i++) {
+            micros[i] = 2 + SIZES[i] / 1000;
+        }
+
+        Fit fit = JniOverheadReport.fit(SIZES, micros);
+
+        assertEquals(2, fit.getIntercept(), 1e-9);
+        assertEquals(0.001, fit.getSlope(), 1e-12);
+        assertEquals(1, fit.getRSquared(), 1e-12);
+    }
+
+    @Test
+    public void testNoiseLowersRSquared() {
+        double[] micros = {2.5, 3.9, 17.8, 263, 4194};
+
+        Fit fit = JniOverheadReport.fit(SIZES, micros);
+
+        assertEquals(0.001, fit.getSlope(), 1e-5);
+        assertTrue(fit.getRSquared() < 1 && fit.getRSquared() > 0.99);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSingleSize() {
+        JniOverheadReport.fit(new double[]{1024, 1024}, new double[]{1, 2});
+    }
+
+    @Test
+    public void testBreakdown() {
+        // 2 us per call of which 0.5 us is the exception, 1 ns per byte
+        Fit fit = new Fit(2, 0.001, 1);
+
+        Breakdown breakdown = fit.breakdown(100, 20_000, 8_000, 0.5);
+
+        assertEquals(1.5, breakdown.getCall(), 1e-9);
+        assertEquals(20, breakdown.getInput(), 1e-9);
+        assertEquals(8, breakdown.getOutput(), 1e-9);
+        assertEquals(70.5, breakdown.getCompute(), 1e-9);
+        assertEquals(0, fit.breakdown(1, 0, 0, 5).getCall(), 0);
+    }
+}
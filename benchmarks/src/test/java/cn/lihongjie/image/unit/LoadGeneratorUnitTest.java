@@ -0,0 +1,160 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.performance.LoadGenerator;
+import cn.lihongjie.image.performance.LoadGenerator.Arrival;
+import cn.lihongjie.image.performance.LoadGenerator.Request;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the open-loop load generator, using sleeps instead of image work
+ */
+public class LoadGeneratorUnitTest {
+
+    @Test
+    public void testQueueingIsCountedInLatency() throws Exception {
+        // 20 ms per request on one thread serves 50/s; 100/s builds a growing queue
+        LoadGenerator.Result result = generator(20, 1).withRate(100).run();
+
+        long serviceP99 = result.getServiceTime().getValueAtPercentile(99);
+        long latencyP99 = result.getLatency().getValueAtPercentile(99);
+        assertEquals(100, result.getIssued());
+        assertTrue("Service time should stay near 20 ms: " + serviceP99, serviceP99 < 60_000);
+        assertTrue("Latency from the intended start should include the queue: " + latencyP99,
+                latencyP99 > 500_000);
+        assertTrue("Backlog should grow", result.getMaxBacklog() > 20);
+        assertTrue(result.getAchievedRate() < 60);
+    }
+
+    @Test
+    public void testBelowCapacityKeepsUp() throws Exception {
+        LoadGenerator.Result result = generator(2, 2).withRate(50).run();
+
+        assertEquals(50, result.getIssued());
+        assertEquals(50, result.getCompleted());
+        assertEquals(0, result.getErrors());
+        assertTrue("p99 " + result.getLatency().getValueAtPercentile(99),
+                result.getLatency().getValueAtPercentile(99) < 100_000);
+        assertEquals(50, result.getAchievedRate(), 10);
+    }
+
+    @Test
+    public void testWeightedMixAndErrors() throws Exception {
+        LoadGenerator generator = new LoadGenerator(Arrays.asList(
+                new Request("often", 3, () -> { }),
+                new Request("rare", 1, () -> {
+                    throw new IllegalStateException("failed");
+                })))
+                .withWarmup(Duration.ZERO)
+                .withDuration(Duration.ofSeconds(1))
+                .withRate(400)
+                .withPoissonArrivals(true)
+                .withSeed(7);
+
+        LoadGenerator.Result result = generator.run();
+
+        long often = result.getCompletedByName().get("often");
+        assertEquals("Failures are counted, not recorded", 0, (long) result.getCompletedByName().get("rare"));
+        assertEquals(result.getIssued(), often + result.getErrors());
+        assertEquals(3.0, (double) often / result.getErrors(), 0.8);
+        assertEquals(often, result.getLatency().getTotalCount());
+    }
+
+    @Test
+    public void testUnfinishedRequestsAreRecorded() throws Exception {
+        LoadGenerator.Result result = generator(200, 1).withRate(20)
+                .withDrainTimeout(Duration.ZERO)
+                .run();
+
+        assertTrue("Queued requests should be cut off", result.getUnfinished() > 0);
+        assertEquals("Every issued request is either an error or in the latency histogram",
+                result.getIssued(), result.getLatency().getTotalCount() + result.getErrors());
+        assertEquals(result.getIssued(), result.getCompleted() + result.getErrors() + result.getUnfinished());
+    }
+
+    @Test
+    public void testRunningRequestsAreUnfinished() throws Exception {
+        // Ignores the interrupt, so it is still running when the drain timeout expires
+        Request stuck = new Request("stuck", 1, () -> {
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+            while (System.nanoTime() < until) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    // keep running
+                }
+            }
+        });
+        List<Arrival> arrivals = Arrays.asList(new Arrival(0, stuck),
+                new Arrival(TimeUnit.MILLISECONDS.toNanos(50), stuck));
+
+        LoadGenerator.Result result = new LoadGenerator(Collections.singletonList(stuck))
+                .withWarmup(Duration.ZERO)
+                .withDrainTimeout(Duration.ZERO)
+                .replay(arrivals);
+
+        assertEquals("The running request and the one queued behind it", 2, result.getUnfinished());
+        assertEquals("Finishing after the timeout does not count", 0, result.getCompleted());
+        assertEquals(2, result.getLatency().getTotalCount());
+        assertTrue(result.getLatency().getMaxValue() >= 50_000);
+    }
+
+    @Test
+    public void testReplayFollowsTheSchedule() throws Exception {
+        Request fast = new Request("fast", 1, () -> { });
+        Request slow = new Request("slow", 1, () -> Thread.sleep(30));
+        List<Arrival> arrivals = new ArrayList<>();
+        // A burst of slow requests at 200 ms, then fast ones every 10 ms
+        for (int i = 0; i < 5; i++) {
+            arrivals.add(new Arrival(TimeUnit.MILLISECONDS.toNanos(200), slow));
+        }
+        for (int i = 0; i < 40; i++) {
+            arrivals.add(new Arrival(TimeUnit.MILLISECONDS.toNanos(10 * i), fast));
+        }
+
+        long begin = System.nanoTime();
+        LoadGenerator.Result result = new LoadGenerator(Collections.singletonList(fast))
+                .withWarmup(Duration.ZERO)
+                .replay(arrivals);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        assertEquals(45, result.getIssued());
+        assertEquals(40, (long) result.getCompletedByName().get("fast"));
+        assertEquals(5, (long) result.getCompletedByName().get("slow"));
+        assertTrue("Issued at the recorded offsets: " + elapsedMillis, elapsedMillis >= 390);
+        long slowP100 = result.getLatencyByName().get("slow").getMaxValue();
+        assertTrue("The last of the burst waits for the four before it: " + slowP100, slowP100 > 140_000);
+        assertTrue(result.getServiceTimeByName().get("slow").getMaxValue() < 100_000);
+        assertEquals(45 / 0.39, result.getTargetRate(), 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyReplay() throws Exception {
+        generator(1, 1).replay(Collections.emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        generator(1, 1).withRate(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyMix() {
+        new LoadGenerator(Collections.emptyList());
+    }
+
+    private static LoadGenerator generator(long sleepMillis, int threads) {
+        return new LoadGenerator(Collections.singletonList(new Request("sleep", 1, () -> Thread.sleep(sleepMillis))))
+                .withThreads(threads)
+                .withWarmup(Duration.ZERO)
+                .withDuration(Duration.ofSeconds(1));
+    }
+}
@@ -0,0 +1,71 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.performance.RateDistortion;
+import cn.lihongjie.image.performance.RateDistortion.Point;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the rate–distortion frontiers and reports
+ */
+public class RateDistortionUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFrontiers() {
+        RateDistortion sweep = new RateDistortion(Collections.singletonMap("cpu", "test"));
+        Point small = point("a", 50, 1000, 10, 0.90);
+        Point dominated = point("b", 50, 1200, 10, 0.89);
+        Point large = point("b", 90, 3000, 30, 0.98);
+        Point fastButBig = point("c", 90, 3500, 2, 0.97);
+        sweep.add(small);
+        sweep.add(dominated);
+        sweep.add(large);
+        sweep.add(fastButBig);
+        sweep.add(new Point("other", 100, "a", 50, 10, 1, 30, 0.5));
+
+        assertEquals(Arrays.asList(small, large), sweep.frontier("photo", RateDistortion.SSIM));
+        List<Point> timeFrontier = sweep.timeFrontier("photo");
+        assertEquals("Slower and larger, but the fastest by far", Arrays.asList(small, large, fastButBig), timeFrontier);
+        assertEquals(Arrays.asList("photo", "other"), sweep.getImages());
+    }
+
+    @Test
+    public void testWritesReports() throws Exception {
+        RateDistortion sweep = new RateDistortion(Collections.singletonMap("cpu", "test <cpu>"));
+        sweep.add(point("java", 50, 1000, 10, 0.90));
+        sweep.add(point("java", 90, 3000, 30, 0.98));
+        sweep.add(new Point("photo", 10_000, "png", 100, 5000, 5, Double.POSITIVE_INFINITY, 1));
+        Path dir = folder.getRoot().toPath();
+
+        sweep.writeCsv(dir.resolve("rd.csv"));
+        sweep.writeJson(dir.resolve("rd.json"));
+        sweep.writeHtml(dir.resolve("rd.html"));
+
+        List<String> csv = Files.readAllLines(dir.resolve("rd.csv"), StandardCharsets.UTF_8);
+        assertEquals(4, csv.size());
+        assertEquals("photo,java,50,1000,0.8000,10.000,34.000,0.90000,true,true,true", csv.get(1));
+        assertTrue(csv.get(3), csv.get(3).contains(",inf,"));
+        String json = new String(Files.readAllBytes(dir.resolve("rd.json")), StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("\"ssim\": [0, 1, 2]"));
+        String html = new String(Files.readAllBytes(dir.resolve("rd.html")), StandardCharsets.UTF_8);
+        assertTrue(html.contains("test &lt;cpu&gt;"));
+        assertEquals("Two charts per image", 2, html.split("<svg").length - 1);
+    }
+
+    private static Point point(String engine, int quality, long bytes, double millis, double ssim) {
+        return new Point("photo", 10_000, engine, quality, bytes, millis, ssim * 40 - 2, ssim);
+    }
+}
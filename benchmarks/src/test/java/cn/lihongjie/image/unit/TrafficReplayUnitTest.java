@@ -0,0 +1,27 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.performance.TrafficReplay;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for mapping recorded calls onto the replay engines
+ */
+public class TrafficReplayUnitTest {
+
+    @Test
+    public void testCompressJpegFastOnEachEngine() {
+        assertEquals("native-fast", TrafficReplay.compressEngine("native", "compress-jpeg-fast"));
+        assertEquals("native-fast", TrafficReplay.compressEngine("native-fast", "compress-jpeg-fast"));
+        assertEquals("java", TrafficReplay.compressEngine("java", "compress-jpeg-fast"));
+        assertEquals("imageio", TrafficReplay.compressEngine("imageio", "compress-jpeg-fast"));
+    }
+
+    @Test
+    public void testCompressOnEachEngine() {
+        for (String engine : new String[]{"native", "native-fast", "java", "imageio"}) {
+            assertEquals(engine, TrafficReplay.compressEngine(engine, "compress"));
+        }
+    }
+}
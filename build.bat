@@ -7,7 +7,7 @@ echo 🚀 Building Fast Image JNI Library for Windows...
 REM Set up paths
 set RUST_PROJECT_DIR=c:\Users\lihongjie\RustroverProjects\fast-image
 set JAVA_PROJECT_DIR=d:\code\fast-image-java
-set TARGET_DIR=%JAVA_PROJECT_DIR%\src\main\resources\native
+set TARGET_DIR=%JAVA_PROJECT_DIR%\fast-image-java\src\main\resources\native
 
 REM Navigate to Rust project
 cd /d "%RUST_PROJECT_DIR%"
@@ -8,7 +8,7 @@ echo "🚀 Building Fast Image JNI Library..."
 # Set up variables
 RUST_PROJECT_DIR="c:/Users/lihongjie/RustroverProjects/fast-image"
 JAVA_PROJECT_DIR="d:/code/fast-image-java"
-TARGET_DIR="$JAVA_PROJECT_DIR/src/main/resources/native"
+TARGET_DIR="$JAVA_PROJECT_DIR/fast-image-java/src/main/resources/native"
 
 # Navigate to Rust project
 cd "$RUST_PROJECT_DIR"
@@ -45,7 +45,7 @@ else
 fi
 
 # Copy to system library path for testing
-SYSTEM_LIB_DIR="$JAVA_PROJECT_DIR/target/classes"
+SYSTEM_LIB_DIR="$JAVA_PROJECT_DIR/fast-image-java/target/classes"
 mkdir -p "$SYSTEM_LIB_DIR"
 cp "$TARGET_DIR/fast_image.dll" "$SYSTEM_LIB_DIR/"
 
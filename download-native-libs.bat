@@ -11,7 +11,7 @@ echo ========================================
 echo.
 
 set RUST_REPO=lihongjie0209/fast-image
-set NATIVE_DIR=src\main\resources\native
+set NATIVE_DIR=fast-image-java\src\main\resources\native
 set VERSION=latest
 
 :: 解析命令行参数
@@ -6,7 +6,7 @@
 set -e
 
 RUST_REPO="lihongjie0209/fast-image"
-NATIVE_DIR="src/main/resources/native"
+NATIVE_DIR="fast-image-java/src/main/resources/native"
 DOWNLOAD_DIR="$NATIVE_DIR"
 
 # 颜色输出
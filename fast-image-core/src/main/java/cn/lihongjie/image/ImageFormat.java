@@ -0,0 +1,33 @@
+package cn.lihongjie.image;
+
+/**
+ * Image container formats recognized by the library
+ * 
+ * Detection only inspects the file signature, so it is cheap enough to be
+ * used for dispatching on every call.
+ */
+public enum ImageFormat {
+    JPEG,
+    PNG,
+    UNKNOWN;
+
+    /**
+     * Detect the format of encoded image data from its signature
+     * 
+     * @param imageBytes Encoded image data
+     * @return Detected format, {@link #UNKNOWN} if the signature is not recognized
+     */
+    public static ImageFormat detect(byte[] imageBytes) {
+        if (imageBytes == null || imageBytes.length < 4) {
+            return UNKNOWN;
+        }
+        if ((imageBytes[0] & 0xFF) == 0xFF && (imageBytes[1] & 0xFF) == 0xD8) {
+            return JPEG;
+        }
+        if ((imageBytes[0] & 0xFF) == 0x89 && imageBytes[1] == 'P'
+                && imageBytes[2] == 'N' && imageBytes[3] == 'G') {
+            return PNG;
+        }
+        return UNKNOWN;
+    }
+}
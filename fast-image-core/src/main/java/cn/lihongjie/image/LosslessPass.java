@@ -0,0 +1,16 @@
+package cn.lihongjie.image;
+
+/**
+ * Where the lossless JPEG optimization pass runs relative to {@code compress}
+ * 
+ * The pass only applies to JPEG input; other formats always go straight to
+ * the regular compression path.
+ */
+public enum LosslessPass {
+    /** Do not run the lossless pass */
+    NONE,
+    /** Strip metadata and optimize Huffman tables, then compress the result */
+    BEFORE_COMPRESS,
+    /** Only run the lossless pass; pixels are never re-encoded */
+    INSTEAD_OF_COMPRESS
+}
@@ -0,0 +1,180 @@
+package cn.lihongjie.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Decoded 8-bit image held in a single interleaved byte array
+ *
+ * Pixels are stored row by row without padding. Supported layouts are
+ * 1 channel (gray), 3 channels (RGB) and 4 channels (RGBA). This is the
+ * raster type exchanged between the pure-Java codecs.
+ */
+public final class PixelImage {
+
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final byte[] pixels;
+
+    /**
+     * Wrap an interleaved pixel array (not copied)
+     *
+     * @param width Image width in pixels
+     * @param height Image height in pixels
+     * @param channels 1 (gray), 3 (RGB) or 4 (RGBA)
+     * @param pixels Interleaved samples, at least width * height * channels bytes
+     * @throws IllegalArgumentException if the dimensions, channel count or array size are invalid
+     */
+    public PixelImage(int width, int height, int channels, byte[] pixels) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image dimensions: " + width + "x" + height);
+        }
+        if (channels != 1 && channels != 3 && channels != 4) {
+            throw new IllegalArgumentException("Unsupported channel count: " + channels);
+        }
+        if (pixels == null || (long) width * height * channels > pixels.length) {
+            throw new IllegalArgumentException("Pixel array is too small for " + width + "x" + height + "x" + channels);
+        }
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.pixels = pixels;
+    }
+
+    /**
+     * Allocate a blank image
+     *
+     * @param width Image width in pixels
+     * @param height Image height in pixels
+     * @param channels 1 (gray), 3 (RGB) or 4 (RGBA)
+     * @return Image with all samples set to zero
+     */
+    public static PixelImage allocate(int width, int height, int channels) {
+        long size = (long) width * height * channels;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Image too large: " + width + "x" + height);
+        }
+        return new PixelImage(width, height, channels, new byte[(int) size]);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Get the interleaved samples (shared, not copied)
+     *
+     * @return Pixel array
+     */
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Convert a {@link BufferedImage} into a pixel image
+     *
+     * Gray images become 1 channel, images with alpha become RGBA, everything else RGB.
+     * Common byte and int layouts are converted directly from the raster.
+     *
+     * @param image Source image
+     * @return Pixel image with copied samples
+     */
+    public static PixelImage fromBufferedImage(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_BYTE_GRAY: {
+                PixelImage out = allocate(w, h, 1);
+                image.getRaster().getDataElements(0, 0, w, h, out.pixels);
+                return out;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                byte[] src = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                if (image.getRaster().getSampleModelTranslateX() != 0 || src.length != w * h * 3) {
+                    break;
+                }
+                PixelImage out = allocate(w, h, 3);
+                byte[] dst = out.pixels;
+                for (int i = 0; i < dst.length; i += 3) {
+                    dst[i] = src[i + 2];
+                    dst[i + 1] = src[i + 1];
+                    dst[i + 2] = src[i];
+                }
+                return out;
+            }
+            case BufferedImage.TYPE_INT_RGB: {
+                int[] src = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                if (src.length != w * h) {
+                    break;
+                }
+                PixelImage out = allocate(w, h, 3);
+                byte[] dst = out.pixels;
+                for (int i = 0, j = 0; i < src.length; i++, j += 3) {
+                    int rgb = src[i];
+                    dst[j] = (byte) (rgb >> 16);
+                    dst[j + 1] = (byte) (rgb >> 8);
+                    dst[j + 2] = (byte) rgb;
+                }
+                return out;
+            }
+            default:
+                break;
+        }
+        boolean alpha = image.getColorModel().hasAlpha();
+        boolean gray = image.getColorModel().getNumColorComponents() == 1 && !alpha;
+        int channels = gray ? 1 : alpha ? 4 : 3;
+        PixelImage out = allocate(w, h, channels);
+        byte[] dst = out.pixels;
+        int[] row = new int[w];
+        int j = 0;
+        for (int y = 0; y < h; y++) {
+            image.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                int argb = row[x];
+                if (gray) {
+                    dst[j++] = (byte) argb;
+                    continue;
+                }
+                dst[j++] = (byte) (argb >> 16);
+                dst[j++] = (byte) (argb >> 8);
+                dst[j++] = (byte) argb;
+                if (alpha) {
+                    dst[j++] = (byte) (argb >>> 24);
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Convert to a {@link BufferedImage}
+     *
+     * @return TYPE_BYTE_GRAY, TYPE_INT_RGB or TYPE_INT_ARGB image with copied samples
+     */
+    public BufferedImage toBufferedImage() {
+        if (channels == 1) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            image.getRaster().setDataElements(0, 0, width, height, pixels);
+            return image;
+        }
+        BufferedImage image = new BufferedImage(width, height,
+                channels == 4 ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] dst = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0, j = 0; i < dst.length; i++, j += channels) {
+            int argb = ((pixels[j] & 0xFF) << 16) | ((pixels[j + 1] & 0xFF) << 8) | (pixels[j + 2] & 0xFF);
+            argb |= channels == 4 ? (pixels[j + 3] & 0xFF) << 24 : 0xFF000000;
+            dst[i] = argb;
+        }
+        return image;
+    }
+}
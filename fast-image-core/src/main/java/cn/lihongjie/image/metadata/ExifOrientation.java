@@ -0,0 +1,129 @@
+package cn.lihongjie.image.metadata;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the orientation tag from an EXIF (TIFF) block and builds minimal EXIF blocks
+ * that carry nothing but the orientation
+ */
+public final class ExifOrientation {
+
+    private static final int ORIENTATION_TAG = 0x0112;
+    private static final int TYPE_SHORT = 3;
+
+    private ExifOrientation() {
+    }
+
+    /**
+     * Read the IFD0 orientation tag of a TIFF structure
+     *
+     * @param buffer Buffer holding the TIFF data
+     * @param tiff   Absolute offset of the TIFF header ("II" or "MM")
+     * @param length Number of bytes available from {@code tiff}
+     * @return Orientation 1-8, or 0 if the tag is missing or the data is malformed
+     */
+    public static int read(ByteBuffer buffer, int tiff, int length) {
+        if (length < 8) {
+            return 0;
+        }
+        boolean little;
+        if (buffer.get(tiff) == 'I' && buffer.get(tiff + 1) == 'I') {
+            little = true;
+        } else if (buffer.get(tiff) == 'M' && buffer.get(tiff + 1) == 'M') {
+            little = false;
+        } else {
+            return 0;
+        }
+        if (readShort(buffer, tiff + 2, little) != 42) {
+            return 0;
+        }
+        long ifd = readInt(buffer, tiff + 4, little) & 0xFFFFFFFFL;
+        if (ifd < 8 || ifd + 2 > length) {
+            return 0;
+        }
+        int entries = readShort(buffer, tiff + (int) ifd, little);
+        for (int i = 0; i < entries; i++) {
+            int entry = tiff + (int) ifd + 2 + i * 12;
+            if (entry + 12 > tiff + length) {
+                break;
+            }
+            if (readShort(buffer, entry, little) == ORIENTATION_TAG) {
+                if (readShort(buffer, entry + 2, little) != TYPE_SHORT) {
+                    return 0;
+                }
+                int value = readShort(buffer, entry + 8, little);
+                return value >= 1 && value <= 8 ? value : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Build a big-endian TIFF structure whose IFD0 holds only the orientation tag
+     *
+     * @param orientation Orientation value 1-8
+     * @return 26-byte TIFF block
+     */
+    public static byte[] minimalTiff(int orientation) {
+        return new byte[]{
+            'M', 'M', 0, 42, 0, 0, 0, 8,
+            0, 1,
+            0x01, 0x12, 0, TYPE_SHORT, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+            0, 0, 0, 0
+        };
+    }
+
+    /**
+     * Build a complete JPEG APP1 segment (marker included) holding a minimal EXIF block
+     *
+     * @param orientation Orientation value 1-8
+     * @return APP1 segment bytes
+     */
+    public static byte[] jpegSegment(int orientation) {
+        byte[] tiff = minimalTiff(orientation);
+        int length = 2 + 6 + tiff.length;
+        byte[] segment = new byte[2 + length];
+        segment[0] = (byte) 0xFF;
+        segment[1] = (byte) 0xE1;
+        segment[2] = (byte) (length >> 8);
+        segment[3] = (byte) length;
+        segment[4] = 'E';
+        segment[5] = 'x';
+        segment[6] = 'i';
+        segment[7] = 'f';
+        System.arraycopy(tiff, 0, segment, 10, tiff.length);
+        return segment;
+    }
+
+    /**
+     * Build a complete PNG eXIf chunk (length, type, data and CRC) holding a minimal EXIF block
+     *
+     * @param orientation Orientation value 1-8
+     * @return eXIf chunk bytes
+     */
+    public static byte[] pngChunk(int orientation) {
+        byte[] tiff = minimalTiff(orientation);
+        byte[] chunk = new byte[12 + tiff.length];
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        buffer.putInt(tiff.length);
+        buffer.put(new byte[]{'e', 'X', 'I', 'f'});
+        buffer.put(tiff);
+        CRC32 crc = new CRC32();
+        crc.update(chunk, 4, 4 + tiff.length);
+        buffer.putInt((int) crc.getValue());
+        return chunk;
+    }
+
+    private static int readShort(ByteBuffer buffer, int offset, boolean little) {
+        int a = buffer.get(offset) & 0xFF;
+        int b = buffer.get(offset + 1) & 0xFF;
+        return little ? (b << 8) | a : (a << 8) | b;
+    }
+
+    private static int readInt(ByteBuffer buffer, int offset, boolean little) {
+        int first = readShort(buffer, offset, little);
+        int second = readShort(buffer, offset + 2, little);
+        return little ? (second << 16) | first : (first << 16) | second;
+    }
+}
@@ -0,0 +1,118 @@
+package cn.lihongjie.image.metadata;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Immutable keep/drop rules for image metadata
+ *
+ * A policy lists the {@link MetadataType}s that survive stripping; every other
+ * metadata segment is dropped. Segments that are required to decode the pixels
+ * (quantization and Huffman tables, frame and scan headers, PNG critical chunks
+ * and tRNS) are never affected.
+ *
+ * When EXIF is dropped, a policy can still preserve the EXIF orientation tag: the
+ * original EXIF block is then replaced by a minimal one carrying only the orientation.
+ *
+ * Usage:
+ * <pre>
+ * // keep ICC, drop EXIF except orientation
+ * MetadataPolicy policy = MetadataPolicy.keeping(MetadataType.ICC).withExifOrientation();
+ * </pre>
+ */
+public final class MetadataPolicy {
+
+    /** Keep every metadata segment */
+    public static final MetadataPolicy KEEP_ALL = new MetadataPolicy(EnumSet.allOf(MetadataType.class), true);
+
+    /** Drop every metadata segment, including color profiles and orientation */
+    public static final MetadataPolicy STRIP_ALL = new MetadataPolicy(EnumSet.noneOf(MetadataType.class), false);
+
+    /**
+     * Drop EXIF, XMP, comments, text and vendor segments but keep what affects rendering
+     * (JFIF header, ICC profile, Adobe color transform, PNG color space chunks and
+     * the EXIF orientation tag)
+     */
+    public static final MetadataPolicy STRIP_SAFE = new MetadataPolicy(
+            EnumSet.of(MetadataType.JFIF, MetadataType.ICC, MetadataType.ADOBE, MetadataType.COLOR_SPACE), true);
+
+    private final Set<MetadataType> kept;
+    private final boolean exifOrientation;
+
+    private MetadataPolicy(EnumSet<MetadataType> kept, boolean exifOrientation) {
+        this.kept = Collections.unmodifiableSet(kept);
+        this.exifOrientation = exifOrientation;
+    }
+
+    /**
+     * Create a policy that keeps only the given metadata types
+     *
+     * @param types Metadata types to keep
+     * @return Policy dropping every other type
+     */
+    public static MetadataPolicy keeping(MetadataType... types) {
+        EnumSet<MetadataType> set = EnumSet.noneOf(MetadataType.class);
+        set.addAll(Arrays.asList(types));
+        return new MetadataPolicy(set, false);
+    }
+
+    /**
+     * Derive a policy that also keeps the EXIF orientation tag when EXIF is dropped
+     *
+     * @return New policy with orientation preservation enabled
+     */
+    public MetadataPolicy withExifOrientation() {
+        EnumSet<MetadataType> set = EnumSet.noneOf(MetadataType.class);
+        set.addAll(kept);
+        return new MetadataPolicy(set, true);
+    }
+
+    /**
+     * Check whether segments of the given type are kept
+     *
+     * @param type Metadata type
+     * @return true if the type survives stripping
+     */
+    public boolean keeps(MetadataType type) {
+        return kept.contains(type);
+    }
+
+    /**
+     * Check whether a dropped EXIF block is replaced by one carrying only the orientation tag
+     *
+     * @return true if orientation survives EXIF stripping
+     */
+    public boolean keepsExifOrientation() {
+        return exifOrientation && !kept.contains(MetadataType.EXIF);
+    }
+
+    /**
+     * Get the kept metadata types
+     *
+     * @return Unmodifiable set of kept types
+     */
+    public Set<MetadataType> keptTypes() {
+        return kept;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof MetadataPolicy)) {
+            return false;
+        }
+        MetadataPolicy other = (MetadataPolicy) o;
+        return kept.equals(other.kept) && exifOrientation == other.exifOrientation;
+    }
+
+    @Override
+    public int hashCode() {
+        return kept.hashCode() * 31 + (exifOrientation ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "MetadataPolicy" + kept + (exifOrientation ? "+orientation" : "");
+    }
+}
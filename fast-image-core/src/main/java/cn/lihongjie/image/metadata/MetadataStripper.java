@@ -0,0 +1,141 @@
+package cn.lihongjie.image.metadata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Zero-copy metadata stripping for JPEG and PNG
+ *
+ * The stripped image is described as a gather list of read-only slices of the
+ * original buffer: consecutive kept segments are coalesced into one slice and
+ * dropped segments are simply skipped. The only bytes ever allocated are the
+ * few dozen needed for a replacement EXIF block when the policy keeps the
+ * orientation tag. The list can be written in one call with
+ * {@link GatheringByteChannel#write(ByteBuffer[])}.
+ *
+ * Usage:
+ * <pre>
+ * MetadataPolicy policy = MetadataPolicy.keeping(MetadataType.ICC).withExifOrientation();
+ * try (FileChannel out = FileChannel.open(target, CREATE, WRITE)) {
+ *     MetadataStripper.write(ByteBuffer.wrap(imageBytes), policy, out);
+ * }
+ * </pre>
+ */
+public final class MetadataStripper {
+
+    private MetadataStripper() {
+    }
+
+    /**
+     * Describe the stripped image as slices of the original buffer
+     *
+     * @param image  JPEG or PNG data between position and limit; not modified
+     * @param policy Metadata keep/drop rules
+     * @return Gather list whose concatenation is the stripped image
+     * @throws IllegalArgumentException if the data is neither JPEG nor PNG, or is corrupt
+     */
+    public static ByteBuffer[] strip(ByteBuffer image, MetadataPolicy policy) {
+        boolean png = SegmentScanner.isPng(image);
+        List<Segment> segments = SegmentScanner.scan(image);
+        List<ByteBuffer> parts = new ArrayList<>();
+        int runStart = -1;
+        int runEnd = -1;
+        boolean orientationWritten = false;
+        for (Segment segment : segments) {
+            MetadataType type = segment.getType();
+            if (type == null || policy.keeps(type)) {
+                if (runStart < 0) {
+                    runStart = segment.getOffset();
+                }
+                runEnd = segment.getOffset() + segment.getLength();
+                continue;
+            }
+            if (runStart >= 0) {
+                parts.add(slice(image, runStart, runEnd));
+                runStart = -1;
+            }
+            if (type == MetadataType.EXIF && policy.keepsExifOrientation() && !orientationWritten) {
+                int orientation = readOrientation(image, segment, png);
+                if (orientation > 1) {
+                    parts.add(ByteBuffer.wrap(png ? ExifOrientation.pngChunk(orientation)
+                            : ExifOrientation.jpegSegment(orientation)).asReadOnlyBuffer());
+                    orientationWritten = true;
+                }
+            }
+        }
+        if (runStart >= 0) {
+            parts.add(slice(image, runStart, runEnd));
+        }
+        return parts.toArray(new ByteBuffer[0]);
+    }
+
+    /**
+     * Strip metadata and write the result to a channel with gathering writes
+     *
+     * @param image   JPEG or PNG data between position and limit; not modified
+     * @param policy  Metadata keep/drop rules
+     * @param channel Destination channel
+     * @return Number of bytes written
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if the data is neither JPEG nor PNG, or is corrupt
+     */
+    public static long write(ByteBuffer image, MetadataPolicy policy, GatheringByteChannel channel) throws IOException {
+        ByteBuffer[] parts = strip(image, policy);
+        long total = 0;
+        for (ByteBuffer part : parts) {
+            total += part.remaining();
+        }
+        long written = 0;
+        while (written < total) {
+            written += channel.write(parts);
+        }
+        return written;
+    }
+
+    /**
+     * Strip metadata into a new array
+     *
+     * Copies the kept bytes once; prefer {@link #write} when the destination is a channel.
+     *
+     * @param imageBytes JPEG or PNG data
+     * @param policy     Metadata keep/drop rules
+     * @return Stripped image data
+     * @throws IllegalArgumentException if the data is neither JPEG nor PNG, or is corrupt
+     */
+    public static byte[] strip(byte[] imageBytes, MetadataPolicy policy) {
+        if (imageBytes == null || imageBytes.length == 0) {
+            throw new IllegalArgumentException("Image data is empty");
+        }
+        ByteBuffer[] parts = strip(ByteBuffer.wrap(imageBytes), policy);
+        int total = 0;
+        for (ByteBuffer part : parts) {
+            total += part.remaining();
+        }
+        byte[] out = new byte[total];
+        int offset = 0;
+        for (ByteBuffer part : parts) {
+            int length = part.remaining();
+            part.duplicate().get(out, offset, length);
+            offset += length;
+        }
+        return out;
+    }
+
+    private static int readOrientation(ByteBuffer image, Segment segment, boolean png) {
+        if (png) {
+            return ExifOrientation.read(image, segment.getOffset() + 8, segment.getLength() - 12);
+        }
+        // Marker (2) + length (2) + "Exif\0\0" (6)
+        return ExifOrientation.read(image, segment.getOffset() + 10, segment.getLength() - 10);
+    }
+
+    private static ByteBuffer slice(ByteBuffer image, int start, int end) {
+        ByteBuffer view = image.duplicate();
+        view.limit(end);
+        view.position(start);
+        return view.slice().asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,29 @@
+package cn.lihongjie.image.metadata;
+
+/**
+ * Categories of non-pixel metadata carried by JPEG segments and PNG chunks
+ * 
+ * Each JPEG APPn/COM segment is classified by its marker and identifier string,
+ * each PNG ancillary chunk by its chunk type, so that a {@link MetadataPolicy}
+ * can decide whether it is kept or dropped.
+ */
+public enum MetadataType {
+    /** APP0 "JFIF" header (density and aspect ratio) */
+    JFIF,
+    /** APP1 "Exif" block or PNG eXIf chunk, including the embedded thumbnail and maker notes */
+    EXIF,
+    /** APP1 XMP packet (standard and extended) or PNG iTXt "XML:com.adobe.xmp" chunk */
+    XMP,
+    /** APP2 "ICC_PROFILE" color profile chunks or PNG iCCP chunk */
+    ICC,
+    /** APP14 "Adobe" segment carrying the color transform flag */
+    ADOBE,
+    /** PNG sRGB, gAMA, cHRM, cICP and sBIT color space chunks */
+    COLOR_SPACE,
+    /** COM comment segment */
+    COMMENT,
+    /** PNG tEXt, zTXt and non-XMP iTXt chunks */
+    TEXT,
+    /** Any other APPn segment or ancillary chunk (JFXX thumbnails, Photoshop/IPTC, pHYs, tIME, vendor data) */
+    OTHER
+}
@@ -0,0 +1,72 @@
+package cn.lihongjie.image.metadata;
+
+/**
+ * Location of one JPEG marker segment or PNG chunk inside an encoded image
+ *
+ * Offsets are absolute indices into the scanned buffer. A segment does not own
+ * any data; it only describes a byte range of the original buffer.
+ */
+public final class Segment {
+
+    private final String name;
+    private final int offset;
+    private final int length;
+    private final MetadataType type;
+
+    Segment(String name, int offset, int length, MetadataType type) {
+        this.name = name;
+        this.offset = offset;
+        this.length = length;
+        this.type = type;
+    }
+
+    /**
+     * Get the marker name (e.g. "APP1", "SOS") or PNG chunk type (e.g. "iCCP")
+     *
+     * @return Segment name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the absolute offset of the segment, including its marker or length field
+     *
+     * @return Offset into the scanned buffer
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the total length of the segment including headers and CRC
+     *
+     * @return Length in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get the metadata category of the segment
+     *
+     * @return Metadata type, or null for segments required to decode the image
+     */
+    public MetadataType getType() {
+        return type;
+    }
+
+    /**
+     * Check whether the segment is metadata that a policy may drop
+     *
+     * @return true for metadata segments
+     */
+    public boolean isMetadata() {
+        return type != null;
+    }
+
+    @Override
+    public String toString() {
+        return name + "@" + offset + "+" + length + (type != null ? " (" + type + ")" : "");
+    }
+}
@@ -0,0 +1,237 @@
+package cn.lihongjie.image.metadata;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Segment/chunk scanner for JPEG and PNG files over a {@link ByteBuffer}
+ *
+ * Only headers are read: JPEG marker segments are walked up to the first SOS
+ * (the scan and everything after it is reported as one segment), and PNG chunks
+ * are walked by their length fields. Pixel data is never touched or copied, so
+ * scanning costs a few reads per segment regardless of image size.
+ *
+ * All reads use absolute indexing; the buffer's position and limit are not modified.
+ */
+public final class SegmentScanner {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+
+    private static final byte[] JFIF = ascii("JFIF\0");
+    private static final byte[] EXIF = ascii("Exif\0");
+    private static final byte[] XMP = ascii("http://ns.adobe.com/xap/1.0/\0");
+    private static final byte[] XMP_EXTENSION = ascii("http://ns.adobe.com/xmp/extension/\0");
+    private static final byte[] ICC = ascii("ICC_PROFILE\0");
+    private static final byte[] ADOBE = ascii("Adobe");
+    private static final byte[] XMP_KEYWORD = ascii("XML:com.adobe.xmp\0");
+
+    private SegmentScanner() {
+    }
+
+    /**
+     * Scan an encoded image between the buffer's position and limit
+     *
+     * @param image JPEG or PNG data
+     * @return Segments in file order, covering the whole range without gaps
+     * @throws IllegalArgumentException if the data is neither JPEG nor PNG, or a segment is truncated
+     */
+    public static List<Segment> scan(ByteBuffer image) {
+        int start = image.position();
+        if (image.remaining() >= 2 && (image.get(start) & 0xFF) == 0xFF && (image.get(start + 1) & 0xFF) == 0xD8) {
+            return scanJpeg(image);
+        }
+        if (isPng(image)) {
+            return scanPng(image);
+        }
+        throw new IllegalArgumentException("Unsupported image format for metadata scanning");
+    }
+
+    static boolean isPng(ByteBuffer image) {
+        if (image.remaining() < PNG_SIGNATURE.length) {
+            return false;
+        }
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (image.get(image.position() + i) != PNG_SIGNATURE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Segment> scanJpeg(ByteBuffer image) {
+        List<Segment> segments = new ArrayList<>();
+        int pos = image.position();
+        int limit = image.limit();
+        segments.add(new Segment("SOI", pos, 2, null));
+        pos += 2;
+        while (pos < limit) {
+            if (pos + 1 >= limit || (image.get(pos) & 0xFF) != 0xFF) {
+                throw new IllegalArgumentException("Corrupt JPEG: expected marker at offset " + pos);
+            }
+            int marker = image.get(pos + 1) & 0xFF;
+            if (marker == 0xFF) {
+                // Fill byte: fold it into the next segment
+                segments.add(new Segment("FILL", pos, 1, null));
+                pos++;
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                segments.add(new Segment(marker == 0xDA ? "SOS" : "EOI", pos, limit - pos, null));
+                break;
+            }
+            if (pos + 4 > limit) {
+                throw new IllegalArgumentException("Corrupt JPEG: truncated segment header");
+            }
+            int length = ((image.get(pos + 2) & 0xFF) << 8) | (image.get(pos + 3) & 0xFF);
+            if (length < 2 || pos + 2 + length > limit) {
+                throw new IllegalArgumentException("Corrupt JPEG: segment 0x"
+                        + Integer.toHexString(marker) + " exceeds data length");
+            }
+            boolean metadata = (marker >= 0xE0 && marker <= 0xEF) || marker == 0xFE;
+            MetadataType type = metadata ? classifyJpeg(marker, image, pos + 4, length - 2) : null;
+            segments.add(new Segment(jpegMarkerName(marker), pos, 2 + length, type));
+            pos += 2 + length;
+        }
+        return segments;
+    }
+
+    private static List<Segment> scanPng(ByteBuffer image) {
+        List<Segment> segments = new ArrayList<>();
+        int pos = image.position();
+        int limit = image.limit();
+        segments.add(new Segment("signature", pos, PNG_SIGNATURE.length, null));
+        pos += PNG_SIGNATURE.length;
+        while (pos < limit) {
+            if (pos + 12 > limit) {
+                throw new IllegalArgumentException("Corrupt PNG: truncated chunk header");
+            }
+            long dataLength = image.getInt(pos) & 0xFFFFFFFFL;
+            if (dataLength > limit - pos - 12) {
+                throw new IllegalArgumentException("Corrupt PNG: chunk exceeds data length");
+            }
+            byte[] typeBytes = new byte[4];
+            for (int i = 0; i < 4; i++) {
+                typeBytes[i] = image.get(pos + 4 + i);
+            }
+            String type = new String(typeBytes, StandardCharsets.US_ASCII);
+            int chunkLength = 12 + (int) dataLength;
+            segments.add(new Segment(type, pos, chunkLength, classifyPng(type, image, pos + 8, (int) dataLength)));
+            pos += chunkLength;
+            if ("IEND".equals(type)) {
+                if (pos < limit) {
+                    segments.add(new Segment("trailer", pos, limit - pos, null));
+                }
+                break;
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Classify a JPEG APPn or COM segment by its marker and identifier string
+     *
+     * @param marker  Marker code (0xE0-0xEF or 0xFE)
+     * @param buffer  Buffer holding the segment
+     * @param payload Absolute offset of the payload (just past the length field)
+     * @param length  Payload length in bytes
+     * @return Metadata type of the segment
+     */
+    public static MetadataType classifyJpeg(int marker, ByteBuffer buffer, int payload, int length) {
+        switch (marker) {
+            case 0xFE:
+                return MetadataType.COMMENT;
+            case 0xE0:
+                return startsWith(buffer, payload, length, JFIF) ? MetadataType.JFIF : MetadataType.OTHER;
+            case 0xE1:
+                if (startsWith(buffer, payload, length, EXIF)) {
+                    return MetadataType.EXIF;
+                }
+                if (startsWith(buffer, payload, length, XMP) || startsWith(buffer, payload, length, XMP_EXTENSION)) {
+                    return MetadataType.XMP;
+                }
+                return MetadataType.OTHER;
+            case 0xE2:
+                return startsWith(buffer, payload, length, ICC) ? MetadataType.ICC : MetadataType.OTHER;
+            case 0xEE:
+                return startsWith(buffer, payload, length, ADOBE) ? MetadataType.ADOBE : MetadataType.OTHER;
+            default:
+                return MetadataType.OTHER;
+        }
+    }
+
+    /**
+     * Classify a PNG chunk by its type
+     *
+     * @param type    Four-letter chunk type
+     * @param buffer  Buffer holding the chunk
+     * @param payload Absolute offset of the chunk data
+     * @param length  Chunk data length
+     * @return Metadata type, or null for chunks that are needed to decode the image
+     */
+    static MetadataType classifyPng(String type, ByteBuffer buffer, int payload, int length) {
+        switch (type) {
+            case "iCCP":
+                return MetadataType.ICC;
+            case "sRGB":
+            case "gAMA":
+            case "cHRM":
+            case "cICP":
+            case "sBIT":
+                return MetadataType.COLOR_SPACE;
+            case "eXIf":
+                return MetadataType.EXIF;
+            case "tEXt":
+            case "zTXt":
+                return MetadataType.TEXT;
+            case "iTXt":
+                return startsWith(buffer, payload, length, XMP_KEYWORD) ? MetadataType.XMP : MetadataType.TEXT;
+            case "tRNS":
+            case "acTL":
+            case "fcTL":
+            case "fdAT":
+                return null;
+            default:
+                // Critical chunks have an upper-case first letter
+                return Character.isUpperCase(type.charAt(0)) ? null : MetadataType.OTHER;
+        }
+    }
+
+    private static String jpegMarkerName(int marker) {
+        if (marker >= 0xE0 && marker <= 0xEF) {
+            return "APP" + (marker - 0xE0);
+        }
+        switch (marker) {
+            case 0xFE:
+                return "COM";
+            case 0xDB:
+                return "DQT";
+            case 0xC4:
+                return "DHT";
+            case 0xDD:
+                return "DRI";
+            default:
+                if (marker >= 0xC0 && marker <= 0xCF) {
+                    return "SOF" + (marker - 0xC0);
+                }
+                return "0x" + Integer.toHexString(marker).toUpperCase();
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int offset, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
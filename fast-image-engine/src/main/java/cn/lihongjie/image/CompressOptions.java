@@ -0,0 +1,268 @@
+package cn.lihongjie.image;
+
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.GrayscaleDetector;
+import cn.lihongjie.image.jpeg.ScanScript;
+import cn.lihongjie.image.metadata.MetadataPolicy;
+
+/**
+ * Settings for {@code FastImageUtils.compress(byte[], CompressOptions)} and
+ * {@link JavaImageEngine#compress(byte[], CompressOptions)}
+ *
+ * Options are immutable; every {@code withX} call returns a modified copy, so a
+ * configured instance can be kept in a constant and shared between threads.
+ * The defaults (quality 75, 4:2:0, baseline, standard Huffman tables, no trellis
+ * quantization, {@link MetadataPolicy#STRIP_SAFE}, effort 6, all available processors,
+ * the shared {@link JavaImageEngine#getGrayscaleDetector() grayscale detector})
+ * match {@code compress(imageBytes, 75)} for JPEG input.
+ *
+ * Subsampling, progressive, Huffman optimization, trellis quantization, grayscale
+ * detection and the metadata policy apply to JPEG output. Effort trades encode time for size on PNG output: 0-2 use fast
+ * deflate with the Up filter, 3-7 the adaptive minimum-sum filter, 8 the entropy
+ * filter at deflate level 8, and 9 a full search over filters and deflate settings
+ * for lossless output (see {@code PngOptimizer}).
+ *
+ * Usage:
+ * <pre>
+ * CompressOptions web = new CompressOptions()
+ *         .withQuality(80)
+ *         .withSubsampling(ChromaSubsampling.YUV444)
+ *         .withProgressive(true)
+ *         .withMetadataPolicy(MetadataPolicy.STRIP_ALL);
+ * byte[] compressed = FastImageUtils.compress(imageBytes, web);
+ * </pre>
+ */
+public final class CompressOptions {
+
+    private final int quality;
+    private final ChromaSubsampling subsampling;
+    private final ScanScript scanScript;
+    private final boolean optimizeHuffman;
+    private final MetadataPolicy metadataPolicy;
+    private final int effort;
+    private final int parallelism;
+    private final boolean trellisQuantization;
+    private final GrayscaleDetector grayscaleDetector;
+
+    /**
+     * Create options with the default settings
+     */
+    public CompressOptions() {
+        this(75, ChromaSubsampling.YUV420, null, false, MetadataPolicy.STRIP_SAFE, 6,
+                Runtime.getRuntime().availableProcessors(), false, JavaImageEngine.getGrayscaleDetector());
+    }
+
+    private CompressOptions(int quality, ChromaSubsampling subsampling, ScanScript scanScript, boolean optimizeHuffman,
+                            MetadataPolicy metadataPolicy, int effort, int parallelism, boolean trellisQuantization,
+                            GrayscaleDetector grayscaleDetector) {
+        this.quality = quality;
+        this.subsampling = subsampling;
+        this.scanScript = scanScript;
+        this.optimizeHuffman = optimizeHuffman;
+        this.metadataPolicy = metadataPolicy;
+        this.effort = effort;
+        this.parallelism = parallelism;
+        this.trellisQuantization = trellisQuantization;
+        this.grayscaleDetector = grayscaleDetector;
+    }
+
+    /**
+     * Get a copy of these options with another quality
+     *
+     * @param quality Compression quality (0-100, where 0 is highest compression, 100 is best quality);
+     *                below 100, PNG output is reduced to a palette
+     * @return Modified copy
+     * @throws IllegalArgumentException if quality is not in range 0-100
+     */
+    public CompressOptions withQuality(int quality) {
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("Quality must be between 0 and 100, got: " + quality);
+        }
+        return new CompressOptions(quality, subsampling, scanScript, optimizeHuffman, metadataPolicy, effort,
+                parallelism, trellisQuantization, grayscaleDetector);
+    }
+
+    /**
+     * Get a copy of these options with another chroma subsampling
+     *
+     * @param subsampling Chroma subsampling of color JPEG output
+     * @return Modified copy
+     * @throws IllegalArgumentException if subsampling is null
+     */
+    public CompressOptions withSubsampling(ChromaSubsampling subsampling) {
+        if (subsampling == null) {
+            throw new IllegalArgumentException("Subsampling must not be null");
+        }
+        return new CompressOptions(quality, subsampling, scanScript, optimizeHuffman, metadataPolicy, effort,
+                parallelism, trellisQuantization, grayscaleDetector);
+    }
+
+    /**
+     * Get a copy of these options with another JPEG mode
+     *
+     * @param progressive true for progressive JPEG output with the {@link ScanScript#SIMPLE} script
+     *                    (always with optimized Huffman tables), false for baseline
+     * @return Modified copy
+     */
+    public CompressOptions withProgressive(boolean progressive) {
+        return new CompressOptions(quality, subsampling, progressive ? ScanScript.SIMPLE : null, optimizeHuffman,
+                metadataPolicy, effort, parallelism, trellisQuantization, grayscaleDetector);
+    }
+
+    /**
+     * Get a copy of these options with progressive JPEG output following a custom script
+     *
+     * @param scanScript Scans of the progressive JPEG
+     * @return Modified copy
+     * @throws IllegalArgumentException if the script is null
+     */
+    public CompressOptions withScanScript(ScanScript scanScript) {
+        if (scanScript == null) {
+            throw new IllegalArgumentException("Scan script must not be null");
+        }
+        return new CompressOptions(quality, subsampling, scanScript, optimizeHuffman, metadataPolicy, effort,
+                parallelism, trellisQuantization, grayscaleDetector);
+    }
+
+    /**
+     * Get a copy of these options with another Huffman table choice
+     *
+     * @param optimizeHuffman true to build image-specific Huffman tables for baseline JPEG output
+     * @return Modified copy
+     */
+    public CompressOptions withOptimizeHuffman(boolean optimizeHuffman) {
+        return new CompressOptions(quality, subsampling, scanScript, optimizeHuffman, metadataPolicy, effort,
+                parallelism, trellisQuantization, grayscaleDetector);
+    }
+
+    /**
+     * Get a copy of these options with another metadata policy
+     *
+     * @param metadataPolicy Which metadata segments of JPEG input are copied to the JPEG output
+     *                       (JFIF and Adobe headers are always written fresh)
+     * @return Modified copy
+     * @throws IllegalArgumentException if the policy is null
+     */
+    public CompressOptions withMetadataPolicy(MetadataPolicy metadataPolicy) {
+        if (metadataPolicy == null) {
+            throw new IllegalArgumentException("Metadata policy must not be null");
+        }
+        return new CompressOptions(quality, subsampling, scanScript, optimizeHuffman, metadataPolicy, effort,
+                parallelism, trellisQuantization, grayscaleDetector);
+    }
+
+    /**
+     * Get a copy of these options with another effort level
+     *
+     * @param effort Speed/size trade-off of PNG output (0 fastest, 9 smallest)
+     * @return Modified copy
+     * @throws IllegalArgumentException if effort is not in range 0-9
+     */
+    public CompressOptions withEffort(int effort) {
+        if (effort < 0 || effort > 9) {
+            throw new IllegalArgumentException("Effort must be between 0 and 9, got: " + effort);
+        }
+        return new CompressOptions(quality, subsampling, scanScript, optimizeHuffman, metadataPolicy, effort,
+                parallelism, trellisQuantization, grayscaleDetector);
+    }
+
+    /**
+     * Get a copy of these options with another parallelism level
+     *
+     * @param parallelism Maximum number of threads used to decode and encode one image
+     * @return Modified copy
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public CompressOptions withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, got: " + parallelism);
+        }
+        return new CompressOptions(quality, subsampling, scanScript, optimizeHuffman, metadataPolicy, effort,
+                parallelism, trellisQuantization, grayscaleDetector);
+    }
+
+    /**
+     * Get a copy of these options with trellis quantization switched on or off
+     *
+     * @param trellisQuantization true to choose JPEG AC coefficients by rate-distortion cost
+     *                            (smaller output at the same quality, about twice the transform time)
+     * @return Modified copy
+     */
+    public CompressOptions withTrellisQuantization(boolean trellisQuantization) {
+        return new CompressOptions(quality, subsampling, scanScript, optimizeHuffman, metadataPolicy, effort,
+                parallelism, trellisQuantization, grayscaleDetector);
+    }
+
+    /**
+     * Get a copy of these options with another grayscale detector
+     *
+     * @param grayscaleDetector Detector that lets color JPEG input without chroma be written as a
+     *                          single-component JPEG (its tolerance decides what counts as gray),
+     *                          or null to always write color input as YCbCr
+     * @return Modified copy
+     */
+    public CompressOptions withGrayscaleDetector(GrayscaleDetector grayscaleDetector) {
+        return new CompressOptions(quality, subsampling, scanScript, optimizeHuffman, metadataPolicy, effort,
+                parallelism, trellisQuantization, grayscaleDetector);
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public ChromaSubsampling getSubsampling() {
+        return subsampling;
+    }
+
+    public boolean isProgressive() {
+        return scanScript != null;
+    }
+
+    /**
+     * Get the scans of progressive JPEG output
+     *
+     * @return Scan script, or null for baseline output
+     */
+    public ScanScript getScanScript() {
+        return scanScript;
+    }
+
+    public boolean isOptimizeHuffman() {
+        return optimizeHuffman;
+    }
+
+    public boolean isTrellisQuantization() {
+        return trellisQuantization;
+    }
+
+    public MetadataPolicy getMetadataPolicy() {
+        return metadataPolicy;
+    }
+
+    public int getEffort() {
+        return effort;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Get the grayscale detector of JPEG output
+     *
+     * @return Detector, or null if grayscale detection is off
+     */
+    public GrayscaleDetector getGrayscaleDetector() {
+        return grayscaleDetector;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressOptions{quality=" + quality + ", subsampling=" + subsampling
+                + ", progressive=" + (scanScript != null) + ", optimizeHuffman=" + optimizeHuffman
+                + ", trellis=" + trellisQuantization
+                + ", grayscaleTolerance=" + (grayscaleDetector == null ? "off" : grayscaleDetector.getTolerance())
+                + ", effort=" + effort + ", parallelism=" + parallelism + "}";
+    }
+}
@@ -0,0 +1,159 @@
+package cn.lihongjie.image.engine;
+
+import cn.lihongjie.image.PixelImage;
+
+import java.util.Arrays;
+
+/**
+ * BlurHash encoder
+ *
+ * Produces the compact base-83 string described at https://blurha.sh, which clients
+ * decode into a blurred placeholder. The cost grows with the number of pixels times the
+ * number of components, so the input should be a small preview (a few dozen pixels
+ * across), not the full image.
+ *
+ * Usage:
+ * <pre>
+ * String hash = BlurHash.encode(ImageOps.resize(image, 32, 24), 4, 3);
+ * </pre>
+ */
+public final class BlurHash {
+
+    private static final String BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    /** sRGB byte to linear light */
+    private static final double[] LINEAR = new double[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double v = i / 255.0;
+            LINEAR[i] = v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    private BlurHash() {
+    }
+
+    /**
+     * Encode an image as a BlurHash string
+     *
+     * Gray images are treated as RGB with equal channels; an alpha channel is ignored.
+     *
+     * @param image       Source pixels, ideally already downscaled
+     * @param componentsX Number of horizontal cosine components (1-9)
+     * @param componentsY Number of vertical cosine components (1-9)
+     * @return BlurHash string of 4 + 2 * componentsX * componentsY characters
+     * @throws IllegalArgumentException if a component count is not in range 1-9
+     */
+    public static String encode(PixelImage image, int componentsX, int componentsY) {
+        if (componentsX < 1 || componentsX > 9 || componentsY < 1 || componentsY > 9) {
+            throw new IllegalArgumentException("Component counts must be in range 1-9, got: "
+                    + componentsX + "x" + componentsY);
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int ch = image.getChannels();
+        byte[] pixels = image.getPixels();
+        int g = ch >= 3 ? 1 : 0;
+        int b = ch >= 3 ? 2 : 0;
+
+        // Separable cosine bases, one table per axis
+        double[][] basisX = basis(componentsX, w);
+        double[][] basisY = basis(componentsY, h);
+        double[][] factors = new double[componentsX * componentsY][3];
+        double[] rowR = new double[componentsX];
+        double[] rowG = new double[componentsX];
+        double[] rowB = new double[componentsX];
+        for (int y = 0; y < h; y++) {
+            Arrays.fill(rowR, 0);
+            Arrays.fill(rowG, 0);
+            Arrays.fill(rowB, 0);
+            int p = y * w * ch;
+            for (int x = 0; x < w; x++, p += ch) {
+                double r = LINEAR[pixels[p] & 0xFF];
+                double gr = LINEAR[pixels[p + g] & 0xFF];
+                double bl = LINEAR[pixels[p + b] & 0xFF];
+                for (int i = 0; i < componentsX; i++) {
+                    double basis = basisX[i][x];
+                    rowR[i] += basis * r;
+                    rowG[i] += basis * gr;
+                    rowB[i] += basis * bl;
+                }
+            }
+            for (int j = 0; j < componentsY; j++) {
+                double basis = basisY[j][y];
+                for (int i = 0; i < componentsX; i++) {
+                    double[] f = factors[j * componentsX + i];
+                    f[0] += basis * rowR[i];
+                    f[1] += basis * rowG[i];
+                    f[2] += basis * rowB[i];
+                }
+            }
+        }
+        for (int k = 0; k < factors.length; k++) {
+            double scale = (k == 0 ? 1.0 : 2.0) / ((double) w * h);
+            for (int c = 0; c < 3; c++) {
+                factors[k][c] *= scale;
+            }
+        }
+
+        StringBuilder hash = new StringBuilder(4 + 2 * factors.length);
+        encode83(hash, (componentsX - 1) + (componentsY - 1) * 9, 1);
+        double maximum = 1;
+        if (factors.length > 1) {
+            double actual = 0;
+            for (int k = 1; k < factors.length; k++) {
+                for (int c = 0; c < 3; c++) {
+                    actual = Math.max(actual, Math.abs(factors[k][c]));
+                }
+            }
+            int quantised = (int) Math.max(0, Math.min(82, Math.floor(actual * 166 - 0.5)));
+            maximum = (quantised + 1) / 166.0;
+            encode83(hash, quantised, 1);
+        } else {
+            encode83(hash, 0, 1);
+        }
+        double[] dc = factors[0];
+        encode83(hash, (toSrgb(dc[0]) << 16) | (toSrgb(dc[1]) << 8) | toSrgb(dc[2]), 4);
+        for (int k = 1; k < factors.length; k++) {
+            double[] ac = factors[k];
+            encode83(hash, quantizeAc(ac[0], maximum) * 19 * 19 + quantizeAc(ac[1], maximum) * 19
+                    + quantizeAc(ac[2], maximum), 2);
+        }
+        return hash.toString();
+    }
+
+    private static double[][] basis(int components, int size) {
+        double[][] basis = new double[components][size];
+        for (int i = 0; i < components; i++) {
+            for (int x = 0; x < size; x++) {
+                basis[i][x] = Math.cos(Math.PI * i * x / size);
+            }
+        }
+        return basis;
+    }
+
+    private static int toSrgb(double linear) {
+        double v = Math.max(0, Math.min(1, linear));
+        double srgb = v <= 0.0031308 ? v * 12.92 : 1.055 * Math.pow(v, 1 / 2.4) - 0.055;
+        return (int) (srgb * 255 + 0.5);
+    }
+
+    private static int quantizeAc(double value, double maximum) {
+        double v = value / maximum;
+        double signedRoot = Math.copySign(Math.sqrt(Math.abs(v)), v);
+        return (int) Math.max(0, Math.min(18, Math.floor(signedRoot * 9 + 9.5)));
+    }
+
+    private static void encode83(StringBuilder out, int value, int length) {
+        int divisor = 1;
+        for (int i = 1; i < length; i++) {
+            divisor *= 83;
+        }
+        for (int i = 0; i < length; i++) {
+            out.append(BASE83.charAt(value / divisor % 83));
+            divisor /= 83;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package cn.lihongjie.image.engine;
+
+import cn.lihongjie.image.PixelImage;
+
+/**
+ * Geometric operations on decoded pixels
+ *
+ * All operations work on {@link PixelImage} byte arrays directly and return a new image;
+ * the input is never modified.
+ *
+ * Usage:
+ * <pre>
+ * PixelImage rotated = ImageOps.rotate(image, 90);
+ * PixelImage preview = ImageOps.resize(image, 256, 192);
+ * </pre>
+ */
+public final class ImageOps {
+
+    /** Fixed-point precision of resampling weights */
+    private static final int WEIGHT_BITS = 14;
+
+    private ImageOps() {
+    }
+
+    /**
+     * Rotate clockwise by a multiple of 90 degrees
+     *
+     * @param image Source image
+     * @param angle Rotation angle in degrees (must be 90, 180, or 270)
+     * @return Rotated image
+     * @throws IllegalArgumentException if angle is not 90, 180, or 270
+     */
+    public static PixelImage rotate(PixelImage image, int angle) {
+        if (angle != 90 && angle != 180 && angle != 270) {
+            throw new IllegalArgumentException("Angle must be 90, 180, or 270 degrees, got: " + angle);
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int ch = image.getChannels();
+        byte[] src = image.getPixels();
+        PixelImage out = angle == 180 ? PixelImage.allocate(w, h, ch) : PixelImage.allocate(h, w, ch);
+        byte[] dst = out.getPixels();
+        int outWidth = out.getWidth();
+        for (int y = 0; y < h; y++) {
+            int s = y * w * ch;
+            for (int x = 0; x < w; x++, s += ch) {
+                int d;
+                if (angle == 90) {
+                    d = (x * outWidth + (h - 1 - y)) * ch;
+                } else if (angle == 180) {
+                    d = ((h - 1 - y) * w + (w - 1 - x)) * ch;
+                } else {
+                    d = ((w - 1 - x) * outWidth + y) * ch;
+                }
+                for (int c = 0; c < ch; c++) {
+                    dst[d + c] = src[s + c];
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Resample to new dimensions with a separable triangle filter
+     *
+     * The filter widens with the reduction factor, so downscaling averages every
+     * source pixel (no aliasing) and upscaling is bilinear.
+     *
+     * @param image  Source image
+     * @param width  Target width in pixels
+     * @param height Target height in pixels
+     * @return Resized image
+     * @throws IllegalArgumentException if the target dimensions are not positive
+     */
+    public static PixelImage resize(PixelImage image, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid target dimensions: " + width + "x" + height);
+        }
+        int srcWidth = image.getWidth();
+        int srcHeight = image.getHeight();
+        if (width == srcWidth && height == srcHeight) {
+            return new PixelImage(width, height, image.getChannels(), image.getPixels().clone());
+        }
+        int ch = image.getChannels();
+        byte[] src = image.getPixels();
+        Kernel horizontal = new Kernel(srcWidth, width);
+        Kernel vertical = new Kernel(srcHeight, height);
+
+        // Horizontal pass keeps 6 fractional bits so the vertical pass stays within int range
+        int rowLength = width * ch;
+        int[] temp = new int[srcHeight * rowLength];
+        for (int y = 0; y < srcHeight; y++) {
+            int srcRow = y * srcWidth * ch;
+            int dstRow = y * rowLength;
+            for (int x = 0; x < width; x++) {
+                int first = horizontal.first[x];
+                int taps = horizontal.taps[x];
+                int wOff = horizontal.offsets[x];
+                for (int c = 0; c < ch; c++) {
+                    int sum = 0;
+                    for (int t = 0; t < taps; t++) {
+                        sum += (src[srcRow + (first + t) * ch + c] & 0xFF) * horizontal.weights[wOff + t];
+                    }
+                    temp[dstRow + x * ch + c] = (sum + (1 << 7)) >> 8;
+                }
+            }
+        }
+
+        PixelImage out = PixelImage.allocate(width, height, ch);
+        byte[] dst = out.getPixels();
+        int shift = WEIGHT_BITS + 6;
+        for (int y = 0; y < height; y++) {
+            int first = vertical.first[y];
+            int taps = vertical.taps[y];
+            int wOff = vertical.offsets[y];
+            int dstRow = y * rowLength;
+            for (int i = 0; i < rowLength; i++) {
+                int sum = 0;
+                for (int t = 0; t < taps; t++) {
+                    sum += temp[(first + t) * rowLength + i] * vertical.weights[wOff + t];
+                }
+                int value = (sum + (1 << (shift - 1))) >> shift;
+                dst[dstRow + i] = (byte) (value < 0 ? 0 : value > 255 ? 255 : value);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Precomputed triangle filter taps for one axis, weights normalized to 1 &lt;&lt; WEIGHT_BITS
+     */
+    private static final class Kernel {
+
+        final int[] first;
+        final int[] taps;
+        final int[] offsets;
+        final int[] weights;
+
+        Kernel(int srcSize, int dstSize) {
+            double scale = (double) srcSize / dstSize;
+            double support = Math.max(1.0, scale);
+            int maxTaps = (int) Math.ceil(support * 2) + 1;
+            first = new int[dstSize];
+            taps = new int[dstSize];
+            offsets = new int[dstSize];
+            weights = new int[dstSize * maxTaps];
+            double[] raw = new double[maxTaps];
+            for (int i = 0; i < dstSize; i++) {
+                double center = (i + 0.5) * scale - 0.5;
+                int lo = Math.max(0, (int) Math.floor(center - support) + 1);
+                int hi = Math.min(srcSize - 1, (int) Math.ceil(center + support) - 1);
+                if (hi < lo) {
+                    lo = hi = Math.min(srcSize - 1, Math.max(0, (int) Math.round(center)));
+                }
+                double total = 0;
+                for (int j = lo; j <= hi; j++) {
+                    raw[j - lo] = Math.max(0.0, 1.0 - Math.abs(j - center) / support);
+                    total += raw[j - lo];
+                }
+                int count = hi - lo + 1;
+                int offset = i * maxTaps;
+                int sum = 0;
+                int largest = 0;
+                for (int t = 0; t < count; t++) {
+                    int weight = total > 0
+                            ? (int) Math.round(raw[t] / total * (1 << WEIGHT_BITS))
+                            : (t == 0 ? 1 << WEIGHT_BITS : 0);
+                    weights[offset + t] = weight;
+                    sum += weight;
+                    if (weight > weights[offset + largest]) {
+                        largest = t;
+                    }
+                }
+                // Put the rounding error on the largest tap so the weights sum exactly to one
+                weights[offset + largest] += (1 << WEIGHT_BITS) - sum;
+                first[i] = lo;
+                taps[i] = count;
+                offsets[i] = offset;
+            }
+        }
+    }
+}
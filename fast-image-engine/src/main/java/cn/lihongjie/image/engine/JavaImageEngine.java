@@ -0,0 +1,423 @@
+package cn.lihongjie.image.engine;
+
+import cn.lihongjie.image.CompressOptions;
+import cn.lihongjie.image.ImageFormat;
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.jpeg.GrayscaleDetector;
+import cn.lihongjie.image.jpeg.JpegDecoder;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import cn.lihongjie.image.metadata.MetadataStripper;
+import cn.lihongjie.image.metadata.MetadataType;
+import cn.lihongjie.image.metadata.Segment;
+import cn.lihongjie.image.metadata.SegmentScanner;
+import cn.lihongjie.image.png.ColorQuantizer;
+import cn.lihongjie.image.png.OptimizedPng;
+import cn.lihongjie.image.png.PngEncoder;
+import cn.lihongjie.image.png.PngFilterStrategy;
+import cn.lihongjie.image.png.PngOptimizer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pure-Java image engine
+ *
+ * Provides the same byte[]-in/byte[]-out operations as the native library using
+ * the codecs in this project, so it works on every platform and when the native
+ * library cannot be loaded. JPEG input is decoded by {@link JpegDecoder} using all
+ * available processors; other formats (and JPEG color spaces the decoder does not
+ * handle, such as CMYK) go through ImageIO.
+ *
+ * Usage:
+ * <pre>
+ * byte[] jpeg = JavaImageEngine.compressJpeg(imageBytes, 75);
+ * byte[] rotated = JavaImageEngine.rotate(imageBytes, 90);
+ * </pre>
+ */
+public final class JavaImageEngine {
+
+    /** Quality used when an operation has to re-encode a JPEG (same as compressHigh) */
+    private static final int REENCODE_QUALITY = 90;
+
+    /**
+     * Shared by the compressJpeg calls without an explicit detector and by default {@link CompressOptions},
+     * so its counters cover all of them
+     */
+    private static final GrayscaleDetector GRAYSCALE_DETECTOR = new GrayscaleDetector();
+
+    private JavaImageEngine() {
+    }
+
+    /**
+     * Get the grayscale detector used by {@link #compressJpeg(byte[], int)},
+     * {@link #compressJpeg(byte[], int, int)} and default {@link CompressOptions}, for its counters
+     *
+     * @return Shared detector with the default tolerance
+     */
+    public static GrayscaleDetector getGrayscaleDetector() {
+        return GRAYSCALE_DETECTOR;
+    }
+
+    /**
+     * Decode an encoded image into pixels, using all available processors for JPEG
+     *
+     * @param imageBytes Encoded image data (JPEG, or any format ImageIO can read)
+     * @return Decoded pixels
+     * @throws IllegalArgumentException if data is empty or the format is unsupported
+     * @throws RuntimeException if decoding fails
+     */
+    public static PixelImage decode(byte[] imageBytes) {
+        return decode(imageBytes, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Decode an encoded image into pixels
+     *
+     * @param imageBytes Encoded image data (JPEG, or any format ImageIO can read)
+     * @param parallelism Maximum number of threads used to decode a JPEG
+     * @return Decoded pixels
+     * @throws IllegalArgumentException if data is empty, the format is unsupported or parallelism is less than 1
+     * @throws RuntimeException if decoding fails
+     */
+    public static PixelImage decode(byte[] imageBytes, int parallelism) {
+        return decode(imageBytes, parallelism, 0, 0);
+    }
+
+    /**
+     * Decode an image at a reduced size that still covers the given dimensions
+     *
+     * JPEG input is decoded directly at 1/2, 1/4 or 1/8 scale with reduced-size IDCTs
+     * when that is enough to cover the target; other formats are decoded at full size.
+     * The result is meant to be resized to the exact target afterwards.
+     *
+     * @param imageBytes Encoded image data (JPEG, or any format ImageIO can read)
+     * @param minWidth Minimum width of the decoded image
+     * @param minHeight Minimum height of the decoded image
+     * @return Decoded pixels, at least minWidth x minHeight unless the image itself is smaller
+     * @throws IllegalArgumentException if data is empty or the format is unsupported
+     * @throws RuntimeException if decoding fails
+     */
+    public static PixelImage decodeAtLeast(byte[] imageBytes, int minWidth, int minHeight) {
+        return decode(imageBytes, Runtime.getRuntime().availableProcessors(), minWidth, minHeight);
+    }
+
+    private static PixelImage decode(byte[] imageBytes, int parallelism, int minWidth, int minHeight) {
+        if (imageBytes == null || imageBytes.length == 0) {
+            throw new IllegalArgumentException("Image data is empty");
+        }
+        JpegDecoder decoder = new JpegDecoder().withParallelism(parallelism);
+        if (ImageFormat.detect(imageBytes) == ImageFormat.JPEG) {
+            try {
+                return minWidth > 0 || minHeight > 0
+                        ? decoder.decodeAtLeast(imageBytes, minWidth, minHeight)
+                        : decoder.decode(imageBytes);
+            } catch (IllegalArgumentException e) {
+                // Unsupported coding process or color space: let ImageIO try
+            }
+        }
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+        } catch (IOException e) {
+            throw new RuntimeException("Image decoding failed", e);
+        }
+        if (image == null) {
+            throw new IllegalArgumentException("Unsupported image format");
+        }
+        return PixelImage.fromBufferedImage(image);
+    }
+
+    /**
+     * Compute a placeholder (BlurHash, tiny LQIP JPEG, average and dominant color)
+     *
+     * JPEG input is decoded from its DC coefficients only (1/8 scale, no AC decoding or
+     * IDCT) whenever that still covers {@link Placeholder#LQIP_SIZE}; other formats are
+     * decoded in full. The decode is single-threaded, as placeholders are usually made
+     * for many images at once.
+     *
+     * @param imageBytes Encoded image data (JPEG, or any format ImageIO can read)
+     * @return Placeholder
+     * @throws IllegalArgumentException if data is empty or the format is unsupported
+     * @throws RuntimeException if decoding fails
+     */
+    public static Placeholder placeholder(byte[] imageBytes) {
+        return Placeholder.of(decode(imageBytes, 1, Placeholder.LQIP_SIZE, Placeholder.LQIP_SIZE));
+    }
+
+    /**
+     * Compress an image to JPEG with the pure-Java encoder (4:2:0, standard Huffman tables)
+     *
+     * Color images without chroma (see {@link #getGrayscaleDetector()}) are written as
+     * single-component gray JPEGs.
+     *
+     * @param imageBytes Input image data (any format ImageIO can read)
+     * @param quality Compression quality (0-100, where 0 is highest compression, 100 is best quality)
+     * @return JPEG image data
+     * @throws IllegalArgumentException if quality is not in range 0-100 or data is empty or unsupported
+     */
+    public static byte[] compressJpeg(byte[] imageBytes, int quality) {
+        JpegEncoder encoder = new JpegEncoder(quality).withGrayscaleDetector(GRAYSCALE_DETECTOR);
+        return encoder.encode(decode(imageBytes));
+    }
+
+    /**
+     * Compress an image to JPEG, splitting the encode across several cores
+     *
+     * The image is encoded as {@code parallelism} bands of MCU rows separated by
+     * restart markers, which lowers the latency of a single large image.
+     *
+     * @param imageBytes Input image data (any format ImageIO can read)
+     * @param quality Compression quality (0-100, where 0 is highest compression, 100 is best quality)
+     * @param parallelism Number of bands encoded concurrently
+     * @return JPEG image data
+     * @throws IllegalArgumentException if quality is not in range 0-100, parallelism is less than 1,
+     *         or data is empty or unsupported
+     */
+    public static byte[] compressJpeg(byte[] imageBytes, int quality, int parallelism) {
+        return compressJpeg(imageBytes, quality, parallelism, GRAYSCALE_DETECTOR);
+    }
+
+    /**
+     * Compress an image to JPEG on several cores with a caller-supplied grayscale detector
+     *
+     * @param imageBytes Input image data (any format ImageIO can read)
+     * @param quality Compression quality (0-100, where 0 is highest compression, 100 is best quality)
+     * @param parallelism Number of bands encoded concurrently
+     * @param grayscaleDetector Detector (tolerance and counters) for the single-component fast path,
+     *                          or null to always encode color images as YCbCr
+     * @return JPEG image data
+     * @throws IllegalArgumentException if quality is not in range 0-100, parallelism is less than 1,
+     *         or data is empty or unsupported
+     */
+    public static byte[] compressJpeg(byte[] imageBytes, int quality, int parallelism,
+                                      GrayscaleDetector grayscaleDetector) {
+        JpegEncoder encoder = new JpegEncoder(quality).withParallelism(parallelism)
+                .withGrayscaleDetector(grayscaleDetector);
+        return encoder.encode(decode(imageBytes, parallelism));
+    }
+
+    /**
+     * Encode decoded pixels to JPEG with the pure-Java encoder (4:2:0, standard Huffman tables)
+     *
+     * @param image Decoded pixels
+     * @param quality Compression quality (0-100, where 0 is highest compression, 100 is best quality)
+     * @return JPEG image data
+     * @throws IllegalArgumentException if quality is not in range 0-100
+     */
+    public static byte[] encodeJpeg(PixelImage image, int quality) {
+        return new JpegEncoder(quality).encode(image);
+    }
+
+    /**
+     * Re-encode an image as PNG with the pure-Java encoder, using all available processors
+     *
+     * @param imageBytes Input image data (any format ImageIO can read)
+     * @return PNG image data
+     * @throws IllegalArgumentException if data is empty or unsupported
+     */
+    public static byte[] compressPng(byte[] imageBytes) {
+        return compressPng(imageBytes, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Re-encode an image as PNG, filtering and deflating on several cores
+     *
+     * @param imageBytes Input image data (any format ImageIO can read)
+     * @param parallelism Maximum number of threads used to decode and encode
+     * @return PNG image data
+     * @throws IllegalArgumentException if parallelism is less than 1, or data is empty or unsupported
+     */
+    public static byte[] compressPng(byte[] imageBytes, int parallelism) {
+        return compressPng(imageBytes, parallelism, PngFilterStrategy.MIN_SUM);
+    }
+
+    /**
+     * Re-encode an image as PNG with the given scanline filter strategy
+     *
+     * @param imageBytes Input image data (any format ImageIO can read)
+     * @param parallelism Maximum number of threads used to decode and encode
+     * @param filterStrategy Fixed filter or adaptive heuristic for each scanline
+     * @return PNG image data
+     * @throws IllegalArgumentException if parallelism is less than 1, the strategy is null,
+     *         or data is empty or unsupported
+     */
+    public static byte[] compressPng(byte[] imageBytes, int parallelism, PngFilterStrategy filterStrategy) {
+        PngEncoder encoder = new PngEncoder().withParallelism(parallelism).withFilterStrategy(filterStrategy);
+        return encoder.encode(decode(imageBytes, parallelism));
+    }
+
+    /**
+     * Re-encode an image as the smallest lossless PNG found by trial encodes on all available processors
+     *
+     * Meant for assets that are encoded once and served many times; see {@link PngOptimizer}.
+     * PNG input is returned unchanged when no trial encode is smaller.
+     *
+     * @param imageBytes Input image data (any format ImageIO can read)
+     * @param timeBudgetMillis Wall-clock time after which the trial encodes stop
+     * @return Smallest PNG and the combination of settings that produced it
+     * @throws IllegalArgumentException if the budget is negative, or data is empty or unsupported
+     */
+    public static OptimizedPng compressPngMax(byte[] imageBytes, long timeBudgetMillis) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        PngOptimizer optimizer = new PngOptimizer().withParallelism(parallelism).withTimeBudget(timeBudgetMillis);
+        return optimizer.optimize(decode(imageBytes, parallelism), imageBytes);
+    }
+
+    /**
+     * Compress an image to a palette PNG, the pure-Java counterpart of the native lossy PNG path
+     *
+     * The palette size follows the quality ({@link ColorQuantizer#forQuality}); quality 100
+     * keeps all colors and encodes a lossless truecolor PNG instead.
+     *
+     * @param imageBytes Input image data (any format ImageIO can read)
+     * @param quality Compression quality (0-100, where 0 is highest compression, 100 is best quality)
+     * @return PNG image data
+     * @throws IllegalArgumentException if quality is not in range 0-100 or data is empty or unsupported
+     */
+    public static byte[] compressPngLossy(byte[] imageBytes, int quality) {
+        ColorQuantizer quantizer = ColorQuantizer.forQuality(quality);
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (quality == 100) {
+            return compressPng(imageBytes, parallelism);
+        }
+        PixelImage image = decode(imageBytes, parallelism);
+        return new PngEncoder().withParallelism(parallelism)
+                .encode(quantizer.withParallelism(parallelism).quantize(image));
+    }
+
+    /**
+     * Compress an image keeping its format, like the native {@code FastImageUtils.compress}
+     *
+     * JPEG input is re-encoded as JPEG at the given quality; everything else becomes a
+     * palette PNG via {@link #compressPngLossy}.
+     *
+     * @param imageBytes Input image data
+     * @param quality Compression quality (0-100, where 0 is highest compression, 100 is best quality)
+     * @return Compressed image data
+     * @throws IllegalArgumentException if quality is not in range 0-100 or data is empty or unsupported
+     */
+    public static byte[] compress(byte[] imageBytes, int quality) {
+        if (imageBytes != null && ImageFormat.detect(imageBytes) == ImageFormat.JPEG) {
+            return compressJpeg(imageBytes, quality);
+        }
+        return compressPngLossy(imageBytes, quality);
+    }
+
+    /**
+     * Compress an image keeping its format, with explicit encoder settings
+     *
+     * JPEG input is re-encoded as JPEG with the options' quality, subsampling, mode,
+     * Huffman tables, quantization and grayscale detector; metadata segments kept by the
+     * options' policy are copied over.
+     * Everything else becomes a PNG whose encode time is set by the options' effort,
+     * reduced to a palette when quality is below 100. PNG output carries no metadata, except at
+     * effort 9 and quality 100, which returns PNG input unchanged when it is already the smallest.
+     *
+     * @param imageBytes Input image data
+     * @param options Encoder settings
+     * @return Compressed image data
+     * @throws IllegalArgumentException if options are null or data is empty or unsupported
+     */
+    public static byte[] compress(byte[] imageBytes, CompressOptions options) {
+        if (options == null) {
+            throw new IllegalArgumentException("Options must not be null");
+        }
+        int parallelism = options.getParallelism();
+        if (imageBytes != null && ImageFormat.detect(imageBytes) == ImageFormat.JPEG) {
+            JpegEncoder encoder = new JpegEncoder(options.getQuality(), options.getSubsampling(),
+                    options.isOptimizeHuffman())
+                    .withParallelism(parallelism)
+                    .withTrellisQuantization(options.isTrellisQuantization())
+                    .withGrayscaleDetector(options.getGrayscaleDetector())
+                    .withMetadata(keptMetadata(imageBytes, options));
+            if (options.isProgressive()) {
+                encoder = encoder.withScanScript(options.getScanScript());
+            }
+            return encoder.encode(decode(imageBytes, parallelism));
+        }
+        PixelImage image = decode(imageBytes, parallelism);
+        int effort = options.getEffort();
+        if (options.getQuality() == 100 && effort == 9) {
+            return new PngOptimizer().withParallelism(parallelism).optimize(image, imageBytes).getData();
+        }
+        PngFilterStrategy filter = effort <= 2 ? PngFilterStrategy.UP
+                : effort <= 7 ? PngFilterStrategy.MIN_SUM : PngFilterStrategy.ENTROPY;
+        PngEncoder encoder = new PngEncoder(Math.max(1, effort)).withParallelism(parallelism)
+                .withFilterStrategy(filter);
+        if (options.getQuality() == 100) {
+            return encoder.encode(image);
+        }
+        ColorQuantizer quantizer = ColorQuantizer.forQuality(options.getQuality()).withParallelism(parallelism);
+        return encoder.encode(quantizer.quantize(image));
+    }
+
+    /**
+     * APPn and COM segments of a JPEG that the options' policy keeps, minus the JFIF and
+     * Adobe headers the encoder writes itself
+     */
+    private static List<byte[]> keptMetadata(byte[] jpegBytes, CompressOptions options) {
+        byte[] stripped = MetadataStripper.strip(jpegBytes, options.getMetadataPolicy());
+        List<byte[]> kept = new ArrayList<>();
+        for (Segment segment : SegmentScanner.scan(ByteBuffer.wrap(stripped))) {
+            MetadataType type = segment.getType();
+            if (type != null && type != MetadataType.JFIF && type != MetadataType.ADOBE) {
+                kept.add(Arrays.copyOfRange(stripped, segment.getOffset(), segment.getOffset() + segment.getLength()));
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Rotate an image clockwise
+     *
+     * JPEG input produces JPEG output (re-encoded at quality 90), everything else produces PNG.
+     *
+     * @param imageBytes Input image data
+     * @param angle Rotation angle in degrees (must be 90, 180, or 270)
+     * @return Rotated image data
+     * @throws IllegalArgumentException if angle is not 90, 180, or 270, or data is empty or unsupported
+     */
+    public static byte[] rotate(byte[] imageBytes, int angle) {
+        if (angle != 90 && angle != 180 && angle != 270) {
+            throw new IllegalArgumentException("Angle must be 90, 180, or 270 degrees, got: " + angle);
+        }
+        return encodeLike(imageBytes, ImageOps.rotate(decode(imageBytes), angle));
+    }
+
+    /**
+     * Resize an image
+     *
+     * JPEG input produces JPEG output (re-encoded at quality 90), everything else produces PNG.
+     * When shrinking a JPEG by 2x or more, it is first decoded at a reduced DCT scale.
+     *
+     * @param imageBytes Input image data
+     * @param width Target width in pixels
+     * @param height Target height in pixels
+     * @return Resized image data
+     * @throws IllegalArgumentException if the target dimensions are not positive, or data is empty or unsupported
+     */
+    public static byte[] resize(byte[] imageBytes, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid target dimensions: " + width + "x" + height);
+        }
+        PixelImage image = decodeAtLeast(imageBytes, width, height);
+        return encodeLike(imageBytes, ImageOps.resize(image, width, height));
+    }
+
+    /**
+     * Encode pixels in the format of the original input: JPEG stays JPEG, anything else becomes PNG
+     */
+    private static byte[] encodeLike(byte[] original, PixelImage image) {
+        if (ImageFormat.detect(original) == ImageFormat.JPEG) {
+            return new JpegEncoder(REENCODE_QUALITY).withParallelism(Runtime.getRuntime().availableProcessors())
+                    .encode(image);
+        }
+        return new PngEncoder().withParallelism(Runtime.getRuntime().availableProcessors()).encode(image);
+    }
+}
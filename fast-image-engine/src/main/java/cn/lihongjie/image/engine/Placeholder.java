@@ -0,0 +1,158 @@
+package cn.lihongjie.image.engine;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+
+/**
+ * Low-quality placeholder for an image: BlurHash, tiny LQIP JPEG, average and dominant color
+ *
+ * Built from a small preview of the image. {@link JavaImageEngine#placeholder} gets that
+ * preview for JPEG input from the DC coefficients alone (a 1/8-scale decode without any
+ * AC decoding or IDCT), so generating a placeholder costs a fraction of a full decode.
+ *
+ * Usage:
+ * <pre>
+ * Placeholder placeholder = JavaImageEngine.placeholder(jpegBytes);
+ * String hash = placeholder.getBlurHash();
+ * String css = String.format("#%06x", placeholder.getDominantColor());
+ * </pre>
+ */
+public final class Placeholder {
+
+    /** Longest side of the LQIP image and of the BlurHash input */
+    public static final int LQIP_SIZE = 32;
+
+    private static final int LQIP_QUALITY = 50;
+    private static final int BLURHASH_COMPONENTS_X = 4;
+    private static final int BLURHASH_COMPONENTS_Y = 3;
+
+    private final String blurHash;
+    private final byte[] lqip;
+    private final int lqipWidth;
+    private final int lqipHeight;
+    private final int averageColor;
+    private final int dominantColor;
+
+    private Placeholder(String blurHash, byte[] lqip, int lqipWidth, int lqipHeight,
+                        int averageColor, int dominantColor) {
+        this.blurHash = blurHash;
+        this.lqip = lqip;
+        this.lqipWidth = lqipWidth;
+        this.lqipHeight = lqipHeight;
+        this.averageColor = averageColor;
+        this.dominantColor = dominantColor;
+    }
+
+    /**
+     * Compute a placeholder from already decoded (ideally reduced-size) pixels
+     *
+     * Colors are computed over the whole preview; the BlurHash and LQIP come from a copy
+     * downscaled to at most {@link #LQIP_SIZE} pixels on the longest side.
+     *
+     * @param preview Decoded pixels, gray, RGB or RGBA
+     * @return Placeholder
+     */
+    public static Placeholder of(PixelImage preview) {
+        int w = preview.getWidth();
+        int h = preview.getHeight();
+        int tinyWidth = w;
+        int tinyHeight = h;
+        if (Math.max(w, h) > LQIP_SIZE) {
+            tinyWidth = Math.max(1, (int) Math.round((double) w * LQIP_SIZE / Math.max(w, h)));
+            tinyHeight = Math.max(1, (int) Math.round((double) h * LQIP_SIZE / Math.max(w, h)));
+        }
+        PixelImage tiny = tinyWidth == w && tinyHeight == h ? preview : ImageOps.resize(preview, tinyWidth, tinyHeight);
+        byte[] lqip = new JpegEncoder(LQIP_QUALITY, ChromaSubsampling.YUV420, true).encode(tiny);
+        String hash = BlurHash.encode(tiny, BLURHASH_COMPONENTS_X, BLURHASH_COMPONENTS_Y);
+        int[] colors = colors(preview);
+        return new Placeholder(hash, lqip, tinyWidth, tinyHeight, colors[0], colors[1]);
+    }
+
+    /**
+     * Compute the average color and the mean color of the most populated 4-bit-per-channel bin
+     */
+    private static int[] colors(PixelImage image) {
+        int ch = image.getChannels();
+        int g = ch >= 3 ? 1 : 0;
+        int b = ch >= 3 ? 2 : 0;
+        byte[] pixels = image.getPixels();
+        int count = image.getWidth() * image.getHeight();
+        int[] bins = new int[4096];
+        long[] binSums = new long[4096 * 3];
+        long sumR = 0;
+        long sumG = 0;
+        long sumB = 0;
+        for (int i = 0, p = 0; i < count; i++, p += ch) {
+            int r = pixels[p] & 0xFF;
+            int gr = pixels[p + g] & 0xFF;
+            int bl = pixels[p + b] & 0xFF;
+            sumR += r;
+            sumG += gr;
+            sumB += bl;
+            int bin = (r >> 4) << 8 | (gr >> 4) << 4 | bl >> 4;
+            bins[bin]++;
+            binSums[bin * 3] += r;
+            binSums[bin * 3 + 1] += gr;
+            binSums[bin * 3 + 2] += bl;
+        }
+        int best = 0;
+        for (int bin = 1; bin < bins.length; bin++) {
+            if (bins[bin] > bins[best]) {
+                best = bin;
+            }
+        }
+        int average = rgb(sumR, sumG, sumB, count);
+        int dominant = rgb(binSums[best * 3], binSums[best * 3 + 1], binSums[best * 3 + 2], bins[best]);
+        return new int[]{average, dominant};
+    }
+
+    private static int rgb(long r, long g, long b, long count) {
+        long half = count / 2;
+        return (int) ((r + half) / count) << 16 | (int) ((g + half) / count) << 8 | (int) ((b + half) / count);
+    }
+
+    /**
+     * Get the BlurHash string (4x3 components)
+     *
+     * @return BlurHash
+     */
+    public String getBlurHash() {
+        return blurHash;
+    }
+
+    /**
+     * Get the tiny low-quality JPEG preview
+     *
+     * @return JPEG data, at most {@link #LQIP_SIZE} pixels on the longest side
+     */
+    public byte[] getLqip() {
+        return lqip;
+    }
+
+    public int getLqipWidth() {
+        return lqipWidth;
+    }
+
+    public int getLqipHeight() {
+        return lqipHeight;
+    }
+
+    /**
+     * Get the mean color of all pixels
+     *
+     * @return Color as 0xRRGGBB
+     */
+    public int getAverageColor() {
+        return averageColor;
+    }
+
+    /**
+     * Get the dominant color: the mean of the most frequent color bin (16 levels per channel)
+     *
+     * @return Color as 0xRRGGBB
+     */
+    public int getDominantColor() {
+        return dominantColor;
+    }
+}
@@ -0,0 +1,83 @@
+package cn.lihongjie.image.jpeg;
+
+/**
+ * MSB-first bit reader over one entropy-coded segment
+ * 
+ * Removes 0xFF00 byte stuffing on the fly. Reading past the end of the segment
+ * (or into a marker) yields zero bits, which is how decoders are expected to
+ * treat truncated data.
+ */
+final class BitReader {
+
+    private final byte[] data;
+    private final int end;
+    private int pos;
+    private long buffer;
+    private int bits;
+
+    BitReader(byte[] data, int start, int end) {
+        this.data = data;
+        this.pos = start;
+        this.end = end;
+    }
+
+    private void fill() {
+        while (bits <= 56) {
+            int b = 0;
+            if (pos < end) {
+                b = data[pos] & 0xFF;
+                if (b == 0xFF) {
+                    if (pos + 1 < end && data[pos + 1] == 0) {
+                        pos += 2;
+                    } else {
+                        // Marker or stray 0xFF: stop consuming input
+                        b = 0;
+                        pos = end;
+                    }
+                } else {
+                    pos++;
+                }
+            }
+            buffer = (buffer << 8) | b;
+            bits += 8;
+        }
+    }
+
+    /**
+     * Look at the next {@code n} bits (n &lt;= 16) without consuming them
+     */
+    int peek(int n) {
+        if (bits < n) {
+            fill();
+        }
+        return (int) (buffer >>> (bits - n)) & ((1 << n) - 1);
+    }
+
+    void skip(int n) {
+        bits -= n;
+    }
+
+    int readBits(int n) {
+        if (n == 0) {
+            return 0;
+        }
+        int v = peek(n);
+        bits -= n;
+        return v;
+    }
+
+    int readBit() {
+        return readBits(1);
+    }
+
+    /**
+     * Read {@code s} magnitude bits and sign-extend them (JPEG EXTEND procedure)
+     */
+    int receiveExtend(int s) {
+        if (s == 0) {
+            return 0;
+        }
+        int v = readBits(s);
+        return v < (1 << (s - 1)) ? v - (1 << s) + 1 : v;
+    }
+}
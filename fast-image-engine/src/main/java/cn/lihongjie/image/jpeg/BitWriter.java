@@ -0,0 +1,79 @@
+package cn.lihongjie.image.jpeg;
+
+import java.util.Arrays;
+
+/**
+ * MSB-first bit writer producing entropy-coded JPEG data with 0xFF byte stuffing
+ *
+ * Bits are collected in a 64-bit accumulator and flushed into a growable array,
+ * so writing a code costs a shift and an OR in the common case.
+ */
+final class BitWriter {
+
+    private byte[] buffer;
+    private int length;
+    private long accumulator;
+    private int bits;
+
+    BitWriter(int initialCapacity) {
+        buffer = new byte[Math.max(initialCapacity, 64)];
+    }
+
+    void write(int value, int size) {
+        accumulator = (accumulator << size) | (value & ((1L << size) - 1));
+        bits += size;
+        if (bits >= 32) {
+            flushWord();
+        }
+    }
+
+    private void flushWord() {
+        ensureCapacity(12);
+        while (bits >= 8) {
+            bits -= 8;
+            int b = (int) (accumulator >>> bits) & 0xFF;
+            buffer[length++] = (byte) b;
+            if (b == 0xFF) {
+                buffer[length++] = 0;
+            }
+        }
+    }
+
+    /**
+     * Pad the final partial byte with one bits, as required before a marker
+     */
+    void alignToByte() {
+        if (bits >= 8) {
+            flushWord();
+        }
+        if (bits > 0) {
+            write(0x7F, 8 - bits);
+            flushWord();
+        }
+        accumulator = 0;
+    }
+
+    /**
+     * Byte-align and append a restart marker
+     */
+    void writeRestart(int index) {
+        alignToByte();
+        ensureCapacity(2);
+        buffer[length++] = (byte) 0xFF;
+        buffer[length++] = (byte) (JpegTables.RST0 + (index & 7));
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    int length() {
+        return length;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+}
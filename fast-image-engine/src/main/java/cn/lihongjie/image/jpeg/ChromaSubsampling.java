@@ -0,0 +1,32 @@
+package cn.lihongjie.image.jpeg;
+
+/**
+ * Chroma subsampling modes for JPEG encoding
+ *
+ * The factors are the luma sampling factors relative to chroma; chroma
+ * components always use 1x1.
+ */
+public enum ChromaSubsampling {
+    /** Full-resolution chroma */
+    YUV444(1, 1),
+    /** Chroma halved horizontally */
+    YUV422(2, 1),
+    /** Chroma halved horizontally and vertically */
+    YUV420(2, 2);
+
+    private final int horizontal;
+    private final int vertical;
+
+    ChromaSubsampling(int horizontal, int vertical) {
+        this.horizontal = horizontal;
+        this.vertical = vertical;
+    }
+
+    public int getHorizontalFactor() {
+        return horizontal;
+    }
+
+    public int getVerticalFactor() {
+        return vertical;
+    }
+}
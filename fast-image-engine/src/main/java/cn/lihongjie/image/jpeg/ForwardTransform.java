@@ -0,0 +1,303 @@
+package cn.lihongjie.image.jpeg;
+
+import cn.lihongjie.image.PixelImage;
+
+/**
+ * Encoder front end: color conversion, chroma downsampling, forward DCT and quantization
+ *
+ * Converts a range of MCU rows of a {@link PixelImage} into the quantized coefficient
+ * planes of a {@link JpegFrame}. RGB to YCbCr uses the table-driven fixed-point
+ * conversion of the IJG library, the DCT is the integer AAN algorithm (jfdctfst),
+ * and quantization is fused with the AAN output scaling so that each coefficient
+ * costs one multiply and one shift. With a {@link TrellisQuantizer} the rounded AC
+ * coefficients of each block are then re-chosen for rate-distortion cost.
+ *
+ * All working storage is allocated once per instance; an instance is not thread-safe,
+ * but instances covering disjoint MCU row ranges of the same frame can run concurrently.
+ */
+final class ForwardTransform {
+
+    private static final int SCALE_BITS = 16;
+    private static final int ONE_HALF = 1 << (SCALE_BITS - 1);
+    private static final int CBCR_OFFSET = 128 << SCALE_BITS;
+
+    private static final int[] R_Y = new int[256];
+    private static final int[] G_Y = new int[256];
+    private static final int[] B_Y = new int[256];
+    private static final int[] R_CB = new int[256];
+    private static final int[] G_CB = new int[256];
+    private static final int[] B_CB_R_CR = new int[256];
+    private static final int[] G_CR = new int[256];
+    private static final int[] B_CR = new int[256];
+
+    /** AAN output scale factors, 2D, scaled by 2^14 */
+    private static final int[] AAN_SCALES = new int[64];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            R_Y[i] = fix(0.29900) * i;
+            G_Y[i] = fix(0.58700) * i;
+            B_Y[i] = fix(0.11400) * i + ONE_HALF;
+            R_CB[i] = -fix(0.16874) * i;
+            G_CB[i] = -fix(0.33126) * i;
+            // Cb blue and Cr red coefficients are both 0.5
+            B_CB_R_CR[i] = fix(0.50000) * i + CBCR_OFFSET + ONE_HALF - 1;
+            G_CR[i] = -fix(0.41869) * i;
+            B_CR[i] = -fix(0.08131) * i;
+        }
+        double[] factors = {1.0, 1.387039845, 1.306562965, 1.175875602, 1.0, 0.785694958, 0.541196100, 0.275899379};
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                AAN_SCALES[row * 8 + col] = (int) Math.round(factors[row] * factors[col] * (1 << 14));
+            }
+        }
+    }
+
+    private final JpegFrame frame;
+    private final PixelImage image;
+    private final int[][] reciprocals;
+    private final int[][] rounding;
+    private final int[][] planes;
+    private final int planeWidth;
+    private final int planeRows;
+    private final int[] block = new int[64];
+    private final TrellisQuantizer trellis;
+
+    ForwardTransform(JpegFrame frame, PixelImage image) {
+        this(frame, image, false);
+    }
+
+    /**
+     * @param trellis true to apply trellis quantization to the AC coefficients
+     */
+    ForwardTransform(JpegFrame frame, PixelImage image, boolean trellis) {
+        this.frame = frame;
+        this.image = image;
+        this.trellis = trellis ? new TrellisQuantizer(frame, AAN_SCALES) : null;
+        JpegComponent[] components = frame.components;
+        reciprocals = new int[components.length][64];
+        rounding = new int[components.length][64];
+        for (int ci = 0; ci < components.length; ci++) {
+            int[] quant = components[ci].quantTable;
+            for (int i = 0; i < 64; i++) {
+                int divisor = Math.max(1, (quant[i] * AAN_SCALES[i] + (1 << 10)) >> 11);
+                reciprocals[ci][i] = (1 << 16) / divisor + 1;
+                rounding[ci][i] = divisor >> 1;
+            }
+        }
+        planeWidth = frame.mcusX * 8 * frame.hMax;
+        planeRows = 8 * frame.vMax;
+        planes = new int[components.length][planeWidth * planeRows];
+    }
+
+    private static int fix(double x) {
+        return (int) (x * (1 << SCALE_BITS) + 0.5);
+    }
+
+    /**
+     * Transform MCU rows [firstRow, endRow) into the frame's coefficient planes
+     */
+    void transform(int firstRow, int endRow) {
+        for (int my = firstRow; my < endRow; my++) {
+            convertRows(my);
+            JpegComponent[] components = frame.components;
+            for (int ci = 0; ci < components.length; ci++) {
+                JpegComponent c = components[ci];
+                int hs = frame.hMax / c.h;
+                int vs = frame.vMax / c.v;
+                int blocksAcross = frame.mcusX * c.h;
+                for (int by = 0; by < c.v; by++) {
+                    int coefRow = (my * c.v + by) * c.blocksPerLine;
+                    for (int bx = 0; bx < blocksAcross; bx++) {
+                        loadBlock(planes[ci], bx, by, hs, vs);
+                        fdct(block);
+                        quantize(c.coefficients, (coefRow + bx) * 64, reciprocals[ci], rounding[ci]);
+                        if (trellis != null) {
+                            trellis.quantize(block, c.coefficients, (coefRow + bx) * 64, ci);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert the pixel rows of one MCU row to full-resolution component planes,
+     * replicating the last column and row into the padding
+     */
+    private void convertRows(int mcuRow) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int channels = image.getChannels();
+        byte[] pixels = image.getPixels();
+        int y0 = mcuRow * planeRows;
+        boolean color = planes.length == 3;
+        for (int r = 0; r < planeRows; r++) {
+            int sy = Math.min(y0 + r, height - 1);
+            int src = sy * width * channels;
+            int dst = r * planeWidth;
+            if (!color) {
+                int[] yPlane = planes[0];
+                if (channels == 1) {
+                    for (int x = 0; x < width; x++) {
+                        yPlane[dst + x] = pixels[src + x] & 0xFF;
+                    }
+                } else {
+                    for (int x = 0, p = src; x < width; x++, p += channels) {
+                        int red = pixels[p] & 0xFF;
+                        int green = pixels[p + 1] & 0xFF;
+                        int blue = pixels[p + 2] & 0xFF;
+                        yPlane[dst + x] = (R_Y[red] + G_Y[green] + B_Y[blue]) >> SCALE_BITS;
+                    }
+                }
+            } else {
+                int[] yPlane = planes[0];
+                int[] cbPlane = planes[1];
+                int[] crPlane = planes[2];
+                for (int x = 0, p = src; x < width; x++, p += channels) {
+                    int red = pixels[p] & 0xFF;
+                    int green = pixels[p + 1] & 0xFF;
+                    int blue = pixels[p + 2] & 0xFF;
+                    yPlane[dst + x] = (R_Y[red] + G_Y[green] + B_Y[blue]) >> SCALE_BITS;
+                    cbPlane[dst + x] = (R_CB[red] + G_CB[green] + B_CB_R_CR[blue]) >> SCALE_BITS;
+                    crPlane[dst + x] = (B_CB_R_CR[red] + G_CR[green] + B_CR[blue]) >> SCALE_BITS;
+                }
+            }
+            for (int[] plane : planes) {
+                int edge = plane[dst + width - 1];
+                for (int x = width; x < planeWidth; x++) {
+                    plane[dst + x] = edge;
+                }
+            }
+        }
+    }
+
+    /**
+     * Load one 8x8 block (level-shifted), averaging hs x vs samples per output sample
+     */
+    private void loadBlock(int[] plane, int bx, int by, int hs, int vs) {
+        int[] b = block;
+        if (hs == 1 && vs == 1) {
+            int base = by * 8 * planeWidth + bx * 8;
+            for (int y = 0; y < 8; y++) {
+                int p = base + y * planeWidth;
+                int o = y * 8;
+                b[o] = plane[p] - 128;
+                b[o + 1] = plane[p + 1] - 128;
+                b[o + 2] = plane[p + 2] - 128;
+                b[o + 3] = plane[p + 3] - 128;
+                b[o + 4] = plane[p + 4] - 128;
+                b[o + 5] = plane[p + 5] - 128;
+                b[o + 6] = plane[p + 6] - 128;
+                b[o + 7] = plane[p + 7] - 128;
+            }
+            return;
+        }
+        int count = hs * vs;
+        int shift = Integer.numberOfTrailingZeros(count);
+        int bias = count >> 1;
+        for (int y = 0; y < 8; y++) {
+            int rowBase = (by * 8 + y) * vs * planeWidth + bx * 8 * hs;
+            for (int x = 0; x < 8; x++) {
+                int sum = 0;
+                int p = rowBase + x * hs;
+                for (int dy = 0; dy < vs; dy++) {
+                    int q = p + dy * planeWidth;
+                    for (int dx = 0; dx < hs; dx++) {
+                        sum += plane[q + dx];
+                    }
+                }
+                b[y * 8 + x] = ((sum + bias) >> shift) - 128;
+            }
+        }
+    }
+
+    /**
+     * Integer AAN forward DCT (IJG jfdctfst); output is scaled by 8 and by the AAN factors
+     */
+    static void fdct(int[] data) {
+        for (int o = 0; o < 64; o += 8) {
+            int tmp0 = data[o] + data[o + 7];
+            int tmp7 = data[o] - data[o + 7];
+            int tmp1 = data[o + 1] + data[o + 6];
+            int tmp6 = data[o + 1] - data[o + 6];
+            int tmp2 = data[o + 2] + data[o + 5];
+            int tmp5 = data[o + 2] - data[o + 5];
+            int tmp3 = data[o + 3] + data[o + 4];
+            int tmp4 = data[o + 3] - data[o + 4];
+
+            int tmp10 = tmp0 + tmp3;
+            int tmp13 = tmp0 - tmp3;
+            int tmp11 = tmp1 + tmp2;
+            int tmp12 = tmp1 - tmp2;
+            data[o] = tmp10 + tmp11;
+            data[o + 4] = tmp10 - tmp11;
+            int z1 = ((tmp12 + tmp13) * 181) >> 8;
+            data[o + 2] = tmp13 + z1;
+            data[o + 6] = tmp13 - z1;
+
+            tmp10 = tmp4 + tmp5;
+            tmp11 = tmp5 + tmp6;
+            tmp12 = tmp6 + tmp7;
+            int z5 = ((tmp10 - tmp12) * 98) >> 8;
+            int z2 = ((tmp10 * 139) >> 8) + z5;
+            int z4 = ((tmp12 * 334) >> 8) + z5;
+            int z3 = (tmp11 * 181) >> 8;
+            int z11 = tmp7 + z3;
+            int z13 = tmp7 - z3;
+            data[o + 5] = z13 + z2;
+            data[o + 3] = z13 - z2;
+            data[o + 1] = z11 + z4;
+            data[o + 7] = z11 - z4;
+        }
+        for (int o = 0; o < 8; o++) {
+            int tmp0 = data[o] + data[o + 56];
+            int tmp7 = data[o] - data[o + 56];
+            int tmp1 = data[o + 8] + data[o + 48];
+            int tmp6 = data[o + 8] - data[o + 48];
+            int tmp2 = data[o + 16] + data[o + 40];
+            int tmp5 = data[o + 16] - data[o + 40];
+            int tmp3 = data[o + 24] + data[o + 32];
+            int tmp4 = data[o + 24] - data[o + 32];
+
+            int tmp10 = tmp0 + tmp3;
+            int tmp13 = tmp0 - tmp3;
+            int tmp11 = tmp1 + tmp2;
+            int tmp12 = tmp1 - tmp2;
+            data[o] = tmp10 + tmp11;
+            data[o + 32] = tmp10 - tmp11;
+            int z1 = ((tmp12 + tmp13) * 181) >> 8;
+            data[o + 16] = tmp13 + z1;
+            data[o + 48] = tmp13 - z1;
+
+            tmp10 = tmp4 + tmp5;
+            tmp11 = tmp5 + tmp6;
+            tmp12 = tmp6 + tmp7;
+            int z5 = ((tmp10 - tmp12) * 98) >> 8;
+            int z2 = ((tmp10 * 139) >> 8) + z5;
+            int z4 = ((tmp12 * 334) >> 8) + z5;
+            int z3 = (tmp11 * 181) >> 8;
+            int z11 = tmp7 + z3;
+            int z13 = tmp7 - z3;
+            data[o + 40] = z13 + z2;
+            data[o + 24] = z13 - z2;
+            data[o + 8] = z11 + z4;
+            data[o + 56] = z11 - z4;
+        }
+    }
+
+    /**
+     * Quantize the DCT output with rounding to nearest, using precomputed reciprocals
+     */
+    private void quantize(short[] out, int off, int[] reciprocal, int[] round) {
+        int[] b = block;
+        for (int i = 0; i < 64; i++) {
+            int value = b[i];
+            if (value < 0) {
+                out[off + i] = (short) -(((-value + round[i]) * reciprocal[i]) >>> 16);
+            } else {
+                out[off + i] = (short) (((value + round[i]) * reciprocal[i]) >>> 16);
+            }
+        }
+    }
+}
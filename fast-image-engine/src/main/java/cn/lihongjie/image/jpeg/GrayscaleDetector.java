@@ -0,0 +1,142 @@
+package cn.lihongjie.image.jpeg;
+
+import cn.lihongjie.image.PixelImage;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detects color images whose chroma is (nearly) zero, so they can be encoded as single-component JPEGs
+ *
+ * Scanned documents and black-and-white photos often arrive as RGB. Encoding them as
+ * YCbCr spends time and bytes on two chroma planes that carry nothing; a gray JPEG
+ * skips both. An image counts as gray when every pixel's Cb and Cr (the same BT.601
+ * conversion the encoder uses) lie within {@code tolerance} of neutral.
+ *
+ * The check first looks at a sparse grid of about 4096 pixels, which rejects almost
+ * every color image after a few of them, and only then confirms with a full scan that
+ * stops at the first colored pixel. The detector counts the images it checked and how
+ * many it found gray; it is thread-safe and meant to be shared, for example by all
+ * encoders of a service.
+ *
+ * Usage:
+ * <pre>
+ * GrayscaleDetector detector = new GrayscaleDetector(2);
+ * JpegEncoder encoder = new JpegEncoder(80).withGrayscaleDetector(detector);
+ * byte[] jpeg = encoder.encode(pixelImage);
+ * log.info("gray fast path: {} of {} images", detector.getDetections(), detector.getChecks());
+ * </pre>
+ */
+public final class GrayscaleDetector {
+
+    /** Cb/Cr tolerance that absorbs the rounding noise of a decoded gray JPEG */
+    public static final int DEFAULT_TOLERANCE = 2;
+
+    private static final int SAMPLE_GRID = 64;
+
+    private final int tolerance;
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder detections = new LongAdder();
+
+    /**
+     * Create a detector with the default tolerance ({@value #DEFAULT_TOLERANCE})
+     */
+    public GrayscaleDetector() {
+        this(DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Create a detector
+     *
+     * @param tolerance Largest |Cb - 128| and |Cr - 128| still treated as gray (0-127, 0 for exact gray)
+     * @throws IllegalArgumentException if the tolerance is not in range 0-127
+     */
+    public GrayscaleDetector(int tolerance) {
+        if (tolerance < 0 || tolerance > 127) {
+            throw new IllegalArgumentException("Tolerance must be between 0 and 127, got: " + tolerance);
+        }
+        this.tolerance = tolerance;
+    }
+
+    public int getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Get the number of color images checked so far
+     *
+     * @return Calls of {@link #isGrayscale} on RGB or RGBA images
+     */
+    public long getChecks() {
+        return checks.sum();
+    }
+
+    /**
+     * Get the number of color images found gray so far
+     *
+     * @return How often the single-component fast path was triggered
+     */
+    public long getDetections() {
+        return detections.sum();
+    }
+
+    /**
+     * Check whether all chroma of an image is within the tolerance
+     *
+     * Gray (1-channel) images are reported as gray without counting; alpha is ignored.
+     *
+     * @param image Image to check
+     * @return true if the image can be encoded as a single luma component
+     */
+    public boolean isGrayscale(PixelImage image) {
+        if (image.getChannels() == 1) {
+            return true;
+        }
+        checks.increment();
+        boolean gray = sampledGray(image) && fullGray(image);
+        if (gray) {
+            detections.increment();
+        }
+        return gray;
+    }
+
+    private boolean sampledGray(PixelImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int stepX = Math.max(1, width / SAMPLE_GRID);
+        int stepY = Math.max(1, height / SAMPLE_GRID);
+        byte[] px = image.getPixels();
+        int channels = image.getChannels();
+        for (int y = stepY / 2; y < height; y += stepY) {
+            for (int x = stepX / 2; x < width; x += stepX) {
+                if (!neutral(px, (y * width + x) * channels)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean fullGray(PixelImage image) {
+        byte[] px = image.getPixels();
+        int channels = image.getChannels();
+        int end = image.getWidth() * image.getHeight() * channels;
+        for (int p = 0; p < end; p += channels) {
+            if (!neutral(px, p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cb and Cr in 16-bit fixed point, rounded to the nearest integer like the encoder does
+     */
+    private boolean neutral(byte[] px, int p) {
+        int r = px[p] & 0xFF;
+        int g = px[p + 1] & 0xFF;
+        int b = px[p + 2] & 0xFF;
+        int cb = (-11059 * r - 21709 * g + 32768 * b + 32768) >> 16;
+        int cr = (32768 * r - 27439 * g - 5329 * b + 32768) >> 16;
+        return Math.abs(cb) <= tolerance && Math.abs(cr) <= tolerance;
+    }
+}
@@ -0,0 +1,68 @@
+package cn.lihongjie.image.jpeg;
+
+/**
+ * Huffman decoding table with a 9-bit lookahead fast path
+ */
+final class HuffmanDecoder {
+
+    private static final int LOOKAHEAD = 9;
+
+    private final int[] lookup = new int[1 << LOOKAHEAD];
+    private final int[] maxCode = new int[18];
+    private final int[] valueOffset = new int[17];
+    private final int[] values;
+
+    /**
+     * @param bits   Number of codes of each length, index 1..16
+     * @param values Symbols in order of increasing code length
+     * @throws IllegalArgumentException if the counts do not fit in the code space of their length
+     */
+    HuffmanDecoder(int[] bits, int[] values) {
+        this.values = values;
+        int code = 0;
+        int k = 0;
+        for (int len = 1; len <= 16; len++) {
+            valueOffset[len] = k - code;
+            int count = bits[len];
+            if (code + count > 1 << len) {
+                throw new IllegalArgumentException("Corrupt JPEG: bad Huffman table");
+            }
+            if (count == 0) {
+                maxCode[len] = -1;
+            } else {
+                for (int i = 0; i < count; i++, k++, code++) {
+                    if (len <= LOOKAHEAD) {
+                        int shift = LOOKAHEAD - len;
+                        int base = code << shift;
+                        int entry = (len << 8) | values[k];
+                        for (int j = 0; j < (1 << shift); j++) {
+                            lookup[base + j] = entry;
+                        }
+                    }
+                }
+                maxCode[len] = code - 1;
+            }
+            code <<= 1;
+        }
+        maxCode[17] = Integer.MAX_VALUE;
+    }
+
+    int decode(BitReader reader) {
+        int entry = lookup[reader.peek(LOOKAHEAD)];
+        if (entry != 0) {
+            reader.skip(entry >> 8);
+            return entry & 0xFF;
+        }
+        int code = reader.peek(16);
+        for (int len = LOOKAHEAD + 1; len <= 16; len++) {
+            int prefix = code >>> (16 - len);
+            if (prefix <= maxCode[len]) {
+                reader.skip(len);
+                return values[valueOffset[len] + prefix];
+            }
+        }
+        // Corrupt data: consume one bit and return a zero symbol so decoding can continue
+        reader.skip(1);
+        return 0;
+    }
+}
@@ -0,0 +1,135 @@
+package cn.lihongjie.image.jpeg;
+
+/**
+ * Huffman table specification (the BITS/HUFFVAL lists of a DHT segment) with the
+ * derived encoding codes
+ */
+final class HuffmanTable {
+
+    /** Number of codes of each length, index 1..16 */
+    final int[] bits;
+    /** Symbols in order of increasing code length */
+    final int[] values;
+    /** Code for each symbol */
+    final int[] codes = new int[256];
+    /** Code length for each symbol, 0 if the symbol has no code */
+    final int[] sizes = new int[256];
+
+    HuffmanTable(int[] bits, int[] values) {
+        this.bits = bits;
+        this.values = values;
+        int code = 0;
+        int k = 0;
+        for (int len = 1; len <= 16; len++) {
+            for (int i = 0; i < bits[len]; i++) {
+                codes[values[k]] = code++;
+                sizes[values[k]] = len;
+                k++;
+            }
+            code <<= 1;
+        }
+    }
+
+    /**
+     * Build an optimal length-limited table from symbol frequencies (ITU T.81 Annex K.2)
+     *
+     * @param frequencies Occurrence count of each of the 256 symbols
+     * @return Table whose codes minimize the total encoded size
+     */
+    static HuffmanTable optimal(long[] frequencies) {
+        long[] freq = new long[257];
+        System.arraycopy(frequencies, 0, freq, 0, 256);
+        // Reserve one code point so that no real symbol gets an all-ones code
+        freq[256] = 1;
+        int[] codeSize = new int[257];
+        int[] others = new int[257];
+        for (int i = 0; i < 257; i++) {
+            others[i] = -1;
+        }
+
+        while (true) {
+            int c1 = -1;
+            long v = Long.MAX_VALUE;
+            for (int i = 0; i <= 256; i++) {
+                if (freq[i] != 0 && freq[i] <= v) {
+                    v = freq[i];
+                    c1 = i;
+                }
+            }
+            int c2 = -1;
+            v = Long.MAX_VALUE;
+            for (int i = 0; i <= 256; i++) {
+                if (freq[i] != 0 && freq[i] <= v && i != c1) {
+                    v = freq[i];
+                    c2 = i;
+                }
+            }
+            if (c2 < 0) {
+                break;
+            }
+            freq[c1] += freq[c2];
+            freq[c2] = 0;
+            codeSize[c1]++;
+            while (others[c1] >= 0) {
+                c1 = others[c1];
+                codeSize[c1]++;
+            }
+            others[c1] = c2;
+            codeSize[c2]++;
+            while (others[c2] >= 0) {
+                c2 = others[c2];
+                codeSize[c2]++;
+            }
+        }
+
+        int[] count = new int[33];
+        for (int i = 0; i <= 256; i++) {
+            if (codeSize[i] != 0) {
+                count[codeSize[i]]++;
+            }
+        }
+        // Limit code lengths to 16 bits
+        for (int i = 32; i > 16; i--) {
+            while (count[i] > 0) {
+                int j = i - 2;
+                while (count[j] == 0) {
+                    j--;
+                }
+                count[i] -= 2;
+                count[i - 1]++;
+                count[j + 1] += 2;
+                count[j]--;
+            }
+        }
+        // Remove the reserved code point from the longest length
+        int longest = 16;
+        while (longest > 0 && count[longest] == 0) {
+            longest--;
+        }
+        count[longest]--;
+
+        int[] bits = new int[17];
+        System.arraycopy(count, 0, bits, 0, 17);
+        int total = 0;
+        for (int i = 1; i <= 16; i++) {
+            total += bits[i];
+        }
+        int[] values = new int[total];
+        int k = 0;
+        for (int len = 1; len <= 32 && k < total; len++) {
+            for (int symbol = 0; symbol < 256; symbol++) {
+                if (codeSize[symbol] == len) {
+                    values[k++] = symbol;
+                }
+            }
+        }
+        return new HuffmanTable(bits, values);
+    }
+
+    /**
+     * Size in bytes of this table inside a DHT segment
+     */
+    int segmentLength() {
+        return 17 + values.length;
+    }
+}
@@ -0,0 +1,411 @@
+package cn.lihongjie.image.jpeg;
+
+import cn.lihongjie.image.PixelImage;
+
+/**
+ * Decoder back end: dequantization, inverse DCT, chroma upsampling and color conversion
+ *
+ * Works in two passes over MCU rows. {@link #reconstruct} dequantizes the coefficient
+ * planes of a {@link JpegFrame} and runs the accurate integer IDCT of the IJG library
+ * (jidctint) into component sample planes. {@link #convert} then upsamples chroma
+ * (triangle "fancy" upsampling for 2x1 and 2x2, like libjpeg, plain replication for
+ * other ratios) and converts YCbCr to RGB into a {@link PixelImage}.
+ *
+ * With a scale denominator of 2, 4 or 8 each block is reconstructed directly at 4x4,
+ * 2x2 or 1x1 samples from its low-frequency coefficients (a reduced-size IDCT), so
+ * the image comes out at 1/2, 1/4 or 1/8 size without a full-resolution pass. The 1x1
+ * case is just the dequantized DC coefficient.
+ *
+ * Both passes can run concurrently on disjoint MCU row ranges, but every range must be
+ * reconstructed before any range is converted: 2x2 upsampling reads one chroma row
+ * across each MCU row boundary.
+ */
+final class InverseTransform {
+
+    private static final int CONST_BITS = 13;
+    private static final int PASS1_BITS = 2;
+    private static final int FIX_0_298631336 = 2446;
+    private static final int FIX_0_390180644 = 3196;
+    private static final int FIX_0_541196100 = 4433;
+    private static final int FIX_0_765366865 = 6270;
+    private static final int FIX_0_899976223 = 7373;
+    private static final int FIX_1_175875602 = 9633;
+    private static final int FIX_1_501321110 = 12299;
+    private static final int FIX_1_847759065 = 15137;
+    private static final int FIX_1_961570560 = 16069;
+    private static final int FIX_2_053119869 = 16819;
+    private static final int FIX_2_562915447 = 20995;
+    private static final int FIX_3_072711026 = 25172;
+
+    private static final int SCALE_BITS = 16;
+    private static final int ONE_HALF = 1 << (SCALE_BITS - 1);
+    private static final int[] CR_R = new int[256];
+    private static final int[] CB_B = new int[256];
+    private static final int[] CR_G = new int[256];
+    private static final int[] CB_G = new int[256];
+
+    /** Reduced IDCT bases: REDUCED_BASIS[n][x * n + u] = C(u) * cos((2x + 1) * u * pi / 2n), scaled by 2^13 */
+    private static final int[][] REDUCED_BASIS = new int[5][];
+
+    static {
+        for (int n : new int[]{2, 4}) {
+            REDUCED_BASIS[n] = new int[n * n];
+            for (int x = 0; x < n; x++) {
+                for (int u = 0; u < n; u++) {
+                    double c = (u == 0 ? Math.sqrt(0.5) : 1.0) * Math.cos((2 * x + 1) * u * Math.PI / (2 * n));
+                    REDUCED_BASIS[n][x * n + u] = (int) Math.round(c * (1 << CONST_BITS));
+                }
+            }
+        }
+        for (int i = 0; i < 256; i++) {
+            int x = i - 128;
+            CR_R[i] = (fix(1.40200) * x + ONE_HALF) >> SCALE_BITS;
+            CB_B[i] = (fix(1.77200) * x + ONE_HALF) >> SCALE_BITS;
+            CR_G[i] = -fix(0.71414) * x;
+            CB_G[i] = -fix(0.34414) * x + ONE_HALF;
+        }
+    }
+
+    private final JpegFrame frame;
+    private final PixelImage image;
+    private final int blockSize;
+    private final byte[][] planes;
+    private final int[] strides;
+    private final int[] widths;
+    private final int[] heights;
+    private final boolean ycc;
+
+    InverseTransform(JpegFrame frame) {
+        this(frame, 1);
+    }
+
+    /**
+     * @param scale Scale denominator: 1, 2, 4 or 8
+     * @throws IllegalArgumentException if the frame is not gray or three-component color, or a
+     *         component's sampling factors do not divide the maximum ones
+     */
+    InverseTransform(JpegFrame frame, int scale) {
+        JpegComponent[] components = frame.components;
+        if (components.length != 1 && components.length != 3) {
+            throw new IllegalArgumentException("Unsupported JPEG color space: "
+                    + components.length + " components");
+        }
+        for (JpegComponent c : components) {
+            if (frame.hMax % c.h != 0 || frame.vMax % c.v != 0) {
+                throw new IllegalArgumentException("Unsupported JPEG sampling factors: " + c.h + "x" + c.v
+                        + " in a " + frame.hMax + "x" + frame.vMax + " frame");
+            }
+        }
+        this.frame = frame;
+        blockSize = 8 / scale;
+        image = PixelImage.allocate((frame.width + scale - 1) / scale, (frame.height + scale - 1) / scale,
+                components.length);
+        planes = new byte[components.length][];
+        strides = new int[components.length];
+        widths = new int[components.length];
+        heights = new int[components.length];
+        for (int ci = 0; ci < components.length; ci++) {
+            JpegComponent c = components[ci];
+            strides[ci] = c.blocksPerLine * blockSize;
+            planes[ci] = new byte[strides[ci] * c.blocksPerColumn * blockSize];
+            // Scaled component size, rounded up like libjpeg's downsampled_width/height
+            long hDivisor = (long) frame.hMax * scale;
+            long vDivisor = (long) frame.vMax * scale;
+            widths[ci] = (int) (((long) frame.width * c.h + hDivisor - 1) / hDivisor);
+            heights[ci] = (int) (((long) frame.height * c.v + vDivisor - 1) / vDivisor);
+        }
+        boolean rgbIds = components.length == 3
+                && components[0].id == 'R' && components[1].id == 'G' && components[2].id == 'B';
+        ycc = components.length == 3 && frame.adobeTransform != 0 && !rgbIds;
+    }
+
+    private static int fix(double x) {
+        return (int) (x * (1 << SCALE_BITS) + 0.5);
+    }
+
+    PixelImage getImage() {
+        return image;
+    }
+
+    /**
+     * Inverse-transform the visible blocks of MCU rows [firstRow, endRow) into the sample planes
+     */
+    void reconstruct(int firstRow, int endRow) {
+        int[] workspace = new int[64];
+        JpegComponent[] components = frame.components;
+        for (int ci = 0; ci < components.length; ci++) {
+            JpegComponent c = components[ci];
+            int stride = strides[ci];
+            int blocksAcross = c.visibleBlocksPerLine();
+            int lastRow = Math.min(endRow * c.v, c.visibleBlocksPerColumn());
+            for (int by = firstRow * c.v; by < lastRow; by++) {
+                for (int bx = 0; bx < blocksAcross; bx++) {
+                    int coef = (by * c.blocksPerLine + bx) * c.blockStride;
+                    int out = (by * stride + bx) * blockSize;
+                    switch (blockSize) {
+                        case 8:
+                            idct(c.coefficients, coef, c.quantTable, workspace, planes[ci], out, stride);
+                            break;
+                        case 1:
+                            planes[ci][out] = clamp(((c.coefficients[coef] * c.quantTable[0] + 4) >> 3) + 128);
+                            break;
+                        default:
+                            idctReduced(blockSize, c.coefficients, coef, c.quantTable, workspace,
+                                    planes[ci], out, stride);
+                            break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Upsample and color-convert the pixel rows of MCU rows [firstRow, endRow)
+     */
+    void convert(int firstRow, int endRow) {
+        int width = image.getWidth();
+        int rowHeight = blockSize * frame.vMax;
+        int y0 = firstRow * rowHeight;
+        int y1 = Math.min(endRow * rowHeight, image.getHeight());
+        byte[] pixels = image.getPixels();
+        JpegComponent[] components = frame.components;
+        if (components.length == 1) {
+            for (int y = y0; y < y1; y++) {
+                System.arraycopy(planes[0], y * strides[0], pixels, y * width, width);
+            }
+            return;
+        }
+        int[][] rows = new int[3][];
+        int[] columnSums = new int[strides[0]];
+        for (int ci = 0; ci < 3; ci++) {
+            rows[ci] = new int[frame.mcusX * blockSize * frame.hMax];
+        }
+        for (int y = y0; y < y1; y++) {
+            for (int ci = 0; ci < 3; ci++) {
+                upsampleRow(ci, y, rows[ci], columnSums);
+            }
+            int[] yRow = rows[0];
+            int[] cbRow = rows[1];
+            int[] crRow = rows[2];
+            int p = y * width * 3;
+            if (ycc) {
+                for (int x = 0; x < width; x++, p += 3) {
+                    int luma = yRow[x];
+                    int cb = cbRow[x];
+                    int cr = crRow[x];
+                    pixels[p] = clamp(luma + CR_R[cr]);
+                    pixels[p + 1] = clamp(luma + ((CB_G[cb] + CR_G[cr]) >> SCALE_BITS));
+                    pixels[p + 2] = clamp(luma + CB_B[cb]);
+                }
+            } else {
+                for (int x = 0; x < width; x++, p += 3) {
+                    pixels[p] = (byte) yRow[x];
+                    pixels[p + 1] = (byte) cbRow[x];
+                    pixels[p + 2] = (byte) crRow[x];
+                }
+            }
+        }
+    }
+
+    /**
+     * Produce one full-resolution row of a component
+     */
+    private void upsampleRow(int ci, int y, int[] out, int[] columnSums) {
+        JpegComponent c = frame.components[ci];
+        byte[] plane = planes[ci];
+        int stride = strides[ci];
+        int hs = frame.hMax / c.h;
+        int vs = frame.vMax / c.v;
+        int cw = widths[ci];
+        int last = cw - 1;
+        if (hs == 1 && vs == 1) {
+            int p = y * stride;
+            for (int x = 0; x < cw; x++) {
+                out[x] = plane[p + x] & 0xFF;
+            }
+        } else if (hs == 2 && vs == 1) {
+            int p = y * stride;
+            for (int x = 0; x < cw; x++) {
+                int value = (plane[p + x] & 0xFF) * 3;
+                out[2 * x] = (value + (plane[p + Math.max(x - 1, 0)] & 0xFF) + 1) >> 2;
+                out[2 * x + 1] = (value + (plane[p + Math.min(x + 1, last)] & 0xFF) + 2) >> 2;
+            }
+        } else if (hs == 2 && vs == 2) {
+            // Nearer row weighs 3, farther row 1; image edges repeat the outermost row
+            int cy = y >> 1;
+            int ny = (y & 1) == 0 ? Math.max(cy - 1, 0) : Math.min(cy + 1, heights[ci] - 1);
+            int p = cy * stride;
+            int q = ny * stride;
+            for (int x = 0; x < cw; x++) {
+                columnSums[x] = (plane[p + x] & 0xFF) * 3 + (plane[q + x] & 0xFF);
+            }
+            for (int x = 0; x < cw; x++) {
+                int value = columnSums[x] * 3;
+                out[2 * x] = (value + columnSums[Math.max(x - 1, 0)] + 8) >> 4;
+                out[2 * x + 1] = (value + columnSums[Math.min(x + 1, last)] + 7) >> 4;
+            }
+        } else {
+            int p = Math.min(y / vs, heights[ci] - 1) * stride;
+            int width = image.getWidth();
+            for (int x = 0; x < width; x++) {
+                out[x] = plane[p + x / hs] & 0xFF;
+            }
+        }
+    }
+
+    private static byte clamp(int value) {
+        return (byte) (value < 0 ? 0 : value > 255 ? 255 : value);
+    }
+
+    /**
+     * Dequantize and inverse-transform the low n x n coefficients of a block into n x n samples
+     *
+     * Uses the n-point IDCT with the same 1/2 normalization as the 8-point one, so the
+     * DC term still yields the block mean and each output sample approximates the mean
+     * of the 8/n x 8/n pixels it replaces.
+     */
+    static void idctReduced(int n, short[] coef, int off, int[] quant, int[] ws, byte[] out, int outOff, int stride) {
+        int[] basis = REDUCED_BASIS[n];
+        // Columns: ws[y * n + v] = sum over u of basis(y, u) * F(u, v), keeping PASS1_BITS fraction bits
+        for (int v = 0; v < n; v++) {
+            for (int y = 0; y < n; y++) {
+                int sum = 0;
+                for (int u = 0; u < n; u++) {
+                    sum += basis[y * n + u] * (coef[off + u * 8 + v] * quant[u * 8 + v]);
+                }
+                ws[y * n + v] = (sum + (1 << (CONST_BITS - PASS1_BITS - 1))) >> (CONST_BITS - PASS1_BITS);
+            }
+        }
+        // Rows, then the 1/4 normalization (2 bits) and the level shift
+        int shift = CONST_BITS + PASS1_BITS + 2;
+        int round = (1 << (shift - 1)) + (128 << shift);
+        for (int y = 0; y < n; y++, outOff += stride) {
+            for (int x = 0; x < n; x++) {
+                int sum = 0;
+                for (int v = 0; v < n; v++) {
+                    sum += basis[x * n + v] * ws[y * n + v];
+                }
+                out[outOff + x] = clamp((sum + round) >> shift);
+            }
+        }
+    }
+
+    /**
+     * Dequantize and inverse-transform one block into 8x8 samples (IJG jidctint)
+     */
+    static void idct(short[] coef, int off, int[] quant, int[] ws, byte[] out, int outOff, int stride) {
+        for (int col = 0; col < 8; col++) {
+            int c0 = coef[off + col] * quant[col];
+            if (coef[off + 8 + col] == 0 && coef[off + 16 + col] == 0 && coef[off + 24 + col] == 0
+                    && coef[off + 32 + col] == 0 && coef[off + 40 + col] == 0 && coef[off + 48 + col] == 0
+                    && coef[off + 56 + col] == 0) {
+                int dc = c0 << PASS1_BITS;
+                for (int row = 0; row < 64; row += 8) {
+                    ws[row + col] = dc;
+                }
+                continue;
+            }
+            int z2 = coef[off + 16 + col] * quant[16 + col];
+            int z3 = coef[off + 48 + col] * quant[48 + col];
+            int z1 = (z2 + z3) * FIX_0_541196100;
+            int tmp2 = z1 - z3 * FIX_1_847759065;
+            int tmp3 = z1 + z2 * FIX_0_765366865;
+            z2 = c0;
+            z3 = coef[off + 32 + col] * quant[32 + col];
+            int tmp0 = (z2 + z3) << CONST_BITS;
+            int tmp1 = (z2 - z3) << CONST_BITS;
+            int tmp10 = tmp0 + tmp3;
+            int tmp13 = tmp0 - tmp3;
+            int tmp11 = tmp1 + tmp2;
+            int tmp12 = tmp1 - tmp2;
+
+            tmp0 = coef[off + 56 + col] * quant[56 + col];
+            tmp1 = coef[off + 40 + col] * quant[40 + col];
+            tmp2 = coef[off + 24 + col] * quant[24 + col];
+            tmp3 = coef[off + 8 + col] * quant[8 + col];
+            z1 = tmp0 + tmp3;
+            z2 = tmp1 + tmp2;
+            z3 = tmp0 + tmp2;
+            int z4 = tmp1 + tmp3;
+            int z5 = (z3 + z4) * FIX_1_175875602;
+            tmp0 *= FIX_0_298631336;
+            tmp1 *= FIX_2_053119869;
+            tmp2 *= FIX_3_072711026;
+            tmp3 *= FIX_1_501321110;
+            z1 *= -FIX_0_899976223;
+            z2 *= -FIX_2_562915447;
+            z3 = z3 * -FIX_1_961570560 + z5;
+            z4 = z4 * -FIX_0_390180644 + z5;
+            tmp0 += z1 + z3;
+            tmp1 += z2 + z4;
+            tmp2 += z2 + z3;
+            tmp3 += z1 + z4;
+
+            int shift = CONST_BITS - PASS1_BITS;
+            int round = 1 << (shift - 1);
+            ws[col] = (tmp10 + tmp3 + round) >> shift;
+            ws[56 + col] = (tmp10 - tmp3 + round) >> shift;
+            ws[8 + col] = (tmp11 + tmp2 + round) >> shift;
+            ws[48 + col] = (tmp11 - tmp2 + round) >> shift;
+            ws[16 + col] = (tmp12 + tmp1 + round) >> shift;
+            ws[40 + col] = (tmp12 - tmp1 + round) >> shift;
+            ws[24 + col] = (tmp13 + tmp0 + round) >> shift;
+            ws[32 + col] = (tmp13 - tmp0 + round) >> shift;
+        }
+
+        int shift = CONST_BITS + PASS1_BITS + 3;
+        int round = (1 << (shift - 1)) + (128 << shift);
+        for (int row = 0; row < 64; row += 8, outOff += stride) {
+            if (ws[row + 1] == 0 && ws[row + 2] == 0 && ws[row + 3] == 0 && ws[row + 4] == 0
+                    && ws[row + 5] == 0 && ws[row + 6] == 0 && ws[row + 7] == 0) {
+                byte dc = clamp(((ws[row] + (1 << (PASS1_BITS + 2))) >> (PASS1_BITS + 3)) + 128);
+                for (int i = 0; i < 8; i++) {
+                    out[outOff + i] = dc;
+                }
+                continue;
+            }
+            int z2 = ws[row + 2];
+            int z3 = ws[row + 6];
+            int z1 = (z2 + z3) * FIX_0_541196100;
+            int tmp2 = z1 - z3 * FIX_1_847759065;
+            int tmp3 = z1 + z2 * FIX_0_765366865;
+            int tmp0 = (ws[row] + ws[row + 4]) << CONST_BITS;
+            int tmp1 = (ws[row] - ws[row + 4]) << CONST_BITS;
+            int tmp10 = tmp0 + tmp3;
+            int tmp13 = tmp0 - tmp3;
+            int tmp11 = tmp1 + tmp2;
+            int tmp12 = tmp1 - tmp2;
+
+            tmp0 = ws[row + 7];
+            tmp1 = ws[row + 5];
+            tmp2 = ws[row + 3];
+            tmp3 = ws[row + 1];
+            z1 = tmp0 + tmp3;
+            z2 = tmp1 + tmp2;
+            z3 = tmp0 + tmp2;
+            int z4 = tmp1 + tmp3;
+            int z5 = (z3 + z4) * FIX_1_175875602;
+            tmp0 *= FIX_0_298631336;
+            tmp1 *= FIX_2_053119869;
+            tmp2 *= FIX_3_072711026;
+            tmp3 *= FIX_1_501321110;
+            z1 *= -FIX_0_899976223;
+            z2 *= -FIX_2_562915447;
+            z3 = z3 * -FIX_1_961570560 + z5;
+            z4 = z4 * -FIX_0_390180644 + z5;
+            tmp0 += z1 + z3;
+            tmp1 += z2 + z4;
+            tmp2 += z2 + z3;
+            tmp3 += z1 + z4;
+
+            out[outOff] = clamp((tmp10 + tmp3 + round) >> shift);
+            out[outOff + 7] = clamp((tmp10 - tmp3 + round) >> shift);
+            out[outOff + 1] = clamp((tmp11 + tmp2 + round) >> shift);
+            out[outOff + 6] = clamp((tmp11 - tmp2 + round) >> shift);
+            out[outOff + 2] = clamp((tmp12 + tmp1 + round) >> shift);
+            out[outOff + 5] = clamp((tmp12 - tmp1 + round) >> shift);
+            out[outOff + 3] = clamp((tmp13 + tmp0 + round) >> shift);
+            out[outOff + 4] = clamp((tmp13 - tmp0 + round) >> shift);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package cn.lihongjie.image.jpeg;
+
+/**
+ * One color component of a JPEG frame together with its quantized DCT coefficients
+ * 
+ * Coefficients are stored block after block in raster order, 64 values per block
+ * in natural (row-major) order. Frames read for a DC-only decode keep just the DC
+ * value of each block (a block stride of 1). The block grid is padded to a whole number of MCUs,
+ * so {@link #getBlocksPerLine()} may exceed the number of blocks covering the
+ * visible component area.
+ */
+public final class JpegComponent {
+
+    final int id;
+    final int h;
+    final int v;
+    final int quantTableIndex;
+
+    int width;
+    int height;
+    int blocksPerLine;
+    int blocksPerColumn;
+    int blockStride = 64;
+    short[] coefficients;
+    int[] quantTable;
+
+    JpegComponent(int id, int h, int v, int quantTableIndex) {
+        this.id = id;
+        this.h = h;
+        this.v = v;
+        this.quantTableIndex = quantTableIndex;
+    }
+
+    /**
+     * Allocate the coefficient plane for the given frame geometry
+     *
+     * @param blockStride Coefficients stored per block: 64, or 1 to keep only DC values
+     */
+    void allocate(int frameWidth, int frameHeight, int hMax, int vMax, int mcusX, int mcusY, int blockStride) {
+        width = (frameWidth * h + hMax - 1) / hMax;
+        height = (frameHeight * v + vMax - 1) / vMax;
+        blocksPerLine = mcusX * h;
+        blocksPerColumn = mcusY * v;
+        this.blockStride = blockStride;
+        coefficients = new short[blocksPerLine * blocksPerColumn * blockStride];
+    }
+
+    /**
+     * Number of blocks per line that cover the visible component area
+     */
+    int visibleBlocksPerLine() {
+        return (width + 7) >> 3;
+    }
+
+    /**
+     * Number of block rows that cover the visible component area
+     */
+    int visibleBlocksPerColumn() {
+        return (height + 7) >> 3;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getHorizontalSampling() {
+        return h;
+    }
+
+    public int getVerticalSampling() {
+        return v;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBlocksPerLine() {
+        return blocksPerLine;
+    }
+
+    public int getBlocksPerColumn() {
+        return blocksPerColumn;
+    }
+
+    /**
+     * Get the quantized coefficients (natural order, 64 per block)
+     * 
+     * @return Coefficient plane, shared with the frame
+     */
+    public short[] getCoefficients() {
+        return coefficients;
+    }
+
+    /**
+     * Get the quantization table used by this component (natural order)
+     * 
+     * @return 64 quantization steps
+     */
+    public int[] getQuantTable() {
+        return quantTable;
+    }
+}
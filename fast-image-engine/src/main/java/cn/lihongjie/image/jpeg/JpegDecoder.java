@@ -0,0 +1,161 @@
+package cn.lihongjie.image.jpeg;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.metadata.MetadataPolicy;
+
+import java.util.stream.IntStream;
+
+/**
+ * Pure-Java JPEG decoder
+ *
+ * Decodes baseline, extended sequential and progressive gray or YCbCr JPEGs straight
+ * into a {@link PixelImage}. The inverse DCT, chroma upsampling and color conversion
+ * follow libjpeg's defaults (accurate integer IDCT, fancy upsampling), so the pixels
+ * match what ImageIO returns for the same file.
+ *
+ * With a parallelism level above 1, restart segments (when the file has a DRI segment)
+ * are entropy-decoded concurrently into the shared coefficient planes, and the inverse
+ * transform and color conversion run on horizontal bands of MCU rows. Files without
+ * restart markers are entropy-decoded sequentially; only the pixel reconstruction is
+ * then split across cores. Work runs on the common fork-join pool.
+ *
+ * A scale of 1/2, 1/4 or 1/8 reconstructs every block with a reduced-size IDCT (4x4,
+ * 2x2 or DC only), which is far cheaper than decoding at full size and downscaling.
+ * At 1/8 the AC scans of progressive files are skipped entirely.
+ * {@link #decodeAtLeast} picks the smallest such scale that still covers a target size.
+ *
+ * Decoders are immutable and can be shared between threads.
+ *
+ * Usage:
+ * <pre>
+ * JpegDecoder decoder = new JpegDecoder().withParallelism(Runtime.getRuntime().availableProcessors());
+ * PixelImage image = decoder.decode(jpegBytes);
+ * PixelImage preview = decoder.decodeAtLeast(jpegBytes, 256, 256);
+ * </pre>
+ */
+public final class JpegDecoder {
+
+    private final int parallelism;
+    private final int scale;
+
+    /**
+     * Create a single-threaded full-size decoder
+     */
+    public JpegDecoder() {
+        this(1, 1);
+    }
+
+    private JpegDecoder(int parallelism, int scale) {
+        this.parallelism = parallelism;
+        this.scale = scale;
+    }
+
+    /**
+     * Get a copy of this decoder using up to the given number of threads per image
+     *
+     * @param parallelism Maximum number of threads, 1 for single-threaded decoding
+     * @return Decoder with the new parallelism level
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public JpegDecoder withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, got: " + parallelism);
+        }
+        return new JpegDecoder(parallelism, scale);
+    }
+
+    /**
+     * Get a copy of this decoder that decodes at 1/denominator of the full size
+     *
+     * Output dimensions are the full dimensions divided by the denominator, rounded up.
+     *
+     * @param denominator 1, 2, 4 or 8
+     * @return Decoder with the new scale
+     * @throws IllegalArgumentException if the denominator is not 1, 2, 4 or 8
+     */
+    public JpegDecoder withScale(int denominator) {
+        if (denominator != 1 && denominator != 2 && denominator != 4 && denominator != 8) {
+            throw new IllegalArgumentException("Scale denominator must be 1, 2, 4 or 8, got: " + denominator);
+        }
+        return new JpegDecoder(parallelism, denominator);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Pick the largest scale denominator whose output still covers the requested size
+     *
+     * @param width     Full image width
+     * @param height    Full image height
+     * @param minWidth  Minimum output width
+     * @param minHeight Minimum output height
+     * @return 1, 2, 4 or 8
+     */
+    public static int scaleFor(int width, int height, int minWidth, int minHeight) {
+        for (int denominator = 8; denominator > 1; denominator >>= 1) {
+            if ((width + denominator - 1) / denominator >= minWidth
+                    && (height + denominator - 1) / denominator >= minHeight) {
+                return denominator;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Decode a JPEG image
+     *
+     * @param jpegBytes JPEG file data
+     * @return Gray (1 channel) or RGB (3 channel) pixels
+     * @throws IllegalArgumentException if the data is empty, corrupt, or uses an unsupported
+     *         coding process or color space (such as CMYK)
+     */
+    public PixelImage decode(byte[] jpegBytes) {
+        return decode(jpegBytes, scale);
+    }
+
+    /**
+     * Decode a JPEG image at the smallest DCT scale that is at least the given size
+     *
+     * The configured scale is ignored; the result is typically resized afterwards
+     * to the exact target size.
+     *
+     * @param jpegBytes JPEG file data
+     * @param minWidth  Minimum output width
+     * @param minHeight Minimum output height
+     * @return Pixels at 1/1, 1/2, 1/4 or 1/8 of the full size
+     * @throws IllegalArgumentException if the data is empty, corrupt, or uses an unsupported
+     *         coding process or color space (such as CMYK)
+     */
+    public PixelImage decodeAtLeast(byte[] jpegBytes, int minWidth, int minHeight) {
+        JpegFrame header = JpegReader.readHeader(jpegBytes);
+        return decode(jpegBytes, scaleFor(header.width, header.height, minWidth, minHeight));
+    }
+
+    private PixelImage decode(byte[] jpegBytes, int scale) {
+        // At 1/8 only DC coefficients are used, so progressive AC scans need not be decoded
+        JpegFrame frame = scale == 8
+                ? JpegReader.readDcCoefficients(jpegBytes, MetadataPolicy.STRIP_ALL, parallelism)
+                : JpegReader.readCoefficients(jpegBytes, MetadataPolicy.STRIP_ALL, parallelism);
+        InverseTransform inverse = new InverseTransform(frame, scale);
+        int bands = Math.min(parallelism, frame.mcusY);
+        if (bands <= 1) {
+            inverse.reconstruct(0, frame.mcusY);
+            inverse.convert(0, frame.mcusY);
+            return inverse.getImage();
+        }
+        int[] firstRow = new int[bands + 1];
+        for (int b = 0; b <= bands; b++) {
+            firstRow[b] = frame.mcusY * b / bands;
+        }
+        // Upsampling reads across band edges, so all bands are reconstructed before any is converted
+        IntStream.range(0, bands).parallel().forEach(b -> inverse.reconstruct(firstRow[b], firstRow[b + 1]));
+        IntStream.range(0, bands).parallel().forEach(b -> inverse.convert(firstRow[b], firstRow[b + 1]));
+        return inverse.getImage();
+    }
+}
@@ -0,0 +1,120 @@
+package cn.lihongjie.image.jpeg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoded JPEG frame at the coefficient level
+ * 
+ * Holds the frame geometry, the components with their quantized DCT coefficients,
+ * and the metadata segments that survived the reader's {@link cn.lihongjie.image.metadata.MetadataPolicy}.
+ * Because nothing is dequantized or transformed, a frame can be re-entropy-coded
+ * without any loss.
+ */
+public final class JpegFrame {
+
+    int width;
+    int height;
+    boolean progressive;
+    JpegComponent[] components;
+    int hMax;
+    int vMax;
+    int mcusX;
+    int mcusY;
+    int restartInterval;
+    int adobeTransform = -1;
+    final List<byte[]> metadataSegments = new ArrayList<>();
+    /** Scans of progressive input, in file order, so they can be written again */
+    final List<ScanScript.Scan> scans = new ArrayList<>();
+
+    JpegFrame() {
+    }
+
+    /**
+     * Compute MCU geometry and allocate coefficient planes for all components
+     */
+    void allocate() {
+        allocate(64);
+    }
+
+    /**
+     * Compute MCU geometry and allocate coefficient planes storing the given number of values per block
+     */
+    void allocate(int blockStride) {
+        hMax = 1;
+        vMax = 1;
+        for (JpegComponent c : components) {
+            hMax = Math.max(hMax, c.h);
+            vMax = Math.max(vMax, c.v);
+        }
+        mcusX = (width + 8 * hMax - 1) / (8 * hMax);
+        mcusY = (height + 8 * vMax - 1) / (8 * vMax);
+        for (JpegComponent c : components) {
+            c.allocate(width, height, hMax, vMax, mcusX, mcusY, blockStride);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Check whether the source was progressive (SOF2)
+     * 
+     * @return true for progressive input
+     */
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    public JpegComponent[] getComponents() {
+        return components;
+    }
+
+    public int getMaxHorizontalSampling() {
+        return hMax;
+    }
+
+    public int getMaxVerticalSampling() {
+        return vMax;
+    }
+
+    public int getMcusPerLine() {
+        return mcusX;
+    }
+
+    public int getMcuRows() {
+        return mcusY;
+    }
+
+    /**
+     * Get the restart interval in MCUs (0 when restart markers are not used)
+     * 
+     * @return Restart interval
+     */
+    public int getRestartInterval() {
+        return restartInterval;
+    }
+
+    /**
+     * Get the Adobe APP14 color transform flag
+     * 
+     * @return 0 (no transform), 1 (YCbCr), 2 (YCCK) or -1 when no Adobe segment was present
+     */
+    public int getAdobeTransform() {
+        return adobeTransform;
+    }
+
+    /**
+     * Get the kept metadata segments, each including its marker and length bytes
+     * 
+     * @return Metadata segments in file order
+     */
+    public List<byte[]> getMetadataSegments() {
+        return metadataSegments;
+    }
+}
@@ -0,0 +1,62 @@
+package cn.lihongjie.image.jpeg;
+
+import cn.lihongjie.image.metadata.MetadataPolicy;
+import cn.lihongjie.image.metadata.MetadataStripper;
+
+/**
+ * Lossless JPEG size reduction without touching pixel data
+ *
+ * Drops the metadata segments rejected by a {@link MetadataPolicy} and re-entropy-codes
+ * the image with Huffman tables built from the image's own symbol statistics
+ * (one gather pass, one encode pass). The quantized DCT coefficients are carried
+ * over unchanged, so the decoded pixels are bit-identical to the input.
+ *
+ * Progressive input stays progressive: its scans are written again in the same order,
+ * each with optimal tables for its own symbols. Restart markers are dropped, which
+ * does not change the pixels. When that turns out larger than the original
+ * entropy-coded data, the metadata-stripped original is returned instead, so the
+ * output is never larger than the stripped input.
+ *
+ * Usage:
+ * <pre>
+ * byte[] optimized = JpegLosslessOptimizer.optimize(jpegBytes, MetadataPolicy.STRIP_SAFE);
+ * </pre>
+ */
+public final class JpegLosslessOptimizer {
+
+    private JpegLosslessOptimizer() {
+    }
+
+    /**
+     * Optimize a JPEG, dropping EXIF, XMP, comments and vendor segments
+     * (see {@link MetadataPolicy#STRIP_SAFE})
+     *
+     * @param jpegBytes JPEG file data
+     * @return Optimized JPEG data
+     * @throws IllegalArgumentException if the data is empty, not a JPEG, or uses an unsupported coding process
+     */
+    public static byte[] optimize(byte[] jpegBytes) {
+        return optimize(jpegBytes, MetadataPolicy.STRIP_SAFE);
+    }
+
+    /**
+     * Optimize a JPEG with the given metadata policy
+     *
+     * @param jpegBytes JPEG file data
+     * @param policy    Metadata keep/drop rules
+     * @return Optimized JPEG data
+     * @throws IllegalArgumentException if the data is empty, not a JPEG, or uses an unsupported coding process
+     */
+    public static byte[] optimize(byte[] jpegBytes, MetadataPolicy policy) {
+        JpegFrame frame = JpegReader.readCoefficients(jpegBytes, policy);
+        if (!frame.progressive) {
+            HuffmanTable[][] tables = JpegWriter.optimalSequentialTables(frame);
+            return JpegWriter.writeSequential(frame, tables[0], tables[1]);
+        }
+        // The progressive writer emits no restart markers
+        frame.restartInterval = 0;
+        byte[] optimized = JpegWriter.writeProgressive(frame, frame.scans, 1);
+        byte[] stripped = MetadataStripper.strip(jpegBytes, policy);
+        return stripped.length <= optimized.length ? stripped : optimized;
+    }
+}
@@ -0,0 +1,364 @@
+package cn.lihongjie.image.jpeg;
+
+import cn.lihongjie.image.metadata.ExifOrientation;
+import cn.lihongjie.image.metadata.MetadataPolicy;
+import cn.lihongjie.image.metadata.MetadataType;
+import cn.lihongjie.image.metadata.SegmentScanner;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Pure-Java JPEG reader producing quantized DCT coefficients
+ *
+ * Supports baseline, extended sequential and progressive Huffman-coded JPEGs with
+ * 8-bit samples. Arithmetic-coded and lossless JPEGs are rejected. Metadata segments
+ * are filtered through a {@link MetadataPolicy} while parsing, so the resulting
+ * {@link JpegFrame} only carries what the caller wants to keep.
+ *
+ * Usage:
+ * <pre>
+ * JpegFrame frame = JpegReader.readCoefficients(jpegBytes, MetadataPolicy.STRIP_SAFE);
+ * </pre>
+ */
+public final class JpegReader {
+
+    private final byte[] data;
+    private final MetadataPolicy policy;
+    private final int parallelism;
+    private boolean dcOnly;
+    private boolean headerOnly;
+    private final JpegFrame frame = new JpegFrame();
+    private final int[][] quantTables = new int[4][];
+    private final HuffmanDecoder[] dcDecoders = new HuffmanDecoder[4];
+    private final HuffmanDecoder[] acDecoders = new HuffmanDecoder[4];
+    private int pos;
+
+    private JpegReader(byte[] data, MetadataPolicy policy, int parallelism) {
+        this.data = data;
+        this.policy = policy;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Read all coefficients of a JPEG image
+     *
+     * @param jpegBytes JPEG file data
+     * @param policy    Which metadata segments to keep in the returned frame
+     * @return Frame with fully decoded coefficient planes
+     * @throws IllegalArgumentException if the data is empty, corrupt or uses an unsupported coding process
+     */
+    public static JpegFrame readCoefficients(byte[] jpegBytes, MetadataPolicy policy) {
+        return readCoefficients(jpegBytes, policy, 1);
+    }
+
+    /**
+     * Read all coefficients of a JPEG image, decoding restart segments concurrently
+     *
+     * Scans without restart markers are decoded sequentially whatever the parallelism.
+     *
+     * @param jpegBytes   JPEG file data
+     * @param policy      Which metadata segments to keep in the returned frame
+     * @param parallelism Maximum number of threads per scan
+     * @return Frame with fully decoded coefficient planes
+     * @throws IllegalArgumentException if the data is empty, corrupt or uses an unsupported coding process
+     */
+    public static JpegFrame readCoefficients(byte[] jpegBytes, MetadataPolicy policy, int parallelism) {
+        JpegReader reader = open(jpegBytes, policy, parallelism);
+        reader.read();
+        return reader.frame;
+    }
+
+    /**
+     * Read only the DC coefficients that matter for a 1/8-scale decode
+     *
+     * The returned planes hold one DC value per block. AC scans of progressive files are
+     * skipped without being entropy-decoded; sequential scans interleave DC and AC, so their
+     * AC codes are still decoded but not stored.
+     */
+    static JpegFrame readDcCoefficients(byte[] jpegBytes, MetadataPolicy policy, int parallelism) {
+        JpegReader reader = open(jpegBytes, policy, parallelism);
+        reader.dcOnly = true;
+        reader.read();
+        return reader.frame;
+    }
+
+    /**
+     * Parse markers up to the frame header and return a frame with dimensions and
+     * components but no coefficient planes
+     */
+    static JpegFrame readHeader(byte[] jpegBytes) {
+        JpegReader reader = open(jpegBytes, MetadataPolicy.STRIP_ALL, 1);
+        reader.headerOnly = true;
+        reader.read();
+        return reader.frame;
+    }
+
+    private static JpegReader open(byte[] jpegBytes, MetadataPolicy policy, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, got: " + parallelism);
+        }
+        if (jpegBytes == null || jpegBytes.length < 4) {
+            throw new IllegalArgumentException("Image data is empty");
+        }
+        if ((jpegBytes[0] & 0xFF) != 0xFF || (jpegBytes[1] & 0xFF) != JpegTables.SOI) {
+            throw new IllegalArgumentException("Not a JPEG image (missing SOI marker)");
+        }
+        return new JpegReader(jpegBytes, policy, parallelism);
+    }
+
+    private void read() {
+        pos = 2;
+        while (pos < data.length) {
+            int marker = nextMarker();
+            if (marker < 0 || marker == JpegTables.EOI) {
+                break;
+            }
+            if (marker >= JpegTables.RST0 && marker <= JpegTables.RST0 + 7) {
+                continue;
+            }
+            int length = readUnsignedShort(pos);
+            int payload = pos + 2;
+            int segmentEnd = pos + length;
+            if (length < 2 || segmentEnd > data.length) {
+                throw new IllegalArgumentException("Corrupt JPEG: segment 0x"
+                        + Integer.toHexString(marker) + " exceeds data length");
+            }
+            switch (marker) {
+                case JpegTables.SOF0:
+                case JpegTables.SOF1:
+                case JpegTables.SOF2:
+                    readFrameHeader(marker, payload);
+                    if (headerOnly) {
+                        return;
+                    }
+                    break;
+                case JpegTables.DHT:
+                    readHuffmanTables(payload, segmentEnd);
+                    break;
+                case JpegTables.DQT:
+                    readQuantTables(payload, segmentEnd);
+                    break;
+                case JpegTables.DRI:
+                    frame.restartInterval = readUnsignedShort(payload);
+                    break;
+                case JpegTables.SOS:
+                    segmentEnd = readScan(payload);
+                    break;
+                case JpegTables.DNL:
+                    break;
+                default:
+                    if ((marker >= JpegTables.APP0 && marker <= JpegTables.APP15) || marker == JpegTables.COM) {
+                        readMetadata(marker, pos - 2, payload, segmentEnd);
+                    } else if (marker >= 0xC3 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                        throw new IllegalArgumentException("Unsupported JPEG coding process: SOF"
+                                + (marker - JpegTables.SOF0));
+                    }
+                    break;
+            }
+            pos = segmentEnd;
+        }
+        if (frame.components == null) {
+            throw new IllegalArgumentException("Corrupt JPEG: no frame header found");
+        }
+        for (JpegComponent c : frame.components) {
+            // The quantization table is bound when a scan first covers the component
+            if (c.quantTable == null) {
+                throw new IllegalArgumentException("Corrupt JPEG: component " + c.id + " is not covered by any scan");
+            }
+        }
+    }
+
+    /**
+     * Advance to the next marker and return its code, skipping fill bytes
+     */
+    private int nextMarker() {
+        while (pos < data.length && (data[pos] & 0xFF) != 0xFF) {
+            pos++;
+        }
+        while (pos < data.length && (data[pos] & 0xFF) == 0xFF) {
+            pos++;
+        }
+        if (pos >= data.length) {
+            return -1;
+        }
+        return data[pos++] & 0xFF;
+    }
+
+    private int readUnsignedShort(int offset) {
+        if (offset + 1 >= data.length) {
+            throw new IllegalArgumentException("Corrupt JPEG: unexpected end of data");
+        }
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private void readMetadata(int marker, int segmentStart, int payload, int segmentEnd) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        MetadataType type = SegmentScanner.classifyJpeg(marker, buffer, payload, segmentEnd - payload);
+        if (type == MetadataType.ADOBE && segmentEnd - payload >= 12) {
+            frame.adobeTransform = data[payload + 11] & 0xFF;
+        }
+        if (policy.keeps(type)) {
+            frame.metadataSegments.add(Arrays.copyOfRange(data, segmentStart, segmentEnd));
+        } else if (type == MetadataType.EXIF && policy.keepsExifOrientation()) {
+            // Payload starts with "Exif\0\0", followed by the TIFF structure
+            int orientation = ExifOrientation.read(buffer, payload + 6, segmentEnd - payload - 6);
+            if (orientation > 1) {
+                frame.metadataSegments.add(ExifOrientation.jpegSegment(orientation));
+            }
+        }
+    }
+
+    private void readFrameHeader(int marker, int p) {
+        if (frame.components != null) {
+            throw new IllegalArgumentException("Corrupt JPEG: multiple frame headers");
+        }
+        if (p + 6 > data.length || p + 6 + 3 * (data[p + 5] & 0xFF) > data.length) {
+            throw new IllegalArgumentException("Corrupt JPEG: truncated frame header");
+        }
+        int precision = data[p] & 0xFF;
+        if (precision != 8) {
+            throw new IllegalArgumentException("Unsupported JPEG sample precision: " + precision);
+        }
+        frame.height = readUnsignedShort(p + 1);
+        frame.width = readUnsignedShort(p + 3);
+        if (frame.width == 0 || frame.height == 0) {
+            throw new IllegalArgumentException("Unsupported JPEG dimensions: " + frame.width + "x" + frame.height);
+        }
+        frame.progressive = marker == JpegTables.SOF2;
+        int count = data[p + 5] & 0xFF;
+        if (count < 1 || count > 4) {
+            throw new IllegalArgumentException("Unsupported JPEG component count: " + count);
+        }
+        frame.components = new JpegComponent[count];
+        for (int i = 0; i < count; i++) {
+            int q = p + 6 + i * 3;
+            int sampling = data[q + 1] & 0xFF;
+            int h = sampling >> 4;
+            int v = sampling & 15;
+            if (h < 1 || h > 4 || v < 1 || v > 4) {
+                throw new IllegalArgumentException("Corrupt JPEG: invalid sampling factors");
+            }
+            frame.components[i] = new JpegComponent(data[q] & 0xFF, h, v, (data[q + 2] & 0xFF) & 3);
+        }
+        if (!headerOnly) {
+            // A DC-only decode never looks at AC coefficients, so it keeps one value per block
+            frame.allocate(dcOnly ? 1 : 64);
+        }
+    }
+
+    private void readQuantTables(int p, int end) {
+        while (p < end) {
+            int pq = (data[p] & 0xFF) >> 4;
+            int tq = data[p] & 3;
+            p++;
+            if (p + (pq == 0 ? 64 : 128) > end) {
+                throw new IllegalArgumentException("Corrupt JPEG: truncated quantization table");
+            }
+            int[] table = new int[64];
+            for (int k = 0; k < 64; k++) {
+                int value;
+                if (pq == 0) {
+                    value = data[p++] & 0xFF;
+                } else {
+                    value = readUnsignedShort(p);
+                    p += 2;
+                }
+                table[JpegTables.NATURAL_ORDER[k]] = value;
+            }
+            quantTables[tq] = table;
+        }
+    }
+
+    private void readHuffmanTables(int p, int end) {
+        while (p < end) {
+            int tc = (data[p] & 0xFF) >> 4;
+            int th = data[p] & 3;
+            p++;
+            if (p + 16 > end) {
+                throw new IllegalArgumentException("Corrupt JPEG: bad Huffman table");
+            }
+            int[] bits = new int[17];
+            int total = 0;
+            for (int i = 1; i <= 16; i++) {
+                bits[i] = data[p++] & 0xFF;
+                total += bits[i];
+            }
+            if (total > 256 || p + total > end) {
+                throw new IllegalArgumentException("Corrupt JPEG: bad Huffman table");
+            }
+            int[] values = new int[total];
+            for (int i = 0; i < total; i++) {
+                values[i] = data[p++] & 0xFF;
+            }
+            HuffmanDecoder decoder = new HuffmanDecoder(bits, values);
+            if (tc == 0) {
+                dcDecoders[th] = decoder;
+            } else {
+                acDecoders[th] = decoder;
+            }
+        }
+    }
+
+    /**
+     * Parse a scan header, decode its entropy-coded data and return the offset just past it
+     */
+    private int readScan(int p) {
+        if (frame.components == null) {
+            throw new IllegalArgumentException("Corrupt JPEG: scan before frame header");
+        }
+        int count = data[p] & 0xFF;
+        if (count < 1 || count > 4) {
+            throw new IllegalArgumentException("Corrupt JPEG: bad scan component count");
+        }
+        if (p + 4 + count * 2 > data.length) {
+            throw new IllegalArgumentException("Corrupt JPEG: truncated scan header");
+        }
+        JpegScan scan = new JpegScan(count);
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            int id = data[p + 1 + i * 2] & 0xFF;
+            int tables = data[p + 2 + i * 2] & 0xFF;
+            int index = componentIndex(id);
+            indexes[i] = index;
+            scan.components[i] = frame.components[index];
+            scan.dcDecoders[i] = dcDecoders[tables >> 4 & 3];
+            scan.acDecoders[i] = acDecoders[tables & 3];
+            JpegComponent c = frame.components[index];
+            if (c.quantTable == null) {
+                c.quantTable = quantTables[c.quantTableIndex];
+                if (c.quantTable == null) {
+                    throw new IllegalArgumentException("Corrupt JPEG: missing quantization table " + c.quantTableIndex);
+                }
+            }
+        }
+        int q = p + 1 + count * 2;
+        scan.ss = data[q] & 0xFF;
+        scan.se = data[q + 1] & 0xFF;
+        scan.ah = (data[q + 2] & 0xFF) >> 4;
+        scan.al = data[q + 2] & 15;
+        scan.progressive = frame.progressive;
+        scan.restartInterval = frame.restartInterval;
+        scan.validate();
+        if (frame.progressive) {
+            frame.scans.add(new ScanScript.Scan(indexes, scan.ss, scan.se, scan.ah, scan.al));
+        }
+
+        int scanStart = q + 3;
+        if (dcOnly && scan.ss > 0) {
+            return ScanSegments.split(data, scanStart, false).end;
+        }
+        JpegScanDecoder decoder = new JpegScanDecoder(frame, scan);
+        return decoder.decode(data, scanStart, parallelism);
+    }
+
+    private int componentIndex(int id) {
+        JpegComponent[] components = frame.components;
+        for (int i = 0; i < components.length; i++) {
+            if (components[i].id == id) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Corrupt JPEG: scan references unknown component " + id);
+    }
+}
@@ -0,0 +1,45 @@
+package cn.lihongjie.image.jpeg;
+
+/**
+ * Parameters of one scan: the components it covers, their entropy tables and the
+ * spectral selection / successive approximation settings
+ */
+final class JpegScan {
+
+    final JpegComponent[] components;
+    final HuffmanDecoder[] dcDecoders;
+    final HuffmanDecoder[] acDecoders;
+    int ss;
+    int se;
+    int ah;
+    int al;
+    boolean progressive;
+    int restartInterval;
+
+    JpegScan(int count) {
+        components = new JpegComponent[count];
+        dcDecoders = new HuffmanDecoder[count];
+        acDecoders = new HuffmanDecoder[count];
+    }
+
+    void validate() {
+        if (progressive) {
+            if (ss > se || se > 63 || (ss == 0 && se != 0) || (ss > 0 && components.length != 1)
+                    || al > 13 || (ah != 0 && ah != al + 1)) {
+                throw new IllegalArgumentException("Corrupt JPEG: invalid progressive scan parameters");
+            }
+        } else {
+            ss = 0;
+            se = 63;
+            ah = 0;
+            al = 0;
+        }
+        for (int i = 0; i < components.length; i++) {
+            boolean needsDc = ss == 0 && ah == 0;
+            boolean needsAc = se > 0;
+            if ((needsDc && dcDecoders[i] == null) || (needsAc && acDecoders[i] == null)) {
+                throw new IllegalArgumentException("Corrupt JPEG: scan references an undefined Huffman table");
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package cn.lihongjie.image.jpeg;
+
+import java.util.stream.IntStream;
+
+/**
+ * Entropy decoder for a single scan
+ *
+ * The scan data is first split at its restart markers; each restart segment is
+ * then decoded independently with its own DC predictors and EOB run, exactly as
+ * the restart semantics of the standard require. Because segments write disjoint
+ * blocks, they can also be decoded concurrently.
+ */
+final class JpegScanDecoder {
+
+    private static final int SEQUENTIAL = 0;
+    private static final int DC_FIRST = 1;
+    private static final int DC_REFINE = 2;
+    private static final int AC_FIRST = 3;
+    private static final int AC_REFINE = 4;
+
+    private final JpegScan scan;
+    private final int mode;
+    private final int mcusX;
+    private final int totalMcus;
+    private final boolean singleComponent;
+    private final boolean dcOnly;
+
+    JpegScanDecoder(JpegFrame frame, JpegScan scan) {
+        this.scan = scan;
+        if (!scan.progressive) {
+            mode = SEQUENTIAL;
+        } else if (scan.ss == 0) {
+            mode = scan.ah == 0 ? DC_FIRST : DC_REFINE;
+        } else {
+            mode = scan.ah == 0 ? AC_FIRST : AC_REFINE;
+        }
+        singleComponent = scan.components.length == 1;
+        dcOnly = scan.components[0].blockStride == 1;
+        if (singleComponent) {
+            JpegComponent c = scan.components[0];
+            mcusX = c.visibleBlocksPerLine();
+            totalMcus = mcusX * c.visibleBlocksPerColumn();
+        } else {
+            mcusX = frame.mcusX;
+            totalMcus = frame.mcusX * frame.mcusY;
+        }
+    }
+
+    /**
+     * Decode the scan starting at {@code start} and return the offset of the marker that ends it
+     *
+     * @param parallelism Maximum number of threads decoding restart segments; scans
+     *                    without restart markers are always decoded sequentially
+     */
+    int decode(byte[] data, int start, int parallelism) {
+        ScanSegments segments = ScanSegments.split(data, start, scan.restartInterval > 0);
+        int interval = scan.restartInterval > 0 ? scan.restartInterval : totalMcus;
+        int count = Math.min(segments.count, (totalMcus + interval - 1) / interval);
+        int groups = Math.min(parallelism, count);
+        if (groups <= 1) {
+            decodeSegments(data, segments, interval, 0, count);
+        } else {
+            // Each group decodes a contiguous run of restart segments
+            IntStream.range(0, groups).parallel().forEach(g ->
+                    decodeSegments(data, segments, interval, count * g / groups, count * (g + 1) / groups));
+        }
+        return segments.end;
+    }
+
+    private void decodeSegments(byte[] data, ScanSegments segments, int interval, int first, int end) {
+        for (int i = first; i < end; i++) {
+            int firstMcu = i * interval;
+            decodeSegment(data, segments.starts[i], segments.ends[i], firstMcu,
+                    Math.min(interval, totalMcus - firstMcu));
+        }
+    }
+
+    private void decodeSegment(byte[] data, int start, int end, int firstMcu, int mcuCount) {
+        BitReader reader = new BitReader(data, start, end);
+        int[] pred = new int[scan.components.length];
+        int[] eobrun = new int[1];
+        for (int m = firstMcu; m < firstMcu + mcuCount; m++) {
+            int mx = m % mcusX;
+            int my = m / mcusX;
+            if (singleComponent) {
+                JpegComponent c = scan.components[0];
+                decodeBlock(reader, 0, c.coefficients, (my * c.blocksPerLine + mx) * c.blockStride, pred, eobrun);
+                continue;
+            }
+            for (int ci = 0; ci < scan.components.length; ci++) {
+                JpegComponent c = scan.components[ci];
+                for (int y = 0; y < c.v; y++) {
+                    int row = (my * c.v + y) * c.blocksPerLine + mx * c.h;
+                    for (int x = 0; x < c.h; x++) {
+                        decodeBlock(reader, ci, c.coefficients, (row + x) * c.blockStride, pred, eobrun);
+                    }
+                }
+            }
+        }
+    }
+
+    private void decodeBlock(BitReader reader, int ci, short[] coef, int off, int[] pred, int[] eobrun) {
+        switch (mode) {
+            case SEQUENTIAL:
+                decodeSequential(reader, ci, coef, off, pred);
+                break;
+            case DC_FIRST:
+                pred[ci] += reader.receiveExtend(scan.dcDecoders[ci].decode(reader));
+                coef[off] = (short) (pred[ci] << scan.al);
+                break;
+            case DC_REFINE:
+                if (reader.readBit() != 0) {
+                    coef[off] |= (short) (1 << scan.al);
+                }
+                break;
+            case AC_FIRST:
+                decodeAcFirst(reader, coef, off, eobrun);
+                break;
+            default:
+                decodeAcRefine(reader, coef, off, eobrun);
+                break;
+        }
+    }
+
+    private void decodeSequential(BitReader reader, int ci, short[] coef, int off, int[] pred) {
+        pred[ci] += reader.receiveExtend(scan.dcDecoders[ci].decode(reader));
+        coef[off] = (short) pred[ci];
+        HuffmanDecoder ac = scan.acDecoders[ci];
+        for (int k = 1; k < 64; ) {
+            int rs = ac.decode(reader);
+            int r = rs >> 4;
+            int s = rs & 15;
+            if (s != 0) {
+                k += r;
+                if (k > 63) {
+                    throw new IllegalArgumentException("Corrupt JPEG: AC coefficient run past the end of the block");
+                }
+                if (dcOnly) {
+                    reader.readBits(s);
+                } else {
+                    coef[off + JpegTables.NATURAL_ORDER[k]] = (short) reader.receiveExtend(s);
+                }
+                k++;
+            } else {
+                if (r != 15) {
+                    break;
+                }
+                k += 16;
+            }
+        }
+    }
+
+    private void decodeAcFirst(BitReader reader, short[] coef, int off, int[] eobrun) {
+        if (eobrun[0] > 0) {
+            eobrun[0]--;
+            return;
+        }
+        HuffmanDecoder ac = scan.acDecoders[0];
+        int se = scan.se;
+        int al = scan.al;
+        for (int k = scan.ss; k <= se; k++) {
+            int rs = ac.decode(reader);
+            int r = rs >> 4;
+            int s = rs & 15;
+            if (s != 0) {
+                k += r;
+                if (k > se) {
+                    throw new IllegalArgumentException("Corrupt JPEG: AC coefficient run past the end of the band");
+                }
+                coef[off + JpegTables.NATURAL_ORDER[k]] = (short) (reader.receiveExtend(s) * (1 << al));
+            } else if (r == 15) {
+                k += 15;
+            } else {
+                eobrun[0] = (1 << r) - 1;
+                if (r != 0) {
+                    eobrun[0] += reader.readBits(r);
+                }
+                break;
+            }
+        }
+    }
+
+    private void decodeAcRefine(BitReader reader, short[] coef, int off, int[] eobrun) {
+        int p1 = 1 << scan.al;
+        int m1 = -1 << scan.al;
+        int se = scan.se;
+        int k = scan.ss;
+        if (eobrun[0] == 0) {
+            HuffmanDecoder ac = scan.acDecoders[0];
+            for (; k <= se; k++) {
+                int rs = ac.decode(reader);
+                int r = rs >> 4;
+                int s = rs & 15;
+                if (s != 0) {
+                    s = reader.readBit() != 0 ? p1 : m1;
+                } else if (r != 15) {
+                    eobrun[0] = 1 << r;
+                    if (r != 0) {
+                        eobrun[0] += reader.readBits(r);
+                    }
+                    break;
+                }
+                do {
+                    int index = off + JpegTables.NATURAL_ORDER[k];
+                    int value = coef[index];
+                    if (value != 0) {
+                        refine(reader, coef, index, value, p1, m1);
+                    } else if (--r < 0) {
+                        break;
+                    }
+                    k++;
+                } while (k <= se);
+                if (s != 0) {
+                    if (k > se) {
+                        throw new IllegalArgumentException("Corrupt JPEG: AC coefficient run past the end of the band");
+                    }
+                    coef[off + JpegTables.NATURAL_ORDER[k]] = (short) s;
+                }
+            }
+        }
+        if (eobrun[0] > 0) {
+            for (; k <= se; k++) {
+                int index = off + JpegTables.NATURAL_ORDER[k];
+                int value = coef[index];
+                if (value != 0) {
+                    refine(reader, coef, index, value, p1, m1);
+                }
+            }
+            eobrun[0]--;
+        }
+    }
+
+    private static void refine(BitReader reader, short[] coef, int index, int value, int p1, int m1) {
+        if (reader.readBit() != 0 && (value & p1) == 0) {
+            coef[index] = (short) (value >= 0 ? value + p1 : value + m1);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package cn.lihongjie.image.jpeg;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Assembles JPEG files from a coefficient-level {@link JpegFrame}
+ *
+ * Writes the marker segments (metadata, DQT, SOF, DHT, DRI, SOS) around the
+ * entropy-coded data produced by the scan encoders.
+ */
+final class JpegWriter {
+
+    private final ByteArrayOutputStream out;
+
+    JpegWriter(int expectedSize) {
+        out = new ByteArrayOutputStream(Math.max(expectedSize, 1024));
+    }
+
+    /**
+     * Encode a frame as a single interleaved sequential scan
+     *
+     * @param frame    Frame with coefficient planes and quantization tables
+     * @param dcTables DC tables indexed by table slot
+     * @param acTables AC tables indexed by table slot
+     * @return Complete JPEG file
+     */
+    static byte[] writeSequential(JpegFrame frame, HuffmanTable[] dcTables, HuffmanTable[] acTables) {
+        JpegComponent[] components = frame.components;
+        int[] tableOf = tableSlots(components.length);
+        SequentialScanEncoder encoder = new SequentialScanEncoder(frame, components, tableOf, tableOf,
+                frame.restartInterval);
+        BitWriter bits = new BitWriter(estimateSize(frame));
+        encoder.encode(bits, dcTables, acTables, 0, encoder.totalMcus());
+        bits.alignToByte();
+        return writeSequential(frame, dcTables, acTables, new BitWriter[]{bits}, new int[]{0});
+    }
+
+    /**
+     * Assemble a single interleaved sequential scan from separately encoded pieces
+     *
+     * Every piece after the first must start on a restart interval boundary; the
+     * matching RSTn marker is inserted in front of it.
+     *
+     * @param frame     Frame whose headers are written
+     * @param dcTables  DC tables the pieces were encoded with
+     * @param acTables  AC tables the pieces were encoded with
+     * @param pieces    Byte-aligned entropy-coded data, in MCU order
+     * @param firstMcus Index of the first MCU of each piece
+     * @return Complete JPEG file
+     */
+    static byte[] writeSequential(JpegFrame frame, HuffmanTable[] dcTables, HuffmanTable[] acTables,
+                                  BitWriter[] pieces, int[] firstMcus) {
+        int size = 2048;
+        for (BitWriter piece : pieces) {
+            size += piece.length() + 2;
+        }
+        int[] tableOf = tableSlots(frame.components.length);
+        JpegWriter writer = new JpegWriter(size);
+        writer.writeHeaders(frame, dcTables, acTables, false);
+        writer.writeScanHeader(frame.components, tableOf, tableOf, 0, 63, 0, 0);
+        for (int i = 0; i < pieces.length; i++) {
+            if (i > 0) {
+                writer.writeMarker(JpegTables.RST0 + ((firstMcus[i] / frame.restartInterval - 1) & 7));
+            }
+            writer.out.write(pieces[i].buffer(), 0, pieces[i].length());
+        }
+        writer.writeMarker(JpegTables.EOI);
+        return writer.out.toByteArray();
+    }
+
+    /**
+     * Encode a frame as a progressive JPEG
+     *
+     * Every scan gets its own optimal Huffman tables, written in front of its SOS header.
+     * Scans only read the coefficients, so they are entropy-coded concurrently when
+     * parallelism is above 1.
+     *
+     * @param frame       Frame with coefficient planes and quantization tables
+     * @param scans       Scans to write, in order
+     * @param parallelism Number of scans coded concurrently
+     * @return Complete JPEG file
+     */
+    static byte[] writeProgressive(JpegFrame frame, List<ScanScript.Scan> scans, int parallelism) {
+        int count = scans.size();
+        BitWriter[] data = new BitWriter[count];
+        HuffmanTable[][] dcTables = new HuffmanTable[count][];
+        HuffmanTable[] acTables = new HuffmanTable[count];
+        int pieceSize = estimateSize(frame) / count;
+        IntStream indexes = IntStream.range(0, count);
+        (parallelism > 1 ? indexes.parallel() : indexes).forEach(i -> {
+            ScanScript.Scan scan = scans.get(i);
+            ProgressiveScanEncoder encoder = new ProgressiveScanEncoder(frame, scanComponents(frame, scan),
+                    scanDcSlots(scan), scan.ss, scan.se, scan.ah, scan.al);
+            if (encoder.usesHuffmanTables()) {
+                long[][] dcFreq = new long[2][256];
+                long[] acFreq = new long[256];
+                encoder.gather(dcFreq, acFreq);
+                if (scan.ss == 0) {
+                    dcTables[i] = new HuffmanTable[2];
+                    for (int slot = 0; slot < 2; slot++) {
+                        if (hasSymbols(dcFreq[slot])) {
+                            dcTables[i][slot] = HuffmanTable.optimal(dcFreq[slot]);
+                        }
+                    }
+                } else {
+                    acTables[i] = HuffmanTable.optimal(acFreq);
+                }
+            }
+            BitWriter bits = new BitWriter(pieceSize);
+            encoder.encode(bits, dcTables[i], acTables[i]);
+            bits.alignToByte();
+            data[i] = bits;
+        });
+
+        int size = 2048;
+        for (BitWriter piece : data) {
+            size += piece.length() + 1024;
+        }
+        JpegWriter writer = new JpegWriter(size);
+        writer.writeHeaders(frame, new HuffmanTable[0], new HuffmanTable[0], true);
+        for (int i = 0; i < count; i++) {
+            ScanScript.Scan scan = scans.get(i);
+            if (dcTables[i] != null) {
+                for (int slot = 0; slot < 2; slot++) {
+                    if (dcTables[i][slot] != null) {
+                        writer.writeHuffmanTable(0, slot, dcTables[i][slot]);
+                    }
+                }
+            }
+            if (acTables[i] != null) {
+                writer.writeHuffmanTable(1, 0, acTables[i]);
+            }
+            writer.writeScanHeader(scanComponents(frame, scan), scanDcSlots(scan), new int[scan.components.length],
+                    scan.ss, scan.se, scan.ah, scan.al);
+            writer.out.write(data[i].buffer(), 0, data[i].length());
+        }
+        writer.writeMarker(JpegTables.EOI);
+        return writer.out.toByteArray();
+    }
+
+    private static JpegComponent[] scanComponents(JpegFrame frame, ScanScript.Scan scan) {
+        JpegComponent[] components = new JpegComponent[scan.components.length];
+        for (int i = 0; i < components.length; i++) {
+            components[i] = frame.components[scan.components[i]];
+        }
+        return components;
+    }
+
+    /**
+     * DC table slot per scan component: luma uses slot 0, chroma slot 1
+     */
+    private static int[] scanDcSlots(ScanScript.Scan scan) {
+        int[] slots = new int[scan.components.length];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = scan.components[i] == 0 ? 0 : 1;
+        }
+        return slots;
+    }
+
+    private static boolean hasSymbols(long[] freq) {
+        for (long f : freq) {
+            if (f != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compute optimal DC/AC tables for a single sequential scan over the whole frame
+     *
+     * @return Two-element array: DC tables and AC tables, indexed by slot
+     */
+    static HuffmanTable[][] optimalSequentialTables(JpegFrame frame) {
+        JpegComponent[] components = frame.components;
+        int[] tableOf = tableSlots(components.length);
+        int slots = components.length > 1 ? 2 : 1;
+        long[][] dcFreq = new long[slots][256];
+        long[][] acFreq = new long[slots][256];
+        SequentialScanEncoder encoder = new SequentialScanEncoder(frame, components, tableOf, tableOf,
+                frame.restartInterval);
+        encoder.gather(dcFreq, acFreq, 0, encoder.totalMcus());
+        HuffmanTable[] dc = new HuffmanTable[slots];
+        HuffmanTable[] ac = new HuffmanTable[slots];
+        for (int i = 0; i < slots; i++) {
+            dc[i] = HuffmanTable.optimal(dcFreq[i]);
+            ac[i] = HuffmanTable.optimal(acFreq[i]);
+        }
+        return new HuffmanTable[][]{dc, ac};
+    }
+
+    /**
+     * Table slot per component: luma uses slot 0, all chroma components share slot 1
+     */
+    static int[] tableSlots(int componentCount) {
+        int[] slots = new int[componentCount];
+        for (int i = 1; i < componentCount; i++) {
+            slots[i] = 1;
+        }
+        return slots;
+    }
+
+    static int estimateSize(JpegFrame frame) {
+        long blocks = 0;
+        for (JpegComponent c : frame.components) {
+            blocks += (long) c.blocksPerLine * c.blocksPerColumn;
+        }
+        return (int) Math.min(Integer.MAX_VALUE - 64, blocks * 16);
+    }
+
+    /**
+     * Write SOI, kept metadata, quantization tables, frame header, Huffman tables and DRI
+     */
+    void writeHeaders(JpegFrame frame, HuffmanTable[] dcTables, HuffmanTable[] acTables, boolean progressive) {
+        writeMarker(JpegTables.SOI);
+        for (byte[] segment : frame.metadataSegments) {
+            out.write(segment, 0, segment.length);
+        }
+        int[] quantSlots = writeQuantTables(frame.components);
+        writeFrameHeader(frame, quantSlots, progressive);
+        for (int i = 0; i < dcTables.length; i++) {
+            if (dcTables[i] != null) {
+                writeHuffmanTable(0, i, dcTables[i]);
+            }
+        }
+        for (int i = 0; i < acTables.length; i++) {
+            if (acTables[i] != null) {
+                writeHuffmanTable(1, i, acTables[i]);
+            }
+        }
+        if (frame.restartInterval > 0) {
+            writeMarker(JpegTables.DRI);
+            writeShort(4);
+            writeShort(frame.restartInterval);
+        }
+    }
+
+    /**
+     * Write one DQT segment holding every distinct table and return the slot of each component
+     */
+    private int[] writeQuantTables(JpegComponent[] components) {
+        List<int[]> tables = new ArrayList<>();
+        int[] slots = new int[components.length];
+        for (int i = 0; i < components.length; i++) {
+            int[] table = components[i].quantTable;
+            int slot = tables.indexOf(table);
+            if (slot < 0) {
+                slot = tables.size();
+                tables.add(table);
+            }
+            slots[i] = slot;
+        }
+        int length = 2;
+        for (int[] table : tables) {
+            length += 1 + (isEightBit(table) ? 64 : 128);
+        }
+        writeMarker(JpegTables.DQT);
+        writeShort(length);
+        for (int slot = 0; slot < tables.size(); slot++) {
+            int[] table = tables.get(slot);
+            boolean eightBit = isEightBit(table);
+            out.write((eightBit ? 0 : 0x10) | slot);
+            for (int k = 0; k < 64; k++) {
+                int value = table[JpegTables.NATURAL_ORDER[k]];
+                if (eightBit) {
+                    out.write(value);
+                } else {
+                    writeShort(value);
+                }
+            }
+        }
+        return slots;
+    }
+
+    private static boolean isEightBit(int[] table) {
+        for (int value : table) {
+            if (value > 255) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeFrameHeader(JpegFrame frame, int[] quantSlots, boolean progressive) {
+        boolean extended = false;
+        for (JpegComponent c : frame.components) {
+            extended |= !isEightBit(c.quantTable);
+        }
+        int marker = progressive ? JpegTables.SOF2 : extended ? JpegTables.SOF1 : JpegTables.SOF0;
+        writeMarker(marker);
+        writeShort(8 + 3 * frame.components.length);
+        out.write(8);
+        writeShort(frame.height);
+        writeShort(frame.width);
+        out.write(frame.components.length);
+        for (int i = 0; i < frame.components.length; i++) {
+            JpegComponent c = frame.components[i];
+            out.write(c.id);
+            out.write((c.h << 4) | c.v);
+            out.write(quantSlots[i]);
+        }
+    }
+
+    void writeHuffmanTable(int tableClass, int slot, HuffmanTable table) {
+        writeMarker(JpegTables.DHT);
+        writeShort(2 + table.segmentLength());
+        out.write((tableClass << 4) | slot);
+        for (int i = 1; i <= 16; i++) {
+            out.write(table.bits[i]);
+        }
+        for (int value : table.values) {
+            out.write(value);
+        }
+    }
+
+    void writeScanHeader(JpegComponent[] components, int[] dcTableOf, int[] acTableOf, int ss, int se, int ah, int al) {
+        writeMarker(JpegTables.SOS);
+        writeShort(6 + 2 * components.length);
+        out.write(components.length);
+        for (int i = 0; i < components.length; i++) {
+            out.write(components[i].id);
+            out.write((dcTableOf[i] << 4) | acTableOf[i]);
+        }
+        out.write(ss);
+        out.write(se);
+        out.write((ah << 4) | al);
+    }
+
+    void writeMarker(int marker) {
+        out.write(0xFF);
+        out.write(marker);
+    }
+
+    private void writeShort(int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+}
@@ -0,0 +1,270 @@
+package cn.lihongjie.image.jpeg;
+
+/**
+ * Huffman entropy coder for one scan of a progressive JPEG
+ *
+ * Covers the four progressive scan kinds of ITU T.81 G.1.2: DC first and refinement
+ * scans (interleaved or not) and AC first and refinement scans (single component),
+ * including end-of-band runs and the correction bits of refinement scans, following
+ * the IJG jcphuff.c coder. The same pass is run twice: once to gather symbol counts for
+ * the scan's optimal tables, once to write the bits.
+ *
+ * An instance covers one scan and is not thread-safe; different scans of the same
+ * frame can be coded concurrently.
+ */
+final class ProgressiveScanEncoder {
+
+    /** Correction bits buffered for one end-of-band run before the run is flushed */
+    private static final int MAX_CORRECTION_BITS = 1000;
+
+    private final JpegFrame frame;
+    private final JpegComponent[] components;
+    private final int[] dcTableOf;
+    private final int ss;
+    private final int se;
+    private final int ah;
+    private final int al;
+
+    private BitWriter writer;
+    private long[][] dcFreq;
+    private long[] acFreq;
+    private HuffmanTable[] dcTables;
+    private HuffmanTable acTable;
+
+    private int eobRun;
+    /** Correction bits owed by the pending end-of-band run, then those of the current block */
+    private final byte[] correctionBits = new byte[MAX_CORRECTION_BITS];
+    private int pendingBits;
+    private final int[] absValues = new int[64];
+
+    /**
+     * @param frame      Frame holding the coefficients
+     * @param components Components of the scan, in scan order
+     * @param dcTableOf  DC table slot used by each scan component (DC first scans only)
+     */
+    ProgressiveScanEncoder(JpegFrame frame, JpegComponent[] components, int[] dcTableOf,
+                           int ss, int se, int ah, int al) {
+        this.frame = frame;
+        this.components = components;
+        this.dcTableOf = dcTableOf;
+        this.ss = ss;
+        this.se = se;
+        this.ah = ah;
+        this.al = al;
+    }
+
+    /**
+     * Whether the scan codes Huffman symbols at all (DC refinement scans write raw bits only)
+     */
+    boolean usesHuffmanTables() {
+        return ss != 0 || ah == 0;
+    }
+
+    /**
+     * Count the symbols of the scan; DC first scans count into {@code dcFreq[slot]}, AC scans into {@code acFreq}
+     */
+    void gather(long[][] dcFreq, long[] acFreq) {
+        this.writer = null;
+        this.dcFreq = dcFreq;
+        this.acFreq = acFreq;
+        run();
+    }
+
+    /**
+     * Write the scan's entropy-coded data (not byte-aligned)
+     */
+    void encode(BitWriter writer, HuffmanTable[] dcTables, HuffmanTable acTable) {
+        this.writer = writer;
+        this.dcTables = dcTables;
+        this.acTable = acTable;
+        run();
+    }
+
+    private void run() {
+        eobRun = 0;
+        pendingBits = 0;
+        int[] pred = new int[components.length];
+        if (components.length == 1) {
+            JpegComponent c = components[0];
+            int across = c.visibleBlocksPerLine();
+            int down = c.visibleBlocksPerColumn();
+            for (int by = 0; by < down; by++) {
+                for (int bx = 0; bx < across; bx++) {
+                    block(c.coefficients, (by * c.blocksPerLine + bx) * 64, 0, pred);
+                }
+            }
+        } else {
+            for (int my = 0; my < frame.mcusY; my++) {
+                for (int mx = 0; mx < frame.mcusX; mx++) {
+                    for (int ci = 0; ci < components.length; ci++) {
+                        JpegComponent c = components[ci];
+                        for (int y = 0; y < c.v; y++) {
+                            int row = (my * c.v + y) * c.blocksPerLine + mx * c.h;
+                            for (int x = 0; x < c.h; x++) {
+                                block(c.coefficients, (row + x) * 64, ci, pred);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        emitEobRun();
+    }
+
+    private void block(short[] coef, int off, int ci, int[] pred) {
+        if (ss == 0) {
+            if (ah == 0) {
+                // Point transform of DC is an arithmetic shift
+                int value = coef[off] >> al;
+                int diff = value - pred[ci];
+                pred[ci] = value;
+                int size = JpegTables.category(Math.abs(diff));
+                emitDcSymbol(dcTableOf[ci], size);
+                if (size != 0) {
+                    emitBits(diff < 0 ? diff - 1 : diff, size);
+                }
+            } else {
+                emitBits((coef[off] >> al) & 1, 1);
+            }
+        } else if (ah == 0) {
+            acFirst(coef, off);
+        } else {
+            acRefine(coef, off);
+        }
+    }
+
+    private void acFirst(short[] coef, int off) {
+        int run = 0;
+        for (int k = ss; k <= se; k++) {
+            int value = coef[off + JpegTables.NATURAL_ORDER[k]];
+            int magnitude;
+            int bits;
+            // Point transform of AC divides the magnitude, rounding towards zero
+            if (value < 0) {
+                magnitude = -value >> al;
+                bits = ~magnitude;
+            } else {
+                magnitude = value >> al;
+                bits = magnitude;
+            }
+            if (magnitude == 0) {
+                run++;
+                continue;
+            }
+            emitEobRun();
+            while (run > 15) {
+                emitAcSymbol(0xF0);
+                run -= 16;
+            }
+            int size = JpegTables.category(magnitude);
+            emitAcSymbol((run << 4) + size);
+            emitBits(bits, size);
+            run = 0;
+        }
+        if (run > 0) {
+            eobRun++;
+            if (eobRun == 0x7FFF) {
+                emitEobRun();
+            }
+        }
+    }
+
+    private void acRefine(short[] coef, int off) {
+        int[] abs = absValues;
+        int eob = 0;
+        for (int k = ss; k <= se; k++) {
+            int magnitude = Math.abs(coef[off + JpegTables.NATURAL_ORDER[k]]) >> al;
+            abs[k] = magnitude;
+            if (magnitude == 1) {
+                eob = k;
+            }
+        }
+
+        int run = 0;
+        // Correction bits of this block are buffered at [blockBits, blockBits + count)
+        int blockBits = pendingBits;
+        int count = 0;
+        for (int k = ss; k <= se; k++) {
+            int magnitude = abs[k];
+            if (magnitude == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15 && k <= eob) {
+                emitEobRun();
+                emitAcSymbol(0xF0);
+                run -= 16;
+                emitCorrectionBits(blockBits, count);
+                blockBits = 0;
+                count = 0;
+            }
+            if (magnitude > 1) {
+                // Already nonzero in an earlier scan: one correction bit, coded later
+                correctionBits[blockBits + count++] = (byte) (magnitude & 1);
+                continue;
+            }
+            emitEobRun();
+            emitAcSymbol((run << 4) + 1);
+            emitBits(coef[off + JpegTables.NATURAL_ORDER[k]] < 0 ? 0 : 1, 1);
+            emitCorrectionBits(blockBits, count);
+            blockBits = 0;
+            count = 0;
+            run = 0;
+        }
+        if (run > 0 || count > 0) {
+            eobRun++;
+            pendingBits = blockBits + count;
+            if (eobRun == 0x7FFF || pendingBits > MAX_CORRECTION_BITS - 64 + 1) {
+                emitEobRun();
+            }
+        }
+    }
+
+    /**
+     * Code the pending end-of-band run, followed by the correction bits it owes
+     */
+    private void emitEobRun() {
+        if (eobRun == 0) {
+            return;
+        }
+        int size = 31 - Integer.numberOfLeadingZeros(eobRun);
+        emitAcSymbol(size << 4);
+        if (size != 0) {
+            emitBits(eobRun, size);
+        }
+        eobRun = 0;
+        emitCorrectionBits(0, pendingBits);
+        pendingBits = 0;
+    }
+
+    private void emitCorrectionBits(int start, int count) {
+        if (writer != null) {
+            for (int i = start; i < start + count; i++) {
+                writer.write(correctionBits[i], 1);
+            }
+        }
+    }
+
+    private void emitDcSymbol(int slot, int symbol) {
+        if (writer == null) {
+            dcFreq[slot][symbol]++;
+        } else {
+            HuffmanTable table = dcTables[slot];
+            writer.write(table.codes[symbol], table.sizes[symbol]);
+        }
+    }
+
+    private void emitAcSymbol(int symbol) {
+        if (writer == null) {
+            acFreq[symbol]++;
+        } else {
+            writer.write(acTable.codes[symbol], acTable.sizes[symbol]);
+        }
+    }
+
+    private void emitBits(int value, int size) {
+        if (writer != null) {
+            writer.write(value, size);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package cn.lihongjie.image.jpeg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ordered list of scans making up a progressive JPEG
+ *
+ * Each scan names the components it codes (0 = Y, 1 = Cb, 2 = Cr), the spectral band
+ * Ss-Se of zigzag coefficients and the successive approximation bit positions Ah and
+ * Al, exactly as in its SOS header. Scripts use the text syntax of jpegtran's
+ * {@code -scans} files: one {@code components: Ss-Se, Ah, Al;} entry per scan, with
+ * {@code #} starting a comment.
+ *
+ * A script is checked when it is created: DC and AC coefficients never share a scan, AC
+ * scans code a single component after its first DC scan, each refinement scan lowers
+ * the precision of the previous one by exactly one bit, and every coefficient of every
+ * component up to the highest one named ends at full precision. Gray images use only the
+ * luma part of a script, so the color scripts below also work for them.
+ *
+ * Usage:
+ * <pre>
+ * ScanScript script = ScanScript.parse(
+ *         "0,1,2: 0-0, 0, 0;\n" +
+ *         "0: 1-9, 0, 0;\n" +
+ *         "1: 1-63, 0, 0;\n" +
+ *         "2: 1-63, 0, 0;\n" +
+ *         "0: 10-63, 0, 0;");
+ * byte[] jpeg = new JpegEncoder(80).withScanScript(script).encode(pixelImage);
+ * </pre>
+ */
+public final class ScanScript {
+
+    /**
+     * One progressive scan
+     */
+    static final class Scan {
+        /** Frame component indexes, in scan order */
+        final int[] components;
+        final int ss;
+        final int se;
+        final int ah;
+        final int al;
+
+        Scan(int[] components, int ss, int se, int ah, int al) {
+            this.components = components;
+            this.ss = ss;
+            this.se = se;
+            this.ah = ah;
+            this.al = al;
+        }
+    }
+
+    /** Components an encoder frame can have: Y, Cb, Cr */
+    private static final int MAX_COMPONENTS = 3;
+
+    private static final Pattern SCAN = Pattern.compile(
+            "([0-9][0-9,\\s]*):\\s*(\\d+)\\s*-\\s*(\\d+)\\s*,\\s*(\\d+)\\s*,\\s*(\\d+)");
+
+    /**
+     * The IJG {@code jpeg_simple_progression} script: DC at half precision, a
+     * low-frequency luma band, the chroma planes and the rest of luma at reduced
+     * precision, then the refinement scans (10 scans for color, 6 for gray)
+     */
+    public static final ScanScript SIMPLE = parse(
+            "0,1,2: 0-0, 0, 1;\n"
+            + "0: 1-5, 0, 2;\n"
+            + "2: 1-63, 0, 1;\n"
+            + "1: 1-63, 0, 1;\n"
+            + "0: 6-63, 0, 2;\n"
+            + "0: 1-63, 2, 1;\n"
+            + "0,1,2: 0-0, 1, 0;\n"
+            + "2: 1-63, 1, 0;\n"
+            + "1: 1-63, 1, 0;\n"
+            + "0: 1-63, 1, 0;");
+
+    /**
+     * Spectral selection only, without successive approximation: DC, a low-frequency
+     * luma band, the chroma planes, then the rest of luma (5 scans for color, 3 for gray).
+     * Cheaper to encode than {@link #SIMPLE}, with a coarser first preview.
+     */
+    public static final ScanScript SPECTRAL = parse(
+            "0,1,2: 0-0, 0, 0;\n"
+            + "0: 1-5, 0, 0;\n"
+            + "1: 1-63, 0, 0;\n"
+            + "2: 1-63, 0, 0;\n"
+            + "0: 6-63, 0, 0;");
+
+    private final List<Scan> scans;
+    private final int componentCount;
+
+    private ScanScript(List<Scan> scans) {
+        this.scans = Collections.unmodifiableList(scans);
+        this.componentCount = validate(scans);
+    }
+
+    /**
+     * Parse a script in jpegtran {@code -scans} syntax
+     *
+     * @param script Scans of the form {@code components: Ss-Se, Ah, Al;}, for example {@code "0,1,2: 0-0, 0, 1;"}
+     * @return Validated script
+     * @throws IllegalArgumentException if the text is malformed or does not describe a complete,
+     *         valid progression
+     */
+    public static ScanScript parse(String script) {
+        if (script == null) {
+            throw new IllegalArgumentException("Scan script must not be null");
+        }
+        List<Scan> scans = new ArrayList<>();
+        String text = script.replaceAll("#[^\\n]*", "");
+        for (String entry : text.split(";")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            Matcher m = SCAN.matcher(entry);
+            if (!m.matches()) {
+                throw new IllegalArgumentException("Malformed scan, expected 'components: Ss-Se, Ah, Al': " + entry);
+            }
+            String[] names = m.group(1).trim().split("[,\\s]+");
+            int[] components = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                components[i] = Integer.parseInt(names[i]);
+            }
+            scans.add(new Scan(components, Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)),
+                    Integer.parseInt(m.group(4)), Integer.parseInt(m.group(5))));
+        }
+        return new ScanScript(scans);
+    }
+
+    public int getScanCount() {
+        return scans.size();
+    }
+
+    /**
+     * Get the number of components the script covers
+     *
+     * @return 1 for a luma-only script, 3 for a color script
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * Get the scans to write for a frame with the given number of components
+     *
+     * @throws IllegalArgumentException if a color frame is given a luma-only script
+     */
+    List<Scan> scansFor(int frameComponents) {
+        if (frameComponents > componentCount) {
+            throw new IllegalArgumentException("Scan script covers " + componentCount
+                    + " component(s), image has " + frameComponents);
+        }
+        if (frameComponents == componentCount) {
+            return scans;
+        }
+        List<Scan> luma = new ArrayList<>();
+        for (Scan scan : scans) {
+            if (scan.components[0] == 0) {
+                luma.add(scan.components.length == 1 ? scan : new Scan(new int[]{0}, scan.ss, scan.se, scan.ah, scan.al));
+            }
+        }
+        return luma;
+    }
+
+    /**
+     * Check the structure and progression of every scan
+     *
+     * @return Number of components covered
+     */
+    private static int validate(List<Scan> scans) {
+        if (scans.isEmpty()) {
+            throw new IllegalArgumentException("Scan script has no scans");
+        }
+        // Successive approximation bit position reached by each coefficient, -1 while not yet coded
+        int[][] bitPosition = new int[MAX_COMPONENTS][64];
+        for (int[] positions : bitPosition) {
+            Arrays.fill(positions, -1);
+        }
+        int componentCount = 0;
+        for (Scan scan : scans) {
+            String where = "Scan " + describe(scan) + ": ";
+            if (scan.components.length == 0) {
+                throw new IllegalArgumentException(where + "no components");
+            }
+            for (int i = 0; i < scan.components.length; i++) {
+                int c = scan.components[i];
+                if (c < 0 || c >= MAX_COMPONENTS) {
+                    throw new IllegalArgumentException(where + "component must be 0 (Y), 1 (Cb) or 2 (Cr)");
+                }
+                if (i > 0 && c <= scan.components[i - 1]) {
+                    throw new IllegalArgumentException(where + "components must be listed in increasing order");
+                }
+                componentCount = Math.max(componentCount, c + 1);
+            }
+            if (scan.ss > scan.se || scan.se > 63) {
+                throw new IllegalArgumentException(where + "spectral band must satisfy 0 <= Ss <= Se <= 63");
+            }
+            if (scan.ss == 0 && scan.se != 0) {
+                throw new IllegalArgumentException(where + "DC and AC coefficients cannot share a scan");
+            }
+            if (scan.ss > 0 && scan.components.length != 1) {
+                throw new IllegalArgumentException(where + "AC scans must have exactly one component");
+            }
+            if (scan.ah > 13 || scan.al > 13 || scan.ah != 0 && scan.al != scan.ah - 1) {
+                throw new IllegalArgumentException(where + "refinement scans must have Al = Ah - 1 (Ah, Al <= 13)");
+            }
+            for (int c : scan.components) {
+                int[] positions = bitPosition[c];
+                if (scan.ss > 0 && positions[0] < 0) {
+                    throw new IllegalArgumentException(where + "AC scan before the first DC scan of component " + c);
+                }
+                for (int k = scan.ss; k <= scan.se; k++) {
+                    int expected = positions[k] < 0 ? 0 : positions[k];
+                    if (positions[k] == 0 || scan.ah != expected) {
+                        throw new IllegalArgumentException(where + "coefficient " + k + " of component " + c
+                                + (positions[k] < 0 ? " must be coded with Ah = 0 first"
+                                : positions[k] == 0 ? " is already at full precision"
+                                : " needs Ah = " + positions[k]));
+                    }
+                    positions[k] = scan.al;
+                }
+            }
+        }
+        for (int c = 0; c < componentCount; c++) {
+            for (int k = 0; k < 64; k++) {
+                if (bitPosition[c][k] != 0) {
+                    throw new IllegalArgumentException("Scan script leaves coefficient " + k + " of component " + c
+                            + (bitPosition[c][k] < 0 ? " uncoded" : " without its last " + bitPosition[c][k]
+                            + " bit(s)"));
+                }
+            }
+        }
+        return componentCount;
+    }
+
+    private static String describe(Scan scan) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < scan.components.length; i++) {
+            sb.append(i > 0 ? "," : "").append(scan.components[i]);
+        }
+        return sb.append(": ").append(scan.ss).append('-').append(scan.se).append(", ")
+                .append(scan.ah).append(", ").append(scan.al).toString();
+    }
+
+    /**
+     * Get the script in the syntax accepted by {@link #parse}, one scan per line
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Scan scan : scans) {
+            sb.append(describe(scan)).append(";\n");
+        }
+        return sb.toString();
+    }
+}
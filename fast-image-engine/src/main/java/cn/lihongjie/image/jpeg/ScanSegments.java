@@ -0,0 +1,65 @@
+package cn.lihongjie.image.jpeg;
+
+import java.util.Arrays;
+
+/**
+ * Byte ranges of the restart segments that make up one entropy-coded scan
+ */
+final class ScanSegments {
+
+    int count;
+    int[] starts = new int[8];
+    int[] ends = new int[8];
+    /** Offset of the marker that terminates the scan (or the data length) */
+    int end;
+
+    private ScanSegments() {
+    }
+
+    /**
+     * Locate the end of the scan starting at {@code start}, splitting at RSTn markers
+     * when {@code splitAtRestarts} is set
+     */
+    static ScanSegments split(byte[] data, int start, boolean splitAtRestarts) {
+        ScanSegments segments = new ScanSegments();
+        int segmentStart = start;
+        int p = start;
+        int length = data.length;
+        while (p < length - 1) {
+            if (data[p] != (byte) 0xFF) {
+                p++;
+                continue;
+            }
+            int next = data[p + 1] & 0xFF;
+            if (next == 0x00) {
+                p += 2;
+            } else if (next == 0xFF) {
+                p++;
+            } else if (next >= JpegTables.RST0 && next <= JpegTables.RST0 + 7) {
+                if (splitAtRestarts) {
+                    segments.add(segmentStart, p);
+                    segmentStart = p + 2;
+                }
+                p += 2;
+            } else {
+                break;
+            }
+        }
+        if (p >= length - 1) {
+            p = length;
+        }
+        segments.add(segmentStart, p);
+        segments.end = p;
+        return segments;
+    }
+
+    private void add(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+}
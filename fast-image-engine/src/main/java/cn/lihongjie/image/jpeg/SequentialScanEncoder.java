@@ -0,0 +1,167 @@
+package cn.lihongjie.image.jpeg;
+
+import java.util.Arrays;
+
+/**
+ * Huffman entropy coder for a sequential (baseline or extended) scan
+ *
+ * Works on any range of MCUs so that a scan can be gathered or encoded in
+ * independent pieces. DC predictors are reset at every restart boundary, which
+ * makes each restart interval self-contained.
+ */
+final class SequentialScanEncoder {
+
+    private final JpegComponent[] components;
+    private final int[] dcTableOf;
+    private final int[] acTableOf;
+    private final int mcusX;
+    private final int totalMcus;
+    private final int restartInterval;
+
+    /**
+     * @param frame           Frame holding the coefficients
+     * @param components      Components of the scan, in scan order
+     * @param dcTableOf       DC table index used by each scan component
+     * @param acTableOf       AC table index used by each scan component
+     * @param restartInterval Restart interval in MCUs, 0 for none
+     */
+    SequentialScanEncoder(JpegFrame frame, JpegComponent[] components, int[] dcTableOf, int[] acTableOf,
+                          int restartInterval) {
+        this.components = components;
+        this.dcTableOf = dcTableOf;
+        this.acTableOf = acTableOf;
+        this.restartInterval = restartInterval;
+        if (components.length == 1) {
+            mcusX = components[0].visibleBlocksPerLine();
+            totalMcus = mcusX * components[0].visibleBlocksPerColumn();
+        } else {
+            mcusX = frame.mcusX;
+            totalMcus = frame.mcusX * frame.mcusY;
+        }
+    }
+
+    int totalMcus() {
+        return totalMcus;
+    }
+
+    int mcusPerLine() {
+        return mcusX;
+    }
+
+    /**
+     * Count DC and AC symbols of the MCUs in [firstMcu, firstMcu + count)
+     */
+    void gather(long[][] dcFreq, long[][] acFreq, int firstMcu, int count) {
+        int[] pred = new int[components.length];
+        for (int m = firstMcu; m < firstMcu + count; m++) {
+            if (restartInterval > 0 && m % restartInterval == 0) {
+                Arrays.fill(pred, 0);
+            }
+            int mx = m % mcusX;
+            int my = m / mcusX;
+            for (int ci = 0; ci < components.length; ci++) {
+                JpegComponent c = components[ci];
+                long[] dc = dcFreq[dcTableOf[ci]];
+                long[] ac = acFreq[acTableOf[ci]];
+                if (components.length == 1) {
+                    pred[ci] = gatherBlock(c.coefficients, (my * c.blocksPerLine + mx) * 64, pred[ci], dc, ac);
+                    continue;
+                }
+                for (int y = 0; y < c.v; y++) {
+                    int row = (my * c.v + y) * c.blocksPerLine + mx * c.h;
+                    for (int x = 0; x < c.h; x++) {
+                        pred[ci] = gatherBlock(c.coefficients, (row + x) * 64, pred[ci], dc, ac);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Encode the MCUs in [firstMcu, firstMcu + count), emitting restart markers at
+     * interval boundaries inside the range (but not before its first MCU)
+     */
+    void encode(BitWriter writer, HuffmanTable[] dcTables, HuffmanTable[] acTables, int firstMcu, int count) {
+        int[] pred = new int[components.length];
+        for (int m = firstMcu; m < firstMcu + count; m++) {
+            if (restartInterval > 0 && m % restartInterval == 0) {
+                if (m != firstMcu) {
+                    writer.writeRestart(m / restartInterval - 1);
+                }
+                Arrays.fill(pred, 0);
+            }
+            int mx = m % mcusX;
+            int my = m / mcusX;
+            for (int ci = 0; ci < components.length; ci++) {
+                JpegComponent c = components[ci];
+                HuffmanTable dc = dcTables[dcTableOf[ci]];
+                HuffmanTable ac = acTables[acTableOf[ci]];
+                if (components.length == 1) {
+                    pred[ci] = encodeBlock(writer, c.coefficients, (my * c.blocksPerLine + mx) * 64, pred[ci], dc, ac);
+                    continue;
+                }
+                for (int y = 0; y < c.v; y++) {
+                    int row = (my * c.v + y) * c.blocksPerLine + mx * c.h;
+                    for (int x = 0; x < c.h; x++) {
+                        pred[ci] = encodeBlock(writer, c.coefficients, (row + x) * 64, pred[ci], dc, ac);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int gatherBlock(short[] coef, int off, int pred, long[] dc, long[] ac) {
+        int diff = coef[off] - pred;
+        dc[JpegTables.category(Math.abs(diff))]++;
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            int value = coef[off + JpegTables.NATURAL_ORDER[k]];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                ac[0xF0]++;
+                run -= 16;
+            }
+            ac[(run << 4) + JpegTables.category(Math.abs(value))]++;
+            run = 0;
+        }
+        if (run > 0) {
+            ac[0]++;
+        }
+        return coef[off];
+    }
+
+    private static int encodeBlock(BitWriter writer, short[] coef, int off, int pred, HuffmanTable dc, HuffmanTable ac) {
+        int diff = coef[off] - pred;
+        int magnitude = diff < 0 ? -diff : diff;
+        int size = JpegTables.category(magnitude);
+        writer.write(dc.codes[size], dc.sizes[size]);
+        if (size != 0) {
+            writer.write(diff < 0 ? diff - 1 : diff, size);
+        }
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            int value = coef[off + JpegTables.NATURAL_ORDER[k]];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                writer.write(ac.codes[0xF0], ac.sizes[0xF0]);
+                run -= 16;
+            }
+            magnitude = value < 0 ? -value : value;
+            size = JpegTables.category(magnitude);
+            int symbol = (run << 4) + size;
+            writer.write(ac.codes[symbol], ac.sizes[symbol]);
+            writer.write(value < 0 ? value - 1 : value, size);
+            run = 0;
+        }
+        if (run > 0) {
+            writer.write(ac.codes[0], ac.sizes[0]);
+        }
+        return coef[off];
+    }
+}
@@ -0,0 +1,148 @@
+package cn.lihongjie.image.jpeg;
+
+/**
+ * Rate-distortion optimized quantization of AC coefficients (trellis quantization)
+ *
+ * Plain quantization rounds every coefficient to the nearest step. Trellis quantization
+ * instead picks, per 8x8 block, the coefficient values and end-of-block position that
+ * minimize {@code distortion + bits / lambda}: a coefficient may be lowered to the top of
+ * a smaller magnitude category, or zeroed to lengthen a zero run, when the bits saved
+ * outweigh the added error. Bits are counted with the standard Huffman tables of the
+ * component; distortion is the squared error in quantizer steps, so the trade-off
+ * follows the quality-scaled quantization table.
+ *
+ * The search is a dynamic program over zigzag positions, following mozjpeg's
+ * {@code quantize_trellis}: for each position with a nonzero rounded value it tries
+ * the rounded value and the largest value of every smaller category, preceded by any
+ * earlier nonzero position, then chooses where to place the EOB. The per-block lambda
+ * is mozjpeg's default: it shrinks as the block's AC energy grows, so busy blocks,
+ * where errors are masked, are quantized more coarsely than smooth ones.
+ *
+ * DC coefficients keep plain rounding. An instance holds working storage and is not
+ * thread-safe; use one per {@link ForwardTransform}.
+ */
+final class TrellisQuantizer {
+
+    /** mozjpeg default lambda_log_scale1 and lambda_log_scale2: lambda = 2^s1 / (2^s2 + norm) */
+    private static final double LAMBDA_NUMERATOR = Math.pow(2, 14.75);
+    private static final double LAMBDA_OFFSET = Math.pow(2, 16.5);
+
+    private static final double UNREACHABLE = Double.MAX_VALUE;
+
+    /** Per component, natural order: multiplier turning fdct output into quantizer steps */
+    private final double[][] toSteps;
+    /** Per component, natural order: multiplier turning fdct output into 8x DCT units (mozjpeg's scale) */
+    private final double[] toDct = new double[64];
+    /** Per component: AC Huffman code length of each run/size symbol */
+    private final int[][] acBits;
+
+    private final double[] magnitude = new double[64];
+    private final double[] zeroDistortion = new double[64];
+    private final double[] cost = new double[64];
+    private final int[] runStart = new int[64];
+    private final int[] value = new int[64];
+    private final int[] nonzero = new int[64];
+
+    /**
+     * @param frame     Frame whose quantization tables are used
+     * @param aanScales AAN output scale factors of the forward DCT, scaled by 2^14
+     */
+    TrellisQuantizer(JpegFrame frame, int[] aanScales) {
+        JpegComponent[] components = frame.components;
+        toSteps = new double[components.length][64];
+        acBits = new int[components.length][];
+        for (int i = 0; i < 64; i++) {
+            toDct[i] = (1 << 14) / (double) aanScales[i];
+        }
+        for (int ci = 0; ci < components.length; ci++) {
+            int[] quant = components[ci].quantTable;
+            for (int i = 0; i < 64; i++) {
+                toSteps[ci][i] = toDct[i] / (8.0 * quant[i]);
+            }
+            acBits[ci] = (ci == 0 ? JpegTables.STD_AC_LUMINANCE : JpegTables.STD_AC_CHROMINANCE).sizes;
+        }
+    }
+
+    /**
+     * Re-quantize the AC coefficients of one block
+     *
+     * @param block Forward DCT output in natural order
+     * @param out   Coefficient plane holding the plainly rounded block, overwritten in place
+     * @param off   Offset of the block in {@code out}
+     * @param ci    Component index
+     */
+    void quantize(int[] block, short[] out, int off, int ci) {
+        double[] steps = toSteps[ci];
+        int[] bits = acBits[ci];
+        int[] order = JpegTables.NATURAL_ORDER;
+
+        double norm = 0;
+        for (int k = 1; k < 64; k++) {
+            double dct = block[order[k]] * toDct[order[k]];
+            norm += dct * dct;
+        }
+        // Squared error in steps is weighted by 64 * lambda: mozjpeg measures it in 8x DCT units over q^2
+        double weight = 64 * LAMBDA_NUMERATOR / (LAMBDA_OFFSET + norm / 63);
+
+        zeroDistortion[0] = 0;
+        for (int k = 1; k < 64; k++) {
+            int n = order[k];
+            double x = Math.abs(block[n]) * steps[n];
+            magnitude[k] = x;
+            zeroDistortion[k] = zeroDistortion[k - 1] + weight * x * x;
+        }
+
+        int zrlBits = bits[0xF0];
+        int count = 0;
+        cost[0] = 0;
+        nonzero[count++] = 0;
+        for (int k = 1; k < 64; k++) {
+            int rounded = Math.abs(out[off + order[k]]);
+            if (rounded == 0) {
+                cost[k] = UNREACHABLE;
+                continue;
+            }
+            double best = UNREACHABLE;
+            int size = JpegTables.category(rounded);
+            for (int s = 1; s <= size; s++) {
+                int candidate = s == size ? rounded : (1 << s) - 1;
+                double error = magnitude[k] - candidate;
+                // Distortion of this coefficient plus its magnitude bits
+                double own = weight * error * error + s;
+                for (int p = 0; p < count; p++) {
+                    int j = nonzero[p];
+                    int run = k - 1 - j;
+                    double total = cost[j] + zeroDistortion[k - 1] - zeroDistortion[j] + own
+                            + bits[((run & 15) << 4) | s] + (run >> 4) * zrlBits;
+                    if (total < best) {
+                        best = total;
+                        runStart[k] = j;
+                        value[k] = candidate;
+                    }
+                }
+            }
+            cost[k] = best;
+            nonzero[count++] = k;
+        }
+
+        // Choose the last nonzero position; everything after it is coded by one EOB
+        int last = 0;
+        double best = zeroDistortion[63] + bits[0];
+        for (int p = 1; p < count; p++) {
+            int k = nonzero[p];
+            double total = cost[k] + zeroDistortion[63] - zeroDistortion[k] + (k < 63 ? bits[0] : 0);
+            if (total < best) {
+                best = total;
+                last = k;
+            }
+        }
+
+        for (int k = 1; k < 64; k++) {
+            out[off + order[k]] = 0;
+        }
+        for (int k = last; k > 0; k = runStart[k]) {
+            int n = order[k];
+            out[off + n] = (short) (block[n] < 0 ? -value[k] : value[k]);
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package cn.lihongjie.image.png;
+
+import cn.lihongjie.image.PixelImage;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Pure-Java palette quantizer for lossy PNG
+ *
+ * Colors are first counted in a 5:5:5:3-bit RGBA histogram held in primitive arrays,
+ * which also keeps the exact sum of the colors falling into each bin. Median cut over
+ * the occupied bins picks the initial palette, a few weighted k-means passes over the
+ * same bins refine it, and every pixel is then mapped to its nearest palette entry.
+ * Floyd-Steinberg error diffusion is optional: it hides banding in smooth gradients but
+ * adds noise that deflates poorly, typically making the PNG 1.5-2x larger.
+ *
+ * With a parallelism level above 1 the histogram and the remapping run on horizontal
+ * stripes of the image on the common fork-join pool. Each stripe diffuses its own
+ * dithering error, so stripe borders may show a faint seam.
+ *
+ * Quantizers are immutable and can be shared between threads.
+ *
+ * Usage:
+ * <pre>
+ * IndexedImage indexed = ColorQuantizer.forQuality(60).withParallelism(4).quantize(pixelImage);
+ * byte[] png = new PngEncoder().encode(indexed);
+ * </pre>
+ */
+public final class ColorQuantizer {
+
+    /** Largest palette a PNG can hold */
+    public static final int MAX_COLORS = 256;
+
+    /** 5 bits each of red, green and blue plus 3 bits of alpha */
+    private static final int BINS = 1 << 18;
+
+    private static final int KMEANS_ITERATIONS = 2;
+
+    /** Histogram workers each hold ~9 MB of counters, so their number is capped */
+    private static final int MAX_HISTOGRAM_WORKERS = 8;
+
+    private final int maxColors;
+    private final boolean dithering;
+    private final int parallelism;
+
+    /**
+     * Create a single-threaded quantizer without dithering
+     *
+     * @param maxColors Palette size (2-256)
+     * @throws IllegalArgumentException if maxColors is not in range 2-256
+     */
+    public ColorQuantizer(int maxColors) {
+        this(maxColors, false, 1);
+    }
+
+    private ColorQuantizer(int maxColors, boolean dithering, int parallelism) {
+        if (maxColors < 2 || maxColors > MAX_COLORS) {
+            throw new IllegalArgumentException("Palette size must be between 2 and 256, got: " + maxColors);
+        }
+        this.maxColors = maxColors;
+        this.dithering = dithering;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Create a quantizer (without dithering) whose palette size follows the usual 0-100 quality scale
+     *
+     * Quality 0 gives 16 colors and quality 100 the full 256, linearly in between.
+     *
+     * @param quality Compression quality (0-100, where 0 is highest compression, 100 is best quality)
+     * @return Quantizer
+     * @throws IllegalArgumentException if quality is not in range 0-100
+     */
+    public static ColorQuantizer forQuality(int quality) {
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("Quality must be between 0 and 100, got: " + quality);
+        }
+        return new ColorQuantizer(16 + quality * 240 / 100);
+    }
+
+    /**
+     * Get a copy of this quantizer with Floyd-Steinberg dithering switched on or off
+     *
+     * @param dithering true to diffuse the quantization error to neighbouring pixels
+     * @return Quantizer with the new setting
+     */
+    public ColorQuantizer withDithering(boolean dithering) {
+        return new ColorQuantizer(maxColors, dithering, parallelism);
+    }
+
+    /**
+     * Get a copy of this quantizer that processes each image on up to the given number of threads
+     *
+     * @param parallelism Maximum number of threads, 1 for single-threaded quantization
+     * @return Quantizer with the new parallelism level
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public ColorQuantizer withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, got: " + parallelism);
+        }
+        return new ColorQuantizer(maxColors, dithering, parallelism);
+    }
+
+    public int getMaxColors() {
+        return maxColors;
+    }
+
+    public boolean isDithering() {
+        return dithering;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Reduce an image to a palette of at most {@link #getMaxColors()} colors
+     *
+     * @param image Gray, RGB or RGBA pixels
+     * @return Palette image, with translucent palette entries sorted first
+     */
+    public IndexedImage quantize(PixelImage image) {
+        int height = image.getHeight();
+
+        // 1. Histogram, one per worker, merged into the list of occupied bins
+        int workers = Math.min(Math.min(parallelism, MAX_HISTOGRAM_WORKERS), height);
+        int[][] counts = new int[workers][];
+        long[][] sums = new long[workers][];
+        forEachStripe(workers, height, (w, first, end) -> {
+            counts[w] = new int[BINS];
+            sums[w] = new long[BINS * 4];
+            histogram(image, first, end, counts[w], sums[w]);
+        });
+        int[] binCount = counts[0];
+        for (int w = 1; w < workers; w++) {
+            for (int bin = 0; bin < BINS; bin++) {
+                binCount[bin] += counts[w][bin];
+            }
+        }
+        int occupied = 0;
+        for (int bin = 0; bin < BINS; bin++) {
+            if (binCount[bin] != 0) {
+                occupied++;
+            }
+        }
+        Colors colors = new Colors(occupied);
+        int[] binOf = new int[occupied];
+        for (int bin = 0, i = 0; bin < BINS; bin++) {
+            int count = binCount[bin];
+            if (count == 0) {
+                continue;
+            }
+            long r = 0;
+            long g = 0;
+            long b = 0;
+            long a = 0;
+            for (int w = 0; w < workers; w++) {
+                r += sums[w][bin * 4];
+                g += sums[w][bin * 4 + 1];
+                b += sums[w][bin * 4 + 2];
+                a += sums[w][bin * 4 + 3];
+            }
+            colors.set(i, (int) ((r + count / 2) / count), (int) ((g + count / 2) / count),
+                    (int) ((b + count / 2) / count), (int) ((a + count / 2) / count), count);
+            binOf[i++] = bin;
+        }
+
+        // 2. Median cut, 3. k-means refinement
+        Colors palette = medianCut(colors);
+        int[] nearest = new int[occupied];
+        for (int iteration = 0; iteration <= KMEANS_ITERATIONS; iteration++) {
+            assign(colors, palette, nearest);
+            if (iteration < KMEANS_ITERATIONS) {
+                palette = recenter(colors, palette, nearest);
+            }
+        }
+
+        // Translucent entries first keeps the tRNS chunk short
+        Integer[] order = new Integer[palette.size];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Colors sorted = palette;
+        Arrays.sort(order, (x, y) -> Integer.compare(sorted.a[x], sorted.a[y]));
+        int[] rank = new int[palette.size];
+        int[] argb = new int[palette.size];
+        for (int k = 0; k < order.length; k++) {
+            int src = order[k];
+            rank[src] = k;
+            argb[k] = palette.a[src] << 24 | palette.r[src] << 16 | palette.g[src] << 8 | palette.b[src];
+        }
+        Colors finalPalette = new Colors(palette.size);
+        for (int k = 0; k < palette.size; k++) {
+            finalPalette.set(k, argb[k] >> 16 & 0xFF, argb[k] >> 8 & 0xFF, argb[k] & 0xFF, argb[k] >>> 24, 0);
+        }
+
+        // 4. Remap; occupied bins use the entry nearest their mean, others are filled in on demand
+        short[] cache = new short[BINS];
+        Arrays.fill(cache, (short) -1);
+        for (int i = 0; i < occupied; i++) {
+            cache[binOf[i]] = (short) rank[nearest[i]];
+        }
+        byte[] indices = new byte[image.getWidth() * height];
+        int bands = Math.min(parallelism, height);
+        forEachStripe(bands, height, (band, first, end) -> remap(image, first, end, finalPalette, cache, indices));
+        return new IndexedImage(image.getWidth(), height, indices, argb);
+    }
+
+    private interface StripeTask {
+        void run(int stripe, int firstRow, int endRow);
+    }
+
+    private static void forEachStripe(int stripes, int height, StripeTask task) {
+        if (stripes <= 1) {
+            task.run(0, 0, height);
+            return;
+        }
+        IntStream.range(0, stripes).parallel().forEach(s ->
+                task.run(s, height * s / stripes, height * (s + 1) / stripes));
+    }
+
+    private static int binOf(int r, int g, int b, int a) {
+        return (r >> 3) << 13 | (g >> 3) << 8 | (b >> 3) << 3 | a >> 5;
+    }
+
+    private static void histogram(PixelImage image, int firstRow, int endRow, int[] counts, long[] sums) {
+        byte[] pixels = image.getPixels();
+        int ch = image.getChannels();
+        int width = image.getWidth();
+        int g = ch >= 3 ? 1 : 0;
+        int b = ch >= 3 ? 2 : 0;
+        for (int p = firstRow * width * ch, end = endRow * width * ch; p < end; p += ch) {
+            int rv = pixels[p] & 0xFF;
+            int gv = pixels[p + g] & 0xFF;
+            int bv = pixels[p + b] & 0xFF;
+            int av = ch == 4 ? pixels[p + 3] & 0xFF : 255;
+            int bin = binOf(rv, gv, bv, av);
+            counts[bin]++;
+            sums[bin * 4] += rv;
+            sums[bin * 4 + 1] += gv;
+            sums[bin * 4 + 2] += bv;
+            sums[bin * 4 + 3] += av;
+        }
+    }
+
+    /**
+     * Split the color set into at most maxColors boxes, always cutting the box with the
+     * largest population times channel range at its weighted median
+     */
+    private Colors medianCut(Colors colors) {
+        int n = colors.size;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        int[] start = new int[maxColors];
+        int[] end = new int[maxColors];
+        long[] score = new long[maxColors];
+        int[] channel = new int[maxColors];
+        int boxes = 1;
+        start[0] = 0;
+        end[0] = n;
+        measure(colors, order, 0, n, score, channel, 0);
+        long[] keys = new long[n];
+        while (boxes < maxColors) {
+            int box = -1;
+            for (int k = 0; k < boxes; k++) {
+                if (end[k] - start[k] > 1 && (box < 0 || score[k] > score[box])) {
+                    box = k;
+                }
+            }
+            if (box < 0 || score[box] == 0) {
+                break;
+            }
+            int s = start[box];
+            int e = end[box];
+            int[] values = colors.channel(channel[box]);
+            for (int i = s; i < e; i++) {
+                keys[i] = (long) values[order[i]] << 32 | order[i];
+            }
+            Arrays.sort(keys, s, e);
+            long total = 0;
+            for (int i = s; i < e; i++) {
+                order[i] = (int) keys[i];
+                total += colors.weight[order[i]];
+            }
+            int split = s + 1;
+            long running = colors.weight[order[s]];
+            while (split < e - 1 && running * 2 < total) {
+                running += colors.weight[order[split++]];
+            }
+            start[boxes] = split;
+            end[boxes] = e;
+            end[box] = split;
+            measure(colors, order, s, split, score, channel, box);
+            measure(colors, order, split, e, score, channel, boxes);
+            boxes++;
+        }
+
+        Colors palette = new Colors(boxes);
+        for (int k = 0; k < boxes; k++) {
+            long r = 0;
+            long g = 0;
+            long b = 0;
+            long a = 0;
+            long weight = 0;
+            for (int i = start[k]; i < end[k]; i++) {
+                int c = order[i];
+                long w = colors.weight[c];
+                r += colors.r[c] * w;
+                g += colors.g[c] * w;
+                b += colors.b[c] * w;
+                a += colors.a[c] * w;
+                weight += w;
+            }
+            palette.set(k, (int) (r / weight), (int) (g / weight), (int) (b / weight), (int) (a / weight), 0);
+        }
+        return palette;
+    }
+
+    private static void measure(Colors colors, int[] order, int start, int end, long[] score, int[] channel, int box) {
+        int[] min = {255, 255, 255, 255};
+        int[] max = {0, 0, 0, 0};
+        long weight = 0;
+        for (int i = start; i < end; i++) {
+            int c = order[i];
+            for (int ch = 0; ch < 4; ch++) {
+                int v = colors.channel(ch)[c];
+                min[ch] = Math.min(min[ch], v);
+                max[ch] = Math.max(max[ch], v);
+            }
+            weight += colors.weight[c];
+        }
+        int best = 0;
+        int bestRange = -1;
+        for (int ch = 0; ch < 4; ch++) {
+            // Alpha errors are more visible than color errors, as in the distance metric
+            int range = (max[ch] - min[ch]) * (ch == 3 ? 2 : 1);
+            if (range > bestRange) {
+                bestRange = range;
+                best = ch;
+            }
+        }
+        score[box] = weight * bestRange;
+        channel[box] = best;
+    }
+
+    private void assign(Colors colors, Colors palette, int[] nearest) {
+        int n = colors.size;
+        int chunks = Math.min(parallelism, Math.max(1, n / 4096));
+        IntStream chunkIds = IntStream.range(0, chunks);
+        (chunks > 1 ? chunkIds.parallel() : chunkIds).forEach(c -> {
+            for (int i = n * c / chunks, end = n * (c + 1) / chunks; i < end; i++) {
+                nearest[i] = palette.nearest(colors.r[i], colors.g[i], colors.b[i], colors.a[i]);
+            }
+        });
+    }
+
+    private static Colors recenter(Colors colors, Colors palette, int[] nearest) {
+        long[] sums = new long[palette.size * 5];
+        for (int i = 0; i < colors.size; i++) {
+            int k = nearest[i] * 5;
+            long w = colors.weight[i];
+            sums[k] += colors.r[i] * w;
+            sums[k + 1] += colors.g[i] * w;
+            sums[k + 2] += colors.b[i] * w;
+            sums[k + 3] += colors.a[i] * w;
+            sums[k + 4] += w;
+        }
+        Colors next = new Colors(palette.size);
+        for (int k = 0; k < palette.size; k++) {
+            long w = sums[k * 5 + 4];
+            if (w == 0) {
+                next.set(k, palette.r[k], palette.g[k], palette.b[k], palette.a[k], 0);
+            } else {
+                next.set(k, (int) ((sums[k * 5] + w / 2) / w), (int) ((sums[k * 5 + 1] + w / 2) / w),
+                        (int) ((sums[k * 5 + 2] + w / 2) / w), (int) ((sums[k * 5 + 3] + w / 2) / w), 0);
+            }
+        }
+        return next;
+    }
+
+    private void remap(PixelImage image, int firstRow, int endRow, Colors palette, short[] cache, byte[] indices) {
+        byte[] pixels = image.getPixels();
+        int ch = image.getChannels();
+        int width = image.getWidth();
+        int g = ch >= 3 ? 1 : 0;
+        int b = ch >= 3 ? 2 : 0;
+        // Error rows in 1/16 units, one pixel of padding on both sides
+        int[] current = dithering ? new int[(width + 2) * 4] : null;
+        int[] next = dithering ? new int[(width + 2) * 4] : null;
+        for (int y = firstRow; y < endRow; y++) {
+            int p = y * width * ch;
+            int out = y * width;
+            for (int x = 0; x < width; x++, p += ch) {
+                int rv = pixels[p] & 0xFF;
+                int gv = pixels[p + g] & 0xFF;
+                int bv = pixels[p + b] & 0xFF;
+                int av = ch == 4 ? pixels[p + 3] & 0xFF : 255;
+                if (dithering) {
+                    int e = (x + 1) * 4;
+                    rv = clamp(rv + ((current[e] + 8) >> 4));
+                    gv = clamp(gv + ((current[e + 1] + 8) >> 4));
+                    bv = clamp(bv + ((current[e + 2] + 8) >> 4));
+                    av = clamp(av + ((current[e + 3] + 8) >> 4));
+                }
+                int bin = binOf(rv, gv, bv, av);
+                int index = cache[bin];
+                if (index < 0) {
+                    // Unoccupied bin reached through dithering: search from the bin center
+                    index = palette.nearest((rv & 0xF8) | 4, (gv & 0xF8) | 4, (bv & 0xF8) | 4, av);
+                    cache[bin] = (short) index;
+                }
+                indices[out + x] = (byte) index;
+                if (dithering) {
+                    diffuse(current, next, x, rv - palette.r[index], gv - palette.g[index],
+                            bv - palette.b[index], av - palette.a[index]);
+                }
+            }
+            if (dithering) {
+                int[] swap = current;
+                current = next;
+                next = swap;
+                Arrays.fill(next, 0);
+            }
+        }
+    }
+
+    private static void diffuse(int[] current, int[] next, int x, int dr, int dg, int db, int da) {
+        int e = (x + 1) * 4;
+        spread(current, next, e, dr);
+        spread(current, next, e + 1, dg);
+        spread(current, next, e + 2, db);
+        spread(current, next, e + 3, da);
+    }
+
+    /**
+     * Floyd-Steinberg weights: 7/16 right, 3/16 below left, 5/16 below, 1/16 below right
+     */
+    private static void spread(int[] current, int[] next, int e, int error) {
+        current[e + 4] += error * 7;
+        next[e - 4] += error * 3;
+        next[e] += error * 5;
+        next[e + 4] += error;
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : v > 255 ? 255 : v;
+    }
+
+    /**
+     * Structure-of-arrays color list with weights
+     */
+    private static final class Colors {
+
+        final int size;
+        final int[] r;
+        final int[] g;
+        final int[] b;
+        final int[] a;
+        final int[] weight;
+
+        Colors(int size) {
+            this.size = size;
+            r = new int[size];
+            g = new int[size];
+            b = new int[size];
+            a = new int[size];
+            weight = new int[size];
+        }
+
+        void set(int i, int rv, int gv, int bv, int av, int w) {
+            r[i] = rv;
+            g[i] = gv;
+            b[i] = bv;
+            a[i] = av;
+            weight[i] = w;
+        }
+
+        int[] channel(int c) {
+            return c == 0 ? r : c == 1 ? g : c == 2 ? b : a;
+        }
+
+        /**
+         * Index of the closest color, with alpha differences counted twice
+         */
+        int nearest(int rv, int gv, int bv, int av) {
+            int best = 0;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int k = 0; k < size; k++) {
+                int dr = r[k] - rv;
+                int dg = g[k] - gv;
+                int db = b[k] - bv;
+                int da = a[k] - av;
+                int distance = dr * dr + dg * dg + db * db + 2 * da * da;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = k;
+                }
+            }
+            return best;
+        }
+    }
+}
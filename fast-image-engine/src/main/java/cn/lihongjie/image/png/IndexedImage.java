@@ -0,0 +1,66 @@
+package cn.lihongjie.image.png;
+
+/**
+ * Palette image: one byte index per pixel into a table of at most 256 ARGB colors
+ *
+ * Produced by {@link ColorQuantizer} and written by {@link PngEncoder} as a color-type 3
+ * PNG (PLTE, plus tRNS when some palette entries are not opaque).
+ */
+public final class IndexedImage {
+
+    private final int width;
+    private final int height;
+    private final byte[] indices;
+    private final int[] palette;
+
+    /**
+     * Wrap an index array and a palette (neither is copied)
+     *
+     * @param width   Image width in pixels
+     * @param height  Image height in pixels
+     * @param indices Palette index of each pixel, row by row, at least width * height bytes
+     * @param palette 1 to 256 colors as 0xAARRGGBB
+     * @throws IllegalArgumentException if the dimensions, index array or palette size are invalid
+     */
+    public IndexedImage(int width, int height, byte[] indices, int[] palette) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image dimensions: " + width + "x" + height);
+        }
+        if (indices == null || (long) width * height > indices.length) {
+            throw new IllegalArgumentException("Index array is too small for " + width + "x" + height);
+        }
+        if (palette == null || palette.length < 1 || palette.length > 256) {
+            throw new IllegalArgumentException("Palette must have 1 to 256 colors");
+        }
+        this.width = width;
+        this.height = height;
+        this.indices = indices;
+        this.palette = palette;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the palette index of every pixel
+     *
+     * @return Index array, row by row without padding (shared, not copied)
+     */
+    public byte[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * Get the palette
+     *
+     * @return Colors as 0xAARRGGBB (shared, not copied)
+     */
+    public int[] getPalette() {
+        return palette;
+    }
+}
@@ -0,0 +1,142 @@
+package cn.lihongjie.image.png;
+
+import java.util.zip.Deflater;
+
+/**
+ * Smallest PNG found by {@link PngOptimizer}, with the combination of settings that produced it
+ *
+ * When no trial beat the original file, the result is that file: {@link #isOriginal()}
+ * is true and the filter, level and deflate strategy are unknown.
+ */
+public final class OptimizedPng {
+
+    private final byte[] data;
+    private final int colorType;
+    private final int bitDepth;
+    private final PngFilterStrategy filterStrategy;
+    private final int compressionLevel;
+    private final int deflateStrategy;
+    private final int trialsRun;
+    private final int trialsPlanned;
+    private final long elapsedMillis;
+
+    OptimizedPng(byte[] data, int colorType, int bitDepth, PngFilterStrategy filterStrategy,
+                 int compressionLevel, int deflateStrategy, int trialsRun, int trialsPlanned, long elapsedMillis) {
+        this.data = data;
+        this.colorType = colorType;
+        this.bitDepth = bitDepth;
+        this.filterStrategy = filterStrategy;
+        this.compressionLevel = compressionLevel;
+        this.deflateStrategy = deflateStrategy;
+        this.trialsRun = trialsRun;
+        this.trialsPlanned = trialsPlanned;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Get the PNG file
+     *
+     * @return PNG file data (shared, not copied)
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Check whether the original file was kept because no trial was smaller
+     *
+     * @return true if {@link #getData()} is the optimizer's input file
+     */
+    public boolean isOriginal() {
+        return filterStrategy == null;
+    }
+
+    /**
+     * Get the PNG color type of the winning trial
+     *
+     * @return 0 gray, 2 RGB, 3 indexed, 4 gray + alpha or 6 RGBA
+     */
+    public int getColorType() {
+        return colorType;
+    }
+
+    public int getBitDepth() {
+        return bitDepth;
+    }
+
+    /**
+     * @return Filter strategy of the winning trial, or null for the original file
+     */
+    public PngFilterStrategy getFilterStrategy() {
+        return filterStrategy;
+    }
+
+    /**
+     * @return Deflate level of the winning trial, or -1 for the original file
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Get the deflate strategy of the winning trial
+     *
+     * @return {@link Deflater#DEFAULT_STRATEGY}, {@link Deflater#FILTERED} or {@link Deflater#HUFFMAN_ONLY},
+     *         or -1 for the original file
+     */
+    public int getDeflateStrategy() {
+        return deflateStrategy;
+    }
+
+    /**
+     * Get the number of trial encodes that ran before the budget ran out
+     *
+     * @return Trials run, between 1 and {@link #getTrialsPlanned()}
+     */
+    public int getTrialsRun() {
+        return trialsRun;
+    }
+
+    public int getTrialsPlanned() {
+        return trialsPlanned;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        String settings = isOriginal() ? "original file"
+                : filterStrategy + ", level " + compressionLevel + " " + deflateStrategyName(deflateStrategy);
+        return colorTypeName(colorType) + " " + bitDepth + "-bit, " + settings
+                + ": " + data.length + " bytes (" + trialsRun + "/" + trialsPlanned + " trials, "
+                + elapsedMillis + " ms)";
+    }
+
+    private static String colorTypeName(int colorType) {
+        switch (colorType) {
+            case PngRaster.GRAY:
+                return "gray";
+            case PngRaster.RGB:
+                return "RGB";
+            case PngRaster.INDEXED:
+                return "indexed";
+            case PngRaster.GRAY_ALPHA:
+                return "gray+alpha";
+            default:
+                return "RGBA";
+        }
+    }
+
+    private static String deflateStrategyName(int deflateStrategy) {
+        switch (deflateStrategy) {
+            case Deflater.FILTERED:
+                return "FILTERED";
+            case Deflater.HUFFMAN_ONLY:
+                return "HUFFMAN_ONLY";
+            default:
+                return "DEFAULT";
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package cn.lihongjie.image.png;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * zlib compressor that deflates independent blocks of its input concurrently (pigz-style)
+ *
+ * The input is cut into fixed-size blocks. Each block is compressed as raw deflate by its
+ * own {@link Deflater}, primed with the 32 KB that precede it as a preset dictionary so
+ * matches may still reach back across the cut. Every block but the last ends with a sync
+ * flush, which pads it to a byte boundary, so the pieces concatenate into one valid
+ * deflate stream. The Adler-32 checksums of the blocks are computed alongside and
+ * combined into the zlib trailer.
+ */
+final class ParallelDeflater {
+
+    /** Uncompressed bytes per block; the same trade-off pigz makes by default */
+    static final int BLOCK_SIZE = 128 * 1024;
+
+    /** Deflate window, the most history a block can refer back to */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int ADLER_BASE = 65521;
+
+    private final int level;
+    private final int strategy;
+    private final int parallelism;
+
+    /**
+     * @param level       Deflate level 0-9
+     * @param strategy    {@link Deflater#DEFAULT_STRATEGY}, {@link Deflater#FILTERED} or {@link Deflater#HUFFMAN_ONLY}
+     * @param parallelism Maximum number of blocks compressed concurrently
+     */
+    ParallelDeflater(int level, int strategy, int parallelism) {
+        this.level = level;
+        this.strategy = strategy;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Compress {@code data[0, length)} into a complete zlib stream
+     */
+    byte[] compress(byte[] data, int length) {
+        int blocks = parallelism > 1 ? Math.max(1, (length + BLOCK_SIZE - 1) / BLOCK_SIZE) : 1;
+        byte[][] pieces = new byte[blocks][];
+        int[] pieceLengths = new int[blocks];
+        long[] adlers = new long[blocks];
+        int[] starts = new int[blocks + 1];
+        for (int b = 0; b <= blocks; b++) {
+            starts[b] = blocks == 1 ? (b == 0 ? 0 : length) : Math.min(length, b * BLOCK_SIZE);
+        }
+
+        if (blocks == 1) {
+            compressBlock(data, starts, 0, true, pieces, pieceLengths, adlers);
+        } else {
+            // Pull blocks from the common pool in order, at most `parallelism` at a time
+            int workers = Math.min(parallelism, blocks);
+            IntStream.range(0, workers).parallel().forEach(w -> {
+                for (int b = w; b < blocks; b += workers) {
+                    compressBlock(data, starts, b, b == blocks - 1, pieces, pieceLengths, adlers);
+                }
+            });
+        }
+
+        int total = 6;
+        long adler = 1;
+        for (int b = 0; b < blocks; b++) {
+            total += pieceLengths[b];
+            adler = combineAdler(adler, adlers[b], starts[b + 1] - starts[b]);
+        }
+        byte[] out = new byte[total];
+        out[0] = 0x78;
+        out[1] = (byte) headerFlags(level);
+        int pos = 2;
+        for (int b = 0; b < blocks; b++) {
+            System.arraycopy(pieces[b], 0, out, pos, pieceLengths[b]);
+            pos += pieceLengths[b];
+        }
+        out[pos] = (byte) (adler >>> 24);
+        out[pos + 1] = (byte) (adler >>> 16);
+        out[pos + 2] = (byte) (adler >>> 8);
+        out[pos + 3] = (byte) adler;
+        return out;
+    }
+
+    private void compressBlock(byte[] data, int[] starts, int b, boolean last,
+                               byte[][] pieces, int[] pieceLengths, long[] adlers) {
+        int start = starts[b];
+        int length = starts[b + 1] - start;
+        Adler32 checksum = new Adler32();
+        checksum.update(data, start, length);
+        adlers[b] = checksum.getValue();
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setStrategy(strategy);
+            if (start > 0) {
+                int dictionary = Math.min(start, DICTIONARY_SIZE);
+                deflater.setDictionary(data, start - dictionary, dictionary);
+            }
+            deflater.setInput(data, start, length);
+            byte[] out = new byte[Math.max(64, length / 2)];
+            int pos = 0;
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (pos == out.length) {
+                        out = Arrays.copyOf(out, out.length * 2);
+                    }
+                    pos += deflater.deflate(out, pos, out.length - pos);
+                }
+            } else {
+                // A sync flush byte-aligns the piece so the next one can be appended directly
+                while (true) {
+                    int n = deflater.deflate(out, pos, out.length - pos, Deflater.SYNC_FLUSH);
+                    pos += n;
+                    if (pos < out.length) {
+                        break;
+                    }
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+            }
+            pieces[b] = out;
+            pieceLengths[b] = pos;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * zlib FLG byte for a CMF of 0x78 (deflate, 32 KB window) at the given level
+     */
+    private static int headerFlags(int level) {
+        int levelFlag = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+        int flags = levelFlag << 6;
+        return flags + 31 - ((0x78 << 8 | flags) % 31);
+    }
+
+    /**
+     * Adler-32 of the concatenation of two inputs, from their checksums and the second length
+     * (the same arithmetic as zlib's adler32_combine)
+     */
+    static long combineAdler(long adler1, long adler2, long length2) {
+        long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = rem * sum1 % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += (adler1 >>> 16 & 0xFFFF) + (adler2 >>> 16 & 0xFFFF) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (long) ADLER_BASE << 1) {
+            sum2 -= (long) ADLER_BASE << 1;
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | sum2 << 16;
+    }
+}
@@ -0,0 +1,237 @@
+package cn.lihongjie.image.png;
+
+import cn.lihongjie.image.PixelImage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Pure-Java PNG encoder
+ *
+ * Writes 8-bit gray, RGB or RGBA PNGs straight from a {@link PixelImage}, and 8-bit
+ * indexed PNGs from an {@link IndexedImage}, without ImageIO. Scanline filters are chosen by a {@link PngFilterStrategy}; the default,
+ * {@link PngFilterStrategy#MIN_SUM}, is the same heuristic libpng uses.
+ *
+ * By default every image first goes through a lossless reduction pass (see
+ * {@link #withColorReduction}): opaque RGBA is written as RGB, gray pixels as 1-8 bit
+ * gray, and images with at most 256 colors as 1-8 bit palettes, so both the file and
+ * the filtering and deflate work shrink. Decoders see exactly the same pixels.
+ *
+ * With a parallelism level above 1, scanlines are filtered in horizontal bands on
+ * separate cores, and the filtered stream is deflated as independent 128 KB blocks that
+ * are primed with the preceding 32 KB as a preset dictionary (see {@link ParallelDeflater}).
+ * The result is a single ordinary zlib stream in one IDAT chunk; it is a little larger than
+ * the single-threaded output because each block starts with fresh Huffman statistics.
+ * Work runs on the common fork-join pool.
+ *
+ * Encoders are immutable and can be shared between threads.
+ *
+ * Usage:
+ * <pre>
+ * PngEncoder encoder = new PngEncoder().withParallelism(Runtime.getRuntime().availableProcessors());
+ * byte[] png = encoder.encode(pixelImage);
+ *
+ * byte[] smaller = new PngEncoder(9).withFilterStrategy(PngFilterStrategy.ENTROPY).encode(pixelImage);
+ * </pre>
+ */
+public final class PngEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private static final int DEFAULT_LEVEL = 6;
+
+    private final int compressionLevel;
+    private final int parallelism;
+    private final PngFilterStrategy filterStrategy;
+    private final boolean colorReduction;
+
+    /**
+     * Create a single-threaded encoder with the default deflate level (6)
+     */
+    public PngEncoder() {
+        this(DEFAULT_LEVEL, 1, PngFilterStrategy.MIN_SUM, true);
+    }
+
+    /**
+     * Create a single-threaded encoder
+     *
+     * @param compressionLevel Deflate level (0-9, where 0 stores uncompressed and 9 is smallest)
+     * @throws IllegalArgumentException if the level is not in range 0-9
+     */
+    public PngEncoder(int compressionLevel) {
+        this(compressionLevel, 1, PngFilterStrategy.MIN_SUM, true);
+    }
+
+    private PngEncoder(int compressionLevel, int parallelism, PngFilterStrategy filterStrategy, boolean colorReduction) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9, got: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        this.parallelism = parallelism;
+        this.filterStrategy = filterStrategy;
+        this.colorReduction = colorReduction;
+    }
+
+    /**
+     * Get a copy of this encoder that filters and deflates each image on up to the given number of threads
+     *
+     * @param parallelism Maximum number of threads, 1 for single-threaded encoding
+     * @return Encoder with the new parallelism level
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public PngEncoder withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, got: " + parallelism);
+        }
+        return new PngEncoder(compressionLevel, parallelism, filterStrategy, colorReduction);
+    }
+
+    /**
+     * Get a copy of this encoder that chooses scanline filters with the given strategy
+     *
+     * @param filterStrategy Fixed filter or adaptive heuristic
+     * @return Encoder with the new filter strategy
+     * @throws IllegalArgumentException if the strategy is null
+     */
+    public PngEncoder withFilterStrategy(PngFilterStrategy filterStrategy) {
+        if (filterStrategy == null) {
+            throw new IllegalArgumentException("Filter strategy must not be null");
+        }
+        return new PngEncoder(compressionLevel, parallelism, filterStrategy, colorReduction);
+    }
+
+    /**
+     * Get a copy of this encoder with the lossless color type and bit depth reduction on or off
+     *
+     * When off, {@link PixelImage}s are written with the color type matching their channel
+     * count and palette images at 8 bits, as given.
+     *
+     * @param colorReduction Whether to reduce images before encoding (default true)
+     * @return Encoder with the new setting
+     */
+    public PngEncoder withColorReduction(boolean colorReduction) {
+        return new PngEncoder(compressionLevel, parallelism, filterStrategy, colorReduction);
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public PngFilterStrategy getFilterStrategy() {
+        return filterStrategy;
+    }
+
+    public boolean isColorReduction() {
+        return colorReduction;
+    }
+
+    /**
+     * Encode pixels to PNG
+     *
+     * @param image Gray, RGB or RGBA pixels
+     * @return PNG file data
+     */
+    public byte[] encode(PixelImage image) {
+        return encode(colorReduction ? PngReducer.reduce(image) : PngRaster.of(image));
+    }
+
+    /**
+     * Encode a palette image to an indexed PNG, packed to 1, 2 or 4 bits per pixel
+     * when the palette is small enough and color reduction is on
+     *
+     * @param image Palette indices and colors
+     * @return PNG file data
+     */
+    public byte[] encode(IndexedImage image) {
+        return encode(colorReduction ? PngReducer.pack(image) : PngRaster.of(image));
+    }
+
+    /**
+     * The {@link PngFilterStrategy#MIN_SUM} default is replaced by {@link PngFilterStrategy#NONE}
+     * for palette and sub-byte rasters, as libpng does: filtering indices rarely helps.
+     */
+    private byte[] encode(PngRaster raster) {
+        PngFilterStrategy strategy = filterStrategy;
+        if (strategy == PngFilterStrategy.MIN_SUM && (raster.colorType == PngRaster.INDEXED || raster.bitDepth < 8)) {
+            strategy = PngFilterStrategy.NONE;
+        }
+        byte[] filtered = filter(raster, strategy, parallelism);
+        byte[] zlib = new ParallelDeflater(compressionLevel, Deflater.DEFAULT_STRATEGY, parallelism)
+                .compress(filtered, filtered.length);
+        return wrap(raster, zlib);
+    }
+
+    /**
+     * Filter all scanlines of a raster in up to {@code parallelism} horizontal bands
+     *
+     * @return Filtered stream: per row one filter-type byte and {@code stride} residuals
+     */
+    static byte[] filter(PngRaster raster, PngFilterStrategy strategy, int parallelism) {
+        int height = raster.height;
+        byte[] filtered = new byte[(raster.stride + 1) * height];
+        PngFilters filters = new PngFilters(raster.rows, raster.stride, raster.bpp, strategy);
+        int bands = Math.min(parallelism, height);
+        if (bands <= 1) {
+            filters.filterRows(filtered, 0, height);
+        } else {
+            IntStream.range(0, bands).parallel().forEach(b ->
+                    filters.filterRows(filtered, height * b / bands, height * (b + 1) / bands));
+        }
+        return filtered;
+    }
+
+    /**
+     * Write the PNG file: signature, IHDR, PLTE and tRNS when present, one IDAT holding {@code zlib}, IEND
+     */
+    static byte[] wrap(PngRaster raster, byte[] zlib) {
+        int size = SIGNATURE.length + 25 + 12 + zlib.length + 12;
+        if (raster.plte != null) {
+            size += 12 + raster.plte.length;
+        }
+        if (raster.trns != null) {
+            size += 12 + raster.trns.length;
+        }
+        byte[] out = new byte[size];
+        System.arraycopy(SIGNATURE, 0, out, 0, SIGNATURE.length);
+        int pos = SIGNATURE.length;
+        byte[] header = new byte[13];
+        putInt(header, 0, raster.width);
+        putInt(header, 4, raster.height);
+        header[8] = (byte) raster.bitDepth;
+        header[9] = (byte) raster.colorType;
+        pos = writeChunk(out, pos, "IHDR", header);
+        if (raster.plte != null) {
+            pos = writeChunk(out, pos, "PLTE", raster.plte);
+        }
+        if (raster.trns != null) {
+            pos = writeChunk(out, pos, "tRNS", raster.trns);
+        }
+        pos = writeChunk(out, pos, "IDAT", zlib);
+        writeChunk(out, pos, "IEND", new byte[0]);
+        return out;
+    }
+
+    private static int writeChunk(byte[] out, int pos, String type, byte[] data) {
+        putInt(out, pos, data.length);
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(typeBytes, 0, out, pos + 4, 4);
+        System.arraycopy(data, 0, out, pos + 8, data.length);
+        CRC32 crc = new CRC32();
+        crc.update(out, pos + 4, 4 + data.length);
+        putInt(out, pos + 8 + data.length, (int) crc.getValue());
+        return pos + 12 + data.length;
+    }
+
+    private static void putInt(byte[] out, int pos, int value) {
+        out[pos] = (byte) (value >>> 24);
+        out[pos + 1] = (byte) (value >>> 16);
+        out[pos + 2] = (byte) (value >>> 8);
+        out[pos + 3] = (byte) value;
+    }
+}
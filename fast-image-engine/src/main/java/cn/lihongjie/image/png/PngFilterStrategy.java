@@ -0,0 +1,38 @@
+package cn.lihongjie.image.png;
+
+/**
+ * How the PNG encoder chooses the filter applied to each scanline
+ *
+ * The five fixed strategies use the same filter for every row. The adaptive ones try
+ * all five filters on each row and keep the one their heuristic scores best, which
+ * costs roughly five times the filtering work but usually deflates noticeably smaller.
+ */
+public enum PngFilterStrategy {
+
+    /** Filter type 0: raw bytes */
+    NONE,
+
+    /** Filter type 1: difference from the byte one pixel to the left */
+    SUB,
+
+    /** Filter type 2: difference from the byte above */
+    UP,
+
+    /** Filter type 3: difference from the mean of left and above */
+    AVERAGE,
+
+    /** Filter type 4: difference from the Paeth predictor */
+    PAETH,
+
+    /**
+     * Per row, the filter with the smallest sum of absolute (signed) residuals;
+     * the heuristic libpng uses by default
+     */
+    MIN_SUM,
+
+    /**
+     * Per row, the filter whose residual bytes have the lowest Shannon entropy;
+     * slower than {@link #MIN_SUM} and usually a little smaller
+     */
+    ENTROPY
+}
@@ -0,0 +1,174 @@
+package cn.lihongjie.image.png;
+
+import java.util.Arrays;
+
+/**
+ * Scanline filtering for the PNG encoder
+ *
+ * Rows are read from a packed raw buffer ({@code stride} bytes per row, no padding) and
+ * written to the filtered stream as one filter-type byte followed by {@code stride}
+ * residual bytes. Each filter is a separate straight loop over byte arrays with the
+ * first pixel split off, so the JIT can unroll and vectorize the simple ones. The
+ * first row is filtered against an all-zero prior row, as the PNG specification defines.
+ */
+final class PngFilters {
+
+    private static final int FILTER_COUNT = 5;
+
+    private final byte[] raw;
+    private final int stride;
+    private final int bpp;
+    private final PngFilterStrategy strategy;
+    /** n * ln(n) for n = 0..stride, shared by all bands of one image */
+    private final double[] nLogN;
+
+    /**
+     * @param raw      Unfiltered rows
+     * @param stride   Bytes per row
+     * @param bpp      Bytes per complete pixel, at least 1 (the PNG filter offset)
+     * @param strategy How to pick the filter of each row
+     */
+    PngFilters(byte[] raw, int stride, int bpp, PngFilterStrategy strategy) {
+        this.raw = raw;
+        this.stride = stride;
+        this.bpp = bpp;
+        this.strategy = strategy;
+        if (strategy == PngFilterStrategy.ENTROPY) {
+            nLogN = new double[stride + 1];
+            for (int n = 1; n <= stride; n++) {
+                nLogN[n] = n * Math.log(n);
+            }
+        } else {
+            nLogN = null;
+        }
+    }
+
+    /**
+     * Filter rows [firstRow, endRow) into {@code out}, row y starting at y * (stride + 1)
+     */
+    void filterRows(byte[] out, int firstRow, int endRow) {
+        byte[] zeros = firstRow == 0 ? new byte[stride] : null;
+        byte[][] candidates = null;
+        int[] histogram = null;
+        if (strategy == PngFilterStrategy.MIN_SUM || strategy == PngFilterStrategy.ENTROPY) {
+            candidates = new byte[FILTER_COUNT][stride];
+            histogram = new int[256];
+        }
+        for (int y = firstRow; y < endRow; y++) {
+            int row = y * stride;
+            byte[] priorRow = y == 0 ? zeros : raw;
+            int prior = y == 0 ? 0 : row - stride;
+            int o = y * (stride + 1);
+            switch (strategy) {
+                case MIN_SUM:
+                case ENTROPY:
+                    int best = 0;
+                    double bestScore = Double.MAX_VALUE;
+                    for (int type = 0; type < FILTER_COUNT; type++) {
+                        apply(type, raw, row, priorRow, prior, candidates[type], 0);
+                        double score = strategy == PngFilterStrategy.MIN_SUM
+                                ? sumOfAbs(candidates[type], (long) bestScore)
+                                : entropy(candidates[type], histogram);
+                        if (score < bestScore) {
+                            bestScore = score;
+                            best = type;
+                        }
+                    }
+                    out[o] = (byte) best;
+                    System.arraycopy(candidates[best], 0, out, o + 1, stride);
+                    break;
+                default:
+                    int type = strategy.ordinal();
+                    out[o] = (byte) type;
+                    apply(type, raw, row, priorRow, prior, out, o + 1);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Write the residuals of one row under filter {@code type} to {@code out[o, o + stride)}
+     */
+    private void apply(int type, byte[] px, int row, byte[] pr, int prior, byte[] out, int o) {
+        int n = stride;
+        int bpp = this.bpp;
+        switch (type) {
+            case 0:
+                System.arraycopy(px, row, out, o, n);
+                break;
+            case 1:
+                System.arraycopy(px, row, out, o, bpp);
+                for (int i = bpp; i < n; i++) {
+                    out[o + i] = (byte) (px[row + i] - px[row + i - bpp]);
+                }
+                break;
+            case 2:
+                for (int i = 0; i < n; i++) {
+                    out[o + i] = (byte) (px[row + i] - pr[prior + i]);
+                }
+                break;
+            case 3:
+                for (int i = 0; i < bpp; i++) {
+                    out[o + i] = (byte) (px[row + i] - ((pr[prior + i] & 0xFF) >> 1));
+                }
+                for (int i = bpp; i < n; i++) {
+                    out[o + i] = (byte) (px[row + i] - (((px[row + i - bpp] & 0xFF) + (pr[prior + i] & 0xFF)) >> 1));
+                }
+                break;
+            default:
+                // Paeth with a = 0 and c = 0 predicts b for the first pixel
+                for (int i = 0; i < bpp; i++) {
+                    out[o + i] = (byte) (px[row + i] - pr[prior + i]);
+                }
+                for (int i = bpp; i < n; i++) {
+                    int a = px[row + i - bpp] & 0xFF;
+                    int b = pr[prior + i] & 0xFF;
+                    int c = pr[prior + i - bpp] & 0xFF;
+                    out[o + i] = (byte) (px[row + i] - paeth(a, b, c));
+                }
+                break;
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int pa = Math.abs(b - c);
+        int pb = Math.abs(a - c);
+        int pc = Math.abs(a + b - 2 * c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * Sum of residuals read as signed bytes, giving up once it reaches {@code limit}
+     */
+    private double sumOfAbs(byte[] residuals, long limit) {
+        long sum = 0;
+        for (int start = 0; start < stride; start += 1024) {
+            int end = Math.min(stride, start + 1024);
+            for (int i = start; i < end; i++) {
+                sum += Math.abs(residuals[i]);
+            }
+            if (sum >= limit) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Shannon entropy of the residual bytes, scaled by the row length (n log n - sum h log h)
+     */
+    private double entropy(byte[] residuals, int[] histogram) {
+        Arrays.fill(histogram, 0);
+        for (int i = 0; i < stride; i++) {
+            histogram[residuals[i] & 0xFF]++;
+        }
+        double sum = 0;
+        for (int count : histogram) {
+            sum += nLogN[count];
+        }
+        return nLogN[stride] - sum;
+    }
+}
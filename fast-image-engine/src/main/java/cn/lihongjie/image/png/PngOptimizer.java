@@ -0,0 +1,267 @@
+package cn.lihongjie.image.png;
+
+import cn.lihongjie.image.ImageFormat;
+import cn.lihongjie.image.PixelImage;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+
+/**
+ * Exhaustive "max compression" PNG encoding for assets that are encoded once and served often
+ *
+ * Runs trial encodes over every combination of
+ * <ul>
+ *   <li>lossless pixel layout: every reduced color type and bit depth that represents the
+ *       image exactly (palette, gray, RGB without an opaque alpha channel; see
+ *       {@link PngEncoder#withColorReduction}), and the image as given;</li>
+ *   <li>scanline filter strategy: all seven {@link PngFilterStrategy} values;</li>
+ *   <li>deflate settings: level 9 with the default, filtered and Huffman-only strategies,
+ *       and level 6 (what {@link PngEncoder} uses by default).</li>
+ * </ul>
+ * and keeps the smallest file. Every trial decodes to the same pixels as the input. Given
+ * the PNG file the pixels came from, the optimizer returns that file unchanged when no
+ * trial is smaller.
+ *
+ * Each layout and filter pair is filtered once and then deflated with each setting on a
+ * single thread; up to {@code parallelism} such pairs run at the same time on the common
+ * fork-join pool. Trials are ordered so the most promising ones come first. The time
+ * budget is checked between trials and between blocks of the deflate input, so a trial
+ * still running when the budget is spent is abandoned, and the CPU spent is bounded by
+ * roughly parallelism x budget. The first trial always runs to completion, so there is
+ * always a result; it uses deflate level 6, the cheapest setting, so the wall time is at
+ * most the budget or the time of one default encode, whichever is longer.
+ *
+ * Optimizers are immutable and can be shared between threads.
+ *
+ * Usage:
+ * <pre>
+ * OptimizedPng best = new PngOptimizer()
+ *         .withParallelism(Runtime.getRuntime().availableProcessors())
+ *         .withTimeBudget(5000)
+ *         .optimize(pixelImage);
+ * byte[] png = best.getData();
+ * log.info("PNG optimized: {}", best);
+ * </pre>
+ */
+public final class PngOptimizer {
+
+    private static final long DEFAULT_TIME_BUDGET_MILLIS = 10_000;
+
+    /** Adaptive filters first: they win on most photographs and synthetic images alike */
+    private static final PngFilterStrategy[] FILTER_ORDER = {
+            PngFilterStrategy.MIN_SUM, PngFilterStrategy.ENTROPY, PngFilterStrategy.PAETH,
+            PngFilterStrategy.NONE, PngFilterStrategy.UP, PngFilterStrategy.SUB, PngFilterStrategy.AVERAGE
+    };
+
+    /** Palette indices and sub-byte samples rarely gain from filtering, so the unfiltered trial goes first */
+    private static final PngFilterStrategy[] INDEXED_FILTER_ORDER = {
+            PngFilterStrategy.NONE, PngFilterStrategy.MIN_SUM, PngFilterStrategy.ENTROPY,
+            PngFilterStrategy.PAETH, PngFilterStrategy.UP, PngFilterStrategy.SUB, PngFilterStrategy.AVERAGE
+    };
+
+    /**
+     * {level, strategy} pairs tried on each filtered stream, in order; level 6 first since
+     * the very first trial is never abandoned and should be cheap
+     */
+    private static final int[][] DEFLATE_SETTINGS = {
+            {6, Deflater.DEFAULT_STRATEGY},
+            {9, Deflater.DEFAULT_STRATEGY},
+            {9, Deflater.FILTERED},
+            {9, Deflater.HUFFMAN_ONLY}
+    };
+
+    private final int parallelism;
+    private final long timeBudgetMillis;
+
+    /**
+     * Create a single-threaded optimizer with a 10 second time budget
+     */
+    public PngOptimizer() {
+        this(1, DEFAULT_TIME_BUDGET_MILLIS);
+    }
+
+    private PngOptimizer(int parallelism, long timeBudgetMillis) {
+        this.parallelism = parallelism;
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * Get a copy of this optimizer that runs up to the given number of trials at once
+     *
+     * @param parallelism Maximum number of threads, 1 to run trials one after another
+     * @return Optimizer with the new parallelism level
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public PngOptimizer withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, got: " + parallelism);
+        }
+        return new PngOptimizer(parallelism, timeBudgetMillis);
+    }
+
+    /**
+     * Get a copy of this optimizer that stops trying after the given wall-clock time
+     *
+     * @param timeBudgetMillis Budget in milliseconds; 0 runs only the first trial,
+     *                         {@link Long#MAX_VALUE} runs every trial
+     * @return Optimizer with the new time budget
+     * @throws IllegalArgumentException if the budget is negative
+     */
+    public PngOptimizer withTimeBudget(long timeBudgetMillis) {
+        if (timeBudgetMillis < 0) {
+            throw new IllegalArgumentException("Time budget must not be negative, got: " + timeBudgetMillis);
+        }
+        return new PngOptimizer(parallelism, timeBudgetMillis);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    /**
+     * Find the smallest lossless PNG encoding of an image within the time budget
+     *
+     * @param image Gray, RGB or RGBA pixels
+     * @return Smallest PNG and the settings that produced it
+     */
+    public OptimizedPng optimize(PixelImage image) {
+        return optimize(image, null);
+    }
+
+    /**
+     * Find the smallest lossless PNG encoding of an image within the time budget, or keep its original file
+     *
+     * @param image    Gray, RGB or RGBA pixels
+     * @param original PNG file the pixels were decoded from, or null
+     * @return Smallest PNG and the settings that produced it; the original file, unchanged,
+     *         if no trial is smaller
+     */
+    public OptimizedPng optimize(PixelImage image, byte[] original) {
+        long start = System.nanoTime();
+        boolean unlimited = timeBudgetMillis >= Long.MAX_VALUE / 1_000_000;
+        long deadline = start + (unlimited ? 0 : timeBudgetMillis * 1_000_000);
+
+        // One entry per layout and filter pair, in trial order
+        List<PngRaster> pairLayouts = new ArrayList<>();
+        List<PngFilterStrategy> pairFilters = new ArrayList<>();
+        for (PngRaster layout : PngReducer.layouts(image)) {
+            boolean packed = layout.colorType == PngRaster.INDEXED || layout.bitDepth < 8;
+            for (PngFilterStrategy filter : packed ? INDEXED_FILTER_ORDER : FILTER_ORDER) {
+                pairLayouts.add(layout);
+                pairFilters.add(filter);
+            }
+        }
+        int pairs = pairLayouts.size();
+        int planned = pairs * DEFLATE_SETTINGS.length;
+
+        Trial best = new Trial();
+        int workers = Math.min(parallelism, pairs);
+        // Worker w takes pairs w, w + workers, ... so the most promising pairs start first
+        IntStream.range(0, workers).parallel().forEach(w -> {
+            for (int p = w; p < pairs; p += workers) {
+                PngRaster layout = pairLayouts.get(p);
+                byte[] filtered = null;
+                for (int s = 0; s < DEFLATE_SETTINGS.length; s++) {
+                    int index = p * DEFLATE_SETTINGS.length + s;
+                    if (index > 0 && !unlimited && System.nanoTime() - deadline > 0) {
+                        return;
+                    }
+                    if (filtered == null) {
+                        filtered = PngEncoder.filter(layout, pairFilters.get(p), 1);
+                    }
+                    int[] setting = DEFLATE_SETTINGS[s];
+                    byte[] zlib = deflate(filtered, setting, deadline, index > 0 && !unlimited);
+                    if (zlib == null) {
+                        return;
+                    }
+                    best.offer(index, layout, pairFilters.get(p), setting, zlib);
+                }
+            }
+        });
+
+        byte[] data = PngEncoder.wrap(best.layout, best.zlib);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        if (original != null && original.length <= data.length && isPng(original)) {
+            return new OptimizedPng(original, original[25], original[24], null, -1, -1, best.trials, planned, elapsed);
+        }
+        return new OptimizedPng(data, best.layout.colorType, best.layout.bitDepth, best.filter,
+                best.setting[0], best.setting[1], best.trials, planned, elapsed);
+    }
+
+    /**
+     * Deflate a filtered stream into a zlib stream, one {@link ParallelDeflater#BLOCK_SIZE} block of input at a time
+     *
+     * @param deadline {@link System#nanoTime()} after which to give up
+     * @param bounded  false to finish regardless of the deadline
+     * @return zlib stream, or null if the deadline passed first
+     */
+    private static byte[] deflate(byte[] filtered, int[] setting, long deadline, boolean bounded) {
+        Deflater deflater = new Deflater(setting[0]);
+        try {
+            deflater.setStrategy(setting[1]);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(filtered.length / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            for (int pos = 0; pos < filtered.length; pos += ParallelDeflater.BLOCK_SIZE) {
+                if (bounded && System.nanoTime() - deadline > 0) {
+                    return null;
+                }
+                deflater.setInput(filtered, pos, Math.min(ParallelDeflater.BLOCK_SIZE, filtered.length - pos));
+                while (!deflater.needsInput()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Check the signature and that an IHDR chunk follows, which is where the color type and bit depth are read
+     */
+    private static boolean isPng(byte[] data) {
+        return data.length > 25 && ImageFormat.detect(data) == ImageFormat.PNG
+                && data[12] == 'I' && data[13] == 'H' && data[14] == 'D' && data[15] == 'R';
+    }
+
+    /**
+     * Smallest trial so far; ties go to the earlier trial so unbounded runs are deterministic
+     */
+    private static final class Trial {
+        private int index = Integer.MAX_VALUE;
+        private long size = Long.MAX_VALUE;
+        private PngRaster layout;
+        private PngFilterStrategy filter;
+        private int[] setting;
+        private byte[] zlib;
+        private int trials;
+
+        synchronized void offer(int index, PngRaster layout, PngFilterStrategy filter, int[] setting, byte[] zlib) {
+            trials++;
+            long size = zlib.length + chunkBytes(layout);
+            if (size < this.size || (size == this.size && index < this.index)) {
+                this.index = index;
+                this.size = size;
+                this.layout = layout;
+                this.filter = filter;
+                this.setting = setting;
+                this.zlib = zlib;
+            }
+        }
+
+        private static int chunkBytes(PngRaster layout) {
+            return (layout.plte == null ? 0 : 12 + layout.plte.length) + (layout.trns == null ? 0 : 12 + layout.trns.length);
+        }
+    }
+}
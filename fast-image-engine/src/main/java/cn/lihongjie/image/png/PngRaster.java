@@ -0,0 +1,92 @@
+package cn.lihongjie.image.png;
+
+import cn.lihongjie.image.PixelImage;
+
+/**
+ * Unfiltered PNG scanlines in their final color type and bit depth, ready to filter and deflate
+ *
+ * Rows are packed without padding, {@link #stride} bytes each. {@link #plte} and
+ * {@link #trns} hold the PLTE and tRNS chunk payloads, or null when the chunk is not written.
+ */
+final class PngRaster {
+
+    static final int GRAY = 0;
+    static final int RGB = 2;
+    static final int INDEXED = 3;
+    static final int GRAY_ALPHA = 4;
+    static final int RGBA = 6;
+
+    final int width;
+    final int height;
+    final int colorType;
+    final int bitDepth;
+    final byte[] rows;
+    final int stride;
+    /** Filter offset: bytes per complete pixel, rounded up to 1 */
+    final int bpp;
+    final byte[] plte;
+    final byte[] trns;
+
+    PngRaster(int width, int height, int colorType, int bitDepth, byte[] rows, byte[] plte, byte[] trns) {
+        int bitsPerPixel = channels(colorType) * bitDepth;
+        long rowBytes = ((long) width * bitsPerPixel + 7) / 8;
+        if ((rowBytes + 1) * height > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Image too large for PNG encoding: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.colorType = colorType;
+        this.bitDepth = bitDepth;
+        this.rows = rows;
+        this.stride = (int) rowBytes;
+        this.bpp = Math.max(1, bitsPerPixel / 8);
+        this.plte = plte;
+        this.trns = trns;
+    }
+
+    /**
+     * Wrap the pixels of an 8-bit gray, RGB or RGBA image (not copied)
+     */
+    static PngRaster of(PixelImage image) {
+        int colorType = image.getChannels() == 1 ? GRAY : image.getChannels() == 3 ? RGB : RGBA;
+        return new PngRaster(image.getWidth(), image.getHeight(), colorType, 8, image.getPixels(), null, null);
+    }
+
+    /**
+     * Wrap the indices of a palette image (not copied) and build its PLTE and tRNS payloads
+     */
+    static PngRaster of(IndexedImage image) {
+        int[] palette = image.getPalette();
+        byte[] plte = new byte[palette.length * 3];
+        int translucent = 0;
+        for (int k = 0; k < palette.length; k++) {
+            plte[k * 3] = (byte) (palette[k] >> 16);
+            plte[k * 3 + 1] = (byte) (palette[k] >> 8);
+            plte[k * 3 + 2] = (byte) palette[k];
+            if (palette[k] >>> 24 != 0xFF) {
+                translucent = k + 1;
+            }
+        }
+        byte[] trns = null;
+        if (translucent > 0) {
+            trns = new byte[translucent];
+            for (int k = 0; k < translucent; k++) {
+                trns[k] = (byte) (palette[k] >>> 24);
+            }
+        }
+        return new PngRaster(image.getWidth(), image.getHeight(), INDEXED, 8, image.getIndices(), plte, trns);
+    }
+
+    static int channels(int colorType) {
+        switch (colorType) {
+            case RGB:
+                return 3;
+            case GRAY_ALPHA:
+                return 2;
+            case RGBA:
+                return 4;
+            default:
+                return 1;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package cn.lihongjie.image.png;
+
+import cn.lihongjie.image.PixelImage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lossless color type and bit depth reduction ahead of PNG encoding
+ *
+ * One scan over the pixels records whether every alpha is opaque, whether every pixel
+ * is gray (R = G = B), which gray levels occur (a 256-bit set in four longs), and the
+ * first 256 distinct colors (an open-addressing table of 512 int slots). The scan stops
+ * early once none of the reductions can apply any more, so photographs cost only a few
+ * hundred pixels plus, for RGBA, one tight pass over the alpha bytes.
+ *
+ * From the analysis the smallest exact layout is picked:
+ * <ul>
+ *   <li>gray at 1, 2, 4 or 8 bits when every gray level is representable at that depth;</li>
+ *   <li>a palette at 1, 2, 4 or 8 bits when there are at most 256 colors;</li>
+ *   <li>gray + alpha, RGB or RGBA otherwise, dropping alpha when every pixel is opaque.</li>
+ * </ul>
+ * Sub-byte samples are packed most significant bits first, each row padded to a whole byte.
+ */
+final class PngReducer {
+
+    private static final int SLOTS = 512;
+
+    /** Bits set at every gray level exactly representable at depth 1, 2 and 4 */
+    private static final long[][] DEPTH_MASKS = {mask(255), mask(85), mask(17)};
+
+    private final PixelImage image;
+    private final boolean opaque;
+    private final boolean gray;
+    private final long[] grayLevels;
+    /** Distinct colors as 0xAARRGGBB, or null when there are more than 256 */
+    private final int[] colors;
+    private final int[] keys;
+    private final boolean[] used;
+
+    private PngReducer(PixelImage image, boolean opaque, boolean gray, long[] grayLevels,
+                       int[] colors, int[] keys, boolean[] used) {
+        this.image = image;
+        this.opaque = opaque;
+        this.gray = gray;
+        this.grayLevels = grayLevels;
+        this.colors = colors;
+        this.keys = keys;
+        this.used = used;
+    }
+
+    /**
+     * Smallest exact layout of an image
+     */
+    static PngRaster reduce(PixelImage image) {
+        return analyze(image).best();
+    }
+
+    /**
+     * Every distinct exact layout of an image worth a trial encode, the smallest first
+     * and the image as given last
+     */
+    static List<PngRaster> layouts(PixelImage image) {
+        PngReducer analysis = analyze(image);
+        List<PngRaster> layouts = new ArrayList<>();
+        layouts.add(analysis.best());
+        int best = layouts.get(0).colorType;
+        if (analysis.colors != null && best != PngRaster.INDEXED) {
+            layouts.add(analysis.palette());
+        }
+        if (analysis.gray && analysis.opaque && best != PngRaster.GRAY) {
+            layouts.add(analysis.gray());
+        }
+        if (image.getChannels() == 4 && analysis.opaque && best != PngRaster.RGB && !analysis.gray) {
+            layouts.add(analysis.dropAlpha());
+        }
+        PngRaster original = PngRaster.of(image);
+        boolean present = false;
+        for (PngRaster layout : layouts) {
+            present |= layout.colorType == original.colorType && layout.bitDepth == original.bitDepth;
+        }
+        if (!present) {
+            layouts.add(original);
+        }
+        return layouts;
+    }
+
+    /**
+     * Pack an 8-bit palette image to the smallest bit depth its palette size allows
+     */
+    static PngRaster pack(IndexedImage image) {
+        PngRaster raster = PngRaster.of(image);
+        int depth = paletteDepth(image.getPalette().length);
+        if (depth == 8) {
+            return raster;
+        }
+        int pixels = image.getWidth() * image.getHeight();
+        byte[] rows = pack(Arrays.copyOf(image.getIndices(), pixels), image.getWidth(), image.getHeight(), depth);
+        return new PngRaster(image.getWidth(), image.getHeight(), PngRaster.INDEXED, depth, rows, raster.plte, raster.trns);
+    }
+
+    private static PngReducer analyze(PixelImage image) {
+        byte[] px = image.getPixels();
+        int channels = image.getChannels();
+        int pixels = image.getWidth() * image.getHeight();
+
+        boolean opaque = true;
+        boolean gray = true;
+        long[] grayLevels = new long[4];
+        int[] keys = new int[SLOTS];
+        boolean[] used = new boolean[SLOTS];
+        int[] colors = new int[256];
+        int count = 0;
+        boolean overflow = false;
+
+        int i = 0;
+        for (; i < pixels; i++) {
+            int argb = argb(px, i, channels);
+            if (argb >>> 24 != 0xFF) {
+                opaque = false;
+            }
+            int r = argb >> 16 & 0xFF;
+            if (gray) {
+                if (r == (argb >> 8 & 0xFF) && r == (argb & 0xFF)) {
+                    grayLevels[r >> 6] |= 1L << r;
+                } else {
+                    gray = false;
+                }
+            }
+            if (!overflow) {
+                int slot = slot(argb);
+                while (used[slot] && keys[slot] != argb) {
+                    slot = (slot + 1) & (SLOTS - 1);
+                }
+                if (!used[slot]) {
+                    if (count == 256) {
+                        overflow = true;
+                    } else {
+                        used[slot] = true;
+                        keys[slot] = argb;
+                        colors[count++] = argb;
+                    }
+                }
+            }
+            if (overflow && !gray) {
+                break;
+            }
+        }
+        // Only the alpha check is left: scan the alpha bytes alone
+        if (i < pixels && opaque && channels == 4) {
+            for (int a = i * 4 + 3; a < pixels * 4; a += 4) {
+                if (px[a] != (byte) 0xFF) {
+                    opaque = false;
+                    break;
+                }
+            }
+        }
+        return new PngReducer(image, opaque, gray, grayLevels,
+                overflow ? null : Arrays.copyOf(colors, count), keys, used);
+    }
+
+    private PngRaster best() {
+        if (gray && opaque && (colors == null || grayDepth() <= paletteDepth(colors.length))) {
+            return gray();
+        }
+        if (colors != null) {
+            return palette();
+        }
+        if (gray) {
+            return grayAlpha();
+        }
+        if (image.getChannels() == 4 && opaque) {
+            return dropAlpha();
+        }
+        return PngRaster.of(image);
+    }
+
+    /**
+     * Smallest bit depth at which every gray level that occurs is exact
+     */
+    private int grayDepth() {
+        for (int d = 0; d < DEPTH_MASKS.length; d++) {
+            boolean fits = true;
+            for (int w = 0; w < 4; w++) {
+                fits &= (grayLevels[w] & ~DEPTH_MASKS[d][w]) == 0;
+            }
+            if (fits) {
+                return 1 << d;
+            }
+        }
+        return 8;
+    }
+
+    private PngRaster gray() {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int channels = image.getChannels();
+        byte[] px = image.getPixels();
+        int depth = grayDepth();
+        int scale = 255 / ((1 << depth) - 1);
+        byte[] levels = new byte[width * height];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = (byte) ((px[i * channels] & 0xFF) / scale);
+        }
+        return new PngRaster(width, height, PngRaster.GRAY, depth, pack(levels, width, height, depth), null, null);
+    }
+
+    private PngRaster grayAlpha() {
+        byte[] px = image.getPixels();
+        int channels = image.getChannels();
+        int pixels = image.getWidth() * image.getHeight();
+        byte[] ga = new byte[pixels * 2];
+        for (int i = 0; i < pixels; i++) {
+            ga[i * 2] = px[i * channels];
+            ga[i * 2 + 1] = px[i * channels + 3];
+        }
+        return new PngRaster(image.getWidth(), image.getHeight(), PngRaster.GRAY_ALPHA, 8, ga, null, null);
+    }
+
+    private PngRaster dropAlpha() {
+        byte[] px = image.getPixels();
+        int pixels = image.getWidth() * image.getHeight();
+        byte[] rgb = new byte[pixels * 3];
+        for (int i = 0, o = 0; i < pixels * 4; i += 4, o += 3) {
+            rgb[o] = px[i];
+            rgb[o + 1] = px[i + 1];
+            rgb[o + 2] = px[i + 2];
+        }
+        return new PngRaster(image.getWidth(), image.getHeight(), PngRaster.RGB, 8, rgb, null, null);
+    }
+
+    private PngRaster palette() {
+        int count = colors.length;
+        // Translucent entries first keep tRNS short; the stable sort keeps first-seen order otherwise
+        Integer[] order = new Integer[count];
+        for (int k = 0; k < count; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(colors[a] >>> 24, colors[b] >>> 24));
+        int[] palette = new int[count];
+        int[] indexOfSlot = new int[SLOTS];
+        for (int k = 0; k < count; k++) {
+            palette[k] = colors[order[k]];
+            indexOfSlot[find(palette[k])] = k;
+        }
+        byte[] px = image.getPixels();
+        int channels = image.getChannels();
+        byte[] indices = new byte[image.getWidth() * image.getHeight()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = (byte) indexOfSlot[find(argb(px, i, channels))];
+        }
+        return pack(new IndexedImage(image.getWidth(), image.getHeight(), indices, palette));
+    }
+
+    private int find(int argb) {
+        int slot = slot(argb);
+        while (!used[slot] || keys[slot] != argb) {
+            slot = (slot + 1) & (SLOTS - 1);
+        }
+        return slot;
+    }
+
+    /**
+     * Pack 8-bit samples below 2^depth into rows of {@code depth}-bit samples, in place
+     *
+     * Packed row y starts at y * stride, never after sample row y, so rows can be
+     * packed front to back over the input array.
+     */
+    private static byte[] pack(byte[] samples, int width, int height, int depth) {
+        if (depth == 8) {
+            return samples;
+        }
+        int stride = (width * depth + 7) / 8;
+        int perByte = 8 / depth;
+        for (int y = 0; y < height; y++) {
+            int in = y * width;
+            int out = y * stride;
+            for (int x = 0; x < width; x += perByte) {
+                int b = 0;
+                int n = Math.min(perByte, width - x);
+                for (int k = 0; k < n; k++) {
+                    b |= (samples[in + x + k] & 0xFF) << (8 - depth * (k + 1));
+                }
+                samples[out + x / perByte] = (byte) b;
+            }
+        }
+        return Arrays.copyOf(samples, stride * height);
+    }
+
+    private static int paletteDepth(int size) {
+        return size <= 2 ? 1 : size <= 4 ? 2 : size <= 16 ? 4 : 8;
+    }
+
+    private static int slot(int argb) {
+        return (argb * 0x9E3779B1) >>> 23;
+    }
+
+    private static long[] mask(int step) {
+        long[] mask = new long[4];
+        for (int v = 0; v < 256; v += step) {
+            mask[v >> 6] |= 1L << v;
+        }
+        return mask;
+    }
+
+    private static int argb(byte[] px, int i, int channels) {
+        switch (channels) {
+            case 1:
+                int g = px[i] & 0xFF;
+                return 0xFF000000 | g << 16 | g << 8 | g;
+            case 3:
+                return 0xFF000000 | (px[i * 3] & 0xFF) << 16 | (px[i * 3 + 1] & 0xFF) << 8 | (px[i * 3 + 2] & 0xFF);
+            default:
+                return (px[i * 4 + 3] & 0xFF) << 24 | (px[i * 4] & 0xFF) << 16
+                        | (px[i * 4 + 1] & 0xFF) << 8 | (px[i * 4 + 2] & 0xFF);
+        }
+    }
+}
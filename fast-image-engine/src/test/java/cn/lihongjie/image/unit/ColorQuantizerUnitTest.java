@@ -0,0 +1,119 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.ImageQuality;
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.png.ColorQuantizer;
+import cn.lihongjie.image.png.IndexedImage;
+import cn.lihongjie.image.png.PngEncoder;
+import cn.lihongjie.image.util.ImageFixtures;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the palette quantizer and the lossy PNG path
+ *
+ * These tests do not require the native library.
+ */
+public class ColorQuantizerUnitTest {
+
+    @Test
+    public void testFewColorsAreKeptExactly() throws IOException {
+        // Four colors, one of them fully transparent
+        int[] colors = {0xFFFF0000, 0xFF00FF00, 0x80336699, 0x00000000};
+        PixelImage source = PixelImage.allocate(40, 30, 4);
+        for (int i = 0; i < 40 * 30; i++) {
+            int argb = colors[(i % 40 / 10 + i / 40 / 15) % 4];
+            source.getPixels()[i * 4] = (byte) (argb >> 16);
+            source.getPixels()[i * 4 + 1] = (byte) (argb >> 8);
+            source.getPixels()[i * 4 + 2] = (byte) argb;
+            source.getPixels()[i * 4 + 3] = (byte) (argb >>> 24);
+        }
+
+        IndexedImage indexed = new ColorQuantizer(16).quantize(source);
+        byte[] png = new PngEncoder().encode(indexed);
+
+        assertEquals("Each distinct color should get one entry", 4, indexed.getPalette().length);
+        assertTrue("Translucent entries should come first", indexed.getPalette()[0] >>> 24 < 0xFF);
+        assertArrayEquals("Palette PNG should reproduce the pixels", source.getPixels(), ImageFixtures.imageIo(png).getPixels());
+    }
+
+    @Test
+    public void testPhotoQuality() throws IOException {
+        byte[] input = TestImageLoader.loadMediumPngImage();
+        PixelImage photo = ImageFixtures.imageIo(input);
+
+        IndexedImage indexed = ColorQuantizer.forQuality(60).quantize(photo);
+        byte[] png = new PngEncoder().encode(indexed);
+
+        assertEquals("Quality 60 should use 160 colors", 160, indexed.getPalette().length);
+        assertTrue("Palette PNG should be much smaller than the original: " + png.length, png.length < input.length / 3);
+        double psnr = ImageQuality.psnr(photo, ImageFixtures.imageIo(png));
+        assertTrue("Quantized photo PSNR too low: " + psnr, psnr > 30);
+    }
+
+    @Test
+    public void testParallelMatchesSequentialWithoutDithering() throws IOException {
+        PixelImage photo = ImageFixtures.imageIo(TestImageLoader.loadMediumPngImage());
+
+        IndexedImage sequential = new ColorQuantizer(64).quantize(photo);
+        IndexedImage parallel = new ColorQuantizer(64).withParallelism(6).quantize(photo);
+
+        assertArrayEquals("Palettes should match", sequential.getPalette(), parallel.getPalette());
+        assertArrayEquals("Indices should match", sequential.getIndices(), parallel.getIndices());
+    }
+
+    @Test
+    public void testDitheringKeepsAverageOfGradient() {
+        PixelImage gradient = PixelImage.allocate(256, 16, 1);
+        for (int i = 0; i < 256 * 16; i++) {
+            gradient.getPixels()[i] = (byte) (i % 256);
+        }
+
+        IndexedImage plain = new ColorQuantizer(4).quantize(gradient);
+        IndexedImage dithered = new ColorQuantizer(4).withDithering(true).quantize(gradient);
+
+        // Column averages of the dithered image follow the gradient much more closely
+        assertTrue("Dithering should reduce column-average error",
+                columnAverageError(dithered) < columnAverageError(plain) / 2);
+    }
+
+    @Test
+    public void testEngineCompressPng() throws IOException {
+        byte[] input = TestImageLoader.loadMediumPngImage();
+
+        byte[] lossy = JavaImageEngine.compress(input, 30);
+        byte[] lossless = JavaImageEngine.compressPngLossy(input, 100);
+
+        assertTrue("Output should be a PNG", TestImageLoader.isValidImageFormat(lossy, "PNG"));
+        assertTrue("Lossy PNG should be smaller", lossy.length < lossless.length / 3);
+        assertArrayEquals("Quality 100 should be lossless",
+                ImageFixtures.imageIo(input).getPixels(), ImageFixtures.imageIo(lossless).getPixels());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPaletteSize() {
+        new ColorQuantizer(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQuality() {
+        ColorQuantizer.forQuality(101);
+    }
+
+    private static double columnAverageError(IndexedImage image) {
+        double error = 0;
+        for (int x = 0; x < image.getWidth(); x++) {
+            double sum = 0;
+            for (int y = 0; y < image.getHeight(); y++) {
+                sum += image.getPalette()[image.getIndices()[y * image.getWidth() + x] & 0xFF] & 0xFF;
+            }
+            error += Math.abs(sum / image.getHeight() - x);
+        }
+        return error / image.getWidth();
+    }
+}
@@ -0,0 +1,126 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.CompressOptions;
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.GrayscaleDetector;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the grayscale JPEG fast path
+ *
+ * These tests do not require the native library; output is verified by decoding it with ImageIO.
+ */
+public class GrayscaleDetectorUnitTest {
+
+    @Test
+    public void testGrayRgbEncodesSingleComponent() throws IOException {
+        PixelImage image = createGray(96, 64, 3, 0);
+        GrayscaleDetector detector = new GrayscaleDetector();
+
+        byte[] gray = new JpegEncoder(85).withGrayscaleDetector(detector).encode(image);
+        byte[] color = new JpegEncoder(85).encode(image);
+
+        assertEquals(1, components(gray));
+        assertEquals(3, components(color));
+        assertTrue("Gray JPEG should be smaller: " + gray.length + " vs " + color.length, gray.length < color.length);
+        assertEquals(1, detector.getChecks());
+        assertEquals(1, detector.getDetections());
+    }
+
+    @Test
+    public void testColorPhotoIsRejected() throws IOException {
+        PixelImage photo = JavaImageEngine.decode(TestImageLoader.loadSmallJpegImage());
+        GrayscaleDetector detector = new GrayscaleDetector(10);
+
+        assertFalse(detector.isGrayscale(photo));
+        assertEquals(1, detector.getChecks());
+        assertEquals(0, detector.getDetections());
+    }
+
+    @Test
+    public void testToleranceThreshold() {
+        // Red raised by 4 gives Cr = 2 and Cb = -1
+        PixelImage tinted = createGray(50, 50, 4, 4);
+
+        assertFalse(new GrayscaleDetector(0).isGrayscale(tinted));
+        assertFalse(new GrayscaleDetector(1).isGrayscale(tinted));
+        assertTrue(new GrayscaleDetector(2).isGrayscale(tinted));
+    }
+
+    @Test
+    public void testSingleColoredPixelFailsConfirmation() {
+        // One pixel off the sampling grid: the sample pass passes, the full scan must reject
+        PixelImage image = createGray(512, 512, 3, 0);
+        int p = (5 * 512 + 3) * 3;
+        image.getPixels()[p] = (byte) 255;
+        image.getPixels()[p + 1] = 0;
+        GrayscaleDetector detector = new GrayscaleDetector();
+
+        assertFalse(detector.isGrayscale(image));
+        assertEquals(0, detector.getDetections());
+    }
+
+    @Test
+    public void testCompressJpegUsesFastPath() throws IOException {
+        byte[] input = new JpegEncoder(95).encode(createGray(200, 120, 3, 0));
+        long before = JavaImageEngine.getGrayscaleDetector().getDetections();
+
+        byte[] output = JavaImageEngine.compressJpeg(input, 75);
+
+        assertEquals("Decoded gray JPEG should take the fast path", 1, components(output));
+        assertTrue(JavaImageEngine.getGrayscaleDetector().getDetections() > before);
+        assertEquals(3, components(JavaImageEngine.compressJpeg(input, 75, 1, null)));
+    }
+
+    @Test
+    public void testCompressOptionsSelectDetector() throws IOException {
+        byte[] gray = new JpegEncoder(95).encode(createGray(200, 120, 3, 0));
+        // Red raised by 16 puts Cr near 8, outside the default tolerance
+        byte[] tinted = new JpegEncoder(95).encode(createGray(200, 120, 3, 16));
+        CompressOptions options = new CompressOptions();
+
+        assertEquals(1, components(JavaImageEngine.compress(gray, options)));
+        assertEquals(3, components(JavaImageEngine.compress(gray, options.withGrayscaleDetector(null))));
+        assertEquals(3, components(JavaImageEngine.compress(tinted, options)));
+        assertEquals(1, components(JavaImageEngine.compress(tinted,
+                options.withGrayscaleDetector(new GrayscaleDetector(20)))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTolerance() {
+        new GrayscaleDetector(128);
+    }
+
+    private static int components(byte[] jpeg) throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        return decoded.getColorModel().getNumComponents();
+    }
+
+    /**
+     * Smooth gray pattern with {@code redOffset} added to the red channel
+     */
+    private static PixelImage createGray(int width, int height, int channels, int redOffset) {
+        PixelImage image = PixelImage.allocate(width, height, channels);
+        byte[] pixels = image.getPixels();
+        for (int i = 0; i < width * height; i++) {
+            int v = 40 + ((i % width) + (i / width)) * 150 / (width + height);
+            pixels[i * channels] = (byte) (v + redOffset);
+            pixels[i * channels + 1] = (byte) v;
+            pixels[i * channels + 2] = (byte) v;
+            if (channels == 4) {
+                pixels[i * channels + 3] = (byte) 255;
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,137 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.ImageOps;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the pure-Java rotate/resize operations and the engine paths built on them
+ *
+ * These tests do not require the native library.
+ */
+public class ImageOpsUnitTest {
+
+    @Test
+    public void testRotateMovesPixels() {
+        // 3x2 RGB image, each pixel's red channel is its index
+        PixelImage image = PixelImage.allocate(3, 2, 3);
+        for (int i = 0; i < 6; i++) {
+            image.getPixels()[i * 3] = (byte) i;
+        }
+
+        PixelImage r90 = ImageOps.rotate(image, 90);
+        PixelImage r180 = ImageOps.rotate(image, 180);
+        PixelImage r270 = ImageOps.rotate(image, 270);
+
+        assertEquals("90 degrees should swap width and height", 2, r90.getWidth());
+        // Original rows: [0 1 2] [3 4 5]
+        assertArrayEquals(new int[]{3, 0, 4, 1, 5, 2}, reds(r90));
+        assertArrayEquals(new int[]{5, 4, 3, 2, 1, 0}, reds(r180));
+        assertArrayEquals(new int[]{2, 5, 1, 4, 0, 3}, reds(r270));
+    }
+
+    @Test
+    public void testFourQuarterTurnsIsIdentity() {
+        PixelImage image = PixelImage.allocate(5, 3, 4);
+        for (int i = 0; i < image.getPixels().length; i++) {
+            image.getPixels()[i] = (byte) (i * 11);
+        }
+
+        PixelImage turned = image;
+        for (int i = 0; i < 4; i++) {
+            turned = ImageOps.rotate(turned, 90);
+        }
+
+        assertArrayEquals("Four rotations should restore the image", image.getPixels(), turned.getPixels());
+    }
+
+    @Test
+    public void testResizeKeepsFlatColor() {
+        PixelImage image = PixelImage.allocate(40, 30, 3);
+        for (int i = 0; i < image.getPixels().length; i += 3) {
+            image.getPixels()[i] = (byte) 200;
+            image.getPixels()[i + 1] = 100;
+            image.getPixels()[i + 2] = 50;
+        }
+
+        for (int[] size : new int[][]{{13, 7}, {40, 30}, {97, 61}}) {
+            PixelImage resized = ImageOps.resize(image, size[0], size[1]);
+
+            assertEquals(size[0], resized.getWidth());
+            assertEquals(size[1], resized.getHeight());
+            for (int i = 0; i < resized.getPixels().length; i += 3) {
+                assertEquals("Red should be preserved", 200, resized.getPixels()[i] & 0xFF);
+                assertEquals("Green should be preserved", 100, resized.getPixels()[i + 1] & 0xFF);
+                assertEquals("Blue should be preserved", 50, resized.getPixels()[i + 2] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void testDownscaleAveragesCheckerboard() {
+        PixelImage image = PixelImage.allocate(64, 64, 1);
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) {
+                image.getPixels()[y * 64 + x] = (byte) (((x + y) & 1) == 0 ? 255 : 0);
+            }
+        }
+
+        PixelImage resized = ImageOps.resize(image, 8, 8);
+
+        for (byte value : resized.getPixels()) {
+            assertEquals("Downscaling should average, not alias", 128, value & 0xFF, 2);
+        }
+    }
+
+    @Test
+    public void testEngineRotateJpeg() throws IOException {
+        byte[] result = JavaImageEngine.rotate(TestImageLoader.loadSmallJpegImage(), 90);
+
+        assertTrue("JPEG input should give JPEG output", TestImageLoader.isValidImageFormat(result, "JPEG"));
+        BufferedImage rotated = ImageIO.read(new ByteArrayInputStream(result));
+        assertEquals("Width should become the original height", 2265, rotated.getWidth());
+        assertEquals("Height should become the original width", 3400, rotated.getHeight());
+    }
+
+    @Test
+    public void testEngineResizePng() throws IOException {
+        byte[] result = JavaImageEngine.resize(TestImageLoader.loadMediumPngImage(), 300, 200);
+
+        assertTrue("PNG input should give PNG output", TestImageLoader.isValidImageFormat(result, "PNG"));
+        BufferedImage resized = ImageIO.read(new ByteArrayInputStream(result));
+        assertEquals(300, resized.getWidth());
+        assertEquals(200, resized.getHeight());
+    }
+
+    @Test
+    public void testEngineResizeJpegThumbnail() throws IOException {
+        byte[] result = JavaImageEngine.resize(TestImageLoader.loadSmallJpegImage(), 256, 171);
+
+        assertTrue("JPEG input should give JPEG output", TestImageLoader.isValidImageFormat(result, "JPEG"));
+        BufferedImage resized = ImageIO.read(new ByteArrayInputStream(result));
+        assertEquals(256, resized.getWidth());
+        assertEquals(171, resized.getHeight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAngle() {
+        ImageOps.rotate(PixelImage.allocate(2, 2, 1), 45);
+    }
+
+    private static int[] reds(PixelImage image) {
+        int[] reds = new int[image.getWidth() * image.getHeight()];
+        for (int i = 0; i < reds.length; i++) {
+            reds[i] = image.getPixels()[i * 3] & 0xFF;
+        }
+        return reds;
+    }
+}
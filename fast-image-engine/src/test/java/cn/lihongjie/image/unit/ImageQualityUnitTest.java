@@ -0,0 +1,79 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.ImageQuality;
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.JpegDecoder;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import cn.lihongjie.image.util.ImageFixtures;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the image quality metrics
+ */
+public class ImageQualityUnitTest {
+
+    @Test
+    public void testIdenticalImages() {
+        PixelImage photo = ImageFixtures.gradient(64, 48, 3);
+
+        assertEquals(Double.POSITIVE_INFINITY, ImageQuality.psnr(photo, photo), 0);
+        assertEquals(1, ImageQuality.ssim(photo, photo), 1e-12);
+    }
+
+    @Test
+    public void testKnownPsnr() {
+        PixelImage gray = new PixelImage(16, 16, 1, new byte[256]);
+        byte[] shifted = new byte[256];
+        Arrays.fill(shifted, (byte) 10);
+
+        // MSE 100: 10 * log10(65025 / 100)
+        assertEquals(28.1308, ImageQuality.psnr(gray, new PixelImage(16, 16, 1, shifted)), 1e-4);
+    }
+
+    @Test
+    public void testMetricsDropWithQuality() {
+        PixelImage photo = new JpegDecoder().withScale(8).decode(TestImageLoader.loadSmallJpegImage());
+        PixelImage high = JavaImageEngine.decode(new JpegEncoder(90).encode(photo));
+        PixelImage low = JavaImageEngine.decode(new JpegEncoder(20).encode(photo));
+
+        double psnrHigh = ImageQuality.psnr(photo, high);
+        double ssimHigh = ImageQuality.ssim(photo, high);
+        assertTrue("q90 PSNR " + psnrHigh, psnrHigh > 30);
+        assertTrue("q90 SSIM " + ssimHigh, ssimHigh > 0.9 && ssimHigh < 1);
+        assertTrue(ImageQuality.psnr(photo, low) < psnrHigh);
+        assertTrue(ImageQuality.ssim(photo, low) < ssimHigh);
+    }
+
+    @Test
+    public void testSsimIsStructural() {
+        // Same mean error: a uniform shift keeps structure, noise destroys it
+        PixelImage photo = ImageFixtures.gradient(64, 64, 3);
+        byte[] original = photo.getPixels();
+        byte[] shifted = new byte[original.length];
+        byte[] noisy = new byte[original.length];
+        Random random = new Random(5);
+        for (int i = 0; i < original.length; i++) {
+            int value = original[i] & 0xFF;
+            shifted[i] = (byte) Math.min(255, Math.max(0, value + (value < 128 ? 8 : -8)));
+            noisy[i] = (byte) Math.min(255, Math.max(0, value + (random.nextBoolean() ? 8 : -8)));
+        }
+        int channels = photo.getChannels();
+
+        double shiftedSsim = ImageQuality.ssim(photo, new PixelImage(64, 64, channels, shifted));
+        double noisySsim = ImageQuality.ssim(photo, new PixelImage(64, 64, channels, noisy));
+
+        assertTrue(shiftedSsim + " vs " + noisySsim, shiftedSsim > noisySsim);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDimensionMismatch() {
+        ImageQuality.ssim(PixelImage.allocate(8, 8, 3), PixelImage.allocate(8, 9, 3));
+    }
+}
@@ -0,0 +1,247 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.JpegDecoder;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import cn.lihongjie.image.jpeg.JpegLosslessOptimizer;
+import cn.lihongjie.image.util.ImageFixtures;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the pure-Java JPEG decoder
+ *
+ * ImageIO uses libjpeg's accurate IDCT and fancy upsampling, so its output is the reference.
+ * These tests do not require the native library.
+ */
+public class JpegDecoderUnitTest {
+
+    @Test
+    public void testProgressiveMatchesImageIO() throws IOException {
+        byte[] jpeg = TestImageLoader.loadSmallJpegImage();
+
+        PixelImage decoded = new JpegDecoder().decode(jpeg);
+
+        assertEquals("Width should match", 3400, decoded.getWidth());
+        assertEquals("Height should match", 2265, decoded.getHeight());
+        assertArrayEquals("Pixels should match ImageIO", ImageFixtures.imageIo(jpeg).getPixels(), decoded.getPixels());
+    }
+
+    @Test
+    public void testAllSubsamplingModesMatchImageIO() throws IOException {
+        PixelImage source = ImageFixtures.pattern(77, 45, 3);
+        for (ChromaSubsampling subsampling : ChromaSubsampling.values()) {
+            byte[] jpeg = new JpegEncoder(85, subsampling, false).encode(source);
+
+            assertArrayEquals(subsampling + " pixels should match ImageIO",
+                    ImageFixtures.imageIo(jpeg).getPixels(), new JpegDecoder().decode(jpeg).getPixels());
+        }
+    }
+
+    @Test
+    public void testGrayImage() throws IOException {
+        byte[] jpeg = new JpegEncoder(80).encode(ImageFixtures.pattern(30, 21, 1));
+
+        PixelImage decoded = new JpegDecoder().decode(jpeg);
+
+        assertEquals("Gray JPEG should decode to one channel", 1, decoded.getChannels());
+        assertArrayEquals("Pixels should match ImageIO", ImageFixtures.imageIo(jpeg).getPixels(), decoded.getPixels());
+    }
+
+    @Test
+    public void testRestartSegmentsDecodeInParallel() throws IOException {
+        PixelImage source = new JpegDecoder().decode(TestImageLoader.loadMediumJpegImage());
+        // The parallel encoder writes DRI and RSTn markers between its bands
+        byte[] jpeg = new JpegEncoder(80).withParallelism(13).encode(source);
+
+        PixelImage sequential = new JpegDecoder().decode(jpeg);
+        PixelImage parallel = new JpegDecoder().withParallelism(4).decode(jpeg);
+
+        assertArrayEquals("Parallel decoding should give the same pixels", sequential.getPixels(), parallel.getPixels());
+    }
+
+    @Test
+    public void testWithoutRestartMarkersParallelIsIdentical() throws IOException {
+        byte[] jpeg = TestImageLoader.loadMediumJpegImage();
+
+        assertArrayEquals("Band-parallel reconstruction should give the same pixels",
+                new JpegDecoder().decode(jpeg).getPixels(),
+                new JpegDecoder().withParallelism(7).decode(jpeg).getPixels());
+    }
+
+    @Test
+    public void testScaledDecodeApproximatesBoxAverage() throws IOException {
+        byte[] jpeg = TestImageLoader.loadSmallJpegImage();
+        PixelImage full = new JpegDecoder().decode(jpeg);
+        for (int scale : new int[]{2, 4, 8}) {
+            PixelImage scaled = new JpegDecoder().withScale(scale).decode(jpeg);
+
+            assertEquals("Width should be rounded up", (3400 + scale - 1) / scale, scaled.getWidth());
+            assertEquals("Height should be rounded up", (2265 + scale - 1) / scale, scaled.getHeight());
+            double psnr = psnrAgainstBoxAverage(full, scaled, scale);
+            assertTrue("1/" + scale + " decode PSNR too low: " + psnr, psnr > 35);
+        }
+    }
+
+    @Test
+    public void testDecodeAtLeastPicksSmallestCoveringScale() throws IOException {
+        byte[] jpeg = TestImageLoader.loadMediumJpegImage();
+
+        PixelImage preview = new JpegDecoder().decodeAtLeast(jpeg, 256, 256);
+        PixelImage half = new JpegDecoder().decodeAtLeast(jpeg, 1000, 1500);
+
+        assertEquals("256px target on 3024x4032 should use 1/8", 378, preview.getWidth());
+        assertEquals("1000x1500 target should use 1/2", 1512, half.getWidth());
+        assertEquals(8, JpegDecoder.scaleFor(3024, 4032, 378, 504));
+        assertEquals(4, JpegDecoder.scaleFor(3024, 4032, 379, 504));
+        assertEquals(1, JpegDecoder.scaleFor(3024, 4032, 3000, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidScale() {
+        new JpegDecoder().withScale(3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotAJpeg() throws IOException {
+        new JpegDecoder().decode(TestImageLoader.loadMediumPngImage());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOverfullHuffmanTableIsCorrupt() {
+        // Three codes of length 1 do not fit into the code space
+        new JpegDecoder().decode(handBuiltJpeg(new int[]{1, 1}, new int[]{0},
+                new int[]{3, 0}, new int[]{0xF0, 0xF1, 0x00}, new int[]{0x3F}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAcRunPastEndOfBlockIsCorrupt() {
+        // DC 0, three ZRLs reach k = 49, then run 15 ends past coefficient 63
+        new JpegDecoder().decode(handBuiltJpeg(new int[]{1, 1}, new int[]{0},
+                new int[]{1, 1}, new int[]{0xF0, 0xF1}, new int[]{0x0B}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testComponentWithoutScanIsCorrupt() {
+        new JpegDecoder().decode(handBuiltJpeg(new int[]{1, 1, 1, 1, 1, 1}, new int[]{0},
+                new int[]{1}, new int[]{0x00}, new int[]{0x3F}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOptimizerRejectsComponentWithoutScan() {
+        JpegLosslessOptimizer.optimize(handBuiltJpeg(new int[]{1, 1, 1, 1, 1, 1}, new int[]{0},
+                new int[]{1}, new int[]{0x00}, new int[]{0x3F}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIndivisibleSamplingFactorsAreRejected() {
+        // Luma 3x1 over chroma 2x1: seven blocks of DC 0 and EOB in a single 24x8 MCU
+        new JpegDecoder().decode(handBuiltJpeg(new int[]{3, 1, 2, 1, 2, 1}, new int[]{0, 1, 2},
+                new int[]{1}, new int[]{0x00}, new int[]{0x00, 0x03}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new JpegDecoder().withParallelism(0);
+    }
+
+    /**
+     * Builds a baseline JPEG with a flat quantization table, a DC table holding only
+     * category 0 (code {@code 0}) and the given AC table shared by all components
+     *
+     * @param sampling Horizontal and vertical sampling factor of every frame component
+     * @param scanComponents Indexes of the frame components in the single scan
+     */
+    private static byte[] handBuiltJpeg(int[] sampling, int[] scanComponents,
+                                        int[] acCounts, int[] acSymbols, int[] entropy) {
+        int components = sampling.length / 2;
+        int hMax = 0;
+        int vMax = 0;
+        for (int i = 0; i < components; i++) {
+            hMax = Math.max(hMax, sampling[2 * i]);
+            vMax = Math.max(vMax, sampling[2 * i + 1]);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+
+        int[] dqt = new int[65];
+        Arrays.fill(dqt, 1, 65, 1);
+        writeSegment(out, 0xDB, dqt);
+
+        int[] sof = new int[6 + components * 3];
+        sof[0] = 8;
+        sof[2] = 8 * vMax;
+        sof[4] = 8 * hMax;
+        sof[5] = components;
+        for (int i = 0; i < components; i++) {
+            sof[6 + i * 3] = i + 1;
+            sof[7 + i * 3] = sampling[2 * i] << 4 | sampling[2 * i + 1];
+        }
+        writeSegment(out, 0xC0, sof);
+
+        int[] dcTable = new int[18];
+        dcTable[1] = 1;
+        writeSegment(out, 0xC4, dcTable);
+        int[] acTable = new int[17 + acSymbols.length];
+        acTable[0] = 0x10;
+        System.arraycopy(acCounts, 0, acTable, 1, acCounts.length);
+        System.arraycopy(acSymbols, 0, acTable, 17, acSymbols.length);
+        writeSegment(out, 0xC4, acTable);
+
+        int[] sos = new int[4 + scanComponents.length * 2];
+        sos[0] = scanComponents.length;
+        for (int i = 0; i < scanComponents.length; i++) {
+            sos[1 + i * 2] = scanComponents[i] + 1;
+        }
+        sos[sos.length - 2] = 63;
+        writeSegment(out, 0xDA, sos);
+        for (int b : entropy) {
+            out.write(b);
+        }
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, int[] payload) {
+        out.write(0xFF);
+        out.write(marker);
+        out.write((payload.length + 2) >> 8);
+        out.write(payload.length + 2);
+        for (int b : payload) {
+            out.write(b);
+        }
+    }
+
+    private static double psnrAgainstBoxAverage(PixelImage full, PixelImage scaled, int scale) {
+        int ch = full.getChannels();
+        double sum = 0;
+        long count = 0;
+        for (int y = 0; y < scaled.getHeight(); y++) {
+            for (int x = 0; x < scaled.getWidth(); x++) {
+                for (int c = 0; c < ch; c++) {
+                    int total = 0;
+                    int n = 0;
+                    for (int sy = y * scale; sy < Math.min((y + 1) * scale, full.getHeight()); sy++) {
+                        for (int sx = x * scale; sx < Math.min((x + 1) * scale, full.getWidth()); sx++) {
+                            total += full.getPixels()[(sy * full.getWidth() + sx) * ch + c] & 0xFF;
+                            n++;
+                        }
+                    }
+                    int d = total / n - (scaled.getPixels()[(y * scaled.getWidth() + x) * ch + c] & 0xFF);
+                    sum += d * d;
+                    count++;
+                }
+            }
+        }
+        return 10 * Math.log10(255.0 * 255.0 / (sum / count));
+    }
+}
@@ -0,0 +1,170 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.ImageQuality;
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import cn.lihongjie.image.util.ImageFixtures;
+import cn.lihongjie.image.util.JpegMarkers;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the pure-Java JPEG encoder
+ *
+ * These tests do not require the native library; output is verified by decoding it with ImageIO.
+ */
+public class JpegEncoderUnitTest {
+
+    @Test
+    public void testRoundTripAllSubsamplingModes() throws IOException {
+        // Odd dimensions exercise the edge replication into partial MCUs
+        PixelImage image = ImageFixtures.gradient(61, 37, 3);
+        for (ChromaSubsampling subsampling : ChromaSubsampling.values()) {
+            byte[] jpeg = new JpegEncoder(90, subsampling, false).encode(image);
+
+            assertTrue("Output should be a JPEG", TestImageLoader.isValidImageFormat(jpeg, "JPEG"));
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+            assertNotNull(subsampling + " output should decode", decoded);
+            assertEquals("Width should be preserved", 61, decoded.getWidth());
+            assertEquals("Height should be preserved", 37, decoded.getHeight());
+            double psnr = ImageQuality.psnr(image, PixelImage.fromBufferedImage(decoded));
+            assertTrue(subsampling + " PSNR too low: " + psnr, psnr > 35);
+        }
+    }
+
+    @Test
+    public void testGrayImageProducesSingleComponent() throws IOException {
+        PixelImage image = ImageFixtures.gradient(40, 24, 1);
+
+        byte[] jpeg = new JpegEncoder(85).encode(image);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertEquals("Gray input should stay gray", 1, decoded.getColorModel().getNumComponents());
+    }
+
+    @Test
+    public void testAlphaIsIgnored() throws IOException {
+        PixelImage image = ImageFixtures.gradient(32, 32, 4);
+
+        byte[] jpeg = new JpegEncoder(85).encode(image);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertEquals("RGBA input should encode as three components", 3, decoded.getColorModel().getNumComponents());
+    }
+
+    @Test
+    public void testOptimizedHuffmanIsSmallerAndIdentical() throws IOException {
+        PixelImage image = JavaImageEngine.decode(TestImageLoader.loadSmallJpegImage());
+
+        byte[] standard = new JpegEncoder(75, ChromaSubsampling.YUV420, false).encode(image);
+        byte[] optimized = new JpegEncoder(75, ChromaSubsampling.YUV420, true).encode(image);
+
+        assertTrue("Optimized tables should shrink output", optimized.length < standard.length);
+        BufferedImage a = ImageIO.read(new ByteArrayInputStream(standard));
+        BufferedImage b = ImageIO.read(new ByteArrayInputStream(optimized));
+        for (int y = 0; y < a.getHeight(); y += 97) {
+            for (int x = 0; x < a.getWidth(); x += 89) {
+                assertEquals("Huffman tables must not change pixels", a.getRGB(x, y), b.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testQualityControlsSize() {
+        PixelImage image = ImageFixtures.gradient(128, 96, 3);
+
+        int low = new JpegEncoder(20).encode(image).length;
+        int high = new JpegEncoder(95).encode(image).length;
+
+        assertTrue("Higher quality should produce a larger file", high > low);
+    }
+
+    @Test
+    public void testOutputIsDeterministic() {
+        PixelImage image = ImageFixtures.gradient(50, 50, 3);
+        JpegEncoder encoder = new JpegEncoder(75);
+
+        assertArrayEquals("Encoding the same image twice should give the same bytes",
+                encoder.encode(image), encoder.encode(image));
+    }
+
+    @Test
+    public void testCompressJpegFromEncodedImage() throws IOException {
+        byte[] result = JavaImageEngine.compressJpeg(TestImageLoader.loadMediumPngImage(), 70);
+
+        assertTrue("Output should be a JPEG", TestImageLoader.isValidImageFormat(result, "JPEG"));
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(result));
+        assertEquals("Width should be preserved", 1800, decoded.getWidth());
+    }
+
+    @Test
+    public void testParallelBandsDecodeToSamePixels() throws IOException {
+        PixelImage image = JavaImageEngine.decode(TestImageLoader.loadSmallJpegImage());
+        for (boolean optimize : new boolean[]{false, true}) {
+            JpegEncoder encoder = new JpegEncoder(75, ChromaSubsampling.YUV420, optimize);
+            PixelImage expected = JavaImageEngine.decode(encoder.encode(image));
+            for (int parallelism : new int[]{2, 3, 8}) {
+                byte[] jpeg = encoder.withParallelism(parallelism).encode(image);
+
+                assertTrue("Parallel output should carry a DRI segment", JpegMarkers.containsMarker(jpeg, 0xDD));
+                assertArrayEquals("Parallelism " + parallelism + " should not change pixels",
+                        expected.getPixels(), JavaImageEngine.decode(jpeg).getPixels());
+            }
+        }
+    }
+
+    @Test
+    public void testParallelismAboveRowCount() {
+        // 20 pixels high is two 4:2:0 MCU rows, fewer than the requested bands
+        PixelImage image = ImageFixtures.gradient(45, 20, 3);
+
+        byte[] jpeg = new JpegEncoder(80).withParallelism(16).encode(image);
+
+        assertArrayEquals("Extra parallelism should fall back to one band per MCU row",
+                JavaImageEngine.decode(new JpegEncoder(80).encode(image)).getPixels(),
+                JavaImageEngine.decode(jpeg).getPixels());
+    }
+
+    @Test
+    public void testRestartIntervalDecodesToSamePixels() throws IOException {
+        PixelImage image = JavaImageEngine.decode(TestImageLoader.loadSmallJpegImage());
+        for (boolean optimize : new boolean[]{false, true}) {
+            JpegEncoder encoder = new JpegEncoder(75, ChromaSubsampling.YUV420, optimize);
+            PixelImage expected = JavaImageEngine.decode(encoder.encode(image));
+            for (int parallelism : new int[]{1, 3}) {
+                byte[] jpeg = encoder.withRestartInterval(2).withParallelism(parallelism).encode(image);
+
+                assertTrue("Output should carry a DRI segment", JpegMarkers.containsMarker(jpeg, 0xDD));
+                // 700K.jpg is 142 MCU rows of 4:2:0, one RST between every two rows
+                assertEquals("One RST marker every two MCU rows", 70, JpegMarkers.countRestartMarkers(jpeg));
+                assertArrayEquals("Restart markers should not change pixels",
+                        expected.getPixels(), JavaImageEngine.decode(jpeg).getPixels());
+                assertNotNull(ImageIO.read(new ByteArrayInputStream(jpeg)));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRestartInterval() {
+        new JpegEncoder(75).withRestartInterval(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new JpegEncoder(75).withParallelism(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQuality() {
+        new JpegEncoder(101);
+    }
+}
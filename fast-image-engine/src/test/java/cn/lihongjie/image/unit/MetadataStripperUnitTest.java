@@ -0,0 +1,213 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.metadata.ExifOrientation;
+import cn.lihongjie.image.metadata.MetadataPolicy;
+import cn.lihongjie.image.metadata.MetadataStripper;
+import cn.lihongjie.image.metadata.MetadataType;
+import cn.lihongjie.image.metadata.Segment;
+import cn.lihongjie.image.metadata.SegmentScanner;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the zero-copy segment scanner and metadata stripper
+ *
+ * These tests do not require the native library.
+ */
+public class MetadataStripperUnitTest {
+
+    @Test
+    public void testJpegScanClassifiesSegments() throws Exception {
+        byte[] jpeg = withMetadata(createJpeg(), 6);
+
+        List<Segment> segments = SegmentScanner.scan(ByteBuffer.wrap(jpeg));
+
+        assertEquals("First segment should be SOI", "SOI", segments.get(0).getName());
+        assertEquals("Last segment should be the scan", "SOS", segments.get(segments.size() - 1).getName());
+        assertTrue("EXIF should be detected", hasType(segments, MetadataType.EXIF));
+        assertTrue("ICC should be detected", hasType(segments, MetadataType.ICC));
+        assertTrue("Comment should be detected", hasType(segments, MetadataType.COMMENT));
+        int covered = 0;
+        for (Segment segment : segments) {
+            assertEquals("Segments should be contiguous", covered, segment.getOffset());
+            covered += segment.getLength();
+        }
+        assertEquals("Segments should cover the whole file", jpeg.length, covered);
+    }
+
+    @Test
+    public void testKeepIccDropExifExceptOrientation() throws Exception {
+        byte[] jpeg = withMetadata(createJpeg(), 6);
+        MetadataPolicy policy = MetadataPolicy.keeping(MetadataType.ICC).withExifOrientation();
+
+        byte[] stripped = MetadataStripper.strip(jpeg, policy);
+
+        assertTrue("ICC should be kept", contains(stripped, "ICC_PROFILE"));
+        assertFalse("Maker notes should be dropped", contains(stripped, "fake maker notes"));
+        assertFalse("Comment should be dropped", contains(stripped, "test comment"));
+        assertEquals("Orientation should survive", 6, orientationOf(stripped));
+        assertSamePixels(jpeg, stripped);
+    }
+
+    @Test
+    public void testDefaultOrientationIsNotRewritten() throws Exception {
+        byte[] jpeg = withMetadata(createJpeg(), 1);
+
+        byte[] stripped = MetadataStripper.strip(jpeg, MetadataPolicy.STRIP_SAFE);
+
+        assertFalse("EXIF without a rotation should be dropped entirely", contains(stripped, "Exif"));
+    }
+
+    @Test
+    public void testSlicesShareTheOriginalBuffer() throws Exception {
+        byte[] jpeg = withMetadata(createJpeg(), 6);
+
+        ByteBuffer[] parts = MetadataStripper.strip(ByteBuffer.wrap(jpeg), MetadataPolicy.STRIP_ALL);
+        ByteBuffer scan = parts[parts.length - 1];
+        byte before = scan.get(scan.limit() - 1);
+        jpeg[jpeg.length - 1] = (byte) (before + 1);
+
+        assertEquals("Slices should be views of the input, not copies", (byte) (before + 1), scan.get(scan.limit() - 1));
+        assertTrue("Slices should be read-only", scan.isReadOnly());
+    }
+
+    @Test
+    public void testGatheringWriteMatchesArrayOutput() throws Exception {
+        byte[] jpeg = withMetadata(createJpeg(), 3);
+        MetadataPolicy policy = MetadataPolicy.STRIP_SAFE;
+        Path target = Files.createTempFile("stripped", ".jpg");
+        try {
+            long written;
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                written = MetadataStripper.write(ByteBuffer.wrap(jpeg), policy, channel);
+            }
+            byte[] fromChannel = Files.readAllBytes(target);
+            assertEquals("Reported byte count should match file size", fromChannel.length, written);
+            assertArrayEquals("Channel output should equal array output",
+                    MetadataStripper.strip(jpeg, policy), fromChannel);
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Test
+    public void testPngChunksAreStripped() throws Exception {
+        byte[] png = TestImageLoader.loadMediumPngImage();
+
+        byte[] safe = MetadataStripper.strip(png, MetadataPolicy.STRIP_SAFE);
+        byte[] all = MetadataStripper.strip(png, MetadataPolicy.STRIP_ALL);
+
+        assertTrue("iCCP should be kept by the safe policy", contains(safe, "iCCP"));
+        assertFalse("tIME should be dropped", contains(safe, "tIME"));
+        assertFalse("iCCP should be dropped by STRIP_ALL", contains(all, "iCCP"));
+        assertTrue("Stripped PNG should be smaller", all.length < png.length);
+        assertTrue("Stripped PNG should stay valid", TestImageLoader.isValidImageFormat(all, "PNG"));
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(all));
+        assertNotNull("Stripped PNG should decode", image);
+        assertEquals("Width should be unchanged", 1800, image.getWidth());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFormatIsRejected() {
+        MetadataStripper.strip(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, MetadataPolicy.STRIP_ALL);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedSegmentIsRejected() throws Exception {
+        byte[] jpeg = withMetadata(createJpeg(), 6);
+        byte[] truncated = new byte[30];
+        System.arraycopy(jpeg, 0, truncated, 0, truncated.length);
+        MetadataStripper.strip(truncated, MetadataPolicy.STRIP_ALL);
+    }
+
+    private static byte[] createJpeg() throws IOException {
+        BufferedImage image = new BufferedImage(48, 32, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 32; y++) {
+            for (int x = 0; x < 48; x++) {
+                image.setRGB(x, y, (x * 5 << 16) | (y * 7 << 8) | 0x40);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Insert EXIF (with the given orientation), an ICC-like APP2 and a COM segment after SOI
+     */
+    private static byte[] withMetadata(byte[] jpeg, int orientation) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        ByteArrayOutputStream exif = new ByteArrayOutputStream();
+        exif.write(new byte[]{'E', 'x', 'i', 'f', 0, 0}, 0, 6);
+        // Little-endian TIFF with two IFD0 entries: Make and Orientation
+        exif.write(new byte[]{'I', 'I', 42, 0, 8, 0, 0, 0, 2, 0}, 0, 10);
+        exif.write(new byte[]{0x0F, 0x01, 2, 0, 4, 0, 0, 0, 'A', 'C', 'M', 0}, 0, 12);
+        exif.write(new byte[]{0x12, 0x01, 3, 0, 1, 0, 0, 0, (byte) orientation, 0, 0, 0}, 0, 12);
+        exif.write(new byte[]{0, 0, 0, 0}, 0, 4);
+        byte[] notes = "fake maker notes".getBytes(StandardCharsets.ISO_8859_1);
+        exif.write(notes, 0, notes.length);
+        writeSegment(out, 0xE1, exif.toByteArray());
+        writeSegment(out, 0xE2, "ICC_PROFILE\0\1\1fake profile".getBytes(StandardCharsets.ISO_8859_1));
+        writeSegment(out, 0xFE, "test comment".getBytes(StandardCharsets.ISO_8859_1));
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, byte[] payload) {
+        out.write(0xFF);
+        out.write(marker);
+        out.write((payload.length + 2) >> 8);
+        out.write(payload.length + 2);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static int orientationOf(byte[] jpeg) {
+        for (Segment segment : SegmentScanner.scan(ByteBuffer.wrap(jpeg))) {
+            if (segment.getType() == MetadataType.EXIF) {
+                return ExifOrientation.read(ByteBuffer.wrap(jpeg), segment.getOffset() + 10, segment.getLength() - 10);
+            }
+        }
+        return 0;
+    }
+
+    private static boolean hasType(List<Segment> segments, MetadataType type) {
+        for (Segment segment : segments) {
+            if (segment.getType() == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(byte[] data, String text) {
+        return new String(data, StandardCharsets.ISO_8859_1).contains(text);
+    }
+
+    private static void assertSamePixels(byte[] expected, byte[] actual) throws IOException {
+        BufferedImage a = ImageIO.read(new ByteArrayInputStream(expected));
+        BufferedImage b = ImageIO.read(new ByteArrayInputStream(actual));
+        assertEquals("Width should match", a.getWidth(), b.getWidth());
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                assertEquals("Pixel mismatch at " + x + "," + y, a.getRGB(x, y), b.getRGB(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.BlurHash;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.engine.Placeholder;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for BlurHash and placeholder generation
+ *
+ * These tests do not require the native library.
+ */
+public class PlaceholderUnitTest {
+
+    private static final String BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    @Test
+    public void testBlurHashOfFlatColor() {
+        PixelImage image = fill(PixelImage.allocate(20, 10, 3), 0x336699);
+
+        String hash = BlurHash.encode(image, 4, 3);
+
+        assertEquals("4x3 hash length", 28, hash.length());
+        assertEquals("Size flag for 4x3 components", 'L', hash.charAt(0));
+        assertEquals("DC should be the flat color", 0x336699, decode83(hash.substring(2, 6)));
+        assertEquals("Same input should give the same hash", hash, BlurHash.encode(image, 4, 3));
+    }
+
+    @Test
+    public void testBlurHashSingleComponent() {
+        String hash = BlurHash.encode(fill(PixelImage.allocate(3, 3, 1), 0x808080), 1, 1);
+
+        assertEquals("1x1 hash length", 6, hash.length());
+        assertEquals("Size flag and maximum AC should be zero", "00", hash.substring(0, 2));
+        assertEquals(0x808080, decode83(hash.substring(2, 6)));
+    }
+
+    @Test
+    public void testDominantAndAverageColor() {
+        // Left 70% red, right 30% blue
+        PixelImage image = PixelImage.allocate(100, 40, 3);
+        for (int y = 0; y < 40; y++) {
+            for (int x = 0; x < 100; x++) {
+                int p = (y * 100 + x) * 3;
+                image.getPixels()[p] = (byte) (x < 70 ? 220 : 0);
+                image.getPixels()[p + 2] = (byte) (x < 70 ? 0 : 200);
+            }
+        }
+
+        Placeholder placeholder = Placeholder.of(image);
+
+        assertEquals("Dominant color should be the red area", 0xDC0000, placeholder.getDominantColor());
+        assertEquals("Average should mix both areas", 154 << 16 | 60, placeholder.getAverageColor());
+        assertEquals(32, placeholder.getLqipWidth());
+        assertEquals(13, placeholder.getLqipHeight());
+    }
+
+    @Test
+    public void testJpegPlaceholderMatchesFullDecode() throws IOException {
+        byte[] jpeg = TestImageLoader.loadSmallJpegImage();
+
+        Placeholder placeholder = JavaImageEngine.placeholder(jpeg);
+
+        BufferedImage full = ImageIO.read(new ByteArrayInputStream(jpeg));
+        int expected = Placeholder.of(PixelImage.fromBufferedImage(full)).getAverageColor();
+        for (int shift = 0; shift <= 16; shift += 8) {
+            assertEquals("DC-only average should match the full decode",
+                    expected >> shift & 0xFF, placeholder.getAverageColor() >> shift & 0xFF, 2);
+        }
+        BufferedImage lqip = ImageIO.read(new ByteArrayInputStream(placeholder.getLqip()));
+        assertEquals(Placeholder.LQIP_SIZE, lqip.getWidth());
+        assertEquals(21, lqip.getHeight());
+        assertEquals(28, placeholder.getBlurHash().length());
+    }
+
+    @Test
+    public void testPngPlaceholder() throws IOException {
+        Placeholder placeholder = JavaImageEngine.placeholder(TestImageLoader.loadMediumPngImage());
+
+        assertTrue("LQIP should be a JPEG", TestImageLoader.isValidImageFormat(placeholder.getLqip(), "JPEG"));
+        assertEquals(Placeholder.LQIP_SIZE, placeholder.getLqipWidth());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidComponents() {
+        BlurHash.encode(PixelImage.allocate(4, 4, 3), 10, 3);
+    }
+
+    private static PixelImage fill(PixelImage image, int rgb) {
+        byte[] pixels = image.getPixels();
+        int ch = image.getChannels();
+        for (int p = 0; p < pixels.length; p += ch) {
+            for (int c = 0; c < ch; c++) {
+                pixels[p + c] = (byte) (rgb >> (ch == 1 ? 0 : 16 - 8 * c));
+            }
+        }
+        return image;
+    }
+
+    private static int decode83(String digits) {
+        int value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            value = value * 83 + BASE83.indexOf(digits.charAt(i));
+        }
+        return value;
+    }
+}
@@ -0,0 +1,109 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.png.PngEncoder;
+import cn.lihongjie.image.png.PngFilterStrategy;
+import cn.lihongjie.image.util.ImageFixtures;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the pure-Java PNG encoder
+ *
+ * ImageIO's PNG reader checks the zlib Adler-32 and chunk CRCs, so a successful
+ * round trip also validates the stream assembled from parallel deflate blocks.
+ * These tests do not require the native library.
+ */
+public class PngEncoderUnitTest {
+
+    @Test
+    public void testRoundTripAllChannelCounts() throws IOException {
+        for (int channels : new int[]{1, 3, 4}) {
+            PixelImage source = ImageFixtures.pattern(53, 37, channels);
+
+            byte[] png = new PngEncoder().encode(source);
+
+            assertTrue("Output should be a PNG", TestImageLoader.isValidImageFormat(png, "PNG"));
+            assertArrayEquals(channels + "-channel PNG should be lossless",
+                    source.getPixels(), ImageFixtures.imageIo(png).getPixels());
+        }
+    }
+
+    @Test
+    public void testParallelBlocksAreLossless() throws IOException {
+        // 600x400 RGBA is ~940 KB of filtered data, i.e. several 128 KB deflate blocks
+        PixelImage source = ImageFixtures.pattern(600, 400, 4);
+
+        byte[] sequential = new PngEncoder().encode(source);
+        byte[] parallel = new PngEncoder().withParallelism(5).encode(source);
+
+        assertArrayEquals("Parallel output should decode to the same pixels",
+                source.getPixels(), ImageFixtures.imageIo(parallel).getPixels());
+        assertTrue("Preset dictionaries should keep the size overhead small: " + parallel.length + " vs " + sequential.length,
+                parallel.length < sequential.length * 1.05 + 1024);
+    }
+
+    @Test
+    public void testParallelLargePng() throws IOException {
+        byte[] input = TestImageLoader.loadMediumPngImage();
+        PixelImage source = ImageFixtures.imageIo(input);
+
+        byte[] png = JavaImageEngine.compressPng(input, 8);
+
+        assertArrayEquals("Re-encoded PNG should keep the pixels", source.getPixels(), ImageFixtures.imageIo(png).getPixels());
+    }
+
+    @Test
+    public void testCompressionLevels() throws IOException {
+        PixelImage source = ImageFixtures.pattern(200, 150, 3);
+
+        byte[] stored = new PngEncoder(0).encode(source);
+        byte[] best = new PngEncoder(9).encode(source);
+
+        assertTrue("Level 0 should not compress", stored.length > 200 * 150 * 3);
+        assertTrue("Level 9 should be smaller than stored", best.length < stored.length);
+        assertArrayEquals(source.getPixels(), ImageFixtures.imageIo(stored).getPixels());
+    }
+
+    @Test
+    public void testAllFilterStrategiesAreLossless() throws IOException {
+        PixelImage source = ImageFixtures.pattern(71, 29, 3);
+        for (PngFilterStrategy strategy : PngFilterStrategy.values()) {
+            byte[] png = new PngEncoder().withFilterStrategy(strategy).encode(source);
+
+            assertArrayEquals(strategy + " should be lossless", source.getPixels(), ImageFixtures.imageIo(png).getPixels());
+        }
+    }
+
+    @Test
+    public void testAdaptiveFiltersBeatNoFilter() throws IOException {
+        PixelImage photo = ImageFixtures.imageIo(TestImageLoader.loadMediumPngImage());
+
+        int none = new PngEncoder().withFilterStrategy(PngFilterStrategy.NONE).encode(photo).length;
+        int minSum = new PngEncoder().withFilterStrategy(PngFilterStrategy.MIN_SUM).encode(photo).length;
+        int entropy = new PngEncoder().withFilterStrategy(PngFilterStrategy.ENTROPY).encode(photo).length;
+
+        assertTrue("MIN_SUM should be smaller than unfiltered: " + minSum + " vs " + none, minSum < none * 0.8);
+        assertTrue("ENTROPY should be smaller than unfiltered: " + entropy + " vs " + none, entropy < none * 0.8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullFilterStrategy() {
+        new PngEncoder().withFilterStrategy(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLevel() {
+        new PngEncoder(10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new PngEncoder().withParallelism(0);
+    }
+}
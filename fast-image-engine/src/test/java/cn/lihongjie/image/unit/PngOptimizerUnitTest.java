@@ -0,0 +1,144 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.png.OptimizedPng;
+import cn.lihongjie.image.png.PngEncoder;
+import cn.lihongjie.image.png.PngFilterStrategy;
+import cn.lihongjie.image.png.PngOptimizer;
+import cn.lihongjie.image.util.ImageFixtures;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the exhaustive PNG optimizer
+ *
+ * Pixels are compared as ARGB through ImageIO, since the winning trial may use a
+ * different color type than the input. These tests do not require the native library.
+ */
+public class PngOptimizerUnitTest {
+
+    @Test
+    public void testUnlimitedBudgetRunsEveryTrial() throws IOException {
+        PixelImage source = ImageFixtures.gradient(64, 48, 3);
+
+        OptimizedPng best = new PngOptimizer().withParallelism(3).withTimeBudget(Long.MAX_VALUE).optimize(source);
+
+        assertEquals("Every planned trial should run", best.getTrialsPlanned(), best.getTrialsRun());
+        assertEquals("Gradient has too many colors for a palette", 2, best.getColorType());
+        ImageFixtures.assertArgbEquals(source, best.getData());
+        for (PngFilterStrategy strategy : PngFilterStrategy.values()) {
+            int single = new PngEncoder(9).withFilterStrategy(strategy).encode(source).length;
+            assertTrue("Optimizer should not lose to " + strategy + ": " + best, best.getData().length <= single);
+        }
+    }
+
+    @Test
+    public void testFewColorsBecomeIndexed() throws IOException {
+        PixelImage source = createBlocks(120, 90, 4, 0xFF);
+
+        OptimizedPng best = new PngOptimizer().withTimeBudget(Long.MAX_VALUE).optimize(source);
+
+        assertEquals("Six opaque colors should win as a palette: " + best, 3, best.getColorType());
+        assertTrue("Palette should beat RGBA", best.getData().length < new PngEncoder(9).encode(source).length);
+        ImageFixtures.assertArgbEquals(source, best.getData());
+    }
+
+    @Test
+    public void testTranslucentPaletteIsLossless() throws IOException {
+        PixelImage source = createBlocks(40, 30, 4, 0x80);
+
+        OptimizedPng best = new PngOptimizer().withTimeBudget(Long.MAX_VALUE).optimize(source);
+
+        ImageFixtures.assertArgbEquals(source, best.getData());
+    }
+
+    @Test
+    public void testOpaqueAlphaIsDropped() throws IOException {
+        PixelImage source = ImageFixtures.gradient(80, 60, 4);
+
+        OptimizedPng best = new PngOptimizer().withTimeBudget(Long.MAX_VALUE).optimize(source);
+
+        assertEquals("Opaque RGBA should be written as RGB: " + best, 2, best.getColorType());
+        ImageFixtures.assertArgbEquals(source, best.getData());
+    }
+
+    @Test
+    public void testZeroBudgetRunsFirstTrialOnly() throws IOException {
+        PixelImage source = ImageFixtures.imageIo(TestImageLoader.loadMediumPngImage());
+
+        OptimizedPng best = new PngOptimizer().withTimeBudget(0).optimize(source);
+
+        assertEquals(1, best.getTrialsRun());
+        assertTrue(best.getTrialsPlanned() > 1);
+        assertEquals(PngFilterStrategy.MIN_SUM, best.getFilterStrategy());
+        assertEquals(6, best.getCompressionLevel());
+        assertTrue(TestImageLoader.isValidImageFormat(best.getData(), "PNG"));
+    }
+
+    @Test
+    public void testBudgetBoundsWallTime() throws IOException {
+        PixelImage source = ImageFixtures.imageIo(TestImageLoader.loadMediumPngImage());
+        PngOptimizer optimizer = new PngOptimizer().withParallelism(1);
+        long firstTrial = optimizer.withTimeBudget(0).optimize(source).getElapsedMillis();
+        long budget = 300;
+
+        long start = System.nanoTime();
+        OptimizedPng best = optimizer.withTimeBudget(budget).optimize(source);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        // Trials still running at the deadline are abandoned after at most one deflate block
+        assertTrue("Took " + elapsed + " ms with a " + budget + " ms budget and a " + firstTrial
+                + " ms first trial: " + best, elapsed < Math.max(budget, firstTrial) + 1000);
+        assertTrue(best.getTrialsRun() < best.getTrialsPlanned());
+    }
+
+    @Test
+    public void testOriginalKeptWhenNoTrialIsSmaller() throws IOException {
+        PixelImage source = ImageFixtures.gradient(64, 48, 3);
+        PngOptimizer optimizer = new PngOptimizer().withTimeBudget(Long.MAX_VALUE);
+        byte[] smallest = optimizer.optimize(source).getData();
+        byte[] larger = new PngEncoder(1).withFilterStrategy(PngFilterStrategy.NONE).encode(source);
+
+        OptimizedPng kept = optimizer.optimize(source, smallest);
+        OptimizedPng replaced = optimizer.optimize(source, larger);
+
+        assertTrue(kept.isOriginal());
+        assertSame(smallest, kept.getData());
+        assertEquals(2, kept.getColorType());
+        assertEquals(8, kept.getBitDepth());
+        assertFalse(replaced.isOriginal());
+        assertTrue(replaced.getData().length < larger.length);
+        ImageFixtures.assertArgbEquals(source, replaced.getData());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeBudget() {
+        new PngOptimizer().withTimeBudget(-1);
+    }
+
+    /**
+     * Six colors in 10x10 blocks; alpha of every other color is {@code alpha}
+     */
+    private static PixelImage createBlocks(int width, int height, int channels, int alpha) {
+        int[] colors = {0xD03030, 0x30D030, 0x3030D0, 0xF0F0F0, 0x101010, 0x808000};
+        PixelImage image = PixelImage.allocate(width, height, channels);
+        byte[] pixels = image.getPixels();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int k = (x / 10 + y / 10 * 3) % colors.length;
+                int o = (y * width + x) * channels;
+                pixels[o] = (byte) (colors[k] >> 16);
+                pixels[o + 1] = (byte) (colors[k] >> 8);
+                pixels[o + 2] = (byte) colors[k];
+                if (channels == 4) {
+                    pixels[o + 3] = (byte) (k % 2 == 0 ? 0xFF : alpha);
+                }
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,167 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.png.IndexedImage;
+import cn.lihongjie.image.png.PngEncoder;
+import cn.lihongjie.image.util.ImageFixtures;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the lossless color type and bit depth reduction of the PNG encoder
+ *
+ * The chosen layout is read back from the IHDR chunk (bit depth at byte 24, color type
+ * at byte 25), and pixels decoded by ImageIO are compared with the source bytes. Odd widths exercise the
+ * row padding of packed sub-byte samples. These tests do not require the native library.
+ */
+public class PngReducerUnitTest {
+
+    @Test
+    public void testOpaqueRgbaBecomesRgb() throws IOException {
+        PixelImage source = ImageFixtures.gradient(67, 45, 4);
+
+        byte[] png = new PngEncoder().encode(source);
+
+        assertLayout(png, 2, 8);
+        ImageFixtures.assertArgbEquals(source, png);
+        assertTrue("RGB should be smaller than RGBA",
+                png.length < new PngEncoder().withColorReduction(false).encode(source).length);
+    }
+
+    @Test
+    public void testGrayRgbBecomesGray() throws IOException {
+        PixelImage source = createGray(101, 33, 3, 1);
+
+        byte[] png = new PngEncoder().encode(source);
+
+        assertLayout(png, 0, 8);
+        ImageFixtures.assertArgbEquals(source, png);
+    }
+
+    @Test
+    public void testBlackAndWhiteBecomesOneBitGray() throws IOException {
+        PixelImage source = createGray(37, 19, 4, 255);
+
+        byte[] png = new PngEncoder().encode(source);
+
+        assertLayout(png, 0, 1);
+        ImageFixtures.assertArgbEquals(source, png);
+    }
+
+    @Test
+    public void testSixteenGrayLevelsBecomeFourBitGray() throws IOException {
+        PixelImage source = createGray(45, 20, 1, 17);
+
+        byte[] png = new PngEncoder().encode(source);
+
+        assertLayout(png, 0, 4);
+        ImageFixtures.assertArgbEquals(source, png);
+    }
+
+    @Test
+    public void testFewColorsBecomePackedPalette() throws IOException {
+        PixelImage source = createStripes(29, 13, 4, new int[]{0xFFD03030, 0x8030D030, 0x003030D0});
+
+        byte[] png = new PngEncoder().encode(source);
+
+        assertLayout(png, 3, 2);
+        ImageFixtures.assertArgbEquals(source, png);
+    }
+
+    @Test
+    public void testTranslucentGrayBecomesGrayAlpha() throws IOException {
+        PixelImage source = ImageFixtures.gradient(40, 40, 4);
+        byte[] px = source.getPixels();
+        for (int i = 0; i < px.length; i += 4) {
+            // More gray and alpha combinations than a palette holds
+            px[i] = px[i + 1] = px[i + 2] = (byte) (i / 4 * 3);
+            px[i + 3] = (byte) (i / 4 % 200);
+        }
+
+        byte[] png = new PngEncoder().encode(source);
+
+        assertLayout(png, 4, 8);
+        ImageFixtures.assertArgbEquals(source, png);
+    }
+
+    @Test
+    public void testIndexedImageIsPacked() throws IOException {
+        byte[] indices = new byte[23 * 7];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = (byte) (i % 3 == 0 ? 1 : 0);
+        }
+        IndexedImage image = new IndexedImage(23, 7, indices, new int[]{0xFF000080, 0xFFFFFF00});
+
+        byte[] png = new PngEncoder().encode(image);
+
+        assertLayout(png, 3, 1);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+        for (int i = 0; i < indices.length; i++) {
+            assertEquals(image.getPalette()[indices[i]], decoded.getRGB(i % 23, i / 23));
+        }
+        assertLayout(new PngEncoder().withColorReduction(false).encode(image), 3, 8);
+    }
+
+    @Test
+    public void testReductionCanBeDisabled() throws IOException {
+        PixelImage source = createGray(30, 30, 4, 255);
+
+        byte[] png = new PngEncoder().withColorReduction(false).encode(source);
+
+        assertLayout(png, 6, 8);
+        ImageFixtures.assertArgbEquals(source, png);
+    }
+
+    @Test
+    public void testPhotoKeepsTruecolor() throws IOException {
+        byte[] input = TestImageLoader.loadMediumPngImage();
+
+        byte[] png = JavaImageEngine.compressPng(input, 2);
+
+        assertLayout(png, 2, 8);
+    }
+
+    private static void assertLayout(byte[] png, int colorType, int bitDepth) {
+        assertEquals("Color type", colorType, png[25]);
+        assertEquals("Bit depth", bitDepth, png[24]);
+    }
+
+    /**
+     * Opaque gray pattern whose levels are all multiples of {@code step}
+     */
+    private static PixelImage createGray(int width, int height, int channels, int step) {
+        PixelImage image = PixelImage.allocate(width, height, channels);
+        byte[] pixels = image.getPixels();
+        int levels = 255 / step + 1;
+        for (int i = 0; i < width * height; i++) {
+            int x = i % width;
+            int y = i / width;
+            int v = (x * 7 + y * 3) % levels * step;
+            for (int c = 0; c < channels; c++) {
+                pixels[i * channels + c] = (byte) (c == 3 ? 255 : v);
+            }
+        }
+        return image;
+    }
+
+    private static PixelImage createStripes(int width, int height, int channels, int[] argb) {
+        PixelImage image = PixelImage.allocate(width, height, channels);
+        byte[] pixels = image.getPixels();
+        for (int i = 0; i < width * height; i++) {
+            int color = argb[(i % width + i / width) / 3 % argb.length];
+            pixels[i * 4] = (byte) (color >> 16);
+            pixels[i * 4 + 1] = (byte) (color >> 8);
+            pixels[i * 4 + 2] = (byte) color;
+            pixels[i * 4 + 3] = (byte) (color >>> 24);
+        }
+        return image;
+    }
+}
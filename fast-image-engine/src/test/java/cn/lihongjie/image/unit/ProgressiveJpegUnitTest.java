@@ -0,0 +1,138 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import cn.lihongjie.image.jpeg.ScanScript;
+import cn.lihongjie.image.util.ImageFixtures;
+import cn.lihongjie.image.util.JpegMarkers;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for progressive JPEG output and {@link ScanScript}
+ *
+ * These tests do not require the native library; output is verified by decoding it with ImageIO.
+ */
+public class ProgressiveJpegUnitTest {
+
+    private static final String LUMA_ONLY = "0: 0-0, 0, 0; 0: 1-63, 0, 0;";
+
+    @Test
+    public void testScriptsDecodeLikeBaseline() throws IOException {
+        PixelImage image = JavaImageEngine.decode(TestImageLoader.loadSmallJpegImage());
+        for (ChromaSubsampling subsampling : ChromaSubsampling.values()) {
+            JpegEncoder baseline = new JpegEncoder(80, subsampling, false);
+            BufferedImage expected = decode(baseline.encode(image));
+            for (ScanScript script : new ScanScript[]{ScanScript.SIMPLE, ScanScript.SPECTRAL}) {
+                byte[] progressive = baseline.withScanScript(script).encode(image);
+                assertEquals("SOS count", script.getScanCount(), JpegMarkers.countMarkers(progressive, 0xDA));
+                assertPixelsEqual(expected, decode(progressive));
+            }
+        }
+    }
+
+    @Test
+    public void testCustomScript() throws IOException {
+        ScanScript script = ScanScript.parse(
+                "# DC in two steps, chroma before luma\n"
+                + "0 1 2: 0-0, 0, 2;\n"
+                + "0,1,2: 0-0, 2, 1;\n"
+                + "1: 1-63, 0, 0;\n"
+                + "2: 1-63, 0, 0;\n"
+                + "0: 1-2, 0, 0;\n"
+                + "0: 3-63, 0, 1;\n"
+                + "0: 3-63, 1, 0;\n"
+                + "0,1,2: 0-0, 1, 0;\n");
+        PixelImage image = ImageFixtures.gradient(77, 53, 3);
+
+        byte[] progressive = new JpegEncoder(90).withScanScript(script).encode(image);
+
+        assertEquals(8, script.getScanCount());
+        assertEquals(3, script.getComponentCount());
+        assertPixelsEqual(decode(new JpegEncoder(90).encode(image)), decode(progressive));
+    }
+
+    @Test
+    public void testGrayUsesLumaScans() throws IOException {
+        PixelImage gray = ImageFixtures.gradient(130, 90, 1);
+        JpegEncoder baseline = new JpegEncoder(75);
+
+        byte[] simple = baseline.withProgressive(true).encode(gray);
+        byte[] lumaOnly = baseline.withScanScript(ScanScript.parse(LUMA_ONLY)).encode(gray);
+
+        assertEquals(6, JpegMarkers.countMarkers(simple, 0xDA));
+        assertPixelsEqual(decode(baseline.encode(gray)), decode(simple));
+        assertPixelsEqual(decode(baseline.encode(gray)), decode(lumaOnly));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLumaOnlyScriptRejectsColor() {
+        new JpegEncoder(75).withScanScript(ScanScript.parse(LUMA_ONLY)).encode(ImageFixtures.gradient(32, 32, 3));
+    }
+
+    @Test
+    public void testParallelOutputIsIdentical() {
+        PixelImage image = JavaImageEngine.decode(TestImageLoader.loadSmallJpegImage());
+        JpegEncoder encoder = new JpegEncoder(75).withProgressive(true);
+
+        assertArrayEquals(encoder.encode(image), encoder.withParallelism(4).encode(image));
+    }
+
+    @Test
+    public void testToStringRoundTrip() {
+        ScanScript reparsed = ScanScript.parse(ScanScript.SIMPLE.toString());
+
+        assertEquals(ScanScript.SIMPLE.toString(), reparsed.toString());
+        assertEquals(10, reparsed.getScanCount());
+    }
+
+    @Test
+    public void testInvalidScripts() {
+        String[] invalid = {
+            "",
+            "0,1,2 0-0, 0, 0;",
+            "0,1,2: 0-5, 0, 0; 0: 6-63, 0, 0;",
+            "0,1: 0-0, 0, 0; 0,1: 1-63, 0, 0;",
+            "0: 1-63, 0, 0; 0: 0-0, 0, 0;",
+            "0: 0-0, 0, 0; 0: 1-63, 0, 2; 0: 1-63, 1, 0;",
+            "0: 0-0, 0, 0; 0: 1-63, 0, 0; 0: 1-63, 0, 0;",
+            "0: 0-0, 0, 0; 0: 1-62, 0, 0;",
+            "0: 0-0, 0, 1; 0: 1-63, 0, 0;",
+            "2,1: 0-0, 0, 0;",
+            "3: 0-0, 0, 0;"
+        };
+        for (String script : invalid) {
+            try {
+                ScanScript.parse(script);
+                fail("Script should be rejected: " + script);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    private static BufferedImage decode(byte[] data) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+        assertNotNull("Image should decode", image);
+        return image;
+    }
+
+    private static void assertPixelsEqual(BufferedImage expected, BufferedImage actual) {
+        assertEquals("Width should match", expected.getWidth(), actual.getWidth());
+        assertEquals("Height should match", expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y += 3) {
+            for (int x = 0; x < expected.getWidth(); x += 3) {
+                assertEquals("Pixel mismatch at " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.CompressOptions;
+import cn.lihongjie.image.ImageQuality;
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for trellis quantization in the pure-Java JPEG encoder
+ *
+ * These tests do not require the native library.
+ */
+public class TrellisQuantizationUnitTest {
+
+    @Test
+    public void testSmallerAtSimilarQuality() {
+        PixelImage photo = JavaImageEngine.decode(TestImageLoader.loadSmallJpegImage());
+        for (int quality : new int[]{50, 75, 90}) {
+            JpegEncoder plain = new JpegEncoder(quality, ChromaSubsampling.YUV420, true);
+            byte[] reference = plain.encode(photo);
+            byte[] trellis = plain.withTrellisQuantization(true).encode(photo);
+
+            assertTrue("Trellis output should be smaller at q" + quality + ": " + trellis.length + " vs "
+                    + reference.length, trellis.length < reference.length);
+            double loss = ImageQuality.psnr(photo, JavaImageEngine.decode(reference)) - ImageQuality.psnr(photo, JavaImageEngine.decode(trellis));
+            assertTrue("PSNR loss at q" + quality + " should stay below 2 dB: " + loss, loss < 2);
+        }
+    }
+
+    @Test
+    public void testParallelBandsDecodeToSamePixels() {
+        PixelImage photo = JavaImageEngine.decode(TestImageLoader.loadSmallJpegImage());
+        JpegEncoder encoder = new JpegEncoder(75).withTrellisQuantization(true);
+
+        byte[] single = encoder.encode(photo);
+        byte[] parallel = encoder.withParallelism(4).encode(photo);
+
+        assertArrayEquals(JavaImageEngine.decode(single).getPixels(), JavaImageEngine.decode(parallel).getPixels());
+    }
+
+    @Test
+    public void testProgressiveAndGray() {
+        PixelImage photo = JavaImageEngine.decode(TestImageLoader.loadSmallJpegImage());
+        PixelImage gray = PixelImage.allocate(photo.getWidth(), photo.getHeight(), 1);
+        byte[] rgb = photo.getPixels();
+        for (int i = 0; i < gray.getPixels().length; i++) {
+            gray.getPixels()[i] = rgb[i * 3 + 1];
+        }
+        JpegEncoder encoder = new JpegEncoder(80).withTrellisQuantization(true);
+
+        byte[] baseline = encoder.encode(gray);
+        byte[] progressive = encoder.withProgressive(true).encode(gray);
+
+        assertTrue(TestImageLoader.isValidImageFormat(progressive, "JPEG"));
+        assertArrayEquals(JavaImageEngine.decode(baseline).getPixels(), JavaImageEngine.decode(progressive).getPixels());
+    }
+
+    @Test
+    public void testCompressOptions() {
+        byte[] input = TestImageLoader.loadSmallJpegImage();
+
+        byte[] plain = JavaImageEngine.compress(input, new CompressOptions());
+        byte[] trellis = JavaImageEngine.compress(input, new CompressOptions().withTrellisQuantization(true));
+
+        assertTrue(trellis.length < plain.length);
+    }
+}
@@ -0,0 +1,103 @@
+package cn.lihongjie.image.util;
+
+import cn.lihongjie.image.PixelImage;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Small synthetic images for unit tests
+ *
+ * Usage:
+ * <pre>
+ * PixelImage image = ImageFixtures.gradient(64, 48, 3);
+ * </pre>
+ */
+public final class ImageFixtures {
+
+    private ImageFixtures() {
+    }
+
+    /**
+     * Smooth gradient: red follows x, green follows y and blue the diagonal; alpha is opaque
+     *
+     * @param channels 1 (the red ramp as gray), 3 or 4
+     */
+    public static PixelImage gradient(int width, int height, int channels) {
+        PixelImage image = PixelImage.allocate(width, height, channels);
+        byte[] pixels = image.getPixels();
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int[] rgba = {20 + x * 200 / width, 20 + y * 200 / height, 60 + (x + y) * 120 / (width + height), 255};
+                for (int c = 0; c < channels; c++) {
+                    pixels[i++] = (byte) rgba[c];
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Ramps with an 8x8 checkerboard on top, so neighbouring pixels differ and blocks have
+     * hard edges; alpha (channel 4) falls off along x
+     *
+     * @param channels 1, 2, 3 or 4
+     */
+    public static PixelImage pattern(int width, int height, int channels) {
+        PixelImage image = PixelImage.allocate(width, height, channels);
+        byte[] pixels = image.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            int x = (i / channels) % width;
+            int y = (i / channels) / width;
+            int c = i % channels;
+            pixels[i] = (byte) (c == 3 ? 255 - x % 64 : (x * 3 + y * (c + 1)) + ((x / 8 ^ y / 8) & 1) * 40);
+        }
+        return image;
+    }
+
+    /**
+     * Decode with ImageIO, the reference the pure-Java codecs are checked against
+     */
+    public static PixelImage imageIo(byte[] data) throws IOException {
+        return PixelImage.fromBufferedImage(ImageIO.read(new ByteArrayInputStream(data)));
+    }
+
+    /**
+     * Assert that an encoded image decodes, with ImageIO, to the pixels of {@code expected},
+     * whatever color type and bit depth it was stored with. Gray images are compared by raw
+     * sample, since ImageIO's getRGB converts its linear gray color space to sRGB.
+     */
+    public static void assertArgbEquals(PixelImage expected, byte[] encoded) throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encoded));
+        assertEquals("Width", expected.getWidth(), decoded.getWidth());
+        assertEquals("Height", expected.getHeight(), decoded.getHeight());
+        Raster raster = decoded.getRaster();
+        boolean gray = decoded.getColorModel().getNumColorComponents() == 1
+                && !(decoded.getColorModel() instanceof IndexColorModel);
+        int scale = 255 / ((1 << raster.getSampleModel().getSampleSize(0)) - 1);
+        byte[] px = expected.getPixels();
+        int channels = expected.getChannels();
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int o = (y * expected.getWidth() + x) * channels;
+                int r = px[o] & 0xFF;
+                int g = px[o + (channels >= 3 ? 1 : 0)] & 0xFF;
+                int b = px[o + (channels >= 3 ? 2 : 0)] & 0xFF;
+                int a = channels == 4 ? px[o + 3] & 0xFF : 255;
+                if (gray) {
+                    assertEquals("Gray " + x + "," + y, r, raster.getSample(x, y, 0) * scale);
+                    assertEquals("Alpha " + x + "," + y, a, raster.getNumBands() > 1 ? raster.getSample(x, y, 1) : 255);
+                } else {
+                    assertEquals("Pixel " + x + "," + y, a << 24 | r << 16 | g << 8 | b, decoded.getRGB(x, y));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package cn.lihongjie.image.util;
+
+/**
+ * Marker scans over encoded JPEGs for unit tests
+ *
+ * Markers are matched as an 0xFF byte followed by the marker code. Entropy-coded data
+ * stuffs every 0xFF with a zero byte, so outside the headers only RST markers match.
+ *
+ * Usage:
+ * <pre>
+ * assertTrue(JpegMarkers.containsMarker(jpeg, 0xC2));
+ * </pre>
+ */
+public final class JpegMarkers {
+
+    private static final int SOS = 0xDA;
+
+    private JpegMarkers() {
+    }
+
+    /**
+     * @param marker Marker code without the 0xFF prefix, e.g. 0xC2 for SOF2
+     * @return Whether the marker appears before the first SOS, i.e. in the headers
+     */
+    public static boolean containsMarker(byte[] jpeg, int marker) {
+        for (int i = 2; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == marker) {
+                return true;
+            }
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == SOS) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param marker Marker code without the 0xFF prefix, e.g. 0xDA for SOS
+     * @return Number of occurrences in the whole file
+     */
+    public static int countMarkers(byte[] jpeg, int marker) {
+        int count = 0;
+        for (int i = 0; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == marker) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of RST0..RST7 markers in the whole file
+     */
+    public static int countRestartMarkers(byte[] jpeg) {
+        int count = 0;
+        for (int i = 2; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xF8) == 0xD0) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
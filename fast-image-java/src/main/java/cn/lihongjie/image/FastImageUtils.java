@@ -1,9 +1,19 @@
 package cn.lihongjie.image;
 
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.JpegLosslessOptimizer;
+import cn.lihongjie.image.metadata.MetadataPolicy;
+import cn.lihongjie.image.trace.TraceParameters;
+import cn.lihongjie.image.trace.TrafficRecorder;
+
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Fast Image Compression Utilities with Cross-Platform Support
@@ -28,6 +38,7 @@ public class FastImageUtils {
     
     private static boolean isInitialized = false;
     private static RuntimeException initializationError = null;
+    private static volatile TrafficRecorder recorder;
     
     // Static initialization block
     static {
@@ -183,6 +194,33 @@ public class FastImageUtils {
         }
     }
     
+    /**
+     * Record the calls of this class into a traffic trace
+     * 
+     * Recording is off by default. Only the public operations are recorded, once per call;
+     * the convenience variants such as {@link #compressHigh(byte[])} are recorded as the
+     * operation they delegate to.
+     * 
+     * @param trafficRecorder Recorder to use, or null to stop recording
+     */
+    public static void setRecorder(TrafficRecorder trafficRecorder) {
+        recorder = trafficRecorder;
+    }
+    
+    public static TrafficRecorder getRecorder() {
+        return recorder;
+    }
+    
+    private static byte[] traced(String operation, Map<String, String> parameters, byte[] imageBytes,
+                                 Supplier<byte[]> call) {
+        TrafficRecorder current = recorder;
+        return current == null ? call.get() : current.record(operation, parameters, imageBytes, call);
+    }
+    
+    private static Map<String, String> quality(int quality) {
+        return Collections.singletonMap("quality", Integer.toString(quality));
+    }
+    
     /**
      * Compress image data with automatic format detection and quality control
      * 
@@ -197,8 +235,69 @@ public class FastImageUtils {
      * @throws RuntimeException if compression fails or image format is unsupported
      */
     public static byte[] compress(byte[] imageBytes, int quality) {
-        ensureInitialized();
-        return compressNative(imageBytes, quality);
+        return traced("compress", quality(quality), imageBytes, () -> {
+            ensureInitialized();
+            return compressNative(imageBytes, quality);
+        });
+    }
+    
+    /**
+     * Compress image data with an optional lossless JPEG pass
+     * 
+     * For JPEG input, {@link LosslessPass#BEFORE_COMPRESS} strips metadata and optimizes
+     * Huffman tables before the native compressor sees the data, while
+     * {@link LosslessPass#INSTEAD_OF_COMPRESS} returns the losslessly optimized JPEG
+     * without re-encoding pixels (and without requiring the native library).
+     * Non-JPEG input is always compressed normally.
+     * 
+     * @param imageBytes Input image data as byte array (PNG or JPEG format)
+     * @param quality Compression quality (0-100, where 0 is highest compression, 100 is best quality)
+     * @param pass Where to run the lossless JPEG pass
+     * @return Compressed image data as byte array in the same format as input
+     * @throws IllegalArgumentException if quality is not in range 0-100 or data is empty
+     * @throws RuntimeException if compression fails or image format is unsupported
+     */
+    public static byte[] compress(byte[] imageBytes, int quality, LosslessPass pass) {
+        Map<String, String> parameters = new LinkedHashMap<>(quality(quality));
+        parameters.put("pass", String.valueOf(pass));
+        return traced("compress", parameters, imageBytes, () -> compressWithPass(imageBytes, quality, pass));
+    }
+    
+    private static byte[] compressWithPass(byte[] imageBytes, int quality, LosslessPass pass) {
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("Quality must be between 0 and 100, got: " + quality);
+        }
+        if (pass == LosslessPass.NONE || ImageFormat.detect(imageBytes) != ImageFormat.JPEG) {
+            return compress(imageBytes, quality);
+        }
+        byte[] optimized = optimizeJpegLossless(imageBytes);
+        if (pass == LosslessPass.INSTEAD_OF_COMPRESS) {
+            return optimized;
+        }
+        return compress(optimized, quality);
+    }
+    
+    /**
+     * Compress image data with explicit encoder settings
+     * 
+     * Exposes the knobs the quality-only {@link #compress(byte[], int)} fixes: chroma
+     * subsampling, progressive output, Huffman optimization, the metadata policy and a
+     * PNG effort level (see {@link CompressOptions}). The output format is the same as
+     * the input format.
+     * 
+     * Always runs on the pure-Java codecs ({@link JavaImageEngine}), even when the native
+     * library is loaded: the native compress only takes a quality, so it would silently
+     * ignore every other setting. Output therefore differs from {@link #compress(byte[], int)}
+     * at the same quality, and the native library is not required.
+     * 
+     * @param imageBytes Input image data as byte array (PNG or JPEG format)
+     * @param options Encoder settings
+     * @return Compressed image data as byte array in the same format as input
+     * @throws IllegalArgumentException if options are null or data is empty or unsupported
+     */
+    public static byte[] compress(byte[] imageBytes, CompressOptions options) {
+        Map<String, String> parameters = options == null ? Collections.emptyMap() : TraceParameters.of(options);
+        return traced("compress-options", parameters, imageBytes, () -> JavaImageEngine.compress(imageBytes, options));
     }
     
     /**
@@ -248,8 +347,10 @@ public class FastImageUtils {
      * @throws RuntimeException if compression fails
      */
     public static byte[] compressJpegFast(byte[] imageBytes, int quality) {
-        ensureInitialized();
-        return compressJpegFastNative(imageBytes, quality);
+        return traced("compress-jpeg-fast", quality(quality), imageBytes, () -> {
+            ensureInitialized();
+            return compressJpegFastNative(imageBytes, quality);
+        });
     }
     
     /**
@@ -282,6 +383,37 @@ public class FastImageUtils {
         return compressJpegFast(imageBytes, 30);
     }
     
+    /**
+     * Losslessly optimize a JPEG image
+     * 
+     * Drops EXIF, XMP, comment and vendor segments (keeping JFIF, ICC, Adobe
+     * segments and the EXIF orientation) and re-encodes the entropy-coded data with optimal Huffman tables.
+     * Decoded pixels are identical to the input. Runs in pure Java and does not
+     * require the native library.
+     * 
+     * @param imageBytes Input JPEG data
+     * @return Optimized JPEG data, never larger than the metadata-stripped input
+     * @throws IllegalArgumentException if data is empty, not a JPEG, or uses an unsupported coding process
+     */
+    public static byte[] optimizeJpegLossless(byte[] imageBytes) {
+        return traced("optimize-lossless", Collections.emptyMap(), imageBytes,
+                () -> JpegLosslessOptimizer.optimize(imageBytes));
+    }
+    
+    /**
+     * Losslessly optimize a JPEG image with explicit metadata rules
+     * 
+     * @param imageBytes Input JPEG data
+     * @param policy Which metadata segments to keep
+     * @return Optimized JPEG data, never larger than the metadata-stripped input
+     * @throws IllegalArgumentException if data is empty, not a JPEG, or uses an unsupported coding process
+     */
+    public static byte[] optimizeJpegLossless(byte[] imageBytes, MetadataPolicy policy) {
+        // Policies are arbitrary rule sets, so the trace only notes that one was given
+        return traced("optimize-lossless", Collections.singletonMap("policy", "custom"), imageBytes,
+                () -> JpegLosslessOptimizer.optimize(imageBytes, policy));
+    }
+    
     /**
      * Rotate image by specified angle
      * 
@@ -295,8 +427,10 @@ public class FastImageUtils {
      * @throws RuntimeException if rotation fails or image format is unsupported
      */
     public static byte[] rotate(byte[] imageBytes, int angle) {
-        ensureInitialized();
-        return rotateNative(imageBytes, angle);
+        return traced("rotate", Collections.singletonMap("angle", Integer.toString(angle)), imageBytes, () -> {
+            ensureInitialized();
+            return rotateNative(imageBytes, angle);
+        });
     }
     
     /**
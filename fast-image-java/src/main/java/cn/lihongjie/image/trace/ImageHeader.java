@@ -0,0 +1,65 @@
+package cn.lihongjie.image.trace;
+
+/**
+ * Reads image dimensions from the file header without decoding
+ */
+final class ImageHeader {
+
+    private ImageHeader() {
+    }
+
+    /**
+     * @param imageBytes Encoded PNG or JPEG data
+     * @return Width and height, or null if the header is missing or truncated
+     */
+    static int[] dimensions(byte[] imageBytes) {
+        if (imageBytes == null || imageBytes.length < 4) {
+            return null;
+        }
+        if ((imageBytes[0] & 0xFF) == 0x89 && imageBytes[1] == 'P') {
+            // IHDR is always the first chunk, right after the signature
+            if (imageBytes.length < 24) {
+                return null;
+            }
+            return new int[]{readInt(imageBytes, 16), readInt(imageBytes, 20)};
+        }
+        if ((imageBytes[0] & 0xFF) != 0xFF || (imageBytes[1] & 0xFF) != 0xD8) {
+            return null;
+        }
+        int pos = 2;
+        while (pos + 4 <= imageBytes.length) {
+            if ((imageBytes[pos] & 0xFF) != 0xFF) {
+                return null;
+            }
+            int marker = imageBytes[pos + 1] & 0xFF;
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            if (marker == 0xD8 || (marker >= 0xD0 && marker <= 0xD7) || marker == 0x01) {
+                pos += 2;
+                continue;
+            }
+            int length = ((imageBytes[pos + 2] & 0xFF) << 8) | (imageBytes[pos + 3] & 0xFF);
+            boolean frame = marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (frame) {
+                if (pos + 9 > imageBytes.length) {
+                    return null;
+                }
+                int height = ((imageBytes[pos + 5] & 0xFF) << 8) | (imageBytes[pos + 6] & 0xFF);
+                int width = ((imageBytes[pos + 7] & 0xFF) << 8) | (imageBytes[pos + 8] & 0xFF);
+                return new int[]{width, height};
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                return null;
+            }
+            pos += 2 + length;
+        }
+        return null;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,181 @@
+package cn.lihongjie.image.trace;
+
+import cn.lihongjie.image.CompressOptions;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.GrayscaleDetector;
+import cn.lihongjie.image.jpeg.ScanScript;
+import cn.lihongjie.image.metadata.MetadataPolicy;
+import cn.lihongjie.image.metadata.MetadataType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conversion of {@link CompressOptions} to and from the parameters of a trace record
+ *
+ * Every setting is recorded, so a replay compresses with the options of the recorded
+ * call. Values must not contain the separators of a trace line: a scan script is
+ * written as SIMPLE, SPECTRAL or its scans separated by {@code /} instead of
+ * {@code ;}, and a metadata policy as KEEP_ALL, STRIP_SAFE, STRIP_ALL or the kept
+ * types joined by {@code ,}, followed by {@code +orientation} if the EXIF orientation
+ * tag is preserved. The grayscale detector is recorded by its tolerance, or {@code off};
+ * a replay with the shared detector's tolerance uses the shared detector again.
+ *
+ * Usage:
+ * <pre>
+ * Map&lt;String, String&gt; parameters = TraceParameters.of(options);
+ * CompressOptions replayed = TraceParameters.compressOptions(parameters);
+ * </pre>
+ */
+public final class TraceParameters {
+
+    private static final String ORIENTATION = "+orientation";
+
+    private TraceParameters() {
+    }
+
+    /**
+     * @param options Encoder settings of a compress call
+     * @return Trace parameters describing every setting
+     */
+    public static Map<String, String> of(CompressOptions options) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("quality", Integer.toString(options.getQuality()));
+        parameters.put("subsampling", options.getSubsampling().name());
+        parameters.put("progressive", Boolean.toString(options.isProgressive()));
+        if (options.getScanScript() != null) {
+            parameters.put("scanScript", scanScript(options.getScanScript()));
+        }
+        parameters.put("optimizeHuffman", Boolean.toString(options.isOptimizeHuffman()));
+        parameters.put("trellis", Boolean.toString(options.isTrellisQuantization()));
+        parameters.put("metadataPolicy", metadataPolicy(options.getMetadataPolicy()));
+        GrayscaleDetector detector = options.getGrayscaleDetector();
+        parameters.put("grayscale", detector == null ? "off" : Integer.toString(detector.getTolerance()));
+        parameters.put("effort", Integer.toString(options.getEffort()));
+        parameters.put("parallelism", Integer.toString(options.getParallelism()));
+        return parameters;
+    }
+
+    /**
+     * @param parameters Trace parameters written by {@link #of}; missing settings keep their defaults
+     * @return Encoder settings of the recorded call
+     * @throws IllegalArgumentException if a parameter is unknown or its value is malformed
+     */
+    public static CompressOptions compressOptions(Map<String, String> parameters) {
+        CompressOptions options = new CompressOptions();
+        ScanScript scanScript = null;
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            String value = parameter.getValue();
+            switch (parameter.getKey()) {
+                case "quality":
+                    options = options.withQuality(Integer.parseInt(value));
+                    break;
+                case "subsampling":
+                    options = options.withSubsampling(ChromaSubsampling.valueOf(value));
+                    break;
+                case "progressive":
+                    options = options.withProgressive(Boolean.parseBoolean(value));
+                    break;
+                case "scanScript":
+                    scanScript = parseScanScript(value);
+                    break;
+                case "optimizeHuffman":
+                    options = options.withOptimizeHuffman(Boolean.parseBoolean(value));
+                    break;
+                case "trellis":
+                    options = options.withTrellisQuantization(Boolean.parseBoolean(value));
+                    break;
+                case "metadataPolicy":
+                    options = options.withMetadataPolicy(parseMetadataPolicy(value));
+                    break;
+                case "grayscale":
+                    options = options.withGrayscaleDetector(parseGrayscaleDetector(value));
+                    break;
+                case "effort":
+                    options = options.withEffort(Integer.parseInt(value));
+                    break;
+                case "parallelism":
+                    options = options.withParallelism(Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown compress option: " + parameter.getKey());
+            }
+        }
+        // Applied last, since progressive=true alone would select the simple script
+        return scanScript == null ? options : options.withScanScript(scanScript);
+    }
+
+    private static String scanScript(ScanScript script) {
+        String text = script.toString();
+        if (text.equals(ScanScript.SIMPLE.toString())) {
+            return "SIMPLE";
+        }
+        if (text.equals(ScanScript.SPECTRAL.toString())) {
+            return "SPECTRAL";
+        }
+        return text.replace("\n", "").replace(';', '/');
+    }
+
+    private static ScanScript parseScanScript(String value) {
+        switch (value) {
+            case "SIMPLE":
+                return ScanScript.SIMPLE;
+            case "SPECTRAL":
+                return ScanScript.SPECTRAL;
+            default:
+                return ScanScript.parse(value.replace('/', ';'));
+        }
+    }
+
+    private static GrayscaleDetector parseGrayscaleDetector(String value) {
+        if (value.equals("off")) {
+            return null;
+        }
+        int tolerance = Integer.parseInt(value);
+        GrayscaleDetector shared = JavaImageEngine.getGrayscaleDetector();
+        return tolerance == shared.getTolerance() ? shared : new GrayscaleDetector(tolerance);
+    }
+
+    private static String metadataPolicy(MetadataPolicy policy) {
+        if (policy.equals(MetadataPolicy.KEEP_ALL)) {
+            return "KEEP_ALL";
+        }
+        if (policy.equals(MetadataPolicy.STRIP_SAFE)) {
+            return "STRIP_SAFE";
+        }
+        if (policy.equals(MetadataPolicy.STRIP_ALL)) {
+            return "STRIP_ALL";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (MetadataType type : policy.keptTypes()) {
+            sb.append(sb.length() > 0 ? "," : "").append(type.name());
+        }
+        // keepsExifOrientation() is false while EXIF is kept, but the flag still matters to equals()
+        return sb.append(policy.equals(policy.withExifOrientation()) ? ORIENTATION : "").toString();
+    }
+
+    private static MetadataPolicy parseMetadataPolicy(String value) {
+        switch (value) {
+            case "KEEP_ALL":
+                return MetadataPolicy.KEEP_ALL;
+            case "STRIP_SAFE":
+                return MetadataPolicy.STRIP_SAFE;
+            case "STRIP_ALL":
+                return MetadataPolicy.STRIP_ALL;
+            default:
+                boolean orientation = value.endsWith(ORIENTATION);
+                String types = orientation ? value.substring(0, value.length() - ORIENTATION.length()) : value;
+                List<MetadataType> kept = new ArrayList<>();
+                for (String type : types.split(",")) {
+                    if (!type.isEmpty()) {
+                        kept.add(MetadataType.valueOf(type));
+                    }
+                }
+                MetadataPolicy policy = MetadataPolicy.keeping(kept.toArray(new MetadataType[0]));
+                return orientation ? policy.withExifOrientation() : policy;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package cn.lihongjie.image.trace;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One facade call of a traffic trace
+ *
+ * A trace is a UTF-8 text file starting with {@link #HEADER}, followed by one
+ * tab-separated line per call: offset from the start of the recording (µs), operation,
+ * parameters ({@code key=value} pairs joined by {@code ;}, or {@code -}), input hash,
+ * input size, input format, width, height, duration (µs), output size and status
+ * ({@code ok} or the simple name of the exception thrown). Unknown dimensions are 0.
+ *
+ * Usage:
+ * <pre>
+ * for (TraceRecord record : TraceRecord.read(Paths.get("trace.tsv"))) {
+ *     System.out.println(record.getOperation() + " " + record.getDurationMicros());
+ * }
+ * </pre>
+ */
+public final class TraceRecord {
+
+    public static final String HEADER = "# fast-image trace v1";
+    public static final String STATUS_OK = "ok";
+
+    private final long offsetMicros;
+    private final String operation;
+    private final Map<String, String> parameters;
+    private final String inputHash;
+    private final int inputSize;
+    private final String format;
+    private final int width;
+    private final int height;
+    private final long durationMicros;
+    private final int outputSize;
+    private final String status;
+
+    public TraceRecord(long offsetMicros, String operation, Map<String, String> parameters, String inputHash,
+                       int inputSize, String format, int width, int height, long durationMicros, int outputSize,
+                       String status) {
+        if (operation == null || operation.isEmpty() || !isToken(operation)) {
+            throw new IllegalArgumentException("Invalid operation: " + operation);
+        }
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (!isToken(parameter.getKey()) || !isToken(parameter.getValue())) {
+                throw new IllegalArgumentException("Invalid parameter: " + parameter);
+            }
+        }
+        this.offsetMicros = offsetMicros;
+        this.operation = operation;
+        this.parameters = Collections.unmodifiableMap(new LinkedHashMap<>(parameters));
+        this.inputHash = inputHash;
+        this.inputSize = inputSize;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.durationMicros = durationMicros;
+        this.outputSize = outputSize;
+        this.status = status;
+    }
+
+    private static boolean isToken(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\t' || c == '\n' || c == '\r' || c == ';' || c == '=') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param line One line of a trace, without the line terminator
+     * @return The parsed record
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    public static TraceRecord parse(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 11) {
+            throw new IllegalArgumentException("Expected 11 fields but got " + fields.length + ": " + line);
+        }
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (!fields[2].equals("-")) {
+            for (String pair : fields[2].split(";")) {
+                int eq = pair.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("Invalid parameter: " + pair);
+                }
+                parameters.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+        }
+        try {
+            return new TraceRecord(Long.parseLong(fields[0]), fields[1], parameters, fields[3],
+                    Integer.parseInt(fields[4]), fields[5], Integer.parseInt(fields[6]), Integer.parseInt(fields[7]),
+                    Long.parseLong(fields[8]), Integer.parseInt(fields[9]), fields[10]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in trace line: " + line, e);
+        }
+    }
+
+    /**
+     * @param trace Trace file written by {@link TrafficRecorder}
+     * @return Records in file order
+     * @throws IllegalArgumentException if the file is not a trace or a line is malformed
+     */
+    public static List<TraceRecord> read(Path trace) throws IOException {
+        List<TraceRecord> records = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(trace, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (!HEADER.equals(header)) {
+                throw new IllegalArgumentException("Not a fast-image trace: " + trace);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    records.add(parse(line));
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return The record as one trace line, without the line terminator
+     */
+    public String toLine() {
+        StringBuilder params = new StringBuilder();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (params.length() > 0) {
+                params.append(';');
+            }
+            params.append(parameter.getKey()).append('=').append(parameter.getValue());
+        }
+        return offsetMicros + "\t" + operation + "\t" + (params.length() == 0 ? "-" : params) + "\t" + inputHash
+                + "\t" + inputSize + "\t" + format + "\t" + width + "\t" + height + "\t" + durationMicros
+                + "\t" + outputSize + "\t" + status;
+    }
+
+    @Override
+    public String toString() {
+        return toLine();
+    }
+
+    public boolean isOk() {
+        return STATUS_OK.equals(status);
+    }
+
+    /**
+     * @return Value of a parameter, or the default if it was not recorded
+     */
+    public String getParameter(String name, String defaultValue) {
+        return parameters.getOrDefault(name, defaultValue);
+    }
+
+    public long getOffsetMicros() {
+        return offsetMicros;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    public String getInputHash() {
+        return inputHash;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+}
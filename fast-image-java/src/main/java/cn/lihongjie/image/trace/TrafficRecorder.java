@@ -0,0 +1,364 @@
+package cn.lihongjie.image.trace;
+
+import cn.lihongjie.image.ImageFormat;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Opt-in recorder of facade calls, for replaying production traffic in benchmarks
+ *
+ * Each recorded call appends one {@link TraceRecord} to the trace file: the shape of
+ * the request (operation, parameters, input hash, size, format and dimensions), when
+ * it arrived relative to the start of the recording, how long it took and how it ended.
+ * Pixels are never written to the trace. A sample rate below 1 records that fraction
+ * of calls at random; optionally a fraction of the distinct inputs is stored in a
+ * directory as {@code <hash>.jpg} or {@code <hash>.png}, so a replay can use the real
+ * images. Which inputs are stored depends only on their hash, so an image seen
+ * repeatedly is either always or never stored.
+ *
+ * The calling thread only queues the call; hashing, header parsing and all file output
+ * happen on a background writer thread, which flushes the trace about once a second
+ * and on {@link #close()}. The queue is bounded in calls and in input bytes, since it
+ * holds a reference to each input until it is hashed: the input must not be modified
+ * after the call returns. Calls that find the queue full are dropped and counted in
+ * {@link #getDropped()}. Calls made from inside a recorded call (such as the lossless
+ * pass of a compression) are not recorded separately. Failures to write the trace never
+ * fail the call; they are counted in {@link #getWriteErrors()}. After {@link #close()}
+ * calls pass through unrecorded.
+ *
+ * Usage:
+ * <pre>
+ * TrafficRecorder recorder = new TrafficRecorder(Paths.get("trace.tsv"), 0.1, Paths.get("inputs"), 0.01);
+ * FastImageUtils.setRecorder(recorder);
+ * ...
+ * FastImageUtils.setRecorder(null);
+ * recorder.close();
+ * </pre>
+ */
+public final class TrafficRecorder implements Closeable {
+
+    private static final ThreadLocal<Boolean> RECORDING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final long MAX_QUEUED_BYTES = 64L * 1024 * 1024;
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /** Tells the writer thread to stop once everything before it is written */
+    private static final Call STOP = new Call(null, null, null, 0, 0, 0, null);
+
+    private final double sampleRate;
+    private final Path inputDirectory;
+    private final double inputSampleRate;
+    private final long start = System.nanoTime();
+    private final BufferedWriter writer;
+    private final BlockingQueue<Call> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final Thread writerThread;
+    private final Set<String> storedHashes = new HashSet<>();
+    private volatile boolean closed;
+    private long recorded;
+    private final LongAdder skipped = new LongAdder();
+    private long dropped;
+    private long writeErrors;
+
+    /**
+     * Records every call, without storing inputs
+     *
+     * @param traceFile Trace to create, replacing an existing file
+     */
+    public TrafficRecorder(Path traceFile) throws IOException {
+        this(traceFile, 1, null, 0);
+    }
+
+    /**
+     * @param traceFile       Trace to create, replacing an existing file
+     * @param sampleRate      Fraction of calls to record, in (0, 1]
+     * @param inputDirectory  Directory for stored inputs, or null to store none
+     * @param inputSampleRate Fraction of distinct inputs to store, in [0, 1]
+     */
+    public TrafficRecorder(Path traceFile, double sampleRate, Path inputDirectory, double inputSampleRate)
+            throws IOException {
+        if (!(sampleRate > 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("Sample rate must be in (0, 1], got " + sampleRate);
+        }
+        if (!(inputSampleRate >= 0 && inputSampleRate <= 1)) {
+            throw new IllegalArgumentException("Input sample rate must be in [0, 1], got " + inputSampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.inputDirectory = inputDirectory;
+        this.inputSampleRate = inputDirectory == null ? 0 : inputSampleRate;
+        if (inputDirectory != null) {
+            Files.createDirectories(inputDirectory);
+        }
+        Path parent = traceFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.writer = Files.newBufferedWriter(traceFile, StandardCharsets.UTF_8);
+        writer.write(TraceRecord.HEADER);
+        writer.newLine();
+        writer.flush();
+        this.writerThread = new Thread(this::writeQueued, "traffic-recorder");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Runs a facade call and records it if it is sampled
+     *
+     * @param operation  Operation name, such as {@code compress}
+     * @param parameters Call parameters; keys and values must not contain tabs, {@code ;} or {@code =}
+     * @param input      Input image data
+     * @param call       The call itself
+     * @return What the call returned; exceptions are rethrown after recording
+     */
+    public byte[] record(String operation, Map<String, String> parameters, byte[] input, Supplier<byte[]> call) {
+        if (RECORDING.get() || closed) {
+            return call.get();
+        }
+        RECORDING.set(Boolean.TRUE);
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            skipped.increment();
+            // Calls nested in a skipped call are skipped with it rather than sampled on their own
+            try {
+                return call.get();
+            } finally {
+                RECORDING.set(Boolean.FALSE);
+            }
+        }
+        long begin = System.nanoTime();
+        byte[] output = null;
+        String status = TraceRecord.STATUS_OK;
+        try {
+            output = call.get();
+            return output;
+        } catch (RuntimeException | Error e) {
+            status = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            long end = System.nanoTime();
+            RECORDING.set(Boolean.FALSE);
+            enqueue(operation, parameters, input, begin, end, output, status);
+        }
+    }
+
+    private void enqueue(String operation, Map<String, String> parameters, byte[] input, long begin, long end,
+                         byte[] output, String status) {
+        try {
+            long bytes = input == null ? 0 : input.length;
+            if (queuedBytes.addAndGet(bytes) > MAX_QUEUED_BYTES && bytes > 0) {
+                queuedBytes.addAndGet(-bytes);
+                countDropped();
+                return;
+            }
+            Call call = new Call(operation, parameters, input, begin, end, output == null ? 0 : output.length, status);
+            if (!queue.offer(call)) {
+                queuedBytes.addAndGet(-bytes);
+                countDropped();
+            }
+        } catch (RuntimeException e) {
+            countWriteError();
+        }
+    }
+
+    /**
+     * Body of the writer thread: writes queued calls until {@link #close()} queues {@link #STOP}
+     */
+    private void writeQueued() {
+        long lastFlush = System.nanoTime();
+        while (true) {
+            Call call;
+            try {
+                call = queue.poll(FLUSH_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                // Only close() stops the writer
+                continue;
+            }
+            if (call == STOP) {
+                break;
+            }
+            if (call != null) {
+                write(call);
+            }
+            long now = System.nanoTime();
+            if (call == null || now - lastFlush >= FLUSH_INTERVAL_NANOS) {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    countWriteError();
+                }
+                lastFlush = now;
+            }
+        }
+    }
+
+    private void write(Call call) {
+        try {
+            byte[] input = call.input;
+            queuedBytes.addAndGet(input == null ? 0 : -input.length);
+            String hash = input == null ? "-" : hash(input);
+            ImageFormat format = input == null ? ImageFormat.UNKNOWN : ImageFormat.detect(input);
+            int[] dimensions = ImageHeader.dimensions(input);
+            TraceRecord record = new TraceRecord((call.begin - start) / 1000, call.operation, call.parameters, hash,
+                    input == null ? 0 : input.length, format.name(), dimensions == null ? 0 : dimensions[0],
+                    dimensions == null ? 0 : dimensions[1], (call.end - call.begin) / 1000, call.outputSize,
+                    call.status);
+            if (input != null && shouldStore(hash)) {
+                store(hash, format, input);
+            }
+            writer.write(record.toLine());
+            writer.newLine();
+            synchronized (this) {
+                recorded++;
+            }
+        } catch (IOException | RuntimeException e) {
+            countWriteError();
+        }
+    }
+
+    private synchronized void countDropped() {
+        dropped++;
+    }
+
+    private synchronized void countWriteError() {
+        writeErrors++;
+    }
+
+    private boolean shouldStore(String hash) {
+        if (inputSampleRate <= 0 || storedHashes.contains(hash)) {
+            return false;
+        }
+        // The leading 32 bits of the hash are uniform, so this samples inputs, not calls
+        return Long.parseLong(hash.substring(0, 8), 16) < inputSampleRate * (1L << 32);
+    }
+
+    private void store(String hash, ImageFormat format, byte[] input) throws IOException {
+        String extension = format == ImageFormat.JPEG ? ".jpg" : format == ImageFormat.PNG ? ".png" : ".bin";
+        try {
+            Files.write(inputDirectory.resolve(hash + extension), input, StandardOpenOption.CREATE_NEW);
+        } catch (FileAlreadyExistsException e) {
+            // Stored by an earlier recording into the same directory
+        }
+        synchronized (this) {
+            storedHashes.add(hash);
+        }
+    }
+
+    /**
+     * @return Hex of the first 128 bits of the SHA-256 of the data
+     */
+    static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            char[] hex = new char[32];
+            for (int i = 0; i < 16; i++) {
+                hex[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+                hex[2 * i + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @return Calls written to the trace so far; the writer thread may still be behind until {@link #close()}
+     */
+    public synchronized long getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * @return Calls not recorded because they were not sampled
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * @return Sampled calls not recorded because the writer queue was full
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized int getStoredInputs() {
+        return storedHashes.size();
+    }
+
+    public synchronized long getWriteErrors() {
+        return writeErrors;
+    }
+
+    /**
+     * Writes every queued call, then flushes and closes the trace
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            queue.put(STOP);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the remaining trace records");
+        } finally {
+            writer.close();
+        }
+        // Queued by calls that passed the closed check while close() ran
+        int late = queue.size();
+        queue.clear();
+        synchronized (this) {
+            dropped += late;
+        }
+    }
+
+    /**
+     * A sampled call waiting for the writer thread
+     */
+    private static final class Call {
+
+        private final String operation;
+        private final Map<String, String> parameters;
+        private final byte[] input;
+        private final long begin;
+        private final long end;
+        private final int outputSize;
+        private final String status;
+
+        private Call(String operation, Map<String, String> parameters, byte[] input, long begin, long end,
+                     int outputSize, String status) {
+            this.operation = operation;
+            this.parameters = parameters;
+            this.input = input;
+            this.begin = begin;
+            this.end = end;
+            this.outputSize = outputSize;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.CompressOptions;
+import cn.lihongjie.image.FastImageUtils;
+import cn.lihongjie.image.PixelImage;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import cn.lihongjie.image.metadata.MetadataPolicy;
+import cn.lihongjie.image.png.PngEncoder;
+import cn.lihongjie.image.util.ImageFixtures;
+import cn.lihongjie.image.util.JpegMarkers;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link CompressOptions} and the options-based compress path
+ *
+ * These tests do not require the native library.
+ */
+public class CompressOptionsUnitTest {
+
+    @Test
+    public void testDefaults() {
+        CompressOptions options = new CompressOptions();
+
+        assertEquals(75, options.getQuality());
+        assertEquals(ChromaSubsampling.YUV420, options.getSubsampling());
+        assertFalse(options.isProgressive());
+        assertFalse(options.isOptimizeHuffman());
+        assertSame(MetadataPolicy.STRIP_SAFE, options.getMetadataPolicy());
+        assertEquals(6, options.getEffort());
+    }
+
+    @Test
+    public void testOptionsAreImmutable() {
+        CompressOptions base = new CompressOptions();
+        CompressOptions changed = base.withQuality(40).withProgressive(true).withEffort(2);
+
+        assertEquals(75, base.getQuality());
+        assertFalse(base.isProgressive());
+        assertEquals(40, changed.getQuality());
+        assertTrue(changed.isProgressive());
+        assertEquals(2, changed.getEffort());
+    }
+
+    @Test
+    public void testSubsamplingIsWritten() {
+        byte[] input = new JpegEncoder(95).encode(ImageFixtures.gradient(120, 80, 3));
+
+        byte[] yuv444 = FastImageUtils.compress(input, new CompressOptions().withSubsampling(ChromaSubsampling.YUV444));
+        byte[] yuv420 = FastImageUtils.compress(input, new CompressOptions());
+
+        assertEquals(0x11, lumaSampling(yuv444));
+        assertEquals(0x22, lumaSampling(yuv420));
+    }
+
+    @Test
+    public void testProgressiveDecodesLikeBaseline() throws IOException {
+        byte[] input = TestImageLoader.loadSmallJpegImage();
+        CompressOptions options = new CompressOptions().withQuality(70);
+
+        byte[] baseline = JavaImageEngine.compress(input, options);
+        byte[] progressive = JavaImageEngine.compress(input, options.withProgressive(true));
+
+        assertTrue("Progressive output should use SOF2", JpegMarkers.containsMarker(progressive, 0xC2));
+        assertFalse(JpegMarkers.containsMarker(baseline, 0xC2));
+        assertPixelsEqual(decode(baseline), decode(progressive));
+        assertArrayEquals(JavaImageEngine.decode(baseline).getPixels(), JavaImageEngine.decode(progressive).getPixels());
+    }
+
+    @Test
+    public void testOptimizedHuffmanIsSmaller() {
+        byte[] input = TestImageLoader.loadSmallJpegImage();
+
+        byte[] standard = JavaImageEngine.compress(input, new CompressOptions());
+        byte[] optimized = JavaImageEngine.compress(input, new CompressOptions().withOptimizeHuffman(true));
+
+        assertTrue(optimized.length < standard.length);
+    }
+
+    @Test
+    public void testMetadataPolicy() {
+        byte[] comment = segment(0xFE, "kept comment");
+        byte[] input = new JpegEncoder(95).withMetadata(Collections.singletonList(comment))
+                .encode(ImageFixtures.gradient(64, 48, 3));
+
+        byte[] stripped = JavaImageEngine.compress(input, new CompressOptions());
+        byte[] kept = JavaImageEngine.compress(input, new CompressOptions().withMetadataPolicy(MetadataPolicy.KEEP_ALL));
+
+        assertFalse(contains(stripped, "kept comment"));
+        assertTrue(contains(kept, "kept comment"));
+        assertTrue(TestImageLoader.isValidImageFormat(kept, "JPEG"));
+    }
+
+    @Test
+    public void testPngEffortLevelsAreLossless() throws IOException {
+        PixelImage image = ImageFixtures.gradient(90, 70, 3);
+        byte[] input = new PngEncoder().encode(image);
+
+        byte[] fast = JavaImageEngine.compress(input, new CompressOptions().withQuality(100).withEffort(0));
+        byte[] max = JavaImageEngine.compress(input, new CompressOptions().withQuality(100).withEffort(9));
+
+        assertTrue(max.length <= fast.length);
+        assertPixelsEqual(decode(input), decode(fast));
+        assertPixelsEqual(decode(input), decode(max));
+    }
+
+    @Test
+    public void testPngBelowQuality100IsIndexed() throws IOException {
+        byte[] input = new PngEncoder().encode(ImageFixtures.gradient(90, 70, 3));
+
+        byte[] output = JavaImageEngine.compress(input, new CompressOptions().withQuality(50));
+
+        assertTrue(TestImageLoader.isValidImageFormat(output, "PNG"));
+        assertEquals("Color type should be indexed", 3, output[25]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidEffort() {
+        new CompressOptions().withEffort(10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullSubsampling() {
+        new CompressOptions().withSubsampling(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullOptions() {
+        FastImageUtils.compress(TestImageLoader.loadSmallJpegImage(), (CompressOptions) null);
+    }
+
+    /**
+     * Sampling factors byte of the first component in the SOF header
+     */
+    private static int lumaSampling(byte[] jpeg) {
+        for (int i = 2; i + 1 < jpeg.length; i++) {
+            int marker = jpeg[i + 1] & 0xFF;
+            if ((jpeg[i] & 0xFF) == 0xFF && (marker == 0xC0 || marker == 0xC1 || marker == 0xC2)) {
+                return jpeg[i + 11] & 0xFF;
+            }
+        }
+        throw new AssertionError("No SOF marker");
+    }
+
+    private static byte[] segment(int marker, String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] segment = new byte[bytes.length + 4];
+        segment[0] = (byte) 0xFF;
+        segment[1] = (byte) marker;
+        segment[2] = (byte) ((bytes.length + 2) >> 8);
+        segment[3] = (byte) (bytes.length + 2);
+        System.arraycopy(bytes, 0, segment, 4, bytes.length);
+        return segment;
+    }
+
+    private static boolean contains(byte[] data, String text) {
+        return new String(data, StandardCharsets.ISO_8859_1).contains(text);
+    }
+
+    private static BufferedImage decode(byte[] data) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+        assertNotNull("Image should decode", image);
+        return image;
+    }
+
+    private static void assertPixelsEqual(BufferedImage expected, BufferedImage actual) {
+        assertEquals("Width should match", expected.getWidth(), actual.getWidth());
+        assertEquals("Height should match", expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y += 3) {
+            for (int x = 0; x < expected.getWidth(); x += 3) {
+                assertEquals("Pixel mismatch at " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
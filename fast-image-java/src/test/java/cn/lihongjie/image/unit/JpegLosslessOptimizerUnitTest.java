@@ -0,0 +1,210 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.FastImageUtils;
+import cn.lihongjie.image.LosslessPass;
+import cn.lihongjie.image.jpeg.JpegLosslessOptimizer;
+import cn.lihongjie.image.metadata.MetadataPolicy;
+import cn.lihongjie.image.metadata.MetadataType;
+import cn.lihongjie.image.util.JpegMarkers;
+import cn.lihongjie.image.util.TestImageLoader;
+import org.junit.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the pure-Java lossless JPEG optimizer
+ *
+ * These tests do not require the native library.
+ */
+public class JpegLosslessOptimizerUnitTest {
+
+    @Test
+    public void testBaselineJpegShrinksAndDecodesIdentically() throws Exception {
+        byte[] original = withMetadata(createBaselineJpeg(257, 131));
+
+        byte[] optimized = JpegLosslessOptimizer.optimize(original);
+
+        assertTrue("Optimized JPEG should be valid", TestImageLoader.isValidImageFormat(optimized, "JPEG"));
+        assertTrue("Optimized JPEG should be smaller", optimized.length < original.length);
+        assertPixelsEqual(decode(original), decode(optimized));
+    }
+
+    @Test
+    public void testDefaultPolicyStripsExifAndComments() throws Exception {
+        byte[] original = withMetadata(createBaselineJpeg(64, 48));
+
+        byte[] optimized = JpegLosslessOptimizer.optimize(original);
+
+        assertFalse("EXIF should be removed", contains(optimized, "Exif"));
+        assertFalse("Comment should be removed", contains(optimized, "test comment"));
+        assertTrue("JFIF header should be kept", contains(optimized, "JFIF"));
+    }
+
+    @Test
+    public void testKeepAllPolicyPreservesMetadata() throws Exception {
+        byte[] original = withMetadata(createBaselineJpeg(64, 48));
+
+        byte[] optimized = JpegLosslessOptimizer.optimize(original, MetadataPolicy.KEEP_ALL);
+
+        assertTrue("EXIF should be kept", contains(optimized, "Exif"));
+        assertTrue("Comment should be kept", contains(optimized, "test comment"));
+    }
+
+    @Test
+    public void testCustomPolicyKeepsOnlySelectedTypes() throws Exception {
+        byte[] original = withMetadata(createBaselineJpeg(64, 48));
+
+        byte[] optimized = JpegLosslessOptimizer.optimize(original, MetadataPolicy.keeping(MetadataType.COMMENT));
+
+        assertFalse("EXIF should be removed", contains(optimized, "Exif"));
+        assertFalse("JFIF should be removed", contains(optimized, "JFIF"));
+        assertTrue("Comment should be kept", contains(optimized, "test comment"));
+    }
+
+    @Test
+    public void testProgressiveJpegShrinksAndStaysProgressive() throws Exception {
+        byte[] original = createProgressiveJpeg(257, 131);
+
+        byte[] optimized = JpegLosslessOptimizer.optimize(original);
+        byte[] viaPass = FastImageUtils.compress(original, 70, LosslessPass.INSTEAD_OF_COMPRESS);
+
+        assertTrue("Optimized JPEG should be smaller: " + optimized.length + " vs " + original.length,
+                optimized.length < original.length);
+        assertTrue("Optimized JPEG should still be progressive", JpegMarkers.containsMarker(optimized, 0xC2));
+        assertPixelsEqual(decode(original), decode(optimized));
+        assertArrayEquals("The lossless pass should optimize progressive input too", optimized, viaPass);
+    }
+
+    @Test
+    public void testBundledProgressiveJpegShrinks() throws Exception {
+        byte[] original = TestImageLoader.loadSmallJpegImage();
+
+        byte[] optimized = JpegLosslessOptimizer.optimize(original);
+
+        assertTrue("Optimized JPEG should be smaller", optimized.length < original.length);
+        assertTrue("Optimized JPEG should still be progressive", JpegMarkers.containsMarker(optimized, 0xC2));
+        assertPixelsEqual(decode(original), decode(optimized));
+    }
+
+    @Test
+    public void testProgressiveJpegIsNeverLarger() throws Exception {
+        byte[] original = TestImageLoader.loadMediumJpegImage();
+
+        byte[] optimized = JpegLosslessOptimizer.optimize(original);
+
+        assertTrue("Optimized JPEG should not be larger", optimized.length <= original.length);
+        assertPixelsEqual(decode(original), decode(optimized));
+    }
+
+    @Test
+    public void testFacadeLosslessPassWithoutNativeLibrary() throws Exception {
+        byte[] original = withMetadata(createBaselineJpeg(100, 100));
+
+        byte[] viaFacade = FastImageUtils.optimizeJpegLossless(original);
+        byte[] viaPass = FastImageUtils.compress(original, 70, LosslessPass.INSTEAD_OF_COMPRESS);
+
+        assertArrayEquals("Facade and pass should produce the same output", viaFacade, viaPass);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyDataIsRejected() {
+        JpegLosslessOptimizer.optimize(new byte[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonJpegDataIsRejected() {
+        JpegLosslessOptimizer.optimize(TestImageLoader.loadSmallPngImage());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQualityWithPassIsRejected() throws Exception {
+        FastImageUtils.compress(createBaselineJpeg(16, 16), 101, LosslessPass.INSTEAD_OF_COMPRESS);
+    }
+
+    private static byte[] createBaselineJpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255) / width;
+                int g = (y * 255) / height;
+                int b = ((x ^ y) & 0x1F) * 8;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Progressive JPEG written by ImageIO, which uses the standard Huffman tables for every scan
+     */
+    private static byte[] createProgressiveJpeg(int width, int height) throws IOException {
+        BufferedImage image = decode(createBaselineJpeg(width, height));
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        byte[] jpeg = out.toByteArray();
+        assertTrue("Fixture should be progressive", JpegMarkers.containsMarker(jpeg, 0xC2));
+        return jpeg;
+    }
+
+    /**
+     * Insert an EXIF APP1 segment and a COM segment right after SOI
+     */
+    private static byte[] withMetadata(byte[] jpeg) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        writeSegment(out, 0xE1, "Exif\0\0MM\0*\0\0\0\0fake maker notes");
+        writeSegment(out, 0xFE, "test comment");
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(0xFF);
+        out.write(marker);
+        out.write((bytes.length + 2) >> 8);
+        out.write(bytes.length + 2);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static boolean contains(byte[] data, String text) {
+        return new String(data, StandardCharsets.ISO_8859_1).contains(text);
+    }
+
+    private static BufferedImage decode(byte[] data) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+        assertNotNull("Image should decode", image);
+        return image;
+    }
+
+    private static void assertPixelsEqual(BufferedImage expected, BufferedImage actual) {
+        assertEquals("Width should match", expected.getWidth(), actual.getWidth());
+        assertEquals("Height should match", expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y += 7) {
+            for (int x = 0; x < expected.getWidth(); x += 7) {
+                assertEquals("Pixel mismatch at " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
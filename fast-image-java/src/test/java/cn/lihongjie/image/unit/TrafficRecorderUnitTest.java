@@ -0,0 +1,288 @@
+package cn.lihongjie.image.unit;
+
+import cn.lihongjie.image.CompressOptions;
+import cn.lihongjie.image.FastImageUtils;
+import cn.lihongjie.image.LosslessPass;
+import cn.lihongjie.image.engine.JavaImageEngine;
+import cn.lihongjie.image.jpeg.ChromaSubsampling;
+import cn.lihongjie.image.jpeg.GrayscaleDetector;
+import cn.lihongjie.image.jpeg.JpegEncoder;
+import cn.lihongjie.image.jpeg.ScanScript;
+import cn.lihongjie.image.metadata.MetadataPolicy;
+import cn.lihongjie.image.metadata.MetadataType;
+import cn.lihongjie.image.png.PngEncoder;
+import cn.lihongjie.image.trace.TraceParameters;
+import cn.lihongjie.image.trace.TraceRecord;
+import cn.lihongjie.image.trace.TrafficRecorder;
+import cn.lihongjie.image.util.ImageFixtures;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for traffic recording on the facade
+ *
+ * These tests only use the pure-Java operations and do not require the native library.
+ */
+public class TrafficRecorderUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        FastImageUtils.setRecorder(null);
+    }
+
+    @Test
+    public void testRecordsRequestShape() throws Exception {
+        byte[] jpeg = new JpegEncoder(95).encode(ImageFixtures.gradient(120, 80, 3));
+        byte[] png = new PngEncoder().encode(ImageFixtures.gradient(90, 70, 3));
+        Path trace = folder.getRoot().toPath().resolve("logs/trace.tsv");
+
+        byte[] compressed;
+        TrafficRecorder recorder = new TrafficRecorder(trace);
+        try {
+            FastImageUtils.setRecorder(recorder);
+            compressed = FastImageUtils.compress(jpeg, new CompressOptions().withQuality(60).withProgressive(true));
+            FastImageUtils.compress(png, new CompressOptions());
+        } finally {
+            recorder.close();
+        }
+        assertEquals(2, recorder.getRecorded());
+
+        List<TraceRecord> records = TraceRecord.read(trace);
+        assertEquals(2, records.size());
+        TraceRecord first = records.get(0);
+        assertEquals("compress-options", first.getOperation());
+        assertEquals("60", first.getParameter("quality", null));
+        assertEquals("true", first.getParameter("progressive", null));
+        assertEquals("SIMPLE", first.getParameter("scanScript", null));
+        assertEquals("STRIP_SAFE", first.getParameter("metadataPolicy", null));
+        assertEquals("JPEG", first.getFormat());
+        assertEquals(120, first.getWidth());
+        assertEquals(80, first.getHeight());
+        assertEquals(jpeg.length, first.getInputSize());
+        assertEquals(compressed.length, first.getOutputSize());
+        assertEquals(32, first.getInputHash().length());
+        assertTrue(first.isOk());
+        TraceRecord second = records.get(1);
+        assertEquals("PNG", second.getFormat());
+        assertEquals(90, second.getWidth());
+        assertEquals(70, second.getHeight());
+        assertTrue(second.getOffsetMicros() >= first.getOffsetMicros() + first.getDurationMicros());
+    }
+
+    @Test
+    public void testNestedCallsAreRecordedOnce() throws Exception {
+        byte[] jpeg = new JpegEncoder(90).encode(ImageFixtures.gradient(64, 48, 3));
+        Path trace = folder.newFile("trace.tsv").toPath();
+
+        try (TrafficRecorder recorder = new TrafficRecorder(trace)) {
+            FastImageUtils.setRecorder(recorder);
+            FastImageUtils.compress(jpeg, 70, LosslessPass.INSTEAD_OF_COMPRESS);
+        }
+
+        List<TraceRecord> records = TraceRecord.read(trace);
+        assertEquals("The inner lossless pass is part of the outer call", 1, records.size());
+        assertEquals("compress", records.get(0).getOperation());
+        assertEquals("INSTEAD_OF_COMPRESS", records.get(0).getParameter("pass", null));
+    }
+
+    @Test
+    public void testNestedCallsOfSkippedCallsAreNotRecorded() throws Exception {
+        byte[] jpeg = new JpegEncoder(90).encode(ImageFixtures.gradient(32, 32, 3));
+        Path trace = folder.newFile("trace.tsv").toPath();
+
+        TrafficRecorder recorder = new TrafficRecorder(trace, 0.5, null, 0);
+        try {
+            FastImageUtils.setRecorder(recorder);
+            for (int i = 0; i < 100; i++) {
+                FastImageUtils.compress(jpeg, 70, LosslessPass.INSTEAD_OF_COMPRESS);
+            }
+        } finally {
+            recorder.close();
+        }
+
+        assertEquals("One record or skip per outer call", 100, recorder.getRecorded() + recorder.getSkipped());
+        for (TraceRecord record : TraceRecord.read(trace)) {
+            assertEquals("compress", record.getOperation());
+        }
+    }
+
+    @Test
+    public void testFailuresAreRecordedAndRethrown() throws Exception {
+        Path trace = folder.newFile("trace.tsv").toPath();
+        byte[] notAnImage = {1, 2, 3, 4, 5};
+
+        try (TrafficRecorder recorder = new TrafficRecorder(trace)) {
+            FastImageUtils.setRecorder(recorder);
+            FastImageUtils.optimizeJpegLossless(notAnImage);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // Recorded below
+        }
+
+        TraceRecord record = TraceRecord.read(trace).get(0);
+        assertEquals("IllegalArgumentException", record.getStatus());
+        assertEquals("UNKNOWN", record.getFormat());
+        assertEquals(0, record.getWidth());
+        assertEquals(0, record.getOutputSize());
+    }
+
+    @Test
+    public void testSamplingAndInputStorage() throws Exception {
+        byte[] jpeg = new JpegEncoder(90).encode(ImageFixtures.gradient(32, 32, 3));
+        Path trace = folder.newFile("trace.tsv").toPath();
+        File inputs = folder.newFolder("inputs");
+
+        TrafficRecorder recorder = new TrafficRecorder(trace, 0.5, inputs.toPath(), 1);
+        try {
+            FastImageUtils.setRecorder(recorder);
+            for (int i = 0; i < 200; i++) {
+                FastImageUtils.optimizeJpegLossless(jpeg);
+            }
+        } finally {
+            recorder.close();
+        }
+        assertEquals(0, recorder.getDropped());
+        assertEquals(200, recorder.getRecorded() + recorder.getSkipped());
+        assertEquals(100, recorder.getRecorded(), 30);
+        assertEquals("Repeated input is stored once", 1, recorder.getStoredInputs());
+
+        String hash = TraceRecord.read(trace).get(0).getInputHash();
+        assertArrayEquals(jpeg, Files.readAllBytes(inputs.toPath().resolve(hash + ".jpg")));
+    }
+
+    @Test
+    public void testInputSamplingDependsOnlyOnHash() throws Exception {
+        Path trace = folder.newFile("trace.tsv").toPath();
+        File inputs = folder.newFolder("inputs");
+
+        TrafficRecorder recorder = new TrafficRecorder(trace, 1, inputs.toPath(), 0.25);
+        try {
+            FastImageUtils.setRecorder(recorder);
+            for (int i = 0; i < 80; i++) {
+                byte[] jpeg = new JpegEncoder(50 + i % 40).encode(ImageFixtures.gradient(16 + i / 40, 16, 3));
+                FastImageUtils.optimizeJpegLossless(jpeg);
+                FastImageUtils.optimizeJpegLossless(jpeg);
+            }
+        } finally {
+            recorder.close();
+        }
+        int stored = recorder.getStoredInputs();
+
+        assertEquals(20, stored, 12);
+        assertEquals(stored, inputs.list().length);
+    }
+
+    @Test
+    public void testBadRecordNeverFailsTheCall() throws Exception {
+        Path trace = folder.newFile("trace.tsv").toPath();
+        byte[] output = {9, 8, 7};
+        // A tab cannot be written to the trace, so building the record throws
+        Map<String, String> parameters = Collections.singletonMap("bad", "a\tb");
+
+        TrafficRecorder recorder = new TrafficRecorder(trace);
+        try {
+            assertSame(output, recorder.record("compress", parameters, new byte[]{1, 2, 3}, () -> output));
+            try {
+                recorder.record("compress", parameters, null, () -> {
+                    throw new IllegalStateException("from the call");
+                });
+                fail("Expected the exception of the call");
+            } catch (IllegalStateException e) {
+                assertEquals("from the call", e.getMessage());
+            }
+        } finally {
+            recorder.close();
+        }
+
+        assertEquals(2, recorder.getWriteErrors());
+        assertEquals(0, recorder.getRecorded());
+        assertTrue(TraceRecord.read(trace).isEmpty());
+    }
+
+    @Test
+    public void testRecordLineRoundTrip() {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("quality", "85");
+        parameters.put("pass", "NONE");
+        TraceRecord record = new TraceRecord(1500, "compress", parameters, "abc", 1000, "JPEG", 640, 480, 2500, 400,
+                TraceRecord.STATUS_OK);
+
+        TraceRecord parsed = TraceRecord.parse(record.toLine());
+
+        assertEquals(record.toLine(), parsed.toLine());
+        assertEquals(parameters, parsed.getParameters());
+        assertEquals(2500, parsed.getDurationMicros());
+        assertTrue(TraceRecord.parse(new TraceRecord(0, "rotate", Collections.emptyMap(), "-", 0, "UNKNOWN", 0, 0,
+                0, 0, "RuntimeException").toLine()).getParameters().isEmpty());
+    }
+
+    @Test
+    public void testCompressOptionsRoundTrip() {
+        CompressOptions[] cases = {
+                new CompressOptions(),
+                new CompressOptions().withQuality(60).withProgressive(true)
+                        .withMetadataPolicy(MetadataPolicy.keeping(MetadataType.ICC, MetadataType.EXIF)),
+                new CompressOptions().withSubsampling(ChromaSubsampling.YUV444).withScanScript(ScanScript.SPECTRAL)
+                        .withOptimizeHuffman(true).withTrellisQuantization(true).withEffort(9).withParallelism(2)
+                        .withMetadataPolicy(MetadataPolicy.keeping(MetadataType.ICC).withExifOrientation()),
+                new CompressOptions().withScanScript(ScanScript.parse("0,1,2: 0-0, 0, 0;\n0: 1-63, 0, 0;\n"
+                        + "1: 1-63, 0, 0;\n2: 1-63, 0, 0;")).withMetadataPolicy(MetadataPolicy.STRIP_ALL),
+                new CompressOptions().withGrayscaleDetector(null),
+                new CompressOptions().withGrayscaleDetector(new GrayscaleDetector(10)),
+        };
+
+        for (CompressOptions options : cases) {
+            Map<String, String> parameters = TraceParameters.of(options);
+            // Parameters must survive a trace line
+            TraceRecord record = TraceRecord.parse(new TraceRecord(0, "compress-options", parameters, "abc", 1,
+                    "JPEG", 1, 1, 1, 1, TraceRecord.STATUS_OK).toLine());
+            CompressOptions replayed = TraceParameters.compressOptions(record.getParameters());
+
+            assertEquals(options.getQuality(), replayed.getQuality());
+            assertEquals(options.getSubsampling(), replayed.getSubsampling());
+            assertEquals(String.valueOf(options.getScanScript()), String.valueOf(replayed.getScanScript()));
+            assertEquals(options.isOptimizeHuffman(), replayed.isOptimizeHuffman());
+            assertEquals(options.isTrellisQuantization(), replayed.isTrellisQuantization());
+            assertEquals(options.getMetadataPolicy(), replayed.getMetadataPolicy());
+            assertEquals(options.getEffort(), replayed.getEffort());
+            assertEquals(options.getParallelism(), replayed.getParallelism());
+            assertEquals(tolerance(options), tolerance(replayed));
+        }
+        assertSame("The shared detector should be restored", JavaImageEngine.getGrayscaleDetector(),
+                TraceParameters.compressOptions(TraceParameters.of(new CompressOptions())).getGrayscaleDetector());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCompressOption() {
+        TraceParameters.compressOptions(Collections.singletonMap("speed", "1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedLine() {
+        TraceRecord.parse("1\tcompress\t-\tabc");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSampleRate() throws Exception {
+        new TrafficRecorder(folder.newFile("trace.tsv").toPath(), 0, null, 0);
+    }
+
+    private static int tolerance(CompressOptions options) {
+        return options.getGrayscaleDetector() == null ? -1 : options.getGrayscaleDetector().getTolerance();
+    }
+}
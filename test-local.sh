@@ -24,7 +24,7 @@ echo "✓ Maven and Java are available"
 
 # Configuration
 FAST_IMAGE_VERSION="v0.2.1"
-NATIVE_DIR="src/main/resources/native"
+NATIVE_DIR="fast-image-java/src/main/resources/native"
 
 echo ""
 echo "📦 Setting up native libraries..."
@@ -120,7 +120,7 @@ run_test() {
     local test_class="$2"
     
     echo "📋 Running $test_name..."
-    if mvn test -Dtest="$test_class" -DfailIfNoTests=false -Djava.awt.headless=true -q; then
+    if mvn test -Dtest="$test_class" -Dsurefire.failIfNoSpecifiedTests=false -Djava.awt.headless=true -q; then
         echo "✅ $test_name: PASSED"
         return 0
     else